@@ -14,9 +14,13 @@ import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.ScrollView;
 import android.widget.TextView;
 
 import org.thoughtcrime.securesms.crypto.MasterSecret;
+import org.thoughtcrime.securesms.database.AttachmentDatabase;
+import org.thoughtcrime.securesms.database.MediaDatabase.MediaPosition;
 import org.thoughtcrime.securesms.media.GridAdapter;
 import org.thoughtcrime.securesms.media.ListAdapter;
 import org.thoughtcrime.securesms.media.Media;
@@ -38,15 +42,26 @@ public class AllMediaActivity extends PassphraseRequiredActionBarActivity
   public static final String TYPE_AUDIO_EXTRA = "audio";
   public static final String TYPE_FILE_EXTRA  = "file";
 
+  private static final int PAGE_SIZE = 120;
+
   private MasterSecret        masterSecret;
   private Context             context;
   private SwipeRefreshLayout  swipeRefresh;
+  private ScrollView          scrollView;
   private TextView            title;
   private TextView            counter;
   private RecyclerView        recyclerView;
   private GridLayoutManager   gridLayoutManager;
   private LinearLayoutManager linearLayoutManager;
+  private GridAdapter         gridAdapter;
+  private ListAdapter         listAdapter;
   private String              type;
+  private int                 mediaKind;
+  private ArrayList<Media>    media = new ArrayList<>();
+  private MediaPosition       lastPosition;
+  private boolean             hasMore;
+  private boolean             loading;
+  private int                 loadCount;
 
   private final DynamicTheme dynamicTheme       = new DynamicTheme   ();
   private final DynamicLanguage dynamicLanguage = new DynamicLanguage();
@@ -66,6 +81,7 @@ public class AllMediaActivity extends PassphraseRequiredActionBarActivity
     this.masterSecret = masterSecret;
 
     swipeRefresh  = ViewUtil.findById(this, R.id.swipe_refresh);
+    scrollView    = ViewUtil.findById(this, R.id.scroll_view);
     title         = ViewUtil.findById(this, R.id.title_view_all);
     counter       = ViewUtil.findById(this, R.id.count_all);
     recyclerView  = ViewUtil.findById(this, R.id.recycler_view_all);
@@ -73,17 +89,24 @@ public class AllMediaActivity extends PassphraseRequiredActionBarActivity
 
     type = getIntent().getStringExtra(TYPE_EXTRA);
 
-    if (type.equals(TYPE_IMAGE_EXTRA))
+    if (type.equals(TYPE_IMAGE_EXTRA)) {
       title.setText(R.string.tab_media_fragment__image);
-    else if (type.equals(TYPE_VIDEO_EXTRA))
+      mediaKind = AttachmentDatabase.MEDIA_KIND_IMAGE;
+    } else if (type.equals(TYPE_VIDEO_EXTRA)) {
       title.setText(R.string.tab_media_fragment__video);
-    else if (type.equals(TYPE_AUDIO_EXTRA))
+      mediaKind = AttachmentDatabase.MEDIA_KIND_VIDEO;
+    } else if (type.equals(TYPE_AUDIO_EXTRA)) {
       title.setText(R.string.tab_media_fragment__audio);
-    else
+      mediaKind = AttachmentDatabase.MEDIA_KIND_AUDIO;
+    } else {
       title.setText(R.string.tab_media_fragment__file);
+      mediaKind = AttachmentDatabase.MEDIA_KIND_OTHER;
+    }
 
     new LoadData().execute();
 
+    scrollView.getViewTreeObserver().addOnScrollChangedListener(new PagingScrollListener());
+
     swipeRefresh.setEnabled(this.getIntent().getBooleanExtra(REFRESHABLE, true) &&
         Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN);
     swipeRefresh.setOnRefreshListener(
@@ -96,90 +119,161 @@ public class AllMediaActivity extends PassphraseRequiredActionBarActivity
     );
   }
 
-  private void loadGridLayout(ArrayList data) {
-    final ArrayList<Media> list;
+  private void loadGridLayout(ArrayList<Media> data) {
+    media = data;
 
-    gridLayoutManager = new GridLayoutManager(this, getResources().getInteger(R.integer.media_overview_cols));
-    recyclerView.setLayoutManager(gridLayoutManager);
-    recyclerView.setHasFixedSize(true);
+    if (gridAdapter == null) {
+      gridLayoutManager = new GridLayoutManager(this, getResources().getInteger(R.integer.media_overview_cols));
+      recyclerView.setLayoutManager(gridLayoutManager);
+      recyclerView.setHasFixedSize(true);
 
-    list = data;
-    GridAdapter adapter = new GridAdapter(this);
-    adapter.setListData(list);
+      gridAdapter = new GridAdapter(this);
+      gridAdapter.setListData(media);
+      recyclerView.setAdapter(gridAdapter);
 
-    recyclerView.setAdapter(adapter);
-    adapter.notifyDataSetChanged();
+      gridAdapter.setOnItemClickListener(new GridAdapter.ClickListener() {
+        @Override
+        public void onItemClick(int position, View v) {
+          MediaFragment.performClick(context, media, position);
+        }
+      });
+    } else {
+      gridAdapter.setListData(media);
+    }
 
-    adapter.setOnItemClickListener(new GridAdapter.ClickListener() {
-      @Override
-      public void onItemClick(int position, View v) {
-        MediaFragment.performClick(context, list, position);
-      }
-    });
+    gridAdapter.notifyDataSetChanged();
   }
 
-  private void loadLinearLayout(ArrayList data) {
-    final ArrayList<Media> list;
+  private void loadLinearLayout(ArrayList<Media> data) {
+    media = data;
 
-    linearLayoutManager = new LinearLayoutManager(this);
-    recyclerView.setLayoutManager(linearLayoutManager);
-    recyclerView.setHasFixedSize(true);
+    if (listAdapter == null) {
+      linearLayoutManager = new LinearLayoutManager(this);
+      recyclerView.setLayoutManager(linearLayoutManager);
+      recyclerView.setHasFixedSize(true);
 
-    list = data;
-    ListAdapter adapter =  new ListAdapter(this);
-    adapter.setListData(list);
+      listAdapter = new ListAdapter(this);
+      listAdapter.setListData(media);
+      recyclerView.setAdapter(listAdapter);
 
-    recyclerView.setAdapter(adapter);
-    adapter.notifyDataSetChanged();
+      listAdapter.setOnItemClickListener(new ListAdapter.ClickListener() {
+        @Override
+        public void onItemClick(int position, View v) {
+          MediaFragment.performClick(context, media, position);
+        }
+      });
+    } else {
+      listAdapter.setListData(media);
+    }
 
-    adapter.setOnItemClickListener(new ListAdapter.ClickListener() {
-      @Override
-      public void onItemClick(int position, View v) {
-        MediaFragment.performClick(context, list, position);
-      }
-    });
+    listAdapter.notifyDataSetChanged();
+  }
+
+  private void appendMedia(ArrayList<Media> data) {
+    int start = media.size();
+
+    media.addAll(data);
+
+    if      (gridAdapter != null) gridAdapter.notifyItemRangeInserted(start, data.size());
+    else if (listAdapter != null) listAdapter.notifyItemRangeInserted(start, data.size());
   }
 
   public Media getItem(ArrayList<Media> list, int position){
     return list.get(position);
   }
 
-  class LoadData extends AsyncTask<Void, Void, ArrayList> {
+  /**
+   * Loads the newest page of items, replacing those shown.
+   */
+  class LoadData extends AsyncTask<Void, Void, MediaData> {
+
     @Override
-    protected ArrayList doInBackground(Void... voids) {
-      MediaData data = new MediaData(getBaseContext(), masterSecret);
+    protected MediaData doInBackground(Void... voids) {
+      return new MediaData(getBaseContext(), masterSecret, PAGE_SIZE, mediaKind);
+    }
 
+    @Override
+    protected void onPostExecute(MediaData data) {
       switch (type) {
         case TYPE_IMAGE_EXTRA :
-          return data.getListImage();
+          loadGridLayout(data.getListImage());
+          break;
 
         case TYPE_VIDEO_EXTRA :
-          return data.getListVideo();
+          loadGridLayout(data.getListVideo());
+          break;
 
         case TYPE_AUDIO_EXTRA :
-          return data.getListAudio();
+          loadLinearLayout(data.getListAudio());
+          break;
 
         default:
-          return data.getListFile();
+          loadLinearLayout(data.getListFile());
       }
-    }
 
-    @Override
-    protected void onPostExecute(ArrayList media) {
-      if (type.equals(TYPE_IMAGE_EXTRA) || type.equals(TYPE_VIDEO_EXTRA)) {
-        loadGridLayout(media);
-      } else {
-        loadLinearLayout(media);
-      }
+      lastPosition = data.getLastPosition();
+      hasMore      = data.getListData().size() >= PAGE_SIZE;
 
-      counter.setText(String.valueOf(media.size()));
+      counter.setText(String.valueOf(data.getCount(mediaKind)));
       swipeRefresh.setRefreshing(false);
+      loading = false;
     }
 
     @Override
     protected void onPreExecute() {
       super.onPreExecute();
       swipeRefresh.setRefreshing(true);
+      loading = true;
+      loadCount++;
+    }
+  }
+
+  /**
+   * Loads the page of items after the last one shown and appends it, so the items already
+   * shown aren't read or bound again.
+   */
+  private class LoadNextPage extends AsyncTask<Void, Void, MediaData> {
+
+    private final MediaPosition after     = lastPosition;
+    private final int           loadCount = AllMediaActivity.this.loadCount;
+
+    @Override
+    protected void onPreExecute() {
+      loading = true;
+    }
+
+    @Override
+    protected MediaData doInBackground(Void... voids) {
+      return new MediaData(getBaseContext(), masterSecret, PAGE_SIZE, mediaKind, after);
+    }
+
+    @Override
+    protected void onPostExecute(MediaData data) {
+      if (loadCount != AllMediaActivity.this.loadCount) return;
+
+      switch (type) {
+        case TYPE_IMAGE_EXTRA: appendMedia(data.getListImage()); break;
+        case TYPE_VIDEO_EXTRA: appendMedia(data.getListVideo()); break;
+        case TYPE_AUDIO_EXTRA: appendMedia(data.getListAudio()); break;
+        default:               appendMedia(data.getListFile());
+      }
+
+      if (data.getLastPosition() != null) lastPosition = data.getLastPosition();
+      hasMore = data.getListData().size() >= PAGE_SIZE;
+      loading = false;
+    }
+  }
+
+  private class PagingScrollListener implements ViewTreeObserver.OnScrollChangedListener {
+    @Override
+    public void onScrollChanged() {
+      View content = scrollView.getChildAt(0);
+
+      if (!loading && hasMore && lastPosition != null && content != null &&
+          scrollView.getScrollY() + 2 * scrollView.getHeight() >= content.getHeight())
+      {
+        new LoadNextPage().execute();
+      }
     }
   }
 
@@ -30,9 +30,9 @@ import org.thoughtcrime.securesms.dependencies.InjectableType;
 import org.thoughtcrime.securesms.dependencies.SignalCommunicationModule;
 import org.thoughtcrime.securesms.jobs.CreateSignedPreKeyJob;
 import org.thoughtcrime.securesms.jobs.GcmRefreshJob;
-import org.thoughtcrime.securesms.jobs.persistence.EncryptingJobSerializer;
-import org.thoughtcrime.securesms.jobs.requirements.MasterSecretRequirementProvider;
-import org.thoughtcrime.securesms.jobs.requirements.ServiceRequirementProvider;
+import org.thoughtcrime.securesms.jobs.JobLanes;
+import org.thoughtcrime.securesms.jobs.PushDecryptJob;
+import org.thoughtcrime.securesms.push.DeliveryReceiptDispatcher;
 import org.thoughtcrime.securesms.push.SignalServiceNetworkAccess;
 import org.thoughtcrime.securesms.service.AutoRemoveListener;
 import org.thoughtcrime.securesms.service.DirectoryRefreshListener;
@@ -43,9 +43,7 @@ import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.webrtc.PeerConnectionFactory;
 import org.webrtc.voiceengine.WebRtcAudioManager;
 import org.webrtc.voiceengine.WebRtcAudioUtils;
-import org.whispersystems.jobqueue.JobManager;
 import org.whispersystems.jobqueue.dependencies.DependencyInjector;
-import org.whispersystems.jobqueue.requirements.NetworkRequirementProvider;
 import org.whispersystems.libsignal.logging.SignalProtocolLoggerProvider;
 import org.whispersystems.libsignal.util.AndroidSignalProtocolLogger;
 
@@ -67,9 +65,10 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
 
   private static final String TAG = ApplicationContext.class.getName();
 
-  private ExpiringMessageManager expiringMessageManager;
-  private JobManager             jobManager;
-  private ObjectGraph            objectGraph;
+  private ExpiringMessageManager    expiringMessageManager;
+  private DeliveryReceiptDispatcher deliveryReceiptDispatcher;
+  private JobLanes                  jobLanes;
+  private ObjectGraph               objectGraph;
 
   public static ApplicationContext getInstance(Context context) {
     return (ApplicationContext)context.getApplicationContext();
@@ -83,8 +82,10 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
     initializeDependencyInjection();
     initializeJobManager();
     initializeExpiringMessageManager();
+    initializeDeliveryReceiptDispatcher();
     initializeGcmCheck();
     initializeSignedPreKeyCheck();
+    initializePendingMessageCheck();
     initializePeriodicTasks();
     initializeCircumvention();
     //initializeWebRtc();
@@ -97,14 +98,22 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
     }
   }
 
-  public JobManager getJobManager() {
-    return jobManager;
+  /**
+   * Keeps its old name because {@link JobLanes} takes over JobManager's add() for the
+   * sixty-odd callers, which pick up the lanes without any change of their own.
+   */
+  public JobLanes getJobManager() {
+    return jobLanes;
   }
 
   public ExpiringMessageManager getExpiringMessageManager() {
     return expiringMessageManager;
   }
 
+  public DeliveryReceiptDispatcher getDeliveryReceiptDispatcher() {
+    return deliveryReceiptDispatcher;
+  }
+
   private void initializeRandomNumberFix() {
     PRNGFixes.apply();
   }
@@ -114,15 +123,7 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
   }
 
   private void initializeJobManager() {
-    this.jobManager = JobManager.newBuilder(this)
-                                .withName("TextSecureJobs")
-                                .withDependencyInjector(this)
-                                .withJobSerializer(new EncryptingJobSerializer())
-                                .withRequirementProviders(new MasterSecretRequirementProvider(this),
-                                                          new ServiceRequirementProvider(this),
-                                                          new NetworkRequirementProvider(this))
-                                .withConsumerThreads(5)
-                                .build();
+    this.jobLanes = new JobLanes(this, this);
   }
 
   private void initializeDependencyInjection() {
@@ -135,14 +136,20 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
       long nextSetTime = TextSecurePreferences.getGcmRegistrationIdLastSetTime(this) + TimeUnit.HOURS.toMillis(6);
 
       if (TextSecurePreferences.getGcmRegistrationId(this) == null || nextSetTime <= System.currentTimeMillis()) {
-        this.jobManager.add(new GcmRefreshJob(this));
+        this.jobLanes.add(new GcmRefreshJob(this));
       }
     }
   }
 
   private void initializeSignedPreKeyCheck() {
     if (!TextSecurePreferences.isSignedPreKeyRegistered(this)) {
-      jobManager.add(new CreateSignedPreKeyJob(this));
+      jobLanes.add(new CreateSignedPreKeyJob(this));
+    }
+  }
+
+  private void initializePendingMessageCheck() {
+    if (TextSecurePreferences.isPushRegistered(this)) {
+      jobLanes.add(new PushDecryptJob(this));
     }
   }
 
@@ -150,6 +157,10 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
     this.expiringMessageManager = new ExpiringMessageManager(this);
   }
 
+  private void initializeDeliveryReceiptDispatcher() {
+    this.deliveryReceiptDispatcher = new DeliveryReceiptDispatcher(this);
+  }
+
   private void initializePeriodicTasks() {
     RotateSignedPreKeyListener.schedule(this);
     DirectoryRefreshListener.schedule(this);
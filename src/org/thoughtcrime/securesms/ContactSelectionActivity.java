@@ -141,7 +141,7 @@ public abstract class ContactSelectionActivity extends PassphraseRequiredActionB
     protected Void doInBackground(Context... params) {
 
       try {
-        DirectoryHelper.refreshDirectory(params[0], masterSecret);
+        DirectoryHelper.refreshDirectory(params[0], masterSecret, true);
       } catch (IOException e) {
         Log.w(TAG, e);
       }
@@ -34,6 +34,7 @@ import android.widget.TextView;
 import org.thoughtcrime.securesms.ConversationAdapter.HeaderViewHolder;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
 import org.thoughtcrime.securesms.database.AttachmentDatabase;
+import org.thoughtcrime.securesms.database.DatabaseChangeBus;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.database.FastCursorRecyclerViewAdapter;
 import org.thoughtcrime.securesms.database.MmsSmsColumns;
@@ -44,6 +45,7 @@ import org.thoughtcrime.securesms.mms.SlideDeck;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.Conversions;
 import org.thoughtcrime.securesms.util.DateUtils;
+import org.thoughtcrime.securesms.util.FrameTimeRecorder;
 import org.thoughtcrime.securesms.util.LRUCache;
 import org.thoughtcrime.securesms.util.StickyHeaderDecoration;
 import org.thoughtcrime.securesms.util.Util;
@@ -52,10 +54,12 @@ import org.thoughtcrime.securesms.util.ViewUtil;
 import java.lang.ref.SoftReference;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -70,10 +74,11 @@ import java.util.Set;
  */
 public class ConversationAdapter <V extends View & BindableConversationItem>
     extends FastCursorRecyclerViewAdapter<ConversationAdapter.ViewHolder, MessageRecord>
-  implements StickyHeaderDecoration.StickyHeaderAdapter<HeaderViewHolder>
+  implements StickyHeaderDecoration.StickyHeaderAdapter<HeaderViewHolder>, DatabaseChangeBus.Listener
 {
 
   private static final int MAX_CACHE_SIZE = 40;
+  private static final int MAX_PATCH_ROWS = 500;
   private static final String TAG = ConversationAdapter.class.getSimpleName();
   private final Map<String,SoftReference<MessageRecord>> messageRecordCache =
       Collections.synchronizedMap(new LRUCache<String, SoftReference<MessageRecord>>(MAX_CACHE_SIZE));
@@ -90,6 +95,16 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
 
   private final Set<MessageRecord> batchSelected = Collections.synchronizedSet(new HashSet<MessageRecord>());
 
+  private final Set<String> changedRecords     = new HashSet<>();
+  private       Set<String> lastChangedRecords = new HashSet<>();
+
+  private volatile  long         threadId = -1;
+  private           boolean      changesIncomplete;
+  private           boolean      lastChangesIncomplete;
+  private @Nullable List<String> cursorKeys;
+  private           boolean      hadHeaderView;
+  private           boolean      hadFooterView;
+
   private final @Nullable ItemClickListener clickListener;
   private final @NonNull  MasterSecret      masterSecret;
   private final @NonNull  Locale            locale;
@@ -99,6 +114,8 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
   private final @NonNull  Calendar          calendar;
   private final @NonNull  MessageDigest     digest;
 
+  private final FrameTimeRecorder frameTimeRecorder = FrameTimeRecorder.forList("Conversation");
+
   protected static class ViewHolder extends RecyclerView.ViewHolder {
     public <V extends View & BindableConversationItem> ViewHolder(final @NonNull V itemView) {
       super(itemView);
@@ -178,18 +195,140 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
     }
   }
 
+  /**
+   * Listens on the {@link DatabaseChangeBus} for the messages of a thread that change, so that
+   * the next cursor can be patched in place.
+   */
+  public void observeThread(long threadId) {
+    this.threadId = threadId;
+    DatabaseChangeBus.getInstance(getContext()).addListener(this);
+  }
+
+  @Override
+  public void onDatabaseChanged(@NonNull DatabaseChangeBus.ChangeSet changes) {
+    DatabaseChangeBus.ThreadChange change = changes.getThreadChange(threadId);
+    if (change == null) return;
+
+    synchronized (changedRecords) {
+      changesIncomplete |= !change.isComplete();
+
+      for (DatabaseChangeBus.MessageId messageId : change.getUpdated()) {
+        changedRecords.add(getRecordKey(messageId));
+      }
+    }
+  }
+
+  /**
+   * When the new cursor holds the same messages as the old one, with newer messages added at
+   * the front or older ones added or dropped at the end, only the rows that changed are
+   * rebound. Anything else, like a deletion, a change the bus couldn't describe, or a
+   * staged outgoing message, reloads every row as before.
+   *
+   * A change can reach the bus just before an earlier cursor is swapped in but only show up
+   * in this one, so the changes reported before the previous swap are applied again.
+   */
   @Override
   public void changeCursor(Cursor cursor) {
-    messageRecordCache.clear();
+    Set<String> changed;
+    boolean     incomplete;
+
+    synchronized (changedRecords) {
+      changed           = new HashSet<>(changedRecords);
+      incomplete        = changesIncomplete;
+      changesIncomplete = false;
+      changedRecords.clear();
+    }
+
+    Set<String> recentlyChanged    = new HashSet<>(changed);
+    boolean     recentlyIncomplete = incomplete || lastChangesIncomplete;
+
+    recentlyChanged.addAll(lastChangedRecords);
+    lastChangedRecords    = changed;
+    lastChangesIncomplete = incomplete;
+
+    boolean      hadFastRecords = getFastAccessSize() > 0;
+    List<String> oldKeys        = cursorKeys;
+    List<String> newKeys        = getRecordKeys(cursor);
+    boolean      sameDecoration = hadHeaderView == hasHeaderView() && hadFooterView == hasFooterView();
+
+    cursorKeys    = newKeys;
+    hadHeaderView = hasHeaderView();
+    hadFooterView = hasFooterView();
+
     super.cleanFastRecords();
-    super.changeCursor(cursor);
+
+    CursorPatch patch = null;
+
+    if (!recentlyIncomplete && !hadFastRecords && getFastAccessSize() == 0 && sameDecoration && oldKeys != null && newKeys != null) {
+      patch = CursorPatch.between(oldKeys, newKeys);
+    }
+
+    if (patch == null || cursor == getCursor()) {
+      messageRecordCache.clear();
+      super.changeCursor(cursor);
+      return;
+    }
+
+    for (String key : recentlyChanged) {
+      messageRecordCache.remove(key);
+    }
+
+    Cursor oldCursor = replaceCursor(cursor);
+    if (oldCursor != null) oldCursor.close();
+
+    int offset = hasHeaderView() ? 1 : 0;
+
+    if (patch.insertedAtStart > 0) {
+      notifyItemRangeInserted(offset, patch.insertedAtStart);
+    }
+
+    for (int i = 0; i < patch.kept; i++) {
+      if (recentlyChanged.contains(newKeys.get(patch.insertedAtStart + i))) {
+        notifyItemChanged(offset + patch.insertedAtStart + i);
+      }
+    }
+
+    if (patch.removedAtEnd > 0) {
+      notifyItemRangeRemoved(offset + patch.insertedAtStart + patch.kept, patch.removedAtEnd);
+    }
+
+    if (patch.addedAtEnd > 0) {
+      notifyItemRangeInserted(offset + patch.insertedAtStart + patch.kept, patch.addedAtEnd);
+    }
+  }
+
+  private @Nullable List<String> getRecordKeys(@Nullable Cursor cursor) {
+    if (cursor == null || cursor.getCount() > MAX_PATCH_ROWS) return null;
+
+    List<String> keys = new ArrayList<>(cursor.getCount());
+
+    for (int i = 0; i < cursor.getCount(); i++) {
+      cursor.moveToPosition(i);
+      keys.add(cursor.getString(cursor.getColumnIndexOrThrow(MmsSmsDatabase.TRANSPORT)) +
+               cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.ID)));
+    }
+
+    return keys;
+  }
+
+  private static @NonNull String getRecordKey(@NonNull DatabaseChangeBus.MessageId messageId) {
+    return (messageId.isMms() ? MmsSmsDatabase.MMS_TRANSPORT : MmsSmsDatabase.SMS_TRANSPORT) + messageId.getId();
+  }
+
+  /**
+   * Caches records the loader already read, so binding them doesn't decrypt them again.
+   */
+  public void addRecords(@NonNull Map<String, MessageRecord> records) {
+    for (Map.Entry<String, MessageRecord> entry : records.entrySet()) {
+      messageRecordCache.put(entry.getKey(), new SoftReference<>(entry.getValue()));
+    }
   }
 
   @Override
   protected void onBindItemViewHolder(ViewHolder viewHolder, @NonNull MessageRecord messageRecord) {
-    long start = System.currentTimeMillis();
+    long start = System.nanoTime();
     viewHolder.getView().bind(masterSecret, messageRecord, locale, batchSelected, recipient);
-    Log.w(TAG, "Bind time: " + (System.currentTimeMillis() - start));
+    frameTimeRecorder.recordBind(System.nanoTime() - start);
   }
 
   @Override
@@ -403,6 +542,45 @@ public class ConversationAdapter <V extends View & BindableConversationItem>
     viewHolder.setText(getContext().getResources().getQuantityString(R.plurals.ConversationAdapter_n_unread_messages, (position + 1), (position + 1)));
   }
 
+  /**
+   * How the messages of one cursor line up with the next: some inserted at the start, a run
+   * kept in the same order, and then some removed from or added to the end.
+   */
+  @VisibleForTesting
+  static class CursorPatch {
+
+    final int insertedAtStart;
+    final int kept;
+    final int removedAtEnd;
+    final int addedAtEnd;
+
+    private CursorPatch(int insertedAtStart, int kept, int removedAtEnd, int addedAtEnd) {
+      this.insertedAtStart = insertedAtStart;
+      this.kept            = kept;
+      this.removedAtEnd    = removedAtEnd;
+      this.addedAtEnd      = addedAtEnd;
+    }
+
+    /**
+     * @return null if the new keys aren't the old ones in the same order with only those
+     *         differences.
+     */
+    static @Nullable CursorPatch between(@NonNull List<String> oldKeys, @NonNull List<String> newKeys) {
+      if (oldKeys.isEmpty() || newKeys.isEmpty()) return null;
+
+      int insertedAtStart = newKeys.indexOf(oldKeys.get(0));
+      if (insertedAtStart == -1) return null;
+
+      int kept = Math.min(oldKeys.size(), newKeys.size() - insertedAtStart);
+
+      for (int i = 0; i < kept; i++) {
+        if (!oldKeys.get(i).equals(newKeys.get(insertedAtStart + i))) return null;
+      }
+
+      return new CursorPatch(insertedAtStart, kept, oldKeys.size() - kept, newKeys.size() - insertedAtStart - kept);
+    }
+  }
+
   static class LastSeenHeader extends StickyHeaderDecoration {
 
     private final ConversationAdapter adapter;
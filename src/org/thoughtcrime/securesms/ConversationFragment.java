@@ -69,6 +69,7 @@ import org.thoughtcrime.securesms.profiles.UnknownSenderView;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.sms.MessageSender;
 import org.thoughtcrime.securesms.sms.OutgoingTextMessage;
+import org.thoughtcrime.securesms.util.FrameTimeRecorder;
 import org.thoughtcrime.securesms.util.MediaUtil;
 import org.thoughtcrime.securesms.util.SaveAttachmentTask;
 import org.thoughtcrime.securesms.util.SaveAttachmentTask.Attachment;
@@ -160,6 +161,7 @@ public class ConversationFragment extends Fragment
     list.setHasFixedSize(false);
     list.setLayoutManager(layoutManager);
     list.setItemAnimator(null);
+    FrameTimeRecorder.forList("Conversation").attach(list);
 
     loadMoreView = inflater.inflate(R.layout.load_more_header, container, false);
     loadMoreView.setOnClickListener(v -> {
@@ -225,6 +227,7 @@ public class ConversationFragment extends Fragment
   private void initializeListAdapter() {
     if (this.recipient != null && this.threadId != -1) {
       ConversationAdapter adapter = new ConversationAdapter(getActivity(), masterSecret, locale, selectionClickListener, null, this.recipient);
+      adapter.observeThread(threadId);
       list.setAdapter(adapter);
       list.addItemDecoration(new StickyHeaderDecoration(adapter, false, false));
 
@@ -520,7 +523,7 @@ public class ConversationFragment extends Fragment
 
   @Override
   public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-    return new ConversationLoader(getActivity(), threadId, args.getLong("limit", PARTIAL_CONVERSATION_LIMIT), lastSeen);
+    return new ConversationLoader(getActivity(), masterSecret, threadId, args.getLong("limit", PARTIAL_CONVERSATION_LIMIT), lastSeen);
   }
 
 
@@ -547,6 +550,7 @@ public class ConversationFragment extends Fragment
       }
 
       getListAdapter().changeCursor(cursor);
+      getListAdapter().addRecords(loader.getPrerenderedRecords(cursor));
 
       int lastSeenPosition = getListAdapter().findLastSeenPosition(lastSeen);
 
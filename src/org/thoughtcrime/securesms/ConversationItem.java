@@ -29,11 +29,8 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.app.AlertDialog;
-import android.text.SpannableString;
-import android.text.Spanned;
+import android.text.Spannable;
 import android.text.TextUtils;
-import android.text.style.URLSpan;
-import android.text.util.Linkify;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.TypedValue;
@@ -53,6 +50,7 @@ import org.thoughtcrime.securesms.components.DeliveryStatusView;
 import org.thoughtcrime.securesms.components.DocumentView;
 import org.thoughtcrime.securesms.components.ExpirationTimerView;
 import org.thoughtcrime.securesms.components.ThumbnailView;
+import org.thoughtcrime.securesms.components.emoji.EmojiTextView;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
 import org.thoughtcrime.securesms.database.AttachmentDatabase;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
@@ -77,7 +75,6 @@ import org.thoughtcrime.securesms.service.ExpiringMessageManager;
 import org.thoughtcrime.securesms.util.DateUtils;
 import org.thoughtcrime.securesms.util.DynamicLanguage;
 import org.thoughtcrime.securesms.util.DynamicTheme;
-import org.thoughtcrime.securesms.util.LongClickCopySpan;
 import org.thoughtcrime.securesms.util.LongClickMovementMethod;
 import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.thoughtcrime.securesms.util.Util;
@@ -111,7 +108,7 @@ public class ConversationItem extends LinearLayout
   private Recipient     recipient;
 
   protected View             bodyBubble;
-  private TextView           bodyText;
+  private EmojiTextView      bodyText;
   private TextView           dateText;
   private TextView           simInfoText;
   private TextView           indicatorText;
@@ -161,7 +158,7 @@ public class ConversationItem extends LinearLayout
 
     initializeAttributes();
 
-    this.bodyText                = (TextView)           findViewById(R.id.conversation_item_body);
+    this.bodyText                = (EmojiTextView)      findViewById(R.id.conversation_item_body);
     this.dateText                = (TextView)           findViewById(R.id.conversation_item_date);
     this.simInfoText             = (TextView)           findViewById(R.id.sim_info);
     this.indicatorText           = (TextView)           findViewById(R.id.indicator_text);
@@ -384,7 +381,23 @@ public class ConversationItem extends LinearLayout
     if (isCaptionlessMms(messageRecord)) {
       bodyText.setVisibility(View.GONE);
     } else {
-      bodyText.setText(linkifyMessageBody(messageRecord.getDisplayBody(), batchSelected.isEmpty()));
+      final boolean linkifyAllLinks = batchSelected.isEmpty();
+      Spannable     rendered        = MessageBodyRenderer.getInstance().getRendered(messageRecord, linkifyAllLinks);
+
+      if (rendered != null) {
+        bodyText.setText(rendered, MessageBodyRenderer.getCacheKey(messageRecord));
+      } else {
+        bodyText.setText(messageRecord.getDisplayBody(), MessageBodyRenderer.getCacheKey(messageRecord));
+        MessageBodyRenderer.getInstance().renderAsync(context, messageRecord, linkifyAllLinks, new MessageBodyRenderer.RenderListener() {
+          @Override
+          public void onRendered(@NonNull MessageRecord renderedRecord, @NonNull Spannable body) {
+            if (renderedRecord == ConversationItem.this.messageRecord && linkifyAllLinks == batchSelected.isEmpty()) {
+              bodyText.setText(body, MessageBodyRenderer.getCacheKey(renderedRecord));
+            }
+          }
+        });
+      }
+
       bodyText.setVisibility(View.VISIBLE);
     }
   }
@@ -444,20 +457,6 @@ public class ConversationItem extends LinearLayout
     }
   }
 
-  private SpannableString linkifyMessageBody(SpannableString messageBody, boolean shouldLinkifyAllLinks) {
-    boolean hasLinks = Linkify.addLinks(messageBody, shouldLinkifyAllLinks ? Linkify.ALL : 0);
-
-    if (hasLinks) {
-      URLSpan[] urlSpans = messageBody.getSpans(0, messageBody.length(), URLSpan.class);
-      for (URLSpan urlSpan : urlSpans) {
-        int start = messageBody.getSpanStart(urlSpan);
-        int end = messageBody.getSpanEnd(urlSpan);
-        messageBody.setSpan(new LongClickCopySpan(urlSpan.getURL()), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-      }
-    }
-    return messageBody;
-  }
-
   private void setStatusIcons(MessageRecord messageRecord) {
     indicatorText.setVisibility(View.GONE);
 
@@ -356,7 +356,7 @@ public class ConversationListActivity extends PassphraseRequiredActionBarActivit
     protected Void doInBackground(Context... params) {
 
       try {
-        DirectoryHelper.refreshDirectory(params[0], masterSecret);
+        DirectoryHelper.refreshDirectory(params[0], masterSecret, true);
       } catch (IOException e) {
         Log.w(TAG, e);
       }
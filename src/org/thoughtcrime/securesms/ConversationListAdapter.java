@@ -29,15 +29,14 @@ import android.view.ViewGroup;
 
 import org.thoughtcrime.securesms.crypto.MasterCipher;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
-import org.thoughtcrime.securesms.database.Address;
 import org.thoughtcrime.securesms.database.CursorRecyclerViewAdapter;
+import org.thoughtcrime.securesms.database.DatabaseChangeBus;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.database.ThreadDatabase;
+import org.thoughtcrime.securesms.database.ThreadRecordCache;
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
-import org.thoughtcrime.securesms.util.Conversions;
+import org.thoughtcrime.securesms.util.FrameTimeRecorder;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Locale;
@@ -53,13 +52,15 @@ public class ConversationListAdapter extends CursorRecyclerViewAdapter<Conversat
   private static final int MESSAGE_TYPE_SWITCH_ARCHIVE = 1;
   private static final int MESSAGE_TYPE_THREAD         = 2;
 
-  private final          ThreadDatabase    threadDatabase;
-  private final          MasterSecret      masterSecret;
-  private final          MasterCipher      masterCipher;
-  private final          Locale            locale;
-  private final          LayoutInflater    inflater;
-  private final          ItemClickListener clickListener;
-  private final @NonNull MessageDigest     digest;
+  private final ThreadDatabase    threadDatabase;
+  private final MasterSecret      masterSecret;
+  private final MasterCipher      masterCipher;
+  private final Locale            locale;
+  private final LayoutInflater    inflater;
+  private final ItemClickListener clickListener;
+  private final ThreadRecordCache threadRecordCache;
+
+  private final FrameTimeRecorder frameTimeRecorder = FrameTimeRecorder.forList("ConversationList");
 
   private final Set<Long> batchSet  = Collections.synchronizedSet(new HashSet<Long>());
   private       boolean   batchMode = false;
@@ -77,9 +78,7 @@ public class ConversationListAdapter extends CursorRecyclerViewAdapter<Conversat
 
   @Override
   public long getItemId(@NonNull Cursor cursor) {
-    ThreadRecord  record  = getThreadRecord(cursor);
-
-    return Conversions.byteArrayToLong(digest.digest(record.getRecipient().getAddress().serialize().getBytes()));
+    return getThreadId(cursor);
   }
 
   public ConversationListAdapter(@NonNull Context context,
@@ -89,18 +88,16 @@ public class ConversationListAdapter extends CursorRecyclerViewAdapter<Conversat
                                  @Nullable ItemClickListener clickListener)
   {
     super(context, cursor);
-    try {
-      this.masterSecret   = masterSecret;
-      this.masterCipher   = new MasterCipher(masterSecret);
-      this.threadDatabase = DatabaseFactory.getThreadDatabase(context);
-      this.locale         = locale;
-      this.inflater       = LayoutInflater.from(context);
-      this.clickListener  = clickListener;
-      this.digest         = MessageDigest.getInstance("SHA1");
-      setHasStableIds(true);
-    } catch (NoSuchAlgorithmException nsae) {
-      throw new AssertionError("SHA-1 missing");
-    }
+    this.masterSecret      = masterSecret;
+    this.masterCipher      = new MasterCipher(masterSecret);
+    this.threadDatabase    = DatabaseFactory.getThreadDatabase(context);
+    this.locale            = locale;
+    this.inflater          = LayoutInflater.from(context);
+    this.clickListener     = clickListener;
+    this.threadRecordCache = new ThreadRecordCache();
+
+    DatabaseChangeBus.getInstance(context).addListener(threadRecordCache);
+    setHasStableIds(true);
   }
 
   @Override
@@ -147,14 +144,16 @@ public class ConversationListAdapter extends CursorRecyclerViewAdapter<Conversat
 
   @Override
   public void onBindItemViewHolder(ViewHolder viewHolder, @NonNull Cursor cursor) {
+    long start = System.nanoTime();
     viewHolder.getItem().bind(masterSecret, getThreadRecord(cursor), locale, batchSet, batchMode);
+    frameTimeRecorder.recordBind(System.nanoTime() - start);
   }
 
   @Override
   public int getItemViewType(@NonNull Cursor cursor) {
-    ThreadRecord threadRecord = getThreadRecord(cursor);
+    int distributionType = cursor.getInt(cursor.getColumnIndexOrThrow(ThreadDatabase.TYPE));
 
-    if (threadRecord.getDistributionType() == ThreadDatabase.DistributionTypes.ARCHIVE) {
+    if (distributionType == ThreadDatabase.DistributionTypes.ARCHIVE) {
       return MESSAGE_TYPE_SWITCH_ARCHIVE;
     } else {
       return MESSAGE_TYPE_THREAD;
@@ -162,7 +161,11 @@ public class ConversationListAdapter extends CursorRecyclerViewAdapter<Conversat
   }
 
   private ThreadRecord getThreadRecord(@NonNull Cursor cursor) {
-    return threadDatabase.readerFor(cursor, masterCipher).getCurrent();
+    return threadDatabase.readerFor(cursor, masterCipher, threadRecordCache).getCurrent();
+  }
+
+  private long getThreadId(@NonNull Cursor cursor) {
+    return cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.ID));
   }
 
   public void toggleThreadInBatchSet(long threadId) {
@@ -189,7 +192,7 @@ public class ConversationListAdapter extends CursorRecyclerViewAdapter<Conversat
 
   public void selectAllThreads() {
     for (int i = 0; i < getItemCount(); i++) {
-      long threadId = getThreadRecord(getCursorAtPositionOrThrow(i)).getThreadId();
+      long threadId = getThreadId(getCursorAtPositionOrThrow(i));
       if (threadId != -1) batchSet.add(threadId);
     }
     this.notifyDataSetChanged();
@@ -70,6 +70,7 @@ import org.thoughtcrime.securesms.database.loaders.ConversationListLoader;
 import org.thoughtcrime.securesms.notifications.MarkReadReceiver;
 import org.thoughtcrime.securesms.notifications.MessageNotifier;
 import org.thoughtcrime.securesms.recipients.Recipient;
+import org.thoughtcrime.securesms.util.FrameTimeRecorder;
 import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.ViewUtil;
 import org.thoughtcrime.securesms.util.task.SnackbarAsyncTask;
@@ -128,6 +129,7 @@ public class ConversationListFragment extends Fragment
     list.setLayoutManager(layoutManager);
     list.setItemAnimator(new DeleteItemAnimator());
     list.addItemDecoration(new DividerItemDecoration(getActivity(), layoutManager.getOrientation()));
+    FrameTimeRecorder.forList("ConversationList").attach(list);
 
     new ItemTouchHelper(new ArchiveListenerCallback()).attachToRecyclerView(list);
 
@@ -20,7 +20,6 @@ package org.thoughtcrime.securesms;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.util.Log;
@@ -30,8 +29,6 @@ import android.widget.ProgressBar;
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
 import org.thoughtcrime.securesms.crypto.IdentityKeyUtil;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
-import org.thoughtcrime.securesms.crypto.storage.TextSecurePreKeyStore;
-import org.thoughtcrime.securesms.crypto.storage.TextSecureSessionStore;
 import org.thoughtcrime.securesms.database.AttachmentDatabase;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.database.MmsDatabase;
@@ -208,8 +205,7 @@ public class DatabaseUpgradeActivity extends BaseActivity {
       }
 
       if (params[0] < MIGRATE_SESSION_PLAINTEXT) {
-        new TextSecureSessionStore(context, masterSecret).migrateSessions();
-        new TextSecurePreKeyStore(context, masterSecret).migrateRecords();
+        DatabaseFactory.getInstance(context).migrateProtocolStore(masterSecret);
 
         IdentityKeyUtil.migrateIdentityKeys(context, masterSecret);
         scheduleMessagesInPushDatabase(context);;
@@ -268,20 +264,12 @@ public class DatabaseUpgradeActivity extends BaseActivity {
 
     private void scheduleMessagesInPushDatabase(Context context) {
       PushDatabase pushDatabase = DatabaseFactory.getPushDatabase(context);
-      Cursor       pushReader   = null;
+      List<Long>   pushIds      = pushDatabase.getPendingIds();
 
-      try {
-        pushReader = pushDatabase.getPending();
-
-        while (pushReader != null && pushReader.moveToNext()) {
-          ApplicationContext.getInstance(getApplicationContext())
-                            .getJobManager()
-                            .add(new PushDecryptJob(getApplicationContext(),
-                                                    pushReader.getLong(pushReader.getColumnIndexOrThrow(PushDatabase.ID))));
-        }
-      } finally {
-        if (pushReader != null)
-          pushReader.close();
+      if (!pushIds.isEmpty()) {
+        ApplicationContext.getInstance(getApplicationContext())
+                          .getJobManager()
+                          .add(new PushDecryptJob(getApplicationContext(), pushIds));
       }
     }
 
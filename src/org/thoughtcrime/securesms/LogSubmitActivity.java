@@ -9,7 +9,13 @@ import android.util.Log;
 import android.view.MenuItem;
 import android.widget.Toast;
 
+import org.thoughtcrime.securesms.components.subsampling.TileCache;
+import org.thoughtcrime.securesms.database.DatabaseChangeBus;
+import org.thoughtcrime.securesms.database.QueryProfiler;
+import org.thoughtcrime.securesms.jobs.JobTelemetry;
+import org.thoughtcrime.securesms.jobs.RetrieveProfileJob;
 import org.thoughtcrime.securesms.util.DynamicTheme;
+import org.thoughtcrime.securesms.util.FrameTimeRecorder;
 import org.whispersystems.libpastelog.SubmitLogFragment;
 
 /**
@@ -26,6 +32,12 @@ public class LogSubmitActivity extends BaseActionBarActivity implements SubmitLo
     super.onCreate(icicle);
     setContentView(R.layout.log_submit_activity);
     getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+    QueryProfiler.getInstance().logReport();
+    DatabaseChangeBus.getInstance(this).logReport();
+    JobTelemetry.getInstance().logReport();
+    RetrieveProfileJob.logReport();
+    FrameTimeRecorder.logReport();
+    TileCache.getInstance().logReport();
     SubmitLogFragment fragment = SubmitLogFragment.newInstance();
     FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
     transaction.replace(R.id.fragment_container, fragment);
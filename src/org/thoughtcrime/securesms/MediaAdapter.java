@@ -20,26 +20,55 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.ViewGroup;
+import android.widget.TextView;
 
-import org.thoughtcrime.securesms.MediaAdapter.ViewHolder;
 import org.thoughtcrime.securesms.components.ThumbnailView;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
-import org.thoughtcrime.securesms.database.CursorRecyclerViewAdapter;
+import org.thoughtcrime.securesms.database.MediaDatabase.MediaPosition;
 import org.thoughtcrime.securesms.database.MediaDatabase.MediaRecord;
+import org.thoughtcrime.securesms.database.MediaDatabase.MediaSection;
 import org.thoughtcrime.securesms.mms.Slide;
 import org.thoughtcrime.securesms.util.MediaUtil;
 
-public class MediaAdapter extends CursorRecyclerViewAdapter<ViewHolder> {
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Grid of media thumbnails, interleaved with month headers. The media is held as a list
+ * of fixed-size windows, newest first, each its own cursor, while the sections describe
+ * the whole gallery. Headers are only shown for sections whose first item has been loaded.
+ */
+public class MediaAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
   private static final String TAG = MediaAdapter.class.getSimpleName();
 
+  private static final int TYPE_HEADER = 0;
+  private static final int TYPE_ITEM   = 1;
+
+  private final Context      context;
   private final MasterSecret masterSecret;
   private final long         threadId;
 
+  private final List<Cursor>       windows  = new ArrayList<>();
+  private       List<MediaSection> sections = Collections.emptyList();
+
+  private @Nullable Cursor   firstWindow;
+  private           int      windowSize;
+  private           int      mediaCount;
+  private           int[]    headerPositions = new int[0];
+  private           String[] headerTitles    = new String[0];
+
   public static class ViewHolder extends RecyclerView.ViewHolder {
     public ThumbnailView imageView;
 
@@ -49,24 +78,154 @@ public class MediaAdapter extends CursorRecyclerViewAdapter<ViewHolder> {
     }
   }
 
-  public MediaAdapter(Context context, MasterSecret masterSecret, Cursor c, long threadId) {
-    super(context, c);
+  private static class HeaderViewHolder extends RecyclerView.ViewHolder {
+    private final TextView text;
+
+    private HeaderViewHolder(View v) {
+      super(v);
+      text = (TextView) v.findViewById(R.id.text);
+    }
+  }
+
+  public MediaAdapter(Context context, MasterSecret masterSecret, long threadId) {
+    this.context      = context;
     this.masterSecret = masterSecret;
     this.threadId     = threadId;
   }
 
+  /**
+   * Replaces everything shown with a first window of media. That cursor remains owned by the
+   * loader that produced it, and every following window must be the same size.
+   */
+  public void setData(@Nullable Cursor firstWindow, int windowSize, @NonNull List<MediaSection> sections) {
+    closeAppendedWindows();
+    windows.clear();
+
+    if (firstWindow != null) windows.add(firstWindow);
+
+    this.firstWindow = firstWindow;
+    this.windowSize  = windowSize;
+    this.sections    = sections;
+    this.mediaCount  = firstWindow != null ? firstWindow.getCount() : 0;
+
+    updateHeaders();
+    notifyDataSetChanged();
+  }
+
+  /**
+   * Adds the window of media following those already shown. The adapter takes ownership of
+   * the cursor, and only the rows and headers it adds are inserted, so nothing already shown
+   * is rebound.
+   */
+  public void appendData(@NonNull Cursor window) {
+    int itemCount = getItemCount();
+
+    windows.add(window);
+    mediaCount += window.getCount();
+
+    updateHeaders();
+    notifyItemRangeInserted(itemCount, getItemCount() - itemCount);
+  }
+
+  /**
+   * @return the position of the last media shown, to read the next window from.
+   */
+  public @Nullable MediaPosition getLastPosition() {
+    if (windows.isEmpty()) return null;
+
+    Cursor last = windows.get(windows.size() - 1);
+
+    if (!last.moveToLast()) return null;
+    return MediaPosition.from(last);
+  }
+
+  /**
+   * Closes the windows this adapter owns, leaving the first to its loader.
+   */
+  public void close() {
+    closeAppendedWindows();
+    windows.clear();
+    firstWindow = null;
+    mediaCount  = 0;
+  }
+
+  public int getMediaCount() {
+    return mediaCount;
+  }
+
+  private void closeAppendedWindows() {
+    for (Cursor window : windows) {
+      if (window != firstWindow) window.close();
+    }
+  }
+
+  private void updateHeaders() {
+    int[]    positions = new int[sections.size()];
+    String[] titles    = new String[sections.size()];
+    int      headers   = 0;
+    int      items     = 0;
+
+    for (MediaSection section : sections) {
+      if (items >= mediaCount) break;
+
+      positions[headers] = items + headers;
+      titles[headers]    = formatBucket(section.getBucket());
+
+      items += section.getCount();
+      headers++;
+    }
+
+    this.headerPositions = Arrays.copyOf(positions, headers);
+    this.headerTitles    = Arrays.copyOf(titles, headers);
+  }
+
+  public boolean isHeader(int position) {
+    return Arrays.binarySearch(headerPositions, position) >= 0;
+  }
+
   @Override
-  public ViewHolder onCreateItemViewHolder(final ViewGroup viewGroup, final int i) {
-    final View view = LayoutInflater.from(getContext()).inflate(R.layout.media_overview_item, viewGroup, false);
-    return new ViewHolder(view);
+  public int getItemCount() {
+    return mediaCount + headerPositions.length;
   }
 
   @Override
-  public void onBindItemViewHolder(final ViewHolder viewHolder, final @NonNull Cursor cursor) {
+  public int getItemViewType(int position) {
+    return isHeader(position) ? TYPE_HEADER : TYPE_ITEM;
+  }
+
+  @Override
+  public RecyclerView.ViewHolder onCreateViewHolder(final ViewGroup viewGroup, final int viewType) {
+    if (viewType == TYPE_HEADER) {
+      return new HeaderViewHolder(LayoutInflater.from(context).inflate(R.layout.media_overview_section_header, viewGroup, false));
+    } else {
+      return new ViewHolder(LayoutInflater.from(context).inflate(R.layout.media_overview_item, viewGroup, false));
+    }
+  }
+
+  @Override
+  public void onBindViewHolder(final RecyclerView.ViewHolder holder, final int position) {
+    int header = Arrays.binarySearch(headerPositions, position);
+
+    if (header >= 0) {
+      ((HeaderViewHolder) holder).text.setText(headerTitles[header]);
+      return;
+    }
+
+    int mediaPosition = position - (-header - 1);
+    int window        = mediaPosition / windowSize;
+
+    if (window >= windows.size() || !windows.get(window).moveToPosition(mediaPosition % windowSize)) {
+      throw new IllegalStateException("couldn't move cursor to position " + mediaPosition);
+    }
+
+    onBindItemViewHolder((ViewHolder) holder, windows.get(window));
+  }
+
+  private void onBindItemViewHolder(final ViewHolder viewHolder, final @NonNull Cursor cursor) {
     final ThumbnailView imageView   = viewHolder.imageView;
-    final MediaRecord   mediaRecord = MediaRecord.from(getContext(), masterSecret, cursor);
+    final MediaRecord   mediaRecord = MediaRecord.from(context, masterSecret, cursor);
 
-    Slide slide = MediaUtil.getSlideForAttachment(getContext(), mediaRecord.getAttachment());
+    Slide slide = MediaUtil.getSlideForAttachment(context, mediaRecord.getAttachment());
 
     if (slide != null) {
       imageView.setImageResource(masterSecret, slide, false, false);
@@ -75,6 +234,18 @@ public class MediaAdapter extends CursorRecyclerViewAdapter<ViewHolder> {
     imageView.setOnClickListener(new OnMediaClickListener(mediaRecord));
   }
 
+  private @NonNull String formatBucket(@Nullable String bucket) {
+    if (bucket == null) return "";
+
+    try {
+      return new SimpleDateFormat("MMMM yyyy", Locale.getDefault())
+          .format(new SimpleDateFormat("yyyy-MM", Locale.US).parse(bucket));
+    } catch (ParseException e) {
+      Log.w(TAG, e);
+      return bucket;
+    }
+  }
+
   private class OnMediaClickListener implements OnClickListener {
     private final MediaRecord mediaRecord;
 
@@ -85,7 +256,7 @@ public class MediaAdapter extends CursorRecyclerViewAdapter<ViewHolder> {
     @Override
     public void onClick(View v) {
       if (mediaRecord.getAttachment().getDataUri() != null) {
-        Intent intent = new Intent(getContext(), MediaPreviewActivity.class);
+        Intent intent = new Intent(context, MediaPreviewActivity.class);
         intent.putExtra(MediaPreviewActivity.DATE_EXTRA, mediaRecord.getDate());
         intent.putExtra(MediaPreviewActivity.SIZE_EXTRA, mediaRecord.getAttachment().getSize());
         intent.putExtra(MediaPreviewActivity.THREAD_ID_EXTRA, threadId);
@@ -95,7 +266,7 @@ public class MediaAdapter extends CursorRecyclerViewAdapter<ViewHolder> {
         }
 
         intent.setDataAndType(mediaRecord.getAttachment().getDataUri(), mediaRecord.getContentType());
-        getContext().startActivity(intent);
+        context.startActivity(intent);
       }
     }
   }
@@ -25,6 +25,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import org.thoughtcrime.securesms.crypto.MasterSecret;
+import org.thoughtcrime.securesms.database.AttachmentDatabase;
 import org.thoughtcrime.securesms.mms.PartAuthority;
 import org.thoughtcrime.securesms.media.ListAdapter;
 import org.thoughtcrime.securesms.media.Media;
@@ -37,6 +38,8 @@ import java.util.ArrayList;
 public class MediaFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
 
   private static final String TAG = MediaFragment.class.getSimpleName();
+
+  private static final int PREVIEW_COUNT = 4;
   public final static String REFRESHABLE  = "refreshable";
 
   protected View              view;
@@ -139,21 +142,24 @@ public class MediaFragment extends Fragment implements LoaderManager.LoaderCallb
   class LoadData extends  AsyncTask<Void, Void, MediaData> {
     @Override
     protected MediaData doInBackground(Void... voids) {
-      MediaData data = new MediaData(getContext(), masterSecret);
+      MediaData data = new MediaData(getContext(), masterSecret, PREVIEW_COUNT);
       return data;
     }
 
     @Override
     protected void onPostExecute(MediaData data) {
       loadGridLayoutThumbnail(data.getListThumbnail());
-      loadLinearLayout(data.getListAudio(4), R.id.layout_audio, R.id.recycler_view_audio);
-      loadLinearLayout(data.getListFile(4), R.id.layout_file, R.id.recycler_view_file);
-
-      noMedia.setVisibility(data.getListData().size() > 0 ? View.GONE : View.VISIBLE);
-      showMoreAudio.setVisibility(data.getListAudio().size() > 4 ? View.VISIBLE : View.GONE);
-      showMoreFile.setVisibility(data.getListFile().size() > 4 ? View.VISIBLE : View.GONE);
-      countAudio.setText(String.valueOf(data.getListAudio().size()));
-      countFile.setText(String.valueOf(data.getListFile().size()));
+      loadLinearLayout(data.getListAudio(PREVIEW_COUNT), R.id.layout_audio, R.id.recycler_view_audio);
+      loadLinearLayout(data.getListFile(PREVIEW_COUNT), R.id.layout_file, R.id.recycler_view_file);
+
+      int audioCount = data.getCount(AttachmentDatabase.MEDIA_KIND_AUDIO);
+      int fileCount  = data.getCount(AttachmentDatabase.MEDIA_KIND_OTHER);
+
+      noMedia.setVisibility(data.isEmpty() ? View.VISIBLE : View.GONE);
+      showMoreAudio.setVisibility(audioCount > PREVIEW_COUNT ? View.VISIBLE : View.GONE);
+      showMoreFile.setVisibility(fileCount > PREVIEW_COUNT ? View.VISIBLE : View.GONE);
+      countAudio.setText(String.valueOf(audioCount));
+      countFile.setText(String.valueOf(fileCount));
       swipeRefresh.setRefreshing(false);
     }
 
@@ -21,6 +21,7 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.res.Configuration;
 import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
@@ -39,9 +40,12 @@ import android.widget.TextView;
 
 import org.thoughtcrime.securesms.crypto.MasterSecret;
 import org.thoughtcrime.securesms.database.Address;
-import org.thoughtcrime.securesms.database.CursorRecyclerViewAdapter;
+import org.thoughtcrime.securesms.database.AttachmentDatabase;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.database.MediaDatabase;
+import org.thoughtcrime.securesms.database.MediaDatabase.MediaPosition;
 import org.thoughtcrime.securesms.database.MediaDatabase.MediaRecord;
+import org.thoughtcrime.securesms.database.MediaDatabase.MediaSection;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.recipients.RecipientModifiedListener;
 import org.thoughtcrime.securesms.util.AbstractCursorLoader;
@@ -50,6 +54,7 @@ import org.thoughtcrime.securesms.util.SaveAttachmentTask;
 import org.thoughtcrime.securesms.util.task.ProgressDialogAsyncTask;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -62,12 +67,18 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity i
   public static final String THREAD_ID_EXTRA = "thread_id";
   public static final String TYPE_ID_EXTRA = "type_id";
 
+  private static final int    PAGE_SIZE     = 120;
+
   private final DynamicLanguage dynamicLanguage = new DynamicLanguage();
 
   private MasterSecret masterSecret;
 
   private RecyclerView      gridView;
   private GridLayoutManager gridManager;
+  private MediaAdapter      adapter;
+  private boolean           hasMoreMedia;
+  private boolean           loadingMedia;
+  private int               loadCount;
   private TextView          noImages;
   private Recipient         recipient;
   private long              threadId;
@@ -125,6 +136,12 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity i
     super.onPause();
   }
 
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    if (adapter != null) adapter.close();
+  }
+
   private void initializeResources() {
     threadId = getIntent().getLongExtra(THREAD_ID_EXTRA, -1);
     typeId   = getIntent().getIntExtra(TYPE_ID_EXTRA, -1);
@@ -135,6 +152,17 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity i
     gridView.setLayoutManager(gridManager);
     gridView.setHasFixedSize(true);
 
+    adapter = new MediaAdapter(this, masterSecret, threadId);
+    gridView.setAdapter(adapter);
+    gridView.addOnScrollListener(new PagingScrollListener());
+
+    gridManager.setSpanSizeLookup(new GridLayoutManager.SpanSizeLookup() {
+      @Override
+      public int getSpanSize(int position) {
+        return adapter.isHeader(position) ? gridManager.getSpanCount() : 1;
+      }
+    });
+
     Address address = getIntent().getParcelableExtra(ADDRESS_EXTRA);
 
     if (address != null) {
@@ -168,12 +196,7 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity i
           protected List<SaveAttachmentTask.Attachment> doInBackground(Void... params) {
             Cursor cursor;
             if (typeId > -1) {
-              String type = null;
-              if (typeId == 0)
-                type = "image";
-              else if (typeId == 1)
-                type = "video";
-              cursor = DatabaseFactory.getMediaDatabase(c).getMediaByMimeType(type);
+              cursor = DatabaseFactory.getMediaDatabase(c).getMediaByKind(getMediaKind(typeId), 0);
             } else {
               cursor = DatabaseFactory.getMediaDatabase(c).getMediaForThread(threadId);
             }
@@ -188,6 +211,7 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity i
                                                                 null));
             }
 
+            cursor.close();
             return attachments;
           }
 
@@ -200,7 +224,7 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity i
           }
         }.execute();
       }
-    }, gridView.getAdapter().getItemCount());
+    }, adapter.getMediaCount());
   }
 
   @Override
@@ -208,7 +232,7 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity i
     super.onPrepareOptionsMenu(menu);
 
     menu.clear();
-    if (gridView.getAdapter() != null && gridView.getAdapter().getItemCount() > 0) {
+    if (adapter != null && adapter.getMediaCount() > 0) {
       MenuInflater inflater = this.getMenuInflater();
       inflater.inflate(R.menu.media_overview, menu);
     }
@@ -236,38 +260,106 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity i
   @Override
   public void onLoadFinished(Loader<Cursor> cursorLoader, Cursor cursor) {
     Log.w(TAG, "onLoadFinished()");
-    gridView.setAdapter(new MediaAdapter(this, masterSecret, cursor, threadId));
-    noImages.setVisibility(gridView.getAdapter().getItemCount() > 0 ? View.GONE : View.VISIBLE);
+    loadCount++;
+    loadingMedia = false;
+    hasMoreMedia = cursor != null && cursor.getCount() >= PAGE_SIZE;
+
+    adapter.setData(cursor, PAGE_SIZE, ((ThreadMediaLoader)cursorLoader).getSections());
+    noImages.setVisibility(adapter.getMediaCount() > 0 ? View.GONE : View.VISIBLE);
     invalidateOptionsMenu();
   }
 
   @Override
   public void onLoaderReset(Loader<Cursor> cursorLoader) {
-    ((CursorRecyclerViewAdapter)gridView.getAdapter()).changeCursor(null);
+    loadCount++;
+    adapter.setData(null, PAGE_SIZE, Collections.<MediaSection>emptyList());
   }
 
+  private static int getMediaKind(int typeId) {
+    return typeId == 1 ? AttachmentDatabase.MEDIA_KIND_VIDEO : AttachmentDatabase.MEDIA_KIND_IMAGE;
+  }
+
+  private class PagingScrollListener extends RecyclerView.OnScrollListener {
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+      if (hasMoreMedia && !loadingMedia &&
+          gridManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PAGE_SIZE / 2)
+      {
+        loadingMedia = true;
+        new NextWindowTask(loadCount, adapter.getLastPosition()).execute();
+      }
+    }
+  }
+
+  /**
+   * Reads the window of media after the last one shown. Its result is dropped if the loader
+   * has delivered a new first window in the meantime.
+   */
+  private class NextWindowTask extends AsyncTask<Void, Void, Cursor> {
+    private final int           loadCount;
+    private final MediaPosition after;
+
+    private NextWindowTask(int loadCount, MediaPosition after) {
+      this.loadCount = loadCount;
+      this.after     = after;
+    }
+
+    @Override
+    protected Cursor doInBackground(Void... params) {
+      MediaDatabase database = DatabaseFactory.getMediaDatabase(MediaOverviewActivity.this);
+      Cursor        cursor;
+
+      if (typeId > -1) cursor = database.getMediaByKind(getMediaKind(typeId), PAGE_SIZE, after);
+      else             cursor = database.getMediaForThread(threadId, PAGE_SIZE, after);
+
+      cursor.getCount();
+      return cursor;
+    }
+
+    @Override
+    protected void onPostExecute(Cursor cursor) {
+      if (loadCount != MediaOverviewActivity.this.loadCount || isDestroyed()) {
+        cursor.close();
+        return;
+      }
+
+      loadingMedia = false;
+      hasMoreMedia = cursor.getCount() >= PAGE_SIZE;
+
+      if (cursor.getCount() > 0) adapter.appendData(cursor);
+      else                       cursor.close();
+    }
+  }
+
+  /**
+   * Loads the newest window of media, and the sections of the whole gallery.
+   */
   public static class ThreadMediaLoader extends AbstractCursorLoader {
     private final long threadId;
-    private final int typeId;
+    private final int  typeId;
+
+    private List<MediaSection> sections = Collections.emptyList();
 
     public ThreadMediaLoader(Context context, long threadId, int typeId) {
       super(context);
       this.threadId = threadId;
-      this.typeId = typeId;
+      this.typeId   = typeId;
+    }
+
+    public List<MediaSection> getSections() {
+      return sections;
     }
 
     @Override
     public Cursor getCursor() {
-      if (typeId > -1) {
-        String type = null;
-        if (typeId == 0)
-          type = "image";
-        else if (typeId == 1)
-          type = "video";
+      MediaDatabase database = DatabaseFactory.getMediaDatabase(getContext());
 
-        return DatabaseFactory.getMediaDatabase(getContext()).getMediaByMimeType(type);
+      if (typeId > -1) {
+        sections = database.getMediaSectionsByKind(getMediaKind(typeId));
+        return database.getMediaByKind(getMediaKind(typeId), PAGE_SIZE);
       } else {
-        return DatabaseFactory.getMediaDatabase(getContext()).getMediaForThread(threadId);
+        sections = database.getMediaSectionsForThread(threadId);
+        return database.getMediaForThread(threadId, PAGE_SIZE);
       }
     }
   }
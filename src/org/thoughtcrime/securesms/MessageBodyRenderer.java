@@ -0,0 +1,160 @@
+package org.thoughtcrime.securesms;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.URLSpan;
+import android.text.util.Linkify;
+
+import org.thoughtcrime.securesms.components.emoji.EmojiTextView;
+import org.thoughtcrime.securesms.database.model.MessageRecord;
+import org.thoughtcrime.securesms.util.LRUCache;
+import org.thoughtcrime.securesms.util.LongClickCopySpan;
+import org.thoughtcrime.securesms.util.Util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds the spannable shown for a message body, with links found by Linkify and a
+ * {@link LongClickCopySpan} over each of them.
+ *
+ * Every change to a conversation rebinds each visible row, and Linkify runs several regexes
+ * over the whole body, so rendered bodies are cached per message. The conversation loader
+ * renders the newest messages on its background thread as it loads them, along with their
+ * emoji, so that the first bind of those rows only has to look them up. Rows bound before
+ * their body is rendered show it without links, and are rendered here on a background thread.
+ */
+public class MessageBodyRenderer {
+
+  private static final int CACHE_SIZE = 500;
+
+  private static final MessageBodyRenderer instance = new MessageBodyRenderer();
+
+  public static MessageBodyRenderer getInstance() {
+    return instance;
+  }
+
+  private final LRUCache<Long, RenderedBody> cache    = new LRUCache<>(CACHE_SIZE);
+  private final Executor                     executor = Executors.newSingleThreadExecutor();
+
+  private MessageBodyRenderer() {}
+
+  public static long getCacheKey(long messageId, boolean mms) {
+    return messageId * 2 + (mms ? 1 : 0);
+  }
+
+  public static long getCacheKey(@NonNull MessageRecord messageRecord) {
+    return getCacheKey(messageRecord.getId(), messageRecord.isMms());
+  }
+
+  public boolean isRendered(long messageId, boolean mms) {
+    synchronized (cache) {
+      return cache.containsKey(getRenderKey(getCacheKey(messageId, mms), true));
+    }
+  }
+
+  public void prerender(@NonNull Context context, @NonNull MessageRecord messageRecord) {
+    Spannable body = render(messageRecord, true);
+    EmojiTextView.prefetch(context, body, getCacheKey(messageRecord));
+  }
+
+  /**
+   * @return the rendered body if it's cached, or null if it has to be rendered first.
+   */
+  public @Nullable Spannable getRendered(@NonNull MessageRecord messageRecord, boolean linkifyAllLinks) {
+    String source    = messageRecord.getDisplayBody().toString();
+    long   renderKey = getRenderKey(getCacheKey(messageRecord), linkifyAllLinks);
+
+    synchronized (cache) {
+      RenderedBody cached = cache.get(renderKey);
+      return cached != null && cached.source.equals(source) ? cached.body : null;
+    }
+  }
+
+  /**
+   * Renders the body and parses its emoji on a background thread, then hands it to the
+   * listener on the main thread.
+   */
+  public void renderAsync(@NonNull final Context context,
+                          @NonNull final MessageRecord messageRecord,
+                          final boolean linkifyAllLinks,
+                          @NonNull final RenderListener listener)
+  {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final Spannable body = render(messageRecord, linkifyAllLinks);
+        EmojiTextView.prefetch(context, body, getCacheKey(messageRecord));
+
+        Util.runOnMain(new Runnable() {
+          @Override
+          public void run() {
+            listener.onRendered(messageRecord, body);
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Callers must treat the result as immutable, since it's shared with later binds.
+   */
+  public @NonNull Spannable render(@NonNull MessageRecord messageRecord, boolean linkifyAllLinks) {
+    SpannableString body      = messageRecord.getDisplayBody();
+    String          source    = body.toString();
+    long            renderKey = getRenderKey(getCacheKey(messageRecord), linkifyAllLinks);
+
+    synchronized (cache) {
+      RenderedBody cached = cache.get(renderKey);
+
+      if (cached != null && cached.source.equals(source)) {
+        return cached.body;
+      }
+    }
+
+    Spannable rendered = linkify(body, linkifyAllLinks);
+
+    synchronized (cache) {
+      cache.put(renderKey, new RenderedBody(source, rendered));
+    }
+
+    return rendered;
+  }
+
+  private static long getRenderKey(long cacheKey, boolean linkifyAllLinks) {
+    return cacheKey * 2 + (linkifyAllLinks ? 1 : 0);
+  }
+
+  private static @NonNull Spannable linkify(@NonNull SpannableString messageBody, boolean linkifyAllLinks) {
+    boolean hasLinks = Linkify.addLinks(messageBody, linkifyAllLinks ? Linkify.ALL : 0);
+
+    if (hasLinks) {
+      URLSpan[] urlSpans = messageBody.getSpans(0, messageBody.length(), URLSpan.class);
+      for (URLSpan urlSpan : urlSpans) {
+        int start = messageBody.getSpanStart(urlSpan);
+        int end   = messageBody.getSpanEnd(urlSpan);
+        messageBody.setSpan(new LongClickCopySpan(urlSpan.getURL()), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+      }
+    }
+
+    return messageBody;
+  }
+
+  public interface RenderListener {
+    void onRendered(@NonNull MessageRecord messageRecord, @NonNull Spannable body);
+  }
+
+  private static class RenderedBody {
+    private final String    source;
+    private final Spannable body;
+
+    private RenderedBody(@NonNull String source, @NonNull Spannable body) {
+      this.source = source;
+      this.body   = body;
+    }
+  }
+}
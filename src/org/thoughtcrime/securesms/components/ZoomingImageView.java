@@ -20,10 +20,12 @@ import com.bumptech.glide.request.target.GlideDrawableImageViewTarget;
 import com.bumptech.glide.request.target.Target;
 import com.davemorrissey.labs.subscaleview.ImageSource;
 import com.davemorrissey.labs.subscaleview.SubsamplingScaleImageView;
+import com.davemorrissey.labs.subscaleview.SubsamplingScaleImageView.DefaultOnImageEventListener;
 
 import org.thoughtcrime.securesms.R;
 import org.thoughtcrime.securesms.components.subsampling.AttachmentBitmapDecoder;
 import org.thoughtcrime.securesms.components.subsampling.AttachmentRegionDecoder;
+import org.thoughtcrime.securesms.components.subsampling.TileCache;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
 import org.thoughtcrime.securesms.mms.DecryptableStreamUriLoader.DecryptableUri;
 import org.thoughtcrime.securesms.mms.PartAuthority;
@@ -62,12 +64,14 @@ public class ZoomingImageView extends FrameLayout {
 
     this.subsamplingImageView.setBitmapDecoderClass(AttachmentBitmapDecoder.class);
     this.subsamplingImageView.setRegionDecoderClass(AttachmentRegionDecoder.class);
+    this.subsamplingImageView.setExecutor(AttachmentRegionDecoder.EXECUTOR);
     this.subsamplingImageView.setOrientation(SubsamplingScaleImageView.ORIENTATION_USE_EXIF);
   }
 
   public void setImageUri(final MasterSecret masterSecret, final Uri uri, final String contentType) {
     final Context context        = getContext();
     final int     maxTextureSize = BitmapUtil.getMaxTextureSize();
+    final long    startTime      = System.currentTimeMillis();
 
     Log.w(TAG, "Max texture size: " + maxTextureSize);
 
@@ -93,7 +97,7 @@ public class ZoomingImageView extends FrameLayout {
           setImageViewUri(masterSecret, uri);
         } else {
           Log.w(TAG, "Loading in subsampling image view...");
-          setSubsamplingImageViewUri(uri);
+          setSubsamplingImageViewUri(uri, startTime);
         }
       }
     }.execute();
@@ -116,10 +120,24 @@ public class ZoomingImageView extends FrameLayout {
          });
   }
 
-  private void setSubsamplingImageViewUri(Uri uri) {
+  /**
+   * The view's base layer of tiles is decoded at the sample size that fits the screen, so
+   * once it's loaded the image is shown sharp.
+   */
+  private void setSubsamplingImageViewUri(Uri uri, final long startTime) {
     subsamplingImageView.setVisibility(View.VISIBLE);
     imageView.setVisibility(View.GONE);
 
+    subsamplingImageView.setOnImageEventListener(new DefaultOnImageEventListener() {
+      @Override
+      public void onImageLoaded() {
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        Log.w(TAG, "Image sharp after " + elapsed + "ms");
+        TileCache.getInstance().recordTimeToSharp(elapsed);
+      }
+    });
+
     subsamplingImageView.setImage(ImageSource.uri(uri));
   }
 
@@ -21,6 +21,7 @@ import android.content.Context;
 import android.content.pm.ActivityInfo;
 import android.content.res.TypedArray;
 import android.graphics.Color;
+import android.graphics.ImageFormat;
 import android.graphics.Rect;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
@@ -61,6 +62,8 @@ public class CameraView extends ViewGroup {
   private volatile int              cameraId           = CameraInfo.CAMERA_FACING_BACK;
   private volatile int              displayOrientation = -1;
 
+  private volatile @Nullable PreviewCallback previewCallback;
+
   private @NonNull  State                    state = State.PAUSED;
   private @Nullable Size                     previewSize;
   private @NonNull  List<CameraViewListener> listeners = Collections.synchronizedList(new LinkedList<CameraViewListener>());
@@ -230,24 +233,13 @@ public class CameraView extends ViewGroup {
   }
 
   public void setPreviewCallback(final @NonNull PreviewCallback previewCallback) {
+    this.previewCallback = previewCallback;
+
     enqueueTask(new PostInitializationTask<Void>() {
       @Override
       protected void onPostMain(Void avoid) {
         if (camera.isPresent()) {
-          camera.get().setPreviewCallback(new Camera.PreviewCallback() {
-            @Override
-            public void onPreviewFrame(byte[] data, Camera camera) {
-              if (!CameraView.this.camera.isPresent()) {
-                return;
-              }
-
-              final int  rotation    = getCameraPictureOrientation();
-              final Size previewSize = camera.getParameters().getPreviewSize();
-              if (data != null) {
-                previewCallback.onPreviewFrame(new PreviewFrame(data, previewSize.width, previewSize.height, rotation));
-              }
-            }
-          });
+          installPreviewCallback(camera.get(), camera.get().getParameters());
         }
       }
     });
@@ -318,6 +310,7 @@ public class CameraView extends ViewGroup {
         } else {
           previewSize = parameters.getPreviewSize();
         }
+        installPreviewCallback(camera, parameters);
         long previewStartMillis = System.currentTimeMillis();
         camera.startPreview();
         Log.w(TAG, "camera.startPreview() -> " + (System.currentTimeMillis() - previewStartMillis) + "ms");
@@ -337,6 +330,38 @@ public class CameraView extends ViewGroup {
     }
   }
 
+  /**
+   * Sizes the callback buffer and frames from the parameters the preview is started with, so
+   * a preview restarted at another size doesn't keep delivering into a buffer sized for the
+   * old one.
+   */
+  private void installPreviewCallback(final @NonNull Camera camera, final @NonNull Parameters parameters) {
+    final PreviewCallback previewCallback = this.previewCallback;
+
+    if (previewCallback == null) return;
+
+    final Size frameSize  = parameters.getPreviewSize();
+    final int  bufferSize = frameSize.width * frameSize.height *
+                            ImageFormat.getBitsPerPixel(parameters.getPreviewFormat()) / 8;
+
+    camera.setPreviewCallbackWithBuffer(new Camera.PreviewCallback() {
+      @Override
+      public void onPreviewFrame(byte[] data, Camera camera) {
+        if (!CameraView.this.camera.isPresent() || data == null || data.length < bufferSize) {
+          return;
+        }
+
+        try {
+          previewCallback.onPreviewFrame(new PreviewFrame(data, frameSize.width, frameSize.height, getCameraPictureOrientation()));
+        } finally {
+          camera.addCallbackBuffer(data);
+        }
+      }
+    });
+
+    camera.addCallbackBuffer(new byte[bufferSize]);
+  }
+
   private void stopPreview() {
     if (camera.isPresent()) {
       try {
@@ -589,6 +614,10 @@ public class CameraView extends ViewGroup {
     void onCameraStop();
   }
 
+  /**
+   * Frames are delivered in a buffer that's reused for the next frame, so their data is
+   * only valid until the callback returns.
+   */
   public interface PreviewCallback {
     void onPreviewFrame(@NonNull PreviewFrame frame);
   }
@@ -15,6 +15,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
+import android.text.TextUtils;
 import android.util.Log;
 import android.widget.TextView;
 
@@ -24,6 +25,7 @@ import org.thoughtcrime.securesms.components.emoji.parsing.EmojiPageBitmap;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiParser;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiTree;
 import org.thoughtcrime.securesms.util.FutureTaskListener;
+import org.thoughtcrime.securesms.util.LRUCache;
 import org.thoughtcrime.securesms.util.Util;
 
 import java.util.concurrent.ExecutionException;
@@ -34,7 +36,11 @@ class EmojiProvider {
   private static volatile EmojiProvider instance = null;
   private static final    Paint         paint    = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
 
-  private final EmojiTree emojiTree = new EmojiTree();
+  private static final int CANDIDATE_CACHE_SIZE = 500;
+
+  private final EmojiTree                           emojiTree      = new EmojiTree();
+  private final EmojiParser                         emojiParser    = new EmojiParser(emojiTree);
+  private final LRUCache<Long, CachedCandidateList> candidateCache = new LRUCache<>(CANDIDATE_CACHE_SIZE);
 
   private static final int EMOJI_RAW_HEIGHT = 64;
   private static final int EMOJI_RAW_WIDTH  = 64;
@@ -72,7 +78,28 @@ class EmojiProvider {
 
   @Nullable EmojiParser.CandidateList getCandidates(@Nullable CharSequence text) {
     if (text == null) return null;
-    return new EmojiParser(emojiTree).findCandidates(text);
+    return emojiParser.findCandidates(text);
+  }
+
+  @Nullable EmojiParser.CandidateList getCandidates(long messageId, @Nullable CharSequence text) {
+    if (text == null) return null;
+    if (messageId < 0) return getCandidates(text);
+
+    synchronized (candidateCache) {
+      CachedCandidateList cached = candidateCache.get(messageId);
+
+      if (cached != null && TextUtils.equals(cached.text, text)) {
+        return cached.candidates;
+      }
+    }
+
+    EmojiParser.CandidateList candidates = emojiParser.findCandidates(text);
+
+    synchronized (candidateCache) {
+      candidateCache.put(messageId, new CachedCandidateList(text.toString(), candidates));
+    }
+
+    return candidates;
   }
 
   @Nullable Spannable emojify(@Nullable CharSequence text, @NonNull TextView tv) {
@@ -124,6 +151,16 @@ class EmojiProvider {
     return drawable;
   }
 
+  private static class CachedCandidateList {
+    private final String                    text;
+    private final EmojiParser.CandidateList candidates;
+
+    private CachedCandidateList(String text, EmojiParser.CandidateList candidates) {
+      this.text       = text;
+      this.candidates = candidates;
+    }
+  }
+
   class EmojiDrawable extends Drawable {
     private final EmojiDrawInfo info;
     private       Bitmap        bmp;
@@ -24,6 +24,7 @@ public class EmojiTextView extends AppCompatTextView {
   private CharSequence source;
   private boolean      needsEllipsizing;
   private float        originalFontSize;
+  private long         messageId = -1;
 
   public EmojiTextView(Context context) {
     this(context, null);
@@ -45,9 +46,33 @@ public class EmojiTextView extends AppCompatTextView {
     a.recycle();
   }
 
+  /**
+   * Sets text belonging to a message, allowing the parsed emoji candidates to be
+   * reused across binds of the same message.
+   */
+  public void setText(@Nullable CharSequence text, long messageId) {
+    this.messageId = messageId;
+
+    try {
+      setText(text);
+    } finally {
+      this.messageId = -1;
+    }
+  }
+
+  /**
+   * Parses the emoji in a message body ahead of time, off the main thread, so that a later
+   * {@link #setText(CharSequence, long)} for the same message finds them cached.
+   */
+  public static void prefetch(@NonNull Context context, @Nullable CharSequence text, long messageId) {
+    if (!TextSecurePreferences.isSystemEmojiPreferred(context)) {
+      EmojiProvider.getInstance(context).getCandidates(messageId, text);
+    }
+  }
+
   @Override public void setText(@Nullable CharSequence text, BufferType type) {
     EmojiProvider provider = EmojiProvider.getInstance(getContext());
-    EmojiParser.CandidateList candidates = provider.getCandidates(text);
+    EmojiParser.CandidateList candidates = provider.getCandidates(messageId, text);
 
     if (scaleEmojis && candidates != null && candidates.allEmojis) {
       int emojis = candidates.size();
@@ -24,8 +24,9 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -33,6 +34,8 @@ import java.util.List;
  */
 public class EmojiParser {
 
+  private static final CandidateList EMPTY = new CandidateList(Collections.<Candidate>emptyList(), false);
+
   private final EmojiTree emojiTree;
 
   public EmojiParser(EmojiTree emojiTree) {
@@ -40,24 +43,23 @@ public class EmojiParser {
   }
 
   public @NonNull CandidateList findCandidates(@Nullable CharSequence text) {
-    List<Candidate> results = new LinkedList<>();
-
-    if (text == null) return new CandidateList(results, false);
+    if (text == null || text.length() == 0) return EMPTY;
 
-    boolean allEmojis = text.length() > 0;
+    List<Candidate> results   = null;
+    boolean         allEmojis = true;
+    int             length    = text.length();
 
-    for (int i = 0; i < text.length(); i++) {
-      int emojiEnd = getEmojiEndPos(text, i);
+    for (int i = 0; i < length; i++) {
+      int emojiEnd = emojiTree.getLongestMatchEnd(text, i);
 
       if (emojiEnd != -1) {
         EmojiDrawInfo drawInfo = emojiTree.getEmoji(text, i, emojiEnd);
 
-        if (emojiEnd + 2 <= text.length()) {
-          if (Fitzpatrick.fitzpatrickFromUnicode(text, emojiEnd) != null) {
-            emojiEnd += 2;
-          }
+        if (emojiEnd + 2 <= length && Fitzpatrick.isFitzpatrickModifier(text, emojiEnd)) {
+          emojiEnd += 2;
         }
 
+        if (results == null) results = new ArrayList<>();
         results.add(new Candidate(i, emojiEnd, drawInfo));
 
         i = emojiEnd - 1;
@@ -66,26 +68,11 @@ public class EmojiParser {
       }
     }
 
-    return new CandidateList(results, allEmojis);
-  }
-
-  private int getEmojiEndPos(CharSequence text, int startPos) {
-    int best = -1;
-
-    for (int j = startPos + 1; j <= text.length(); j++) {
-      EmojiTree.Matches status = emojiTree.isEmoji(text, startPos, j);
-
-      if (status.exactMatch()) {
-        best = j;
-      } else if (status.impossibleMatch()) {
-        return best;
-      }
-    }
-
-    return best;
+    if (results == null) return EMPTY;
+    else                 return new CandidateList(results, allEmojis);
   }
 
-  public class Candidate {
+  public static class Candidate {
 
     private final int           startIndex;
     private final int           endIndex;
@@ -110,7 +97,7 @@ public class EmojiParser {
     }
   }
 
-  public class CandidateList implements Iterable<Candidate> {
+  public static class CandidateList implements Iterable<Candidate> {
     public final List<EmojiParser.Candidate> list;
     public final boolean                     allEmojis;
 
@@ -22,11 +22,13 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 
 import android.support.annotation.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Based in part on code from emoji-java
+ *
+ * Children are kept in parallel sorted arrays keyed by char, so lookups are
+ * a binary search without boxing.
  */
 public class EmojiTree {
 
@@ -35,12 +37,8 @@ public class EmojiTree {
   public void add(String emojiEncoding, EmojiDrawInfo emoji) {
     EmojiTreeNode tree = root;
 
-    for (char c: emojiEncoding.toCharArray()) {
-      if (!tree.hasChild(c)) {
-        tree.addChild(c);
-      }
-
-      tree = tree.getChild(c);
+    for (int i=0;i<emojiEncoding.length();i++) {
+      tree = tree.getOrAddChild(emojiEncoding.charAt(i));
     }
 
     tree.setEmoji(emoji);
@@ -54,13 +52,11 @@ public class EmojiTree {
     EmojiTreeNode tree = root;
 
     for (int i=startPosition; i<endPosition; i++) {
-      char character = sequence.charAt(i);
+      tree = tree.getChild(sequence.charAt(i));
 
-      if (!tree.hasChild(character)) {
+      if (tree == null) {
         return Matches.IMPOSSIBLE;
       }
-
-      tree = tree.getChild(character);
     }
 
     return tree.isEndOfEmoji() ? Matches.EXACTLY : Matches.POSSIBLY;
@@ -70,23 +66,47 @@ public class EmojiTree {
     EmojiTreeNode tree = root;
 
     for (int i=startPosition; i<endPostiion; i++) {
-      char character = unicode.charAt(i);
+      tree = tree.getChild(unicode.charAt(i));
 
-      if (!tree.hasChild(character)) {
+      if (tree == null) {
         return null;
       }
-
-      tree = tree.getChild(character);
     }
 
     return tree.getEmoji();
   }
 
+  /**
+   * Walks the tree once from {@code startPosition} and returns the end position
+   * of the longest emoji starting there, or -1 if none does.
+   */
+  public int getLongestMatchEnd(CharSequence sequence, int startPosition) {
+    EmojiTreeNode tree = root;
+    int           best = -1;
+
+    for (int i=startPosition; i<sequence.length(); i++) {
+      tree = tree.getChild(sequence.charAt(i));
+
+      if (tree == null) {
+        return best;
+      }
+
+      if (tree.isEndOfEmoji()) {
+        best = i + 1;
+      }
+    }
+
+    return best;
+  }
 
   private static class EmojiTreeNode {
 
-    private Map<Character, EmojiTreeNode> children = new HashMap<>();
-    private EmojiDrawInfo emoji;
+    private static final char[]          NO_KEYS     = new char[0];
+    private static final EmojiTreeNode[] NO_CHILDREN = new EmojiTreeNode[0];
+
+    private char[]          keys     = NO_KEYS;
+    private EmojiTreeNode[] children = NO_CHILDREN;
+    private EmojiDrawInfo   emoji;
 
     public void setEmoji(EmojiDrawInfo emoji) {
       this.emoji = emoji;
@@ -96,16 +116,36 @@ public class EmojiTree {
       return emoji;
     }
 
-    boolean hasChild(char child) {
-      return children.containsKey(child);
+    @Nullable EmojiTreeNode getChild(char child) {
+      int index = Arrays.binarySearch(keys, child);
+      return index >= 0 ? children[index] : null;
     }
 
-    void addChild(char child) {
-      children.put(child, new EmojiTreeNode());
-    }
+    EmojiTreeNode getOrAddChild(char child) {
+      int index = Arrays.binarySearch(keys, child);
+
+      if (index >= 0) {
+        return children[index];
+      }
+
+      int           insertion = -index - 1;
+      EmojiTreeNode node      = new EmojiTreeNode();
+
+      char[]          newKeys     = new char[keys.length + 1];
+      EmojiTreeNode[] newChildren = new EmojiTreeNode[children.length + 1];
+
+      System.arraycopy(keys, 0, newKeys, 0, insertion);
+      System.arraycopy(children, 0, newChildren, 0, insertion);
+      System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+      System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+
+      newKeys[insertion]     = child;
+      newChildren[insertion] = node;
+
+      this.keys     = newKeys;
+      this.children = newChildren;
 
-    EmojiTreeNode getChild(char child) {
-      return children.get(child);
+      return node;
     }
 
     boolean isEndOfEmoji() {
@@ -53,6 +53,12 @@ public enum Fitzpatrick {
     return null;
   }
 
+  public static boolean isFitzpatrickModifier(CharSequence unicode, int index) {
+    return unicode.charAt(index)     == '\uD83C' &&
+           unicode.charAt(index + 1) >= '\uDFFB' &&
+           unicode.charAt(index + 1) <= '\uDFFF';
+  }
+
   public static Fitzpatrick fitzpatrickFromType(String type) {
     try {
       return Fitzpatrick.valueOf(type.toUpperCase());
@@ -18,16 +18,55 @@ import com.davemorrissey.labs.subscaleview.decoder.SkiaImageRegionDecoder;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
 import org.thoughtcrime.securesms.mms.PartAuthority;
 import org.thoughtcrime.securesms.service.KeyCachingService;
+import org.thoughtcrime.securesms.util.LinkedBlockingLifoQueue;
+import org.thoughtcrime.securesms.util.Util;
 
+import java.io.IOException;
 import java.io.InputStream;
-
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes tiles of large attachments.
+ *
+ * A BitmapRegionDecoder can only decode one region at a time, so we keep a small pool of
+ * them over the same decrypted image and decode tiles in parallel on {@link #EXECUTOR}. Each
+ * decoder holds its own copy of the encoded image, so the pool shrinks as the image grows.
+ * The attachment is only decrypted once a tile actually has to be decoded, since tiles
+ * and dimensions from a previous viewing are served from {@link TileCache}.
+ */
 public class AttachmentRegionDecoder implements ImageRegionDecoder {
 
   private static final String TAG = AttachmentRegionDecoder.class.getName();
 
+  private static final int  MAX_DECODERS      = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  private static final long MAX_DECODER_BYTES = 48 * 1024 * 1024;
+
+  /**
+   * Tiles are decoded newest request first, so after a pan or zoom the tiles now in view are
+   * decoded ahead of the ones that were requested for the previous viewport.
+   */
+  public static final Executor EXECUTOR = new ThreadPoolExecutor(MAX_DECODERS, MAX_DECODERS, 60, TimeUnit.SECONDS,
+                                                                 new LinkedBlockingLifoQueue<Runnable>());
+
   private SkiaImageRegionDecoder passthrough;
 
-  private BitmapRegionDecoder bitmapRegionDecoder;
+  private Context                                  context;
+  private Uri                                      uri;
+  private Point                                    dimensions;
+  private int                                      cacheGeneration;
+  private List<BitmapRegionDecoder>                decoders;
+  private final BlockingQueue<BitmapRegionDecoder> available        = new LinkedBlockingQueue<>();
+  private final Set<BitmapRegionDecoder>           recycledDecoders = new HashSet<>();
+
+  private volatile boolean recycled;
 
   @RequiresApi(api = Build.VERSION_CODES.GINGERBREAD_MR1)
   @Override
@@ -38,49 +77,58 @@ public class AttachmentRegionDecoder implements ImageRegionDecoder {
       return passthrough.init(context, uri);
     }
 
-    MasterSecret masterSecret = KeyCachingService.getMasterSecret(context);
+    this.context         = context.getApplicationContext();
+    this.uri             = uri;
+    this.cacheGeneration = TileCache.getInstance().getGeneration();
+    this.dimensions      = TileCache.getInstance().getDimensions(uri);
 
-    if (masterSecret == null) {
-      throw new IllegalStateException("No master secret available...");
+    if (dimensions == null) {
+      initializeDecoders();
     }
 
-    InputStream inputStream = PartAuthority.getAttachmentStream(context, masterSecret, uri);
-
-    this.bitmapRegionDecoder = BitmapRegionDecoder.newInstance(inputStream, false);
-    inputStream.close();
-
-    return new Point(bitmapRegionDecoder.getWidth(), bitmapRegionDecoder.getHeight());
+    return dimensions;
   }
 
   @RequiresApi(api = Build.VERSION_CODES.GINGERBREAD_MR1)
   @Override
   public Bitmap decodeRegion(Rect rect, int sampleSize) {
-    Log.w(TAG, "Decode region: " + rect);
-
     if (passthrough != null) {
       return passthrough.decodeRegion(rect, sampleSize);
     }
 
-    synchronized(this) {
+    Bitmap cached = TileCache.getInstance().getTile(uri, rect, sampleSize);
+
+    if (cached != null) {
+      return cached;
+    }
+
+    long                startTime = System.currentTimeMillis();
+    BitmapRegionDecoder decoder   = acquireDecoder();
+
+    try {
       BitmapFactory.Options options = new BitmapFactory.Options();
       options.inSampleSize      = sampleSize;
       options.inPreferredConfig = Bitmap.Config.RGB_565;
 
-      Bitmap bitmap = bitmapRegionDecoder.decodeRegion(rect, options);
+      Bitmap bitmap = decoder.decodeRegion(rect, options);
 
       if (bitmap == null) {
         throw new RuntimeException("Skia image decoder returned null bitmap - image format may not be supported");
       }
 
+      TileCache.getInstance().putTile(cacheGeneration, uri, rect, sampleSize, bitmap);
+      Log.w(TAG, "Decoded region " + rect + " at 1/" + sampleSize + " in " + (System.currentTimeMillis() - startTime) + "ms");
+
       return bitmap;
+    } finally {
+      releaseDecoder(decoder);
     }
   }
 
   @RequiresApi(api = Build.VERSION_CODES.GINGERBREAD_MR1)
   public boolean isReady() {
-    Log.w(TAG, "isReady");
     return (passthrough != null && passthrough.isReady()) ||
-           (bitmapRegionDecoder != null && !bitmapRegionDecoder.isRecycled());
+           (dimensions != null && !recycled);
   }
 
   @RequiresApi(api = Build.VERSION_CODES.GINGERBREAD_MR1)
@@ -88,8 +136,91 @@ public class AttachmentRegionDecoder implements ImageRegionDecoder {
     if (passthrough != null) {
       passthrough.recycle();
       passthrough = null;
-    } else {
-      bitmapRegionDecoder.recycle();
+      return;
+    }
+
+    recycled = true;
+
+    synchronized (this) {
+      if (decoders == null) return;
+
+      // Decoders still in use are recycled as their decodes hand them back. The idle ones
+      // go back to the pool recycled, so a decode still waiting for one fails its tile
+      // instead of blocking forever.
+      List<BitmapRegionDecoder> idle = new LinkedList<>();
+      available.drainTo(idle);
+
+      for (BitmapRegionDecoder decoder : idle) {
+        recycleDecoder(decoder);
+      }
+
+      available.addAll(idle);
+    }
+  }
+
+  private BitmapRegionDecoder acquireDecoder() {
+    synchronized (this) {
+      if (recycled) {
+        throw new IllegalStateException("Decoder has been recycled");
+      }
+
+      if (decoders == null) {
+        try {
+          initializeDecoders();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+
+    return takeDecoder();
+  }
+
+  private synchronized void releaseDecoder(BitmapRegionDecoder decoder) {
+    if (recycled) {
+      recycleDecoder(decoder);
+    }
+
+    available.add(decoder);
+  }
+
+  private void recycleDecoder(BitmapRegionDecoder decoder) {
+    if (recycledDecoders.add(decoder)) {
+      decoder.recycle();
     }
   }
+
+  private BitmapRegionDecoder takeDecoder() {
+    try {
+      return available.take();
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private synchronized void initializeDecoders() throws IOException {
+    MasterSecret masterSecret = KeyCachingService.getMasterSecret(context);
+
+    if (masterSecret == null) {
+      throw new IllegalStateException("No master secret available...");
+    }
+
+    InputStream inputStream = PartAuthority.getAttachmentStream(context, masterSecret, uri);
+    byte[]      image       = Util.readFully(inputStream);
+    int         count       = (int)Math.max(1, Math.min(MAX_DECODERS, MAX_DECODER_BYTES / Math.max(1, image.length)));
+
+    this.decoders = new LinkedList<>();
+
+    for (int i=0;i<count;i++) {
+      BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(image, 0, image.length, false);
+      decoders.add(decoder);
+      available.add(decoder);
+    }
+
+    this.dimensions = new Point(decoders.get(0).getWidth(), decoders.get(0).getHeight());
+    TileCache.getInstance().putDimensions(cacheGeneration, uri, dimensions);
+    TileCache.getInstance().recordDecoderBytes((long)image.length * count);
+
+    Log.w(TAG, "Created " + count + " region decoders for " + image.length + " bytes");
+  }
 }
@@ -0,0 +1,141 @@
+package org.thoughtcrime.securesms.components.subsampling;
+
+
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+
+import org.thoughtcrime.securesms.util.LRUCache;
+
+import java.util.Locale;
+
+/**
+ * Keeps decoded tiles of large images, and the dimensions of those images, across
+ * instances of {@link AttachmentRegionDecoder}. The viewer creates a new decoder every time
+ * it's shown, so without this rotating the screen or reopening the same image would decode
+ * every visible tile again.
+ *
+ * The view recycles the tiles it's given, so bitmaps are copied on the way in and out.
+ *
+ * The tiles are decrypted image data, so {@link #clear()} is called when the master secret
+ * is cleared. A decoder opened before that can't add to the cache afterwards, since it puts
+ * tiles with the generation it started from.
+ *
+ * The cache also counts its hits and size, the memory held by region decoders, and how long
+ * the viewer took to show each image sharp, for the debug log.
+ */
+public class TileCache {
+
+  private static final String TAG = TileCache.class.getSimpleName();
+
+  private static final int  MAX_IMAGES     = 10;
+  private static final long MAX_TILE_BYTES = 32 * 1024 * 1024;
+
+  private static final TileCache instance = new TileCache();
+
+  public static TileCache getInstance() {
+    return instance;
+  }
+
+  private final LruCache<String, Bitmap> tiles;
+  private final LRUCache<String, Point>  dimensions = new LRUCache<>(MAX_IMAGES);
+
+  private int generation;
+
+  private long hits;
+  private long misses;
+  private long peakTileBytes;
+  private long peakDecoderBytes;
+  private long images;
+  private long totalTimeToSharpMillis;
+  private long maxTimeToSharpMillis;
+
+  private TileCache() {
+    int maxSize = (int)Math.min(MAX_TILE_BYTES, Runtime.getRuntime().maxMemory() / 8);
+
+    this.tiles = new LruCache<String, Bitmap>(maxSize) {
+      @Override
+      protected int sizeOf(String key, Bitmap bitmap) {
+        return bitmap.getByteCount();
+      }
+
+      @Override
+      protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+        oldValue.recycle();
+      }
+    };
+  }
+
+  synchronized int getGeneration() {
+    return generation;
+  }
+
+  synchronized @Nullable Bitmap getTile(@NonNull Uri uri, @NonNull Rect rect, int sampleSize) {
+    Bitmap bitmap = tiles.get(getKey(uri, rect, sampleSize));
+
+    if (bitmap == null) {
+      misses++;
+      return null;
+    }
+
+    hits++;
+    return bitmap.copy(bitmap.getConfig(), false);
+  }
+
+  synchronized void putTile(int generation, @NonNull Uri uri, @NonNull Rect rect, int sampleSize, @NonNull Bitmap bitmap) {
+    if (generation != this.generation) return;
+
+    Bitmap copy = bitmap.copy(bitmap.getConfig(), false);
+
+    if (copy != null) {
+      tiles.put(getKey(uri, rect, sampleSize), copy);
+      peakTileBytes = Math.max(peakTileBytes, tiles.size());
+    }
+  }
+
+  synchronized @Nullable Point getDimensions(@NonNull Uri uri) {
+    return dimensions.get(uri.toString());
+  }
+
+  synchronized void putDimensions(int generation, @NonNull Uri uri, @NonNull Point point) {
+    if (generation == this.generation) {
+      dimensions.put(uri.toString(), point);
+    }
+  }
+
+  synchronized void recordDecoderBytes(long bytes) {
+    peakDecoderBytes = Math.max(peakDecoderBytes, bytes);
+  }
+
+  public synchronized void recordTimeToSharp(long millis) {
+    images++;
+    totalTimeToSharpMillis += millis;
+    maxTimeToSharpMillis    = Math.max(maxTimeToSharpMillis, millis);
+  }
+
+  public synchronized void clear() {
+    generation++;
+    tiles.evictAll();
+    dimensions.clear();
+  }
+
+  public synchronized void logReport() {
+    Log.w(TAG, String.format(Locale.US, "%d hits, %d misses, tiles %.1fMB held, peak %.1fMB of %.1fMB, decoders peak %.1fMB, %d images sharp avg %dms max %dms",
+                             hits, misses, megabytes(tiles.size()), megabytes(peakTileBytes), megabytes(tiles.maxSize()),
+                             megabytes(peakDecoderBytes), images, images > 0 ? totalTimeToSharpMillis / images : 0,
+                             maxTimeToSharpMillis));
+  }
+
+  private static double megabytes(long bytes) {
+    return bytes / (1024d * 1024d);
+  }
+
+  private static String getKey(@NonNull Uri uri, @NonNull Rect rect, int sampleSize) {
+    return uri.toString() + "#" + rect.flattenToString() + "@" + sampleSize;
+  }
+}
@@ -19,6 +19,7 @@ package org.thoughtcrime.securesms.contacts;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.MergeCursor;
 import android.net.Uri;
 import android.os.Parcel;
@@ -290,6 +291,15 @@ public class ContactAccessor {
    * directly from the Android source, where shitty code is all you get.
    */
 
+  private static final String[] PROJECTION_PHONE = {
+      Phone._ID,                  // 0
+      Phone.CONTACT_ID,           // 1
+      Phone.TYPE,                 // 2
+      Phone.NUMBER,               // 3
+      Phone.LABEL,                // 4
+      Phone.DISPLAY_NAME,         // 5
+  };
+
   public Cursor getCursorForRecipientFilter(CharSequence constraint,
       ContentResolver mContentResolver)
   {
@@ -298,15 +308,47 @@ public class ContactAccessor {
                               Contacts.Data.IS_SUPER_PRIMARY + " DESC," +
                               Phone.TYPE;
 
-    final String[] PROJECTION_PHONE = {
-        Phone._ID,                  // 0
-        Phone.CONTACT_ID,           // 1
-        Phone.TYPE,                 // 2
-        Phone.NUMBER,               // 3
-        Phone.LABEL,                // 4
-        Phone.DISPLAY_NAME,         // 5
-    };
+    String phone = getTypedNumber(constraint);
+    String cons  = constraint != null ? constraint.toString() : null;
+
+    Uri uri = Uri.withAppendedPath(Phone.CONTENT_FILTER_URI, Uri.encode(cons));
+
+    Cursor phoneCursor = mContentResolver.query(uri,
+                                                PROJECTION_PHONE,
+                                                null,
+                                                null,
+                                                SORT_ORDER);
+
+    if (phone.length() > 0) {
+      return new MergeCursor(new Cursor[] { getTypedNumberCursor(phone, cons), phoneCursor });
+    } else {
+      return phoneCursor;
+    }
+  }
+
+  /**
+   * Filters contacts from the in-memory search index, with the same columns and typed number
+   * row as the provider query. The index keeps a number with a Signal raw contact only as a
+   * push entry, so entries of both types are returned.
+   */
+  Cursor getCursorForRecipientFilter(CharSequence constraint, ContactSearchIndex searchIndex) {
+    String       phone  = getTypedNumber(constraint);
+    String       cons   = constraint != null ? constraint.toString() : null;
+    MatrixCursor cursor = new MatrixCursor(PROJECTION_PHONE);
+
+    for (ContactSearchIndex.Entry entry : searchIndex.search(cons)) {
+      cursor.addRow(new Object[] {entry.getId(), entry.getContactId(), entry.getNumberType(),
+                                  entry.getNumber(), entry.getLabel(), entry.getName()});
+    }
 
+    if (phone.length() > 0) {
+      return new MergeCursor(new Cursor[] { getTypedNumberCursor(phone, cons), cursor });
+    } else {
+      return cursor;
+    }
+  }
+
+  private String getTypedNumber(CharSequence constraint) {
     String phone = "";
     String cons  = null;
 
@@ -322,45 +364,29 @@ public class ContactAccessor {
         }
       }
     }
-    Uri uri = Uri.withAppendedPath(Phone.CONTENT_FILTER_URI, Uri.encode(cons));
-    String selection = String.format("%s=%s OR %s=%s OR %s=%s",
-                                     Phone.TYPE,
-                                     Phone.TYPE_MOBILE,
-                                     Phone.TYPE,
-                                     Phone.TYPE_WORK_MOBILE,
-                                     Phone.TYPE,
-                                     Phone.TYPE_MMS);
 
-    Cursor phoneCursor = mContentResolver.query(uri,
-                                                PROJECTION_PHONE,
-                                                null,
-                                                null,
-                                                SORT_ORDER);
+    return phone;
+  }
 
-    if (phone.length() > 0) {
-      ArrayList result = new ArrayList();
-      result.add(Integer.valueOf(-1));                    // ID
-      result.add(Long.valueOf(-1));                       // CONTACT_ID
-      result.add(Integer.valueOf(Phone.TYPE_CUSTOM));     // TYPE
-      result.add(phone);                                  // NUMBER
+  private Cursor getTypedNumberCursor(String phone, String cons) {
+    ArrayList result = new ArrayList();
+    result.add(Integer.valueOf(-1));                    // ID
+    result.add(Long.valueOf(-1));                       // CONTACT_ID
+    result.add(Integer.valueOf(Phone.TYPE_CUSTOM));     // TYPE
+    result.add(phone);                                  // NUMBER
 
     /*
     * The "\u00A0" keeps Phone.getDisplayLabel() from deciding
     * to display the default label ("Home") next to the transformation
     * of the letters into numbers.
     */
-      result.add("\u00A0");                               // LABEL
-      result.add(cons);                                   // NAME
+    result.add("\u00A0");                               // LABEL
+    result.add(cons);                                   // NAME
 
-      ArrayList<ArrayList> wrap = new ArrayList<ArrayList>();
-      wrap.add(result);
+    ArrayList<ArrayList> wrap = new ArrayList<ArrayList>();
+    wrap.add(result);
 
-      ArrayListCursor translated = new ArrayListCursor(PROJECTION_PHONE, wrap);
-
-      return new MergeCursor(new Cursor[] { translated, phoneCursor });
-    } else {
-      return phoneCursor;
-    }
+    return new ArrayListCursor(PROJECTION_PHONE, wrap);
   }
 
 }
@@ -0,0 +1,261 @@
+package org.thoughtcrime.securesms.contacts;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable in-memory index of contacts for search as you type.
+ *
+ * A query matches a contact when every word in it is a prefix of a word in the contact's
+ * name, when it's a prefix of the contact's initials, or, for a query of digits, when it's
+ * the start or the end of the contact's number. Names are compared without case or accents.
+ * Words, numbers and reversed numbers are kept in sorted arrays, so each lookup is a binary
+ * search followed by a scan over the matches, and results come back in name order.
+ */
+class ContactSearchIndex {
+
+  private static final Pattern DIACRITICS     = Pattern.compile("\\p{M}+");
+  private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+  private static final Pattern NUMBER_QUERY   = Pattern.compile("[0-9+\\-().\\s]*[0-9][0-9+\\-().\\s]*");
+
+  private final Entry[]  entries;
+  private final String[] words;
+  private final int[]    wordEntries;
+  private final String[] numbers;
+  private final int[]    numberEntries;
+  private final String[] reversedNumbers;
+  private final int[]    reversedNumberEntries;
+
+  ContactSearchIndex(@NonNull List<Entry> contacts) {
+    this.entries = contacts.toArray(new Entry[contacts.size()]);
+
+    final Collator collator = Collator.getInstance();
+
+    Arrays.sort(entries, new Comparator<Entry>() {
+      @Override
+      public int compare(Entry lhs, Entry rhs) {
+        return collator.compare(lhs.getSortName(), rhs.getSortName());
+      }
+    });
+
+    List<Posting> wordPostings   = new ArrayList<>(entries.length * 3);
+    List<Posting> numberPostings = new ArrayList<>(entries.length);
+    List<Posting> suffixPostings = new ArrayList<>(entries.length);
+
+    for (int i=0;i<entries.length;i++) {
+      String[] nameWords = split(entries[i].getName());
+
+      for (String word : nameWords) {
+        wordPostings.add(new Posting(word, i));
+      }
+
+      if (nameWords.length > 1) {
+        wordPostings.add(new Posting(getInitials(nameWords), i));
+      }
+
+      String digits = getDigits(entries[i].getNumber());
+
+      if (!digits.isEmpty()) {
+        numberPostings.add(new Posting(digits, i));
+        suffixPostings.add(new Posting(reverse(digits), i));
+      }
+    }
+
+    Collections.sort(wordPostings);
+    Collections.sort(numberPostings);
+    Collections.sort(suffixPostings);
+
+    this.words                 = new String[wordPostings.size()];
+    this.wordEntries           = new int[wordPostings.size()];
+    this.numbers               = new String[numberPostings.size()];
+    this.numberEntries         = new int[numberPostings.size()];
+    this.reversedNumbers       = new String[suffixPostings.size()];
+    this.reversedNumberEntries = new int[suffixPostings.size()];
+
+    unpack(wordPostings, words, wordEntries);
+    unpack(numberPostings, numbers, numberEntries);
+    unpack(suffixPostings, reversedNumbers, reversedNumberEntries);
+  }
+
+  /**
+   * @return the matching contacts in name order, or every contact if the query is empty.
+   */
+  @NonNull List<Entry> search(@Nullable String query) {
+    String[] queryWords = split(query);
+
+    if (queryWords.length == 0) {
+      return Collections.unmodifiableList(Arrays.asList(entries));
+    }
+
+    BitSet matches = null;
+
+    for (String queryWord : queryWords) {
+      BitSet wordMatches = findPrefix(words, wordEntries, queryWord);
+
+      if (matches == null) matches = wordMatches;
+      else                 matches.and(wordMatches);
+    }
+
+    if (NUMBER_QUERY.matcher(query).matches()) {
+      String digits = getDigits(query);
+
+      matches.or(findPrefix(numbers, numberEntries, digits));
+      matches.or(findPrefix(reversedNumbers, reversedNumberEntries, reverse(digits)));
+    }
+
+    List<Entry> results = new ArrayList<>(matches.cardinality());
+
+    for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+      results.add(entries[i]);
+    }
+
+    return results;
+  }
+
+  int size() {
+    return entries.length;
+  }
+
+  private BitSet findPrefix(@NonNull String[] keys, @NonNull int[] keyEntries, @NonNull String prefix) {
+    BitSet matches = new BitSet(entries.length);
+    int    index   = Arrays.binarySearch(keys, prefix);
+
+    if (index < 0) index = -(index + 1);
+
+    while (index < keys.length && keys[index].startsWith(prefix)) {
+      matches.set(keyEntries[index++]);
+    }
+
+    return matches;
+  }
+
+  private static @NonNull String[] split(@Nullable String text) {
+    if (text == null) return new String[0];
+
+    String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+    normalized = DIACRITICS.matcher(normalized).replaceAll("").toLowerCase();
+
+    List<String> words = new ArrayList<>(4);
+
+    for (String word : WORD_SEPARATOR.split(normalized)) {
+      if (!word.isEmpty()) words.add(word);
+    }
+
+    return words.toArray(new String[words.size()]);
+  }
+
+  private static @NonNull String getInitials(@NonNull String[] words) {
+    StringBuilder initials = new StringBuilder(words.length);
+
+    for (String word : words) {
+      initials.append(word.charAt(0));
+    }
+
+    return initials.toString();
+  }
+
+  private static @NonNull String getDigits(@Nullable String number) {
+    if (number == null) return "";
+
+    StringBuilder digits = new StringBuilder(number.length());
+
+    for (int i=0;i<number.length();i++) {
+      char c = number.charAt(i);
+      if (c >= '0' && c <= '9') digits.append(c);
+    }
+
+    return digits.toString();
+  }
+
+  private static @NonNull String reverse(@NonNull String text) {
+    return new StringBuilder(text).reverse().toString();
+  }
+
+  private static void unpack(@NonNull List<Posting> postings, @NonNull String[] keys, @NonNull int[] keyEntries) {
+    for (int i=0;i<postings.size();i++) {
+      keys[i]       = postings.get(i).key;
+      keyEntries[i] = postings.get(i).entry;
+    }
+  }
+
+  static class Entry {
+
+              private final long   id;
+              private final long   contactId;
+    @Nullable private final String name;
+    @Nullable private final String number;
+              private final int    numberType;
+    @Nullable private final String label;
+              private final int    contactType;
+
+    Entry(long id, long contactId, @Nullable String name, @Nullable String number,
+          int numberType, @Nullable String label, int contactType)
+    {
+      this.id          = id;
+      this.contactId   = contactId;
+      this.name        = name;
+      this.number      = number;
+      this.numberType  = numberType;
+      this.label       = label;
+      this.contactType = contactType;
+    }
+
+    long getId() {
+      return id;
+    }
+
+    long getContactId() {
+      return contactId;
+    }
+
+    @Nullable String getName() {
+      return name;
+    }
+
+    @Nullable String getNumber() {
+      return number;
+    }
+
+    int getNumberType() {
+      return numberType;
+    }
+
+    @Nullable String getLabel() {
+      return label;
+    }
+
+    int getContactType() {
+      return contactType;
+    }
+
+    private @NonNull String getSortName() {
+      return name != null ? name : "";
+    }
+  }
+
+  private static class Posting implements Comparable<Posting> {
+    private final String key;
+    private final int    entry;
+
+    private Posting(String key, int entry) {
+      this.key   = key;
+      this.entry = entry;
+    }
+
+    @Override
+    public int compareTo(@NonNull Posting other) {
+      int result = key.compareTo(other.key);
+      return result != 0 ? result : entry - other.entry;
+    }
+  }
+}
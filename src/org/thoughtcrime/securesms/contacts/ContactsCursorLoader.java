@@ -20,6 +20,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.database.MergeCursor;
+import android.net.Uri;
 import android.provider.ContactsContract;
 import android.support.annotation.NonNull;
 import android.support.v4.content.CursorLoader;
@@ -34,6 +35,7 @@ import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.NumberUtil;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * CursorLoader that initializes a ContactsDatabase instance
@@ -60,17 +62,32 @@ public class ContactsCursorLoader extends CursorLoader {
 
   @Override
   public Cursor loadInBackground() {
-    ContactsDatabase  contactsDatabase = DatabaseFactory.getContactsDatabase(getContext());
-    ArrayList<Cursor> cursorList       = new ArrayList<>(3);
+    ContactsDatabase   contactsDatabase = DatabaseFactory.getContactsDatabase(getContext());
+    ContactSearchIndex searchIndex      = contactsDatabase.getSearchIndex();
+    ArrayList<Cursor>  cursorList       = new ArrayList<>(3);
 
-    if (mode != MODE_SMS_ONLY) {
-      cursorList.add(contactsDatabase.queryTextSecureContacts(filter));
-    }
+    if (searchIndex != null) {
+      List<ContactSearchIndex.Entry> results = searchIndex.search(filter);
+
+      if (mode != MODE_SMS_ONLY) {
+        cursorList.add(getSearchResultCursor(results, ContactsDatabase.PUSH_TYPE));
+      }
+
+      if (mode == MODE_ALL) {
+        cursorList.add(getSearchResultCursor(results, ContactsDatabase.NORMAL_TYPE));
+      } else if (mode == MODE_SMS_ONLY) {
+        cursorList.add(filterNonPushContacts(getSearchResultCursor(results, ContactsDatabase.NORMAL_TYPE)));
+      }
+    } else {
+      if (mode != MODE_SMS_ONLY) {
+        cursorList.add(contactsDatabase.queryTextSecureContacts(filter));
+      }
 
-    if (mode == MODE_ALL) {
-      cursorList.add(contactsDatabase.querySystemContacts(filter));
-    } else if (mode == MODE_SMS_ONLY) {
-      cursorList.add(filterNonPushContacts(contactsDatabase.querySystemContacts(filter)));
+      if (mode == MODE_ALL) {
+        cursorList.add(contactsDatabase.querySystemContacts(filter));
+      } else if (mode == MODE_SMS_ONLY) {
+        cursorList.add(filterNonPushContacts(contactsDatabase.querySystemContacts(filter)));
+      }
     }
 
     if (!TextUtils.isEmpty(filter) && NumberUtil.isValidSmsOrEmail(filter)) {
@@ -91,6 +108,29 @@ public class ContactsCursorLoader extends CursorLoader {
     return new MergeCursor(cursorList.toArray(new Cursor[0]));
   }
 
+  /**
+   * Search results come from memory, so the cursor is told to reload when the index is
+   * rebuilt rather than when the contacts provider changes.
+   */
+  private @NonNull Cursor getSearchResultCursor(@NonNull List<ContactSearchIndex.Entry> results, int contactType) {
+    MatrixCursor cursor = new MatrixCursor(new String[] {ContactsDatabase.ID_COLUMN,
+                                                         ContactsDatabase.NAME_COLUMN,
+                                                         ContactsDatabase.NUMBER_COLUMN,
+                                                         ContactsDatabase.NUMBER_TYPE_COLUMN,
+                                                         ContactsDatabase.LABEL_COLUMN,
+                                                         ContactsDatabase.CONTACT_TYPE_COLUMN});
+
+    for (ContactSearchIndex.Entry entry : results) {
+      if (entry.getContactType() == contactType) {
+        cursor.addRow(new Object[] {entry.getId(), entry.getName(), entry.getNumber(),
+                                    entry.getNumberType(), entry.getLabel(), contactType});
+      }
+    }
+
+    cursor.setNotificationUri(getContext().getContentResolver(), Uri.parse(ContactsDatabase.SEARCH_INDEX_URI));
+    return cursor;
+  }
+
   private @NonNull Cursor filterNonPushContacts(@NonNull Cursor cursor) {
     try {
       final long startMillis = System.currentTimeMillis();
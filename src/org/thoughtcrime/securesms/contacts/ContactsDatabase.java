@@ -20,6 +20,7 @@ import android.accounts.Account;
 import android.content.ContentProviderOperation;
 import android.content.Context;
 import android.content.OperationApplicationException;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.CursorWrapper;
 import android.net.Uri;
@@ -49,6 +50,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Database to supply all types of contacts that TextSecure needs to know about
@@ -68,17 +72,106 @@ public class ContactsDatabase {
   static final String NUMBER_TYPE_COLUMN  = "number_type";
   static final String LABEL_COLUMN        = "label";
   static final String CONTACT_TYPE_COLUMN = "contact_type";
+  static final String CONTACT_ID_COLUMN   = "contact_id";
 
   static final int NORMAL_TYPE = 0;
   static final int PUSH_TYPE   = 1;
   static final int NEW_TYPE    = 2;
 
-  private final Context context;
+  static final String SEARCH_INDEX_URI = "content://xecurechat/contact-search-index";
+
+  private final Context         context;
+  private final Executor        searchIndexExecutor = Executors.newSingleThreadExecutor();
+  private final AtomicBoolean   searchIndexPending  = new AtomicBoolean(false);
+  private final ContentObserver searchIndexObserver = new ContentObserver(null) {
+    @Override
+    public void onChange(boolean selfChange) {
+      scheduleSearchIndexBuild();
+    }
+  };
+
+  private volatile ContactSearchIndex searchIndex;
+  private          boolean            searchIndexObserved;
 
   public ContactsDatabase(Context context) {
     this.context  = context;
   }
 
+  /**
+   * Returns the contact search index, which is built in the background the first time it's
+   * asked for and rebuilt whenever the system contacts change. Until the first build
+   * finishes this returns null and callers should query the contacts provider instead.
+   * Observers of {@link #SEARCH_INDEX_URI} are notified after each build.
+   */
+  @Nullable ContactSearchIndex getSearchIndex() {
+    ContactSearchIndex index = searchIndex;
+
+    if (index == null) {
+      scheduleSearchIndexBuild();
+    }
+
+    return index;
+  }
+
+  private void scheduleSearchIndexBuild() {
+    synchronized (this) {
+      if (!searchIndexObserved) {
+        context.getContentResolver().registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, searchIndexObserver);
+        searchIndexObserved = true;
+      }
+    }
+
+    if (searchIndexPending.compareAndSet(false, true)) {
+      searchIndexExecutor.execute(() -> {
+        searchIndexPending.set(false);
+        buildSearchIndex();
+      });
+    }
+  }
+
+  private void buildSearchIndex() {
+    long                           startMillis = System.currentTimeMillis();
+    List<ContactSearchIndex.Entry> entries     = new ArrayList<>();
+
+    try {
+      try (Cursor cursor = queryTextSecureContacts(null)) {
+        readSearchIndexEntries(cursor, entries);
+      }
+
+      try (Cursor cursor = querySystemContacts(null)) {
+        readSearchIndexEntries(cursor, entries);
+      }
+    } catch (SecurityException e) {
+      Log.w(TAG, e);
+      return;
+    }
+
+    searchIndex = new ContactSearchIndex(entries);
+    context.getContentResolver().notifyChange(Uri.parse(SEARCH_INDEX_URI), null);
+
+    Log.w(TAG, "Indexed " + entries.size() + " contacts in " + (System.currentTimeMillis() - startMillis) + "ms");
+  }
+
+  private void readSearchIndexEntries(@NonNull Cursor cursor, @NonNull List<ContactSearchIndex.Entry> entries) {
+    int idColumn          = cursor.getColumnIndexOrThrow(ID_COLUMN);
+    int nameColumn        = cursor.getColumnIndexOrThrow(NAME_COLUMN);
+    int numberColumn      = cursor.getColumnIndexOrThrow(NUMBER_COLUMN);
+    int numberTypeColumn  = cursor.getColumnIndexOrThrow(NUMBER_TYPE_COLUMN);
+    int labelColumn       = cursor.getColumnIndexOrThrow(LABEL_COLUMN);
+    int contactTypeColumn = cursor.getColumnIndexOrThrow(CONTACT_TYPE_COLUMN);
+    int contactIdColumn   = cursor.getColumnIndexOrThrow(CONTACT_ID_COLUMN);
+
+    while (cursor.moveToNext()) {
+      entries.add(new ContactSearchIndex.Entry(cursor.getLong(idColumn),
+                                               cursor.getLong(contactIdColumn),
+                                               cursor.getString(nameColumn),
+                                               cursor.getString(numberColumn),
+                                               cursor.getInt(numberTypeColumn),
+                                               cursor.getString(labelColumn),
+                                               cursor.getInt(contactTypeColumn)));
+    }
+  }
+
   public synchronized @NonNull List<Address> setRegisteredUsers(@NonNull Account account,
                                                                 @NonNull List<Address> registeredAddressList,
                                                                 boolean remove)
@@ -146,7 +239,8 @@ public class ContactsDatabase {
                                        ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
                                        ContactsContract.CommonDataKinds.Phone.NUMBER,
                                        ContactsContract.CommonDataKinds.Phone.TYPE,
-                                       ContactsContract.CommonDataKinds.Phone.LABEL};
+                                       ContactsContract.CommonDataKinds.Phone.LABEL,
+                                       ContactsContract.CommonDataKinds.Phone.CONTACT_ID};
 
     String sort = ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " COLLATE LOCALIZED ASC";
 
@@ -156,6 +250,7 @@ public class ContactsDatabase {
       put(NUMBER_COLUMN, ContactsContract.CommonDataKinds.Phone.NUMBER);
       put(NUMBER_TYPE_COLUMN, ContactsContract.CommonDataKinds.Phone.TYPE);
       put(LABEL_COLUMN, ContactsContract.CommonDataKinds.Phone.LABEL);
+      put(CONTACT_ID_COLUMN, ContactsContract.CommonDataKinds.Phone.CONTACT_ID);
     }};
 
     String formattedNumber = "REPLACE(REPLACE(REPLACE(REPLACE(data1,' ',''),'-',''),'(',''),')','')";
@@ -182,7 +277,8 @@ public class ContactsDatabase {
   @NonNull Cursor queryTextSecureContacts(String filter) {
     String[] projection = new String[] {ContactsContract.Data._ID,
                                         ContactsContract.Contacts.DISPLAY_NAME,
-                                        ContactsContract.Data.DATA1};
+                                        ContactsContract.Data.DATA1,
+                                        ContactsContract.Data.CONTACT_ID};
 
     String  sort = ContactsContract.Contacts.DISPLAY_NAME + " COLLATE LOCALIZED ASC";
 
@@ -190,6 +286,7 @@ public class ContactsDatabase {
       put(ID_COLUMN, ContactsContract.Data._ID);
       put(NAME_COLUMN, ContactsContract.Contacts.DISPLAY_NAME);
       put(NUMBER_COLUMN, ContactsContract.Data.DATA1);
+      put(CONTACT_ID_COLUMN, ContactsContract.Data.CONTACT_ID);
     }};
 
     Cursor cursor;
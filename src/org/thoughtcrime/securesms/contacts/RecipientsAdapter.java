@@ -18,6 +18,7 @@
 package org.thoughtcrime.securesms.contacts;
 
 import org.thoughtcrime.securesms.R;
+import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.recipients.RecipientsFormatter;
 
 import android.content.ContentResolver;
@@ -118,7 +119,13 @@ public class RecipientsAdapter extends ResourceCursorAdapter {
 
     @Override
     public Cursor runQueryOnBackgroundThread(CharSequence constraint) {
-       return mContactAccessor.getCursorForRecipientFilter( constraint, mContentResolver );
+        ContactSearchIndex searchIndex = DatabaseFactory.getContactsDatabase(mContext).getSearchIndex();
+
+        if (searchIndex != null) {
+            return mContactAccessor.getCursorForRecipientFilter(constraint, searchIndex);
+        } else {
+            return mContactAccessor.getCursorForRecipientFilter(constraint, mContentResolver);
+        }
     }
 
     /**
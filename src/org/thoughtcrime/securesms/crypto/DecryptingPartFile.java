@@ -0,0 +1,150 @@
+package org.thoughtcrime.securesms.crypto;
+
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * Random access reads over a part written by {@link EncryptingPartOutputStream}.
+ *
+ * Parts are an IV, AES/CBC ciphertext and a MAC over both. In CBC each block only depends on
+ * its own ciphertext and the ciphertext block before it, so a read at any position only has
+ * to decrypt the blocks it covers. The MAC is checked once when the file is opened, and the
+ * plaintext length comes from the padding in the final block.
+ */
+public class DecryptingPartFile implements Closeable {
+
+  private static final int BLOCK_SIZE = 16;
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final MasterSecret     masterSecret;
+  private final RandomAccessFile file;
+  private final long             cipherTextLength;
+  private final long             size;
+  private final Cipher           cipher;
+  private final byte[]           cipherText = new byte[CHUNK_SIZE];
+  private final byte[]           plainText  = new byte[CHUNK_SIZE];
+  private final byte[]           iv         = new byte[BLOCK_SIZE];
+
+  public static DecryptingPartFile open(@NonNull MasterSecret masterSecret, @NonNull File file) throws IOException {
+    long cipherTextLength = file.length() - DecryptingPartInputStream.IV_LENGTH - DecryptingPartInputStream.MAC_LENGTH;
+
+    if (cipherTextLength <= 0 || cipherTextLength % BLOCK_SIZE != 0) {
+      throw new IOException("Bad part length: " + file.length());
+    }
+
+    DecryptingPartInputStream.verifyMac(masterSecret, file);
+
+    return new DecryptingPartFile(masterSecret, new RandomAccessFile(file, "r"), cipherTextLength);
+  }
+
+  private DecryptingPartFile(MasterSecret masterSecret, RandomAccessFile file, long cipherTextLength)
+      throws IOException
+  {
+    try {
+      this.masterSecret     = masterSecret;
+      this.file             = file;
+      this.cipherTextLength = cipherTextLength;
+      this.cipher           = Cipher.getInstance("AES/CBC/NoPadding");
+      this.size             = cipherTextLength - BLOCK_SIZE + getFinalBlockLength();
+    } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+      throw new AssertionError(e);
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the number of bytes read, which is only less than length at the end of the
+   *         part, or -1 if position is at or past the end.
+   */
+  public synchronized int read(long position, byte[] buffer, int offset, int length) throws IOException {
+    if (position >= size) return -1;
+
+    length = (int)Math.min(length, size - position);
+
+    long firstBlock = position / BLOCK_SIZE;
+    long lastBlock  = (position + length - 1) / BLOCK_SIZE;
+    int  skip       = (int)(position % BLOCK_SIZE);
+    int  copied     = 0;
+
+    // The ciphertext block before the first one we need sits where the IV would be for it,
+    // and the file's own IV is right before the first block.
+    seekAndRead(firstBlock * BLOCK_SIZE, iv, BLOCK_SIZE);
+    initCipher(iv);
+
+    for (long block = firstBlock; block <= lastBlock;) {
+      int blocks = (int)Math.min(CHUNK_SIZE / BLOCK_SIZE, lastBlock - block + 1);
+      int chunk  = blocks * BLOCK_SIZE;
+
+      file.readFully(cipherText, 0, chunk);
+
+      try {
+        cipher.update(cipherText, 0, chunk, plainText, 0);
+      } catch (GeneralSecurityException e) {
+        throw new AssertionError(e);
+      }
+
+      int count = Math.min(chunk - skip, length - copied);
+      System.arraycopy(plainText, skip, buffer, offset + copied, count);
+
+      copied += count;
+      skip    = 0;
+      block  += blocks;
+    }
+
+    return copied;
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  private int getFinalBlockLength() throws IOException {
+    byte[] blocks = new byte[BLOCK_SIZE * 2];
+    seekAndRead(cipherTextLength - BLOCK_SIZE, blocks, blocks.length);
+
+    try {
+      Cipher paddedCipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+      paddedCipher.init(Cipher.DECRYPT_MODE, masterSecret.getEncryptionKey(),
+                        new IvParameterSpec(blocks, 0, BLOCK_SIZE));
+
+      return paddedCipher.doFinal(blocks, BLOCK_SIZE, BLOCK_SIZE).length;
+    } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | InvalidAlgorithmParameterException e) {
+      throw new AssertionError(e);
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Bad padding", e);
+    }
+  }
+
+  private void initCipher(byte[] iv) {
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, masterSecret.getEncryptionKey(), new IvParameterSpec(iv));
+    } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private void seekAndRead(long position, byte[] buffer, int length) throws IOException {
+    file.seek(position);
+    file.readFully(buffer, 0, length);
+  }
+}
@@ -41,8 +41,8 @@ public class DecryptingPartInputStream {
 
   private static final String TAG = DecryptingPartInputStream.class.getSimpleName();
 
-  private static final int IV_LENGTH  = 16;
-  private static final int MAC_LENGTH = 20;
+  static final int IV_LENGTH  = 16;
+  static final int MAC_LENGTH = 20;
 
   public static InputStream createFor(MasterSecret masterSecret, File file)
       throws IOException
@@ -68,7 +68,7 @@ public class DecryptingPartInputStream {
     }
   }
 
-  private static void verifyMac(MasterSecret masterSecret, File file) throws IOException {
+  static void verifyMac(MasterSecret masterSecret, File file) throws IOException {
     Mac             mac        = initializeMac(masterSecret.getMacKey());
     FileInputStream macStream  = new FileInputStream(file);
     InputStream     dataStream = new LimitedInputStream(new FileInputStream(file), file.length() - MAC_LENGTH);
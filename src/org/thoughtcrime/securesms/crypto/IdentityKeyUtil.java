@@ -48,6 +48,8 @@ public class IdentityKeyUtil {
   private static final String IDENTITY_PUBLIC_KEY_PREF                    = "pref_identity_public_v3";
   private static final String IDENTITY_PRIVATE_KEY_PREF                   = "pref_identity_private_v3";
 
+  private static volatile IdentityKeyPair cachedIdentityKeyPair;
+
   public static boolean hasIdentityKey(Context context) {
     SharedPreferences preferences = context.getSharedPreferences(MasterSecretUtil.PREFERENCES_NAME, 0);
 
@@ -57,25 +59,33 @@ public class IdentityKeyUtil {
   }
 
   public static @NonNull IdentityKey getIdentityKey(@NonNull Context context) {
-    if (!hasIdentityKey(context)) throw new AssertionError("There isn't one!");
+    return getIdentityKeyPair(context).getPublicKey();
+  }
 
-    try {
-      byte[] publicKeyBytes = Base64.decode(retrieve(context, IDENTITY_PUBLIC_KEY_PREF));
-      return new IdentityKey(publicKeyBytes, 0);
-    } catch (IOException | InvalidKeyException e) {
-      throw new AssertionError(e);
+  /**
+   * The key pair is decoded from preferences once and kept, since it's needed for every
+   * message. Saving either key drops the kept pair.
+   */
+  public static @NonNull IdentityKeyPair getIdentityKeyPair(@NonNull Context context) {
+    IdentityKeyPair identityKeyPair = cachedIdentityKeyPair;
+
+    if (identityKeyPair == null) {
+      identityKeyPair       = readIdentityKeyPair(context);
+      cachedIdentityKeyPair = identityKeyPair;
     }
+
+    return identityKeyPair;
   }
 
-  public static @NonNull IdentityKeyPair getIdentityKeyPair(@NonNull Context context) {
+  private static @NonNull IdentityKeyPair readIdentityKeyPair(@NonNull Context context) {
     if (!hasIdentityKey(context)) throw new AssertionError("There isn't one!");
 
     try {
-      IdentityKey  publicKey  = getIdentityKey(context);
+      IdentityKey  publicKey  = new IdentityKey(Base64.decode(retrieve(context, IDENTITY_PUBLIC_KEY_PREF)), 0);
       ECPrivateKey privateKey = Curve.decodePrivatePoint(Base64.decode(retrieve(context, IDENTITY_PRIVATE_KEY_PREF)));
 
       return new IdentityKeyPair(publicKey, privateKey);
-    } catch (IOException e) {
+    } catch (IOException | InvalidKeyException e) {
       throw new AssertionError(e);
     }
   }
@@ -139,6 +149,8 @@ public class IdentityKeyUtil {
 
     preferencesEditor.putString(key, value);
     if (!preferencesEditor.commit()) throw new AssertionError("failed to save identity key/value to shared preferences");
+
+    cachedIdentityKeyPair = null;
   }
 
   private static void delete(Context context, String key) {
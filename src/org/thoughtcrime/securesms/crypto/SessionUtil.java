@@ -20,7 +20,7 @@ public class SessionUtil {
   }
 
   public static boolean hasSession(Context context, MasterSecret masterSecret, @NonNull Address address) {
-    SessionStore          sessionStore   = new TextSecureSessionStore(context, masterSecret);
+    SessionStore          sessionStore   = new TextSecureSessionStore(context);
     SignalProtocolAddress axolotlAddress = new SignalProtocolAddress(address.serialize(), SignalServiceAddress.DEFAULT_DEVICE_ID);
 
     return sessionStore.containsSession(axolotlAddress);
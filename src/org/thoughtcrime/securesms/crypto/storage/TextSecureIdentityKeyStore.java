@@ -21,12 +21,26 @@ import org.whispersystems.libsignal.util.guava.Optional;
 
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Trust checks read identities from {@link IdentityDatabase}'s in-memory cache without taking
+ * any lock, so concurrent encrypts and decrypts don't queue behind each other. Saving an
+ * identity reads, compares and writes it, so saves lock on their address, and only saves for
+ * addresses that share a lock stripe wait for each other.
+ */
 public class TextSecureIdentityKeyStore implements IdentityKeyStore {
 
   private static final int TIMESTAMP_THRESHOLD_SECONDS = 5;
 
   private static final String TAG = TextSecureIdentityKeyStore.class.getSimpleName();
-  private static final Object LOCK = new Object();
+
+  private static final int      SAVE_LOCKS = 16;
+  private static final Object[] LOCKS      = new Object[SAVE_LOCKS];
+
+  static {
+    for (int i = 0; i < SAVE_LOCKS; i++) {
+      LOCKS[i] = new Object();
+    }
+  }
 
   private final Context context;
 
@@ -45,7 +59,7 @@ public class TextSecureIdentityKeyStore implements IdentityKeyStore {
   }
 
   public boolean saveIdentity(SignalProtocolAddress address, IdentityKey identityKey, boolean nonBlockingApproval) {
-    synchronized (LOCK) {
+    synchronized (getLock(address)) {
       IdentityDatabase         identityDatabase = DatabaseFactory.getIdentityDatabase(context);
       Address                  signalAddress    = Address.fromExternal(context, address.getName());
       Optional<IdentityRecord> identityRecord   = identityDatabase.getIdentity(signalAddress);
@@ -91,23 +105,26 @@ public class TextSecureIdentityKeyStore implements IdentityKeyStore {
 
   @Override
   public boolean isTrustedIdentity(SignalProtocolAddress address, IdentityKey identityKey, Direction direction) {
-    synchronized (LOCK) {
-      IdentityDatabase identityDatabase = DatabaseFactory.getIdentityDatabase(context);
-      String           ourNumber        = TextSecurePreferences.getLocalNumber(context);
-      Address          theirAddress     = Address.fromExternal(context, address.getName());
+    IdentityDatabase identityDatabase = DatabaseFactory.getIdentityDatabase(context);
+    String           ourNumber        = TextSecurePreferences.getLocalNumber(context);
+    Address          theirAddress     = Address.fromExternal(context, address.getName());
 
-      if (ourNumber.equals(address.getName()) || Address.fromSerialized(ourNumber).equals(theirAddress)) {
-        return identityKey.equals(IdentityKeyUtil.getIdentityKey(context));
-      }
+    if (ourNumber.equals(address.getName()) || Address.fromSerialized(ourNumber).equals(theirAddress)) {
+      return identityKey.equals(IdentityKeyUtil.getIdentityKey(context));
+    }
 
-      switch (direction) {
-        case SENDING:   return isTrustedForSending(identityKey, identityDatabase.getIdentity(theirAddress));
-        case RECEIVING: return true;
-        default:        throw new AssertionError("Unknown direction: " + direction);
-      }
+    switch (direction) {
+      case SENDING:   return isTrustedForSending(identityKey, identityDatabase.getIdentity(theirAddress));
+      case RECEIVING: return true;
+      default:        throw new AssertionError("Unknown direction: " + direction);
     }
   }
 
+  private static Object getLock(SignalProtocolAddress address) {
+    int hash = address.getName().hashCode();
+    return LOCKS[(hash ^ (hash >>> 16)) & (SAVE_LOCKS - 1)];
+  }
+
   private boolean isTrustedForSending(IdentityKey identityKey, Optional<IdentityRecord> identityRecord) {
     if (!identityRecord.isPresent()) {
       Log.w(TAG, "Nothing here, returning true...");
@@ -0,0 +1,54 @@
+package org.thoughtcrime.securesms.database;
+
+import android.support.annotation.NonNull;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Defers the side effects of a write, like events, notifications and updates to recipients
+ * held in memory, until the transaction around it commits. A caller that opens a long
+ * transaction calls {@link #hold()} first and {@link #release(boolean)} once it has ended,
+ * so that nothing is seen or kept of a write that rolled back. Outside of that, actions
+ * run immediately.
+ */
+public class AfterCommit {
+
+  private static final ThreadLocal<List<Runnable>> heldActions = new ThreadLocal<>();
+
+  public static void hold() {
+    if (heldActions.get() == null) {
+      heldActions.set(new LinkedList<Runnable>());
+    }
+  }
+
+  /**
+   * @return true if the calling thread is holding its actions for a transaction that hasn't
+   * ended yet.
+   */
+  public static boolean isHeld() {
+    return heldActions.get() != null;
+  }
+
+  public static void run(@NonNull Runnable action) {
+    List<Runnable> held = heldActions.get();
+
+    if (held != null) held.add(action);
+    else              action.run();
+  }
+
+  /**
+   * @param committed true to run the held actions, false to drop them because the
+   *                  transaction that produced them rolled back.
+   */
+  public static void release(boolean committed) {
+    List<Runnable> held = heldActions.get();
+    heldActions.remove();
+
+    if (held != null && committed) {
+      for (Runnable action : held) {
+        action.run();
+      }
+    }
+  }
+}
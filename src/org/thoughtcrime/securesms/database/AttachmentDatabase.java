@@ -84,6 +84,14 @@ public class AttachmentDatabase extends Database {
           static final String VOICE_NOTE             = "voice_note";
   public  static final String FAST_PREFLIGHT_ID      = "fast_preflight_id";
   public  static final String FN                     = "fn";
+          static final String MEDIA_KIND             = "media_kind";
+          static final String MEDIA_THREAD_ID        = "media_thread_id";
+          static final String MEDIA_DATE             = "media_date";
+
+  public static final int MEDIA_KIND_OTHER = 0;
+  public static final int MEDIA_KIND_IMAGE = 1;
+  public static final int MEDIA_KIND_VIDEO = 2;
+  public static final int MEDIA_KIND_AUDIO = 3;
 
   public static final int TRANSFER_PROGRESS_DONE    = 0;
   public static final int TRANSFER_PROGRESS_STARTED = 1;
@@ -107,11 +115,14 @@ public class AttachmentDatabase extends Database {
     TRANSFER_STATE + " INTEGER, "+ DATA + " TEXT, " + SIZE + " INTEGER, "   +
     FILE_NAME + " TEXT, " + THUMBNAIL + " TEXT, " + THUMBNAIL_ASPECT_RATIO + " REAL, " +
     UNIQUE_ID + " INTEGER NOT NULL, " + DIGEST + " BLOB, " + FAST_PREFLIGHT_ID + " TEXT, " +
-    VOICE_NOTE + " INTEGER DEFAULT 0);";
+    VOICE_NOTE + " INTEGER DEFAULT 0, " + MEDIA_KIND + " INTEGER DEFAULT 0, " +
+    MEDIA_THREAD_ID + " INTEGER DEFAULT -1, " + MEDIA_DATE + " INTEGER DEFAULT 0);";
 
   public static final String[] CREATE_INDEXS = {
     "CREATE INDEX IF NOT EXISTS part_mms_id_index ON " + TABLE_NAME + " (" + MMS_ID + ");",
     "CREATE INDEX IF NOT EXISTS pending_push_index ON " + TABLE_NAME + " (" + TRANSFER_STATE + ");",
+    "CREATE INDEX IF NOT EXISTS part_media_thread_kind_date_index ON " + TABLE_NAME + " (" + MEDIA_THREAD_ID + ", " + MEDIA_KIND + ", " + MEDIA_DATE + ");",
+    "CREATE INDEX IF NOT EXISTS part_media_kind_date_index ON " + TABLE_NAME + " (" + MEDIA_KIND + ", " + MEDIA_DATE + ");",
   };
 
   private final ExecutorService thumbnailExecutor = Util.newSingleThreadedLifoExecutor();
@@ -220,6 +231,21 @@ public class AttachmentDatabase extends Database {
 
   @SuppressWarnings("ResultOfMethodCallIgnored")
   public void deleteAttachmentsForMessage(long mmsId) {
+    List<File> files = new LinkedList<>();
+
+    deleteAttachmentRowsForMessage(mmsId, files);
+
+    for (File file : files) {
+      file.delete();
+    }
+  }
+
+  /**
+   * Deletes the attachment rows of a message, but not their files. The data and thumbnail
+   * files are added to {@code files} for the caller to delete once the transaction the rows
+   * were deleted in has committed.
+   */
+  /*package*/ void deleteAttachmentRowsForMessage(long mmsId, @NonNull List<File> files) {
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
     Cursor cursor           = null;
 
@@ -232,11 +258,11 @@ public class AttachmentDatabase extends Database {
         String thumbnail = cursor.getString(1);
 
         if (!TextUtils.isEmpty(data)) {
-          new File(data).delete();
+          files.add(new File(data));
         }
 
         if (!TextUtils.isEmpty(thumbnail)) {
-          new File(thumbnail).delete();
+          files.add(new File(thumbnail));
         }
       }
     } finally {
@@ -290,19 +316,32 @@ public class AttachmentDatabase extends Database {
     return partData.second;
   }
 
+  /**
+   * The message's thread and display date are recorded with each attachment, so that
+   * gallery queries can be answered from the part table's media indexes alone.
+   */
   void insertAttachmentsForMessage(@NonNull MasterSecretUnion masterSecret,
                                    long mmsId,
+                                   long threadId,
+                                   long date,
                                    @NonNull List<Attachment> attachments)
       throws MmsException
   {
     Log.w(TAG, "insertParts(" + attachments.size() + ")");
 
     for (Attachment attachment : attachments) {
-      AttachmentId attachmentId = insertAttachment(masterSecret, mmsId, attachment);
+      AttachmentId attachmentId = insertAttachment(masterSecret, mmsId, threadId, date, attachment);
       Log.w(TAG, "Inserted attachment at ID: " + attachmentId);
     }
   }
 
+  static int getMediaKind(@Nullable String contentType) {
+    if      (MediaUtil.isImageType(contentType)) return MEDIA_KIND_IMAGE;
+    else if (MediaUtil.isVideoType(contentType)) return MEDIA_KIND_VIDEO;
+    else if (MediaUtil.isAudioType(contentType)) return MEDIA_KIND_AUDIO;
+    else                                         return MEDIA_KIND_OTHER;
+  }
+
   public @NonNull Attachment updateAttachmentData(@NonNull MasterSecret masterSecret,
                                                   @NonNull Attachment attachment,
                                                   @NonNull MediaStream mediaStream)
@@ -321,6 +360,7 @@ public class AttachmentDatabase extends Database {
     ContentValues contentValues = new ContentValues();
     contentValues.put(SIZE, dataSize);
     contentValues.put(CONTENT_TYPE, mediaStream.getMimeType());
+    contentValues.put(MEDIA_KIND, getMediaKind(mediaStream.getMimeType()));
 
     database.update(TABLE_NAME, contentValues, PART_ID_WHERE, databaseAttachment.getAttachmentId().toStrings());
 
@@ -493,7 +533,7 @@ public class AttachmentDatabase extends Database {
   }
 
 
-  private AttachmentId insertAttachment(MasterSecretUnion masterSecret, long mmsId, Attachment attachment)
+  private AttachmentId insertAttachment(MasterSecretUnion masterSecret, long mmsId, long threadId, long date, Attachment attachment)
       throws MmsException
   {
     Log.w(TAG, "Inserting attachment for mms id: " + mmsId);
@@ -515,6 +555,9 @@ public class AttachmentDatabase extends Database {
     ContentValues contentValues = new ContentValues();
     contentValues.put(MMS_ID, mmsId);
     contentValues.put(CONTENT_TYPE, attachment.getContentType());
+    contentValues.put(MEDIA_KIND, getMediaKind(attachment.getContentType()));
+    contentValues.put(MEDIA_THREAD_ID, threadId);
+    contentValues.put(MEDIA_DATE, date);
     contentValues.put(TRANSFER_STATE, attachment.getTransferState());
     contentValues.put(UNIQUE_ID, uniqueId);
     contentValues.put(CONTENT_LOCATION, attachment.getLocation());
@@ -638,12 +681,18 @@ public class AttachmentDatabase extends Database {
 
       EncryptedMediaDataSource dataSource = new EncryptedMediaDataSource(masterSecret, mediaFile);
       MediaMetadataRetriever   retriever  = new MediaMetadataRetriever();
-      retriever.setDataSource(dataSource);
+      long                     startTime  = System.currentTimeMillis();
 
-      Bitmap bitmap = retriever.getFrameAtTime(1000);
+      try {
+        retriever.setDataSource(dataSource);
 
-      Log.w(TAG, "Generated video thumbnail...");
-      return new ThumbnailData(bitmap);
+        Bitmap bitmap = retriever.getFrameAtTime(1000);
+
+        Log.w(TAG, "Generated video thumbnail in " + (System.currentTimeMillis() - startTime) + "ms");
+        return new ThumbnailData(bitmap);
+      } finally {
+        retriever.release();
+      }
     }
   }
 }
@@ -95,6 +95,16 @@ public abstract class CursorRecyclerViewAdapter<VH extends RecyclerView.ViewHold
       return null;
     }
 
+    final Cursor oldCursor = replaceCursor(newCursor);
+    notifyDataSetChanged();
+    return oldCursor;
+  }
+
+  /**
+   * Swaps in a new cursor without notifying, for subclasses that can describe the change more
+   * precisely than {@link #notifyDataSetChanged()}.
+   */
+  protected Cursor replaceCursor(Cursor newCursor) {
     final Cursor oldCursor = cursor;
     if (oldCursor != null) {
       oldCursor.unregisterDataSetObserver(observer);
@@ -106,7 +116,6 @@ public abstract class CursorRecyclerViewAdapter<VH extends RecyclerView.ViewHold
     }
 
     valid = cursor != null;
-    notifyDataSetChanged();
     return oldCursor;
   }
 
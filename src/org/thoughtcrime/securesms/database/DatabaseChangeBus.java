@@ -0,0 +1,357 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects change notifications from the table classes and delivers them in batches.
+ *
+ * A sync can write hundreds of rows, and every write used to notify on its own, reloading
+ * each observing loader once per row. Notifications are now held for a frame, merged, and
+ * delivered once per URI. A change posted from inside a transaction isn't delivered until that
+ * transaction has ended, so an observer that re-queries always sees the write that woke it up.
+ *
+ * Alongside the ContentResolver notifications, {@link Listener}s receive a {@link ChangeSet}
+ * describing which messages were inserted, updated or deleted in each thread.
+ */
+public class DatabaseChangeBus {
+
+  private static final String TAG = DatabaseChangeBus.class.getSimpleName();
+
+  static final String CONVERSATION_URI      = "content://xecurechat/thread/";
+  static final String CONVERSATION_LIST_URI = "content://xecurechat/conversation-list";
+
+  private static final long FRAME_MILLIS = 16;
+
+  private static DatabaseChangeBus instance;
+
+  public static synchronized DatabaseChangeBus getInstance(Context context) {
+    if (instance == null) {
+      instance = new DatabaseChangeBus(context.getApplicationContext());
+    }
+
+    return instance;
+  }
+
+  private final Context       context;
+  private final Handler       handler;
+  private final Set<Listener> listeners = Collections.newSetFromMap(new WeakHashMap<Listener, Boolean>());
+
+  private final AtomicLong notificationsPosted  = new AtomicLong();
+  private final AtomicLong notificationsEmitted = new AtomicLong();
+  private final AtomicLong barriersTaken        = new AtomicLong();
+
+  private Map<Long, ThreadChange> pendingThreads = new HashMap<>();
+  private boolean                 pendingConversationList;
+  private SQLiteOpenHelper        pendingHelper;
+  private boolean                 pendingInTransaction;
+  private boolean                 flushScheduled;
+
+  private DatabaseChangeBus(Context context) {
+    HandlerThread thread = new HandlerThread(TAG);
+    thread.start();
+
+    this.context = context;
+    this.handler = new Handler(thread.getLooper());
+  }
+
+  /**
+   * Listeners are held weakly and called on the bus thread, before observers of the
+   * affected URIs are notified.
+   */
+  public void addListener(@NonNull Listener listener) {
+    synchronized (listeners) {
+      listeners.add(listener);
+    }
+  }
+
+  public void removeListener(@NonNull Listener listener) {
+    synchronized (listeners) {
+      listeners.remove(listener);
+    }
+  }
+
+  public long getNotificationsPosted() {
+    return notificationsPosted.get();
+  }
+
+  public long getNotificationsEmitted() {
+    return notificationsEmitted.get();
+  }
+
+  public long getNotificationsCoalesced() {
+    return notificationsPosted.get() - notificationsEmitted.get();
+  }
+
+  public long getBarriersTaken() {
+    return barriersTaken.get();
+  }
+
+  public void logReport() {
+    Log.w(TAG, "Change notifications posted=" + getNotificationsPosted() +
+               " emitted=" + getNotificationsEmitted() +
+               " coalesced=" + getNotificationsCoalesced() +
+               " barriers=" + getBarriersTaken());
+  }
+
+  void notifyThreadChanged(@NonNull SQLiteOpenHelper helper, long threadId) {
+    boolean inTransaction = isInTransaction(helper);
+
+    synchronized (this) {
+      getPendingThread(threadId).complete = false;
+      schedule(helper, inTransaction);
+    }
+  }
+
+  void notifyMessageInserted(@NonNull SQLiteOpenHelper helper, long threadId, @NonNull MessageId messageId) {
+    boolean inTransaction = isInTransaction(helper);
+
+    synchronized (this) {
+      getPendingThread(threadId).inserted.add(messageId);
+      schedule(helper, inTransaction);
+    }
+  }
+
+  void notifyMessageUpdated(@NonNull SQLiteOpenHelper helper, long threadId, @NonNull MessageId messageId) {
+    boolean inTransaction = isInTransaction(helper);
+
+    synchronized (this) {
+      getPendingThread(threadId).updated.add(messageId);
+      schedule(helper, inTransaction);
+    }
+  }
+
+  void notifyMessageDeleted(@NonNull SQLiteOpenHelper helper, long threadId, @NonNull MessageId messageId) {
+    boolean inTransaction = isInTransaction(helper);
+
+    synchronized (this) {
+      getPendingThread(threadId).deleted.add(messageId);
+      schedule(helper, inTransaction);
+    }
+  }
+
+  void notifyConversationListChanged(@NonNull SQLiteOpenHelper helper) {
+    boolean inTransaction = isInTransaction(helper);
+
+    synchronized (this) {
+      pendingConversationList = true;
+      schedule(helper, inTransaction);
+    }
+  }
+
+  /**
+   * Only says whether the calling thread holds a transaction, which doesn't touch the
+   * database. It's asked before taking the bus lock, since opening the helper locks it.
+   */
+  private static boolean isInTransaction(@NonNull SQLiteOpenHelper helper) {
+    return helper.getWritableDatabase().inTransaction();
+  }
+
+  private ThreadChange getPendingThread(long threadId) {
+    ThreadChange change = pendingThreads.get(threadId);
+
+    if (change == null) {
+      change = new ThreadChange(threadId);
+      pendingThreads.put(threadId, change);
+    }
+
+    return change;
+  }
+
+  private void schedule(@NonNull SQLiteOpenHelper helper, boolean inTransaction) {
+    notificationsPosted.incrementAndGet();
+    pendingHelper         = helper;
+    pendingInTransaction |= inTransaction;
+
+    if (!flushScheduled) {
+      flushScheduled = true;
+      handler.postDelayed(this::flush, FRAME_MILLIS);
+    }
+  }
+
+  private void flush() {
+    SQLiteOpenHelper helper;
+    boolean          inTransaction;
+    ChangeSet        changes;
+
+    synchronized (this) {
+      helper        = pendingHelper;
+      inTransaction = pendingInTransaction;
+      changes       = takePendingChanges();
+    }
+
+    if (inTransaction) {
+      try {
+        awaitWriter(helper.getWritableDatabase());
+      } catch (RuntimeException e) {
+        Log.w(TAG, e);
+      }
+    }
+
+    for (Listener listener : getListeners()) {
+      try {
+        listener.onDatabaseChanged(changes);
+      } catch (RuntimeException e) {
+        Log.w(TAG, e);
+      }
+    }
+
+    for (long threadId : changes.getThreadIds()) {
+      context.getContentResolver().notifyChange(Uri.parse(CONVERSATION_URI + threadId), null);
+      notificationsEmitted.incrementAndGet();
+    }
+
+    if (changes.isConversationListChanged()) {
+      context.getContentResolver().notifyChange(Uri.parse(CONVERSATION_LIST_URI), null);
+      notificationsEmitted.incrementAndGet();
+    }
+  }
+
+  /**
+   * Waits for the writer connection, so that every transaction which posted one of the changes
+   * just taken has ended. A transaction holds the writer connection from beginning to end, and
+   * a statement that isn't a plain SELECT always runs on it, so reading the schema version
+   * waits for the connection without beginning a transaction or taking the database's write
+   * lock. Only flushes with a change posted from inside a transaction need it. If it fails, the
+   * changes are delivered anyway.
+   */
+  private void awaitWriter(@NonNull SQLiteDatabase database) {
+    long start = System.nanoTime();
+    DatabaseUtils.longForQuery(database, "PRAGMA user_version", null);
+
+    QueryProfiler.getInstance().recordBarrierWait(System.nanoTime() - start);
+    barriersTaken.incrementAndGet();
+  }
+
+  private synchronized ChangeSet takePendingChanges() {
+    ChangeSet changes = new ChangeSet(pendingThreads, pendingConversationList);
+
+    pendingThreads          = new HashMap<>();
+    pendingConversationList = false;
+    pendingInTransaction    = false;
+    flushScheduled          = false;
+
+    return changes;
+  }
+
+  private List<Listener> getListeners() {
+    synchronized (listeners) {
+      return new LinkedList<>(listeners);
+    }
+  }
+
+  public interface Listener {
+    void onDatabaseChanged(@NonNull ChangeSet changes);
+  }
+
+  public static class ChangeSet {
+
+    private final Map<Long, ThreadChange> threads;
+    private final boolean                 conversationListChanged;
+
+    private ChangeSet(@NonNull Map<Long, ThreadChange> threads, boolean conversationListChanged) {
+      this.threads                 = threads;
+      this.conversationListChanged = conversationListChanged;
+    }
+
+    public @NonNull Set<Long> getThreadIds() {
+      return threads.keySet();
+    }
+
+    public @Nullable ThreadChange getThreadChange(long threadId) {
+      return threads.get(threadId);
+    }
+
+    public boolean isConversationListChanged() {
+      return conversationListChanged;
+    }
+  }
+
+  public static class ThreadChange {
+
+    private final long           threadId;
+    private final Set<MessageId> inserted = new HashSet<>();
+    private final Set<MessageId> updated  = new HashSet<>();
+    private final Set<MessageId> deleted  = new HashSet<>();
+
+    private boolean complete = true;
+
+    private ThreadChange(long threadId) {
+      this.threadId = threadId;
+    }
+
+    public long getThreadId() {
+      return threadId;
+    }
+
+    /**
+     * @return false if some write only reported that the thread changed, in which case the
+     *         message sets are partial and anything in the thread may have changed.
+     */
+    public boolean isComplete() {
+      return complete;
+    }
+
+    public @NonNull Set<MessageId> getInserted() {
+      return inserted;
+    }
+
+    public @NonNull Set<MessageId> getUpdated() {
+      return updated;
+    }
+
+    public @NonNull Set<MessageId> getDeleted() {
+      return deleted;
+    }
+  }
+
+  public static class MessageId {
+
+    private final long    id;
+    private final boolean mms;
+
+    public MessageId(long id, boolean mms) {
+      this.id  = id;
+      this.mms = mms;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public boolean isMms() {
+      return mms;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (other == null || !(other instanceof MessageId)) return false;
+
+      MessageId that = (MessageId)other;
+      return this.id == that.id && this.mms == that.mms;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int)(id ^ (id >>> 32)) * 31 + (mms ? 1 : 0);
+    }
+  }
+}
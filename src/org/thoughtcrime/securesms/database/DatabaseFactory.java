@@ -19,6 +19,7 @@ package org.thoughtcrime.securesms.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
@@ -108,7 +109,13 @@ public class DatabaseFactory {
   private static final int PROFILES                                        = 41;
   private static final int PROFILE_SHARING_APPROVAL                        = 42;
   private static final int UNSEEN_NUMBER_OFFER                             = 43;
-  private static final int DATABASE_VERSION                                = 43;
+  private static final int INTRODUCED_EXPIRES_AT                           = 44;
+  private static final int INTRODUCED_MEDIA_INDEX                          = 45;
+  private static final int BINARY_PUSH_QUEUE                               = 46;
+  private static final int PENDING_RECEIPTS                                = 47;
+  private static final int PROFILE_FETCH_STATE                             = 48;
+  private static final int PROTOCOL_STORE                                  = 49;
+  private static final int DATABASE_VERSION                                = 49;
 
   private static final String DATABASE_NAME    = "messages.db";
   private static final Object lock             = new Object();
@@ -127,9 +134,13 @@ public class DatabaseFactory {
   private final IdentityDatabase identityDatabase;
   private final DraftDatabase draftDatabase;
   private final PushDatabase pushDatabase;
+  private final PendingReceiptDatabase pendingReceiptDatabase;
   private final GroupDatabase groupDatabase;
   private final RecipientDatabase recipientDatabase;
   private final ContactsDatabase contactsDatabase;
+  private final SessionDatabase sessionDatabase;
+  private final OneTimePreKeyDatabase preKeyDatabase;
+  private final SignedPreKeyDatabase signedPreKeyDatabase;
 
   public static DatabaseFactory getInstance(Context context) {
     synchronized (lock) {
@@ -180,6 +191,10 @@ public class DatabaseFactory {
     return getInstance(context).pushDatabase;
   }
 
+  public static PendingReceiptDatabase getPendingReceiptDatabase(Context context) {
+    return getInstance(context).pendingReceiptDatabase;
+  }
+
   public static GroupDatabase getGroupDatabase(Context context) {
     return getInstance(context).groupDatabase;
   }
@@ -192,8 +207,20 @@ public class DatabaseFactory {
     return getInstance(context).contactsDatabase;
   }
 
+  public static SessionDatabase getSessionDatabase(Context context) {
+    return getInstance(context).sessionDatabase;
+  }
+
+  public static OneTimePreKeyDatabase getPreKeyDatabase(Context context) {
+    return getInstance(context).preKeyDatabase;
+  }
+
+  public static SignedPreKeyDatabase getSignedPreKeyDatabase(Context context) {
+    return getInstance(context).signedPreKeyDatabase;
+  }
+
   private DatabaseFactory(Context context) {
-    this.databaseHelper    = new DatabaseHelper(context, DATABASE_NAME, null, DATABASE_VERSION);
+    this.databaseHelper    = new DatabaseHelper(context, DATABASE_NAME, QueryProfiler.getInstance().getCursorFactory(), DATABASE_VERSION);
     this.sms               = new SmsDatabase(context, databaseHelper);
     this.encryptingSms     = new EncryptingSmsDatabase(context, databaseHelper);
     this.mms               = new MmsDatabase(context, databaseHelper);
@@ -204,14 +231,18 @@ public class DatabaseFactory {
     this.identityDatabase  = new IdentityDatabase(context, databaseHelper);
     this.draftDatabase     = new DraftDatabase(context, databaseHelper);
     this.pushDatabase      = new PushDatabase(context, databaseHelper);
+    this.pendingReceiptDatabase = new PendingReceiptDatabase(context, databaseHelper);
     this.groupDatabase     = new GroupDatabase(context, databaseHelper);
     this.recipientDatabase = new RecipientDatabase(context, databaseHelper);
     this.contactsDatabase  = new ContactsDatabase(context);
+    this.sessionDatabase   = new SessionDatabase(context, databaseHelper);
+    this.preKeyDatabase    = new OneTimePreKeyDatabase(context, databaseHelper);
+    this.signedPreKeyDatabase = new SignedPreKeyDatabase(context, databaseHelper);
   }
 
   public void reset(Context context) {
     DatabaseHelper old = this.databaseHelper;
-    this.databaseHelper = new DatabaseHelper(context, DATABASE_NAME, null, DATABASE_VERSION);
+    this.databaseHelper = new DatabaseHelper(context, DATABASE_NAME, QueryProfiler.getInstance().getCursorFactory(), DATABASE_VERSION);
 
     this.sms.reset(databaseHelper);
     this.encryptingSms.reset(databaseHelper);
@@ -222,11 +253,43 @@ public class DatabaseFactory {
     this.identityDatabase.reset(databaseHelper);
     this.draftDatabase.reset(databaseHelper);
     this.pushDatabase.reset(databaseHelper);
+    this.pendingReceiptDatabase.reset(databaseHelper);
     this.groupDatabase.reset(databaseHelper);
     this.recipientDatabase.reset(databaseHelper);
+    this.sessionDatabase.reset(databaseHelper);
+    this.preKeyDatabase.reset(databaseHelper);
+    this.signedPreKeyDatabase.reset(databaseHelper);
     old.close();
   }
 
+  /**
+   * The connection every table writes through, for callers that need writes to several
+   * tables to commit together.
+   */
+  public SQLiteDatabase getRawDatabase() {
+    return databaseHelper.getWritableDatabase();
+  }
+
+  /**
+   * Imports the protocol store files that couldn't be read without the master secret when
+   * the database was upgraded.
+   */
+  public void migrateProtocolStore(MasterSecret masterSecret) {
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+    List<File>     migrated;
+
+    db.beginTransaction();
+
+    try {
+      migrated = ProtocolStoreMigrator.migrate(databaseHelper.context, db, masterSecret);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    ProtocolStoreMigrator.delete(migrated);
+  }
+
   public void onApplicationLevelUpgrade(Context context, MasterSecret masterSecret, int fromVersion,
                                         DatabaseUpgradeActivity.DatabaseUpgradeListener listener)
   {
@@ -519,11 +582,62 @@ public class DatabaseFactory {
 
     private static final String TAG = DatabaseHelper.class.getSimpleName();
 
+    /**
+     * Inbound bursts commit many small transactions, so let the WAL grow a little past
+     * SQLite's default of 1000 pages before a commit checkpoints it.
+     */
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 2000;
+
+    /**
+     * Once checkpointed, the WAL file is truncated back down to this size.
+     */
+    private static final long WAL_SIZE_LIMIT_BYTES = 4 * 1024 * 1024;
+
     private final Context context;
 
+    private List<File> migratedProtocolFiles;
+
     public DatabaseHelper(Context context, String name, CursorFactory factory, int version) {
       super(context, name, factory, version);
       this.context = context.getApplicationContext();
+
+      setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * With write-ahead logging the framework keeps a single primary connection, which
+     * serializes every write and transaction, alongside a pool of read-only connections.
+     * Loaders no longer wait behind the job threads writing inbound messages. These pragmas
+     * only matter on the primary connection, since that's the one that commits.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+      DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES, null);
+      DatabaseUtils.longForQuery(db, "PRAGMA journal_size_limit = " + WAL_SIZE_LIMIT_BYTES, null);
+    }
+
+    /**
+     * Files imported by an upgrade are deleted once it has committed, which is by the time
+     * the database is opened.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+      if (migratedProtocolFiles != null) {
+        ProtocolStoreMigrator.delete(migratedProtocolFiles);
+        migratedProtocolFiles = null;
+      }
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+      DecryptTransaction.awaitCommit();
+      return super.getWritableDatabase();
+    }
+
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+      DecryptTransaction.awaitCommit();
+      return super.getReadableDatabase();
     }
 
     @Override
@@ -535,8 +649,12 @@ public class DatabaseFactory {
       db.execSQL(IdentityDatabase.CREATE_TABLE);
       db.execSQL(DraftDatabase.CREATE_TABLE);
       db.execSQL(PushDatabase.CREATE_TABLE);
+      db.execSQL(PendingReceiptDatabase.CREATE_TABLE);
       db.execSQL(GroupDatabase.CREATE_TABLE);
       db.execSQL(RecipientDatabase.CREATE_TABLE);
+      db.execSQL(SessionDatabase.CREATE_TABLE);
+      db.execSQL(OneTimePreKeyDatabase.CREATE_TABLE);
+      db.execSQL(SignedPreKeyDatabase.CREATE_TABLE);
 
       executeStatements(db, SmsDatabase.CREATE_INDEXS);
       executeStatements(db, MmsDatabase.CREATE_INDEXS);
@@ -544,6 +662,9 @@ public class DatabaseFactory {
       executeStatements(db, ThreadDatabase.CREATE_INDEXS);
       executeStatements(db, DraftDatabase.CREATE_INDEXS);
       executeStatements(db, GroupDatabase.CREATE_INDEXS);
+      executeStatements(db, PushDatabase.CREATE_INDEXS);
+      executeStatements(db, PendingReceiptDatabase.CREATE_INDEXS);
+      executeStatements(db, RecipientDatabase.CREATE_INDEXS);
     }
 
     @Override
@@ -1333,6 +1454,83 @@ public class DatabaseFactory {
         db.execSQL("ALTER TABLE thread ADD COLUMN has_sent INTEGER DEFAULT 0");
       }
 
+      if (oldVersion < INTRODUCED_EXPIRES_AT) {
+        db.execSQL("ALTER TABLE sms ADD COLUMN expires_at INTEGER DEFAULT 0");
+        db.execSQL("ALTER TABLE mms ADD COLUMN expires_at INTEGER DEFAULT 0");
+        db.execSQL("UPDATE sms SET expires_at = expire_started + expires_in WHERE expire_started > 0 AND expires_in > 0");
+        db.execSQL("UPDATE mms SET expires_at = expire_started + expires_in WHERE expire_started > 0 AND expires_in > 0");
+        db.execSQL("CREATE INDEX IF NOT EXISTS sms_expires_at_index ON sms (expires_at)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS mms_expires_at_index ON mms (expires_at)");
+      }
+
+      if (oldVersion < INTRODUCED_MEDIA_INDEX) {
+        db.execSQL("ALTER TABLE part ADD COLUMN media_kind INTEGER DEFAULT 0");
+        db.execSQL("ALTER TABLE part ADD COLUMN media_thread_id INTEGER DEFAULT -1");
+        db.execSQL("ALTER TABLE part ADD COLUMN media_date INTEGER DEFAULT 0");
+        db.execSQL("UPDATE part SET media_kind = CASE WHEN ct LIKE 'image/%' THEN 1 " +
+                                                    "WHEN ct LIKE 'video/%' THEN 2 " +
+                                                    "WHEN ct LIKE 'audio/%' THEN 3 " +
+                                                    "ELSE 0 END");
+        db.execSQL("UPDATE part SET media_thread_id = (SELECT thread_id FROM mms WHERE mms._id = part.mid), " +
+                                   "media_date = (SELECT CASE WHEN msg_box & " + 0x200000 + " != 0 THEN date ELSE date_received END " +
+                                                 "FROM mms WHERE mms._id = part.mid)");
+        db.execSQL("UPDATE part SET media_thread_id = -1, media_date = 0 WHERE media_thread_id IS NULL");
+        db.execSQL("CREATE INDEX IF NOT EXISTS part_media_thread_kind_date_index ON part (media_thread_id, media_kind, media_date)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS part_media_kind_date_index ON part (media_kind, media_date)");
+      }
+
+      if (oldVersion < BINARY_PUSH_QUEUE) {
+        db.execSQL("CREATE TABLE push_binary (_id INTEGER PRIMARY KEY, type INTEGER, source TEXT, device_id INTEGER, body BLOB, content BLOB, timestamp INTEGER)");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS push_source_device_timestamp_index ON push_binary (source, device_id, timestamp)");
+
+        Cursor cursor = db.query("push", new String[] {"_id", "type", "source", "device_id", "body", "content", "timestamp"},
+                                 null, null, null, null, "_id ASC");
+
+        while (cursor != null && cursor.moveToNext()) {
+          try {
+            String        body    = cursor.getString(4);
+            String        content = cursor.getString(5);
+            ContentValues values  = new ContentValues();
+
+            values.put("_id", cursor.getLong(0));
+            values.put("type", cursor.getInt(1));
+            values.put("source", cursor.getString(2));
+            values.put("device_id", cursor.getInt(3));
+            values.put("body", TextUtils.isEmpty(body) ? null : Base64.decode(body));
+            values.put("content", TextUtils.isEmpty(content) ? null : Base64.decode(content));
+            values.put("timestamp", cursor.getLong(6));
+
+            db.insertWithOnConflict("push_binary", null, values, SQLiteDatabase.CONFLICT_IGNORE);
+          } catch (IOException e) {
+            Log.w("DatabaseFactory", e);
+          }
+        }
+
+        if (cursor != null) cursor.close();
+
+        db.execSQL("DROP TABLE push");
+        db.execSQL("ALTER TABLE push_binary RENAME TO push");
+      }
+
+      if (oldVersion < PENDING_RECEIPTS) {
+        db.execSQL("CREATE TABLE pending_receipt (_id INTEGER PRIMARY KEY, address TEXT, timestamp INTEGER, relay TEXT)");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS pending_receipt_address_timestamp_index ON pending_receipt (address, timestamp)");
+      }
+
+      if (oldVersion < PROFILE_FETCH_STATE) {
+        db.execSQL("ALTER TABLE recipient_preferences ADD COLUMN profile_fetched INTEGER DEFAULT 0");
+        db.execSQL("ALTER TABLE recipient_preferences ADD COLUMN profile_hash TEXT DEFAULT NULL");
+        db.execSQL("CREATE INDEX IF NOT EXISTS recipient_profile_fetched_index ON recipient_preferences (profile_fetched)");
+      }
+
+      if (oldVersion < PROTOCOL_STORE) {
+        db.execSQL("CREATE TABLE sessions (_id INTEGER PRIMARY KEY, address TEXT NOT NULL, device INTEGER NOT NULL, record BLOB NOT NULL, UNIQUE(address,device) ON CONFLICT REPLACE)");
+        db.execSQL("CREATE TABLE one_time_prekeys (_id INTEGER PRIMARY KEY, key_id INTEGER UNIQUE, record BLOB NOT NULL)");
+        db.execSQL("CREATE TABLE signed_prekeys (_id INTEGER PRIMARY KEY, key_id INTEGER UNIQUE, record BLOB NOT NULL)");
+
+        migratedProtocolFiles = ProtocolStoreMigrator.migrate(context, db, null);
+      }
+
       db.setTransactionSuccessful();
       db.endTransaction();
     }
@@ -0,0 +1,79 @@
+package org.thoughtcrime.securesms.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import org.thoughtcrime.securesms.util.Util;
+
+import static org.whispersystems.libsignal.SessionCipher.SESSION_LOCK;
+
+/**
+ * The transaction a decrypt batch keeps open across its envelopes, while it takes libsignal's
+ * session lock for one envelope at a time.
+ *
+ * Senders hold the session lock while they read and write sessions and identities. One that
+ * got it between two envelopes would read them without the batch's uncommitted changes, and
+ * its writes would wait on the batch while the batch waited on it for the lock. So a thread
+ * that holds the session lock and opens the database while a batch is open on another thread
+ * asks the batch to commit, and waits for it with the lock released. The batch checks for
+ * requests under the lock before each claim of envelopes, and doesn't begin its next
+ * transaction until every waiting thread has gone ahead.
+ */
+public class DecryptTransaction {
+
+  private static volatile Thread owner;
+  private static          int    commitRequests;
+
+  /**
+   * Begins the batch's transaction. Must be called holding the session lock.
+   */
+  public static void begin(@NonNull SQLiteDatabase database) {
+    while (commitRequests > 0) {
+      Util.wait(SESSION_LOCK, 0);
+    }
+
+    QueryProfiler.getInstance().beginTransaction(database);
+    owner = Thread.currentThread();
+  }
+
+  /**
+   * @return true if another thread is waiting for the batch to commit. Must be called holding
+   * the session lock.
+   */
+  public static boolean isCommitRequested() {
+    return commitRequests > 0;
+  }
+
+  /**
+   * Called once the batch's transaction has ended, whether or not it committed.
+   */
+  public static void end() {
+    synchronized (SESSION_LOCK) {
+      owner = null;
+      SESSION_LOCK.notifyAll();
+    }
+  }
+
+  /**
+   * Called before every use of the database. Waits for an open batch to commit if the calling
+   * thread holds the session lock and isn't the batch's own.
+   */
+  static void awaitCommit() {
+    Thread batchThread = owner;
+
+    if (batchThread == null || batchThread == Thread.currentThread() || !Thread.holdsLock(SESSION_LOCK)) {
+      return;
+    }
+
+    commitRequests++;
+
+    try {
+      while (owner != null) {
+        Util.wait(SESSION_LOCK, 0);
+      }
+    } finally {
+      commitRequests--;
+      SESSION_LOCK.notifyAll();
+    }
+  }
+}
@@ -185,7 +185,7 @@ public class GroupDatabase extends Database {
     contentValues.put(MMS, GroupUtil.isMmsGroup(groupId));
 
     databaseHelper.getWritableDatabase().insert(TABLE_NAME, null, contentValues);
-    Recipient.clearCache(context);
+    Recipient.invalidate(Address.fromSerialized(groupId));
     notifyConversationListListeners();
   }
 
@@ -204,7 +204,7 @@ public class GroupDatabase extends Database {
                                                 GROUP_ID + " = ?",
                                                 new String[] {groupId});
 
-    Recipient.clearCache(context);
+    Recipient.invalidate(Address.fromSerialized(groupId));
     notifyDatabaseListeners();
     notifyConversationListListeners();
   }
@@ -215,7 +215,7 @@ public class GroupDatabase extends Database {
     databaseHelper.getWritableDatabase().update(TABLE_NAME, contentValues, GROUP_ID +  " = ?",
                                                 new String[] {groupId});
 
-    Recipient.clearCache(context);
+    Recipient.invalidate(Address.fromSerialized(groupId));
     notifyDatabaseListeners();
   }
 
@@ -230,7 +230,7 @@ public class GroupDatabase extends Database {
     databaseHelper.getWritableDatabase().update(TABLE_NAME, contentValues, GROUP_ID +  " = ?",
                                                 new String[] {groupId});
 
-    Recipient.clearCache(context);
+    Recipient.invalidate(Address.fromSerialized(groupId));
     notifyDatabaseListeners();
   }
 
@@ -0,0 +1,55 @@
+package org.thoughtcrime.securesms.database;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.thoughtcrime.securesms.database.IdentityDatabase.IdentityRecord;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A copy-on-write snapshot of the identity table.
+ *
+ * Every message encrypted or decrypted checks an identity, and identities rarely change, so
+ * readers get an immutable map through a volatile field and never lock. A write copies the
+ * map and publishes the copy. The table holds one row per contact, so the copy is small next
+ * to the SQL write that precedes it.
+ *
+ * Writes that land before the snapshot is loaded aren't applied to it. The load reads them
+ * from the table instead, since it runs under the same monitor as the writes that follow it.
+ */
+class IdentityCache {
+
+  private volatile Map<Address, IdentityRecord> records;
+
+  @Nullable Map<Address, IdentityRecord> getRecords() {
+    return records;
+  }
+
+  synchronized @NonNull Map<Address, IdentityRecord> load(@NonNull Loader loader) {
+    if (records == null) {
+      records = Collections.unmodifiableMap(loader.load());
+    }
+
+    return records;
+  }
+
+  synchronized void put(@NonNull IdentityRecord record) {
+    if (records == null) return;
+
+    Map<Address, IdentityRecord> updated = new HashMap<>(records);
+    updated.put(record.getAddress(), record);
+
+    records = Collections.unmodifiableMap(updated);
+  }
+
+  synchronized void clear() {
+    records = null;
+  }
+
+  interface Loader {
+    @NonNull Map<Address, IdentityRecord> load();
+  }
+}
@@ -31,7 +31,21 @@ import org.whispersystems.libsignal.InvalidKeyException;
 import org.whispersystems.libsignal.util.guava.Optional;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * Identity lookups are served from an {@link IdentityCache} of the whole table, which is
+ * loaded on first use. Writes go to the table and then the cache, and writes for the same
+ * address are serialized so that the two can't be applied in different orders.
+ *
+ * Writes open a transaction before taking their address lock. A decrypt holds a transaction
+ * while it saves identities, so taking the lock first could deadlock against it.
+ *
+ * A write made while {@link AfterCommit} is holding, as a decrypt batch does, is only seen by
+ * the writing thread until the batch commits. The cache is then refreshed from the table, and
+ * a batch that rolls back leaves it untouched.
+ */
 public class IdentityDatabase extends Database {
 
   private static final String TAG = IdentityDatabase.class.getSimpleName();
@@ -45,6 +59,8 @@ public class IdentityDatabase extends Database {
   private static final String NONBLOCKING_APPROVAL = "nonblocking_approval";
   private static final String VERIFIED             = "verified";
 
+  private static final int WRITE_LOCKS = 16;
+
   public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME +
       " (" + ID + " INTEGER PRIMARY KEY, " +
       ADDRESS + " TEXT UNIQUE, " +
@@ -72,8 +88,30 @@ public class IdentityDatabase extends Database {
     }
   }
 
+  private final IdentityCache                             cache       = new IdentityCache();
+  private final Object[]                                  writeLocks  = new Object[WRITE_LOCKS];
+  private final ThreadLocal<Map<Address, IdentityRecord>> uncommitted = new ThreadLocal<>();
+
   IdentityDatabase(Context context, SQLiteOpenHelper databaseHelper) {
     super(context, databaseHelper);
+
+    for (int i = 0; i < WRITE_LOCKS; i++) {
+      writeLocks[i] = new Object();
+    }
+  }
+
+  @Override
+  public void reset(SQLiteOpenHelper databaseHelper) {
+    super.reset(databaseHelper);
+    cache.clear();
+  }
+
+  /**
+   * Drops the calling thread's uncommitted identities, once the transaction it was holding
+   * {@link AfterCommit} for has ended.
+   */
+  public void clearUncommitted() {
+    uncommitted.remove();
   }
 
   public Cursor getIdentities() {
@@ -87,6 +125,38 @@ public class IdentityDatabase extends Database {
   }
 
   public Optional<IdentityRecord> getIdentity(Address address) {
+    Map<Address, IdentityRecord> pending = uncommitted.get();
+
+    if (pending != null && pending.containsKey(address)) {
+      return Optional.of(pending.get(address));
+    }
+
+    Map<Address, IdentityRecord> records = cache.getRecords();
+
+    if (records == null) {
+      if (AfterCommit.isHeld()) return readIdentity(address);
+      records = cache.load(this::getAllIdentities);
+    }
+
+    return Optional.fromNullable(records.get(address));
+  }
+
+  private Map<Address, IdentityRecord> getAllIdentities() {
+    Map<Address, IdentityRecord> records = new HashMap<>();
+
+    try (Cursor cursor = getIdentities()) {
+      while (cursor != null && cursor.moveToNext()) {
+        IdentityRecord record = getIdentityRecord(cursor);
+        records.put(record.getAddress(), record);
+      }
+    } catch (InvalidKeyException | IOException e) {
+      throw new AssertionError(e);
+    }
+
+    return records;
+  }
+
+  private Optional<IdentityRecord> readIdentity(Address address) {
     SQLiteDatabase database = databaseHelper.getReadableDatabase();
     Cursor         cursor   = null;
 
@@ -120,10 +190,23 @@ public class IdentityDatabase extends Database {
     contentValues.put(NONBLOCKING_APPROVAL, nonBlockingApproval ? 1 : 0);
     contentValues.put(FIRST_USE, firstUse ? 1 : 0);
 
-    database.replace(TABLE_NAME, null, contentValues);
+    IdentityRecord record = new IdentityRecord(address, identityKey, verifiedStatus,
+                                               firstUse, timestamp, nonBlockingApproval);
+
+    QueryProfiler.getInstance().beginTransaction(database);
+
+    try {
+      synchronized (getWriteLock(address)) {
+        database.replace(TABLE_NAME, null, contentValues);
+        publish(record);
+      }
+
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
 
-    EventBus.getDefault().post(new IdentityRecord(address, identityKey, verifiedStatus,
-                                                  firstUse, timestamp, nonBlockingApproval));
+    AfterCommit.run(() -> EventBus.getDefault().post(record));
   }
 
   public void setApproval(Address address, boolean nonBlockingApproval) {
@@ -132,7 +215,20 @@ public class IdentityDatabase extends Database {
     ContentValues contentValues = new ContentValues(2);
     contentValues.put(NONBLOCKING_APPROVAL, nonBlockingApproval);
 
-    database.update(TABLE_NAME, contentValues, ADDRESS + " = ?", new String[] {address.serialize()});
+    QueryProfiler.getInstance().beginTransaction(database);
+
+    try {
+      synchronized (getWriteLock(address)) {
+        if (database.update(TABLE_NAME, contentValues, ADDRESS + " = ?", new String[] {address.serialize()}) > 0) {
+          Optional<IdentityRecord> record = readIdentity(address);
+          if (record.isPresent()) publish(record.get());
+        }
+      }
+
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
   }
 
   public void setVerified(Address address, IdentityKey identityKey, VerifiedStatus verifiedStatus) {
@@ -141,13 +237,76 @@ public class IdentityDatabase extends Database {
     ContentValues contentValues = new ContentValues(1);
     contentValues.put(VERIFIED, verifiedStatus.toInt());
 
-    int updated = database.update(TABLE_NAME, contentValues, ADDRESS + " = ? AND " + IDENTITY_KEY + " = ?",
-                                  new String[] {address.serialize(), Base64.encodeBytes(identityKey.serialize())});
+    Optional<IdentityRecord> record = Optional.absent();
+
+    QueryProfiler.getInstance().beginTransaction(database);
+
+    try {
+      synchronized (getWriteLock(address)) {
+        int updated = database.update(TABLE_NAME, contentValues, ADDRESS + " = ? AND " + IDENTITY_KEY + " = ?",
+                                      new String[] {address.serialize(), Base64.encodeBytes(identityKey.serialize())});
 
-    if (updated > 0) {
-      Optional<IdentityRecord> record = getIdentity(address);
-      if (record.isPresent()) EventBus.getDefault().post(record.get());
+        if (updated > 0) {
+          record = readIdentity(address);
+          if (record.isPresent()) publish(record.get());
+        }
+      }
+
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
     }
+
+    if (record.isPresent()) {
+      IdentityRecord identityRecord = record.get();
+      AfterCommit.run(() -> EventBus.getDefault().post(identityRecord));
+    }
+  }
+
+  /**
+   * Called holding the address's write lock, inside the writing transaction.
+   */
+  private void publish(@NonNull IdentityRecord record) {
+    if (!AfterCommit.isHeld()) {
+      cache.put(record);
+      return;
+    }
+
+    Map<Address, IdentityRecord> pending = uncommitted.get();
+
+    if (pending == null) {
+      pending = new HashMap<>();
+      uncommitted.set(pending);
+    }
+
+    pending.put(record.getAddress(), record);
+    AfterCommit.run(() -> refresh(record.getAddress()));
+  }
+
+  /**
+   * Reloads an address into the cache from the table. The transaction waits out any other
+   * write to it, which would otherwise publish its record before committing it.
+   */
+  private void refresh(@NonNull Address address) {
+    SQLiteDatabase database = databaseHelper.getWritableDatabase();
+
+    QueryProfiler.getInstance().beginTransaction(database);
+
+    try {
+      synchronized (getWriteLock(address)) {
+        Optional<IdentityRecord> record = readIdentity(address);
+        if (record.isPresent()) cache.put(record.get());
+      }
+
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+  }
+
+  private Object getWriteLock(Address address) {
+    int hash = address.hashCode();
+    return writeLocks[(hash ^ (hash >>> 16)) & (WRITE_LOCKS - 1)];
   }
 
   private IdentityRecord getIdentityRecord(@NonNull Cursor cursor) throws IOException, InvalidKeyException {
@@ -171,9 +330,9 @@ public class IdentityDatabase extends Database {
     private final long           timestamp;
     private final boolean        nonblockingApproval;
 
-    private IdentityRecord(Address address,
-                           IdentityKey identitykey, VerifiedStatus verifiedStatus,
-                           boolean firstUse, long timestamp, boolean nonblockingApproval)
+    IdentityRecord(Address address,
+                   IdentityKey identitykey, VerifiedStatus verifiedStatus,
+                   boolean firstUse, long timestamp, boolean nonblockingApproval)
     {
       this.address             = address;
       this.identitykey         = identitykey;
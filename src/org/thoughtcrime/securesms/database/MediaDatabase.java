@@ -6,121 +6,217 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
 import org.thoughtcrime.securesms.attachments.Attachment;
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
 
+import java.util.LinkedList;
+import java.util.List;
+
 public class MediaDatabase extends Database {
 
-    private final static String MEDIA_QUERY = "SELECT " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " AS " + AttachmentDatabase.ATTACHMENT_ID_ALIAS + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_TYPE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.THUMBNAIL_ASPECT_RATIO + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.UNIQUE_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.TRANSFER_STATE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.SIZE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.FILE_NAME + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.DATA + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.THUMBNAIL + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_LOCATION + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_DISPOSITION + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.DIGEST + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.FAST_PREFLIGHT_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.VOICE_NOTE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.NAME + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.MESSAGE_BOX + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ADDRESS + " "
-        + "FROM " + AttachmentDatabase.TABLE_NAME + " LEFT JOIN " + MmsDatabase.TABLE_NAME
-        + " ON " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " "
-        + "WHERE " + AttachmentDatabase.MMS_ID + " IN (SELECT " + MmsSmsColumns.ID
-        + " FROM " + MmsDatabase.TABLE_NAME
-        + " WHERE " + MmsDatabase.THREAD_ID + " = ?) AND ("
-        + AttachmentDatabase.CONTENT_TYPE + " LIKE 'image/%' OR "
-        + AttachmentDatabase.CONTENT_TYPE + " LIKE 'video/%') AND "
-        + AttachmentDatabase.DATA + " IS NOT NULL "
-        + "ORDER BY " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " DESC";
-
-    private final static String IMAGE_VIDEO_QUERY = "SELECT " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " AS " + AttachmentDatabase.ATTACHMENT_ID_ALIAS + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_TYPE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.THUMBNAIL_ASPECT_RATIO + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.UNIQUE_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.TRANSFER_STATE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.SIZE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.FILE_NAME + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.DATA + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.THUMBNAIL + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_LOCATION + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_DISPOSITION + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.DIGEST + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.FAST_PREFLIGHT_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.VOICE_NOTE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.NAME + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.MESSAGE_BOX + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ADDRESS + " "
-        + "FROM " + AttachmentDatabase.TABLE_NAME + " LEFT JOIN " + MmsDatabase.TABLE_NAME
-        + " ON " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " "
-        + "WHERE " + AttachmentDatabase.MMS_ID + " IN (SELECT " + MmsSmsColumns.ID
-        + " FROM " + MmsDatabase.TABLE_NAME + ") AND ("
-        + AttachmentDatabase.CONTENT_TYPE + " LIKE ? "
-        + ") AND "
-        + AttachmentDatabase.DATA + " IS NOT NULL "
-        + "ORDER BY " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " DESC";
-
-    private final static String ALL_MEDIA_QUERY = "SELECT " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " AS " + AttachmentDatabase.ATTACHMENT_ID_ALIAS + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_TYPE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.THUMBNAIL_ASPECT_RATIO + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.UNIQUE_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.TRANSFER_STATE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.SIZE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.FILE_NAME + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.DATA + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.THUMBNAIL + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_LOCATION + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_DISPOSITION + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.DIGEST + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.FAST_PREFLIGHT_ID + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.VOICE_NOTE + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.NAME + ", "
-        + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.FN + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.MESSAGE_BOX + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ADDRESS + " "
-        + "FROM " + AttachmentDatabase.TABLE_NAME + " LEFT JOIN " + MmsDatabase.TABLE_NAME
-        + " ON " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " "
-        + "WHERE " + AttachmentDatabase.MMS_ID + " IN (SELECT " + MmsSmsColumns.ID
-        + " FROM " + MmsDatabase.TABLE_NAME + ") AND "
-        + AttachmentDatabase.DATA + " IS NOT NULL "
-        + "ORDER BY " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " DESC";
+  private static final String PART = AttachmentDatabase.TABLE_NAME;
+
+  private static final String MEDIA_PROJECTION = "SELECT " + PART + "." + AttachmentDatabase.ROW_ID + " AS " + AttachmentDatabase.ATTACHMENT_ID_ALIAS + ", "
+      + PART + "." + AttachmentDatabase.CONTENT_TYPE + ", "
+      + PART + "." + AttachmentDatabase.THUMBNAIL_ASPECT_RATIO + ", "
+      + PART + "." + AttachmentDatabase.UNIQUE_ID + ", "
+      + PART + "." + AttachmentDatabase.MMS_ID + ", "
+      + PART + "." + AttachmentDatabase.TRANSFER_STATE + ", "
+      + PART + "." + AttachmentDatabase.SIZE + ", "
+      + PART + "." + AttachmentDatabase.FILE_NAME + ", "
+      + PART + "." + AttachmentDatabase.DATA + ", "
+      + PART + "." + AttachmentDatabase.THUMBNAIL + ", "
+      + PART + "." + AttachmentDatabase.CONTENT_LOCATION + ", "
+      + PART + "." + AttachmentDatabase.CONTENT_DISPOSITION + ", "
+      + PART + "." + AttachmentDatabase.DIGEST + ", "
+      + PART + "." + AttachmentDatabase.FAST_PREFLIGHT_ID + ", "
+      + PART + "." + AttachmentDatabase.VOICE_NOTE + ", "
+      + PART + "." + AttachmentDatabase.NAME + ", "
+      + PART + "." + AttachmentDatabase.FN + ", "
+      + PART + "." + AttachmentDatabase.MEDIA_DATE + ", "
+      + MmsDatabase.TABLE_NAME + "." + MmsDatabase.MESSAGE_BOX + ", "
+      + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT + ", "
+      + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + ", "
+      + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ADDRESS + " "
+      + "FROM " + PART + " LEFT JOIN " + MmsDatabase.TABLE_NAME
+      + " ON " + PART + "." + AttachmentDatabase.MMS_ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " ";
+
+  private static final String HAS_DATA      = PART + "." + AttachmentDatabase.DATA + " IS NOT NULL";
+  private static final String THREAD_WHERE  = PART + "." + AttachmentDatabase.MEDIA_THREAD_ID + " = ? AND "
+                                              + PART + "." + AttachmentDatabase.MEDIA_KIND + " IN ("
+                                              + AttachmentDatabase.MEDIA_KIND_IMAGE + ", " + AttachmentDatabase.MEDIA_KIND_VIDEO + ") AND "
+                                              + HAS_DATA;
+  private static final String KIND_WHERE    = PART + "." + AttachmentDatabase.MEDIA_KIND + " = ? AND "
+                                              + PART + "." + AttachmentDatabase.MEDIA_THREAD_ID + " > -1 AND "
+                                              + HAS_DATA;
+  private static final String AFTER_WHERE   = " AND " + PART + "." + AttachmentDatabase.MEDIA_DATE + " <= ? AND ("
+                                              + PART + "." + AttachmentDatabase.MEDIA_DATE + " < ? OR "
+                                              + PART + "." + AttachmentDatabase.ROW_ID + " < ?)";
+  private static final String DATE_ORDER    = " ORDER BY " + PART + "." + AttachmentDatabase.MEDIA_DATE + " DESC, "
+                                              + PART + "." + AttachmentDatabase.ROW_ID + " DESC";
+
+  private static final String SECTION_QUERY = "SELECT strftime('%Y-%m', " + AttachmentDatabase.MEDIA_DATE + " / 1000, 'unixepoch', 'localtime') AS " + MediaSection.BUCKET + ", "
+                                              + "COUNT(*) AS " + MediaSection.COUNT + " FROM " + PART + " WHERE ";
+  private static final String SECTION_ORDER = " GROUP BY " + MediaSection.BUCKET + " ORDER BY " + MediaSection.BUCKET + " DESC";
 
   public MediaDatabase(Context context, SQLiteOpenHelper databaseHelper) {
     super(context, databaseHelper);
   }
 
   public Cursor getMediaForThread(long threadId) {
+    return getMediaForThread(threadId, 0);
+  }
+
+  /**
+   * @param limit the maximum number of rows to return, or 0 for all of them.
+   */
+  public Cursor getMediaForThread(long threadId, int limit) {
+    return getMediaForThread(threadId, limit, null);
+  }
+
+  /**
+   * Returns a window of a thread's media, newest first. A following window is read by
+   * passing the position of the last row of the one before it, so each window is a range
+   * read from the media index no matter how far into the gallery it is.
+   *
+   * @param after the position to read from, or null to start with the newest.
+   */
+  public Cursor getMediaForThread(long threadId, int limit, @Nullable MediaPosition after) {
     SQLiteDatabase database = databaseHelper.getReadableDatabase();
-    Cursor cursor = database.rawQuery(MEDIA_QUERY, new String[]{threadId+""});
+    Cursor cursor = database.rawQuery(getMediaForThreadQuery(limit, after != null), getArgs(threadId, after));
     setNotifyConverationListeners(cursor, threadId);
     return cursor;
   }
 
-  public Cursor getMediaByMimeType(String type) {
+  @VisibleForTesting
+  static String getMediaForThreadQuery(int limit) {
+    return getMediaForThreadQuery(limit, false);
+  }
+
+  @VisibleForTesting
+  static String getMediaForThreadQuery(int limit, boolean after) {
+    return MEDIA_PROJECTION + "WHERE " + THREAD_WHERE + (after ? AFTER_WHERE : "") + DATE_ORDER + getLimit(limit);
+  }
+
+  public Cursor getMediaByKind(int mediaKind, int limit) {
+    return getMediaByKind(mediaKind, limit, null);
+  }
+
+  /**
+   * Like {@link #getMediaForThread(long, int, MediaPosition)}, over all threads' media of one kind.
+   */
+  public Cursor getMediaByKind(int mediaKind, int limit, @Nullable MediaPosition after) {
     SQLiteDatabase database = databaseHelper.getReadableDatabase();
-    Cursor cursor = database.rawQuery(IMAGE_VIDEO_QUERY, new String[]{type +"/%"});
-    return cursor;
+    return database.rawQuery(MEDIA_PROJECTION + "WHERE " + KIND_WHERE + (after != null ? AFTER_WHERE : "") + DATE_ORDER + getLimit(limit),
+                             getArgs(mediaKind, after));
   }
 
-  public Cursor getAllMedia() {
+  public int getMediaCountByKind(int mediaKind) {
     SQLiteDatabase database = databaseHelper.getReadableDatabase();
-    Cursor cursor = database.rawQuery(ALL_MEDIA_QUERY, null);
-    return cursor;
+    Cursor         cursor   = null;
+
+    try {
+      cursor = database.rawQuery("SELECT COUNT(*) FROM " + PART + " WHERE " + KIND_WHERE, new String[] {mediaKind+""});
+
+      if (cursor != null && cursor.moveToFirst()) return cursor.getInt(0);
+      else                                        return 0;
+    } finally {
+      if (cursor != null) cursor.close();
+    }
+  }
+
+  /**
+   * Month buckets and their sizes, newest first, in the same order as {@link #getMediaForThread(long, int)}.
+   */
+  public List<MediaSection> getMediaSectionsForThread(long threadId) {
+    return getMediaSections(getMediaSectionsForThreadQuery(), new String[] {threadId+""});
+  }
+
+  public List<MediaSection> getMediaSectionsByKind(int mediaKind) {
+    return getMediaSections(SECTION_QUERY + KIND_WHERE + SECTION_ORDER, new String[] {mediaKind+""});
+  }
+
+  @VisibleForTesting
+  static String getMediaSectionsForThreadQuery() {
+    return SECTION_QUERY + THREAD_WHERE + SECTION_ORDER;
+  }
+
+  private List<MediaSection> getMediaSections(String query, String[] args) {
+    SQLiteDatabase     database = databaseHelper.getReadableDatabase();
+    List<MediaSection> sections = new LinkedList<>();
+    Cursor             cursor   = null;
+
+    try {
+      cursor = database.rawQuery(query, args);
+
+      while (cursor != null && cursor.moveToNext()) {
+        sections.add(new MediaSection(cursor.getString(0), cursor.getInt(1)));
+      }
+    } finally {
+      if (cursor != null) cursor.close();
+    }
+
+    return sections;
+  }
+
+  private static String getLimit(int limit) {
+    return limit > 0 ? " LIMIT " + limit : "";
+  }
+
+  private static String[] getArgs(long id, @Nullable MediaPosition after) {
+    if (after == null) return new String[] {id+""};
+    else               return new String[] {id+"", after.date+"", after.date+"", after.rowId+""};
+  }
+
+  /**
+   * Where a window of media ended, in the (date, row id) order the gallery is read in.
+   */
+  public static class MediaPosition {
+
+    private final long date;
+    private final long rowId;
+
+    @VisibleForTesting
+    MediaPosition(long date, long rowId) {
+      this.date  = date;
+      this.rowId = rowId;
+    }
+
+    /**
+     * @return the position of the row the cursor is on.
+     */
+    public static MediaPosition from(@NonNull Cursor cursor) {
+      return new MediaPosition(cursor.getLong(cursor.getColumnIndexOrThrow(AttachmentDatabase.MEDIA_DATE)),
+                               cursor.getLong(cursor.getColumnIndexOrThrow(AttachmentDatabase.ATTACHMENT_ID_ALIAS)));
+    }
+  }
+
+  public static class MediaSection {
+
+    private static final String BUCKET = "bucket";
+    private static final String COUNT  = "bucket_count";
+
+    private final String bucket;
+    private final int    count;
+
+    private MediaSection(String bucket, int count) {
+      this.bucket = bucket;
+      this.count  = count;
+    }
+
+    /**
+     * @return the section's month, formatted as yyyy-MM.
+     */
+    public String getBucket() {
+      return bucket;
+    }
+
+    public int getCount() {
+      return count;
+    }
   }
 
   public static class MediaRecord {
@@ -23,12 +23,30 @@ public abstract class MessagingDatabase extends Database implements MmsSmsColumn
 
   private static final String TAG = MessagingDatabase.class.getSimpleName();
 
+  static final String EXPIRED_WHERE = EXPIRES_AT + " > 0 AND " + EXPIRES_AT + " <= ?";
+
   public MessagingDatabase(Context context, SQLiteOpenHelper databaseHelper) {
     super(context, databaseHelper);
   }
 
   protected abstract String getTableName();
 
+  protected void notifyMessageInserted(long threadId, long messageId) {
+    DatabaseChangeBus.getInstance(context).notifyMessageInserted(databaseHelper, threadId, getChangeId(messageId));
+  }
+
+  protected void notifyMessageUpdated(long threadId, long messageId) {
+    DatabaseChangeBus.getInstance(context).notifyMessageUpdated(databaseHelper, threadId, getChangeId(messageId));
+  }
+
+  protected void notifyMessageDeleted(long threadId, long messageId) {
+    DatabaseChangeBus.getInstance(context).notifyMessageDeleted(databaseHelper, threadId, getChangeId(messageId));
+  }
+
+  private DatabaseChangeBus.MessageId getChangeId(long messageId) {
+    return new DatabaseChangeBus.MessageId(messageId, MmsDatabase.TABLE_NAME.equals(getTableName()));
+  }
+
   public void setMismatchedIdentity(long messageId, final Address address, final IdentityKey identityKey) {
     List<IdentityKeyMismatch> items = new ArrayList<IdentityKeyMismatch>() {{
       add(new IdentityKeyMismatch(address, identityKey));
@@ -37,7 +55,7 @@ public abstract class MessagingDatabase extends Database implements MmsSmsColumn
     IdentityKeyMismatchList document = new IdentityKeyMismatchList(items);
 
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
-    database.beginTransaction();
+    QueryProfiler.getInstance().beginTransaction(database);
 
     try {
       setDocument(database, messageId, MISMATCHED_IDENTITIES, document);
@@ -72,7 +90,7 @@ public abstract class MessagingDatabase extends Database implements MmsSmsColumn
 
   protected <D extends Document<I>, I> void removeFromDocument(long messageId, String column, I object, Class<D> clazz) throws IOException {
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
-    database.beginTransaction();
+    QueryProfiler.getInstance().beginTransaction(database);
 
     try {
       D           document = getDocument(database, messageId, column, clazz);
@@ -104,7 +122,7 @@ public abstract class MessagingDatabase extends Database implements MmsSmsColumn
 
   protected <T extends Document<I>, I> void addToDocument(long messageId, String column, List<I> objects, Class<T> clazz) throws IOException {
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
-    database.beginTransaction();
+    QueryProfiler.getInstance().beginTransaction(database);
 
     try {
       T document = getDocument(database, messageId, column, clazz);
@@ -129,6 +147,10 @@ public abstract class MessagingDatabase extends Database implements MmsSmsColumn
     database.update(getTableName(), contentValues, ID_WHERE, new String[] {String.valueOf(messageId)});
   }
 
+  protected <D extends Document> D getDocument(long messageId, String column, Class<D> clazz) {
+    return getDocument(databaseHelper.getReadableDatabase(), messageId, column, clazz);
+  }
+
   private <D extends Document> D getDocument(SQLiteDatabase database, long messageId,
                                              String column, Class<D> clazz)
   {
@@ -48,6 +48,7 @@ import org.thoughtcrime.securesms.database.model.DisplayRecord;
 import org.thoughtcrime.securesms.database.model.MediaMmsMessageRecord;
 import org.thoughtcrime.securesms.database.model.MessageRecord;
 import org.thoughtcrime.securesms.database.model.NotificationMmsMessageRecord;
+import org.thoughtcrime.securesms.jobs.JobLanes;
 import org.thoughtcrime.securesms.jobs.TrimThreadJob;
 import org.thoughtcrime.securesms.mms.IncomingMediaMessage;
 import org.thoughtcrime.securesms.mms.MmsException;
@@ -60,10 +61,10 @@ import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.recipients.RecipientFormattingException;
 import org.thoughtcrime.securesms.util.JsonUtils;
 import org.thoughtcrime.securesms.util.Util;
-import org.whispersystems.jobqueue.JobManager;
 import org.whispersystems.libsignal.InvalidMessageException;
 import org.whispersystems.libsignal.util.guava.Optional;
 
+import java.io.File;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -104,7 +105,8 @@ public class MmsDatabase extends MessagingDatabase {
     RECEIPT_COUNT + " INTEGER DEFAULT 0, " + MISMATCHED_IDENTITIES + " TEXT DEFAULT NULL, "     +
     NETWORK_FAILURE + " TEXT DEFAULT NULL," + "d_rpt" + " INTEGER, " +
     SUBSCRIPTION_ID + " INTEGER DEFAULT -1, " + EXPIRES_IN + " INTEGER DEFAULT 0, " +
-    EXPIRE_STARTED + " INTEGER DEFAULT 0, " + NOTIFIED + " INTEGER DEFAULT 0, " + REPLY_BODY + " TEXT DEFAULT NULL);";
+    EXPIRE_STARTED + " INTEGER DEFAULT 0, " + NOTIFIED + " INTEGER DEFAULT 0, " + REPLY_BODY + " TEXT DEFAULT NULL, " +
+    EXPIRES_AT + " INTEGER DEFAULT 0);";
 
   public static final String[] CREATE_INDEXS = {
     "CREATE INDEX IF NOT EXISTS mms_thread_id_index ON " + TABLE_NAME + " (" + THREAD_ID + ");",
@@ -112,7 +114,8 @@ public class MmsDatabase extends MessagingDatabase {
     "CREATE INDEX IF NOT EXISTS mms_read_and_notified_and_thread_id_index ON " + TABLE_NAME + "(" + READ + "," + NOTIFIED + "," + THREAD_ID + ");",
     "CREATE INDEX IF NOT EXISTS mms_message_box_index ON " + TABLE_NAME + " (" + MESSAGE_BOX + ");",
     "CREATE INDEX IF NOT EXISTS mms_date_sent_index ON " + TABLE_NAME + " (" + DATE_SENT + ");",
-    "CREATE INDEX IF NOT EXISTS mms_thread_date_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_RECEIVED + ");"
+    "CREATE INDEX IF NOT EXISTS mms_thread_date_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_RECEIVED + ");",
+    "CREATE INDEX IF NOT EXISTS mms_expires_at_index ON " + TABLE_NAME + " (" + EXPIRES_AT + ");"
   };
 
   private static final String[] MMS_PROJECTION = new String[] {
@@ -146,7 +149,7 @@ public class MmsDatabase extends MessagingDatabase {
   private static final String RAW_ID_WHERE = TABLE_NAME + "._id = ?";
 
   private final EarlyReceiptCache earlyReceiptCache = new EarlyReceiptCache();
-  private final JobManager jobManager;
+  private final JobLanes jobManager;
 
   public MmsDatabase(Context context, SQLiteOpenHelper databaseHelper) {
     super(context, databaseHelper);
@@ -183,6 +186,10 @@ public class MmsDatabase extends MessagingDatabase {
     }
   }
 
+  public List<NetworkFailure> getFailures(long messageId) {
+    return getDocument(messageId, NETWORK_FAILURE, NetworkFailureList.class).getList();
+  }
+
   public void removeFailure(long messageId, NetworkFailure failure) {
     try {
       removeFromDocument(messageId, NETWORK_FAILURE, failure, NetworkFailureList.class);
@@ -215,7 +222,7 @@ public class MmsDatabase extends MessagingDatabase {
                              new String[] {String.valueOf(id)});
 
             DatabaseFactory.getThreadDatabase(context).update(threadId, false);
-            notifyConversationListeners(threadId);
+            notifyMessageUpdated(threadId, id);
           }
         }
       }
@@ -280,9 +287,56 @@ public class MmsDatabase extends MessagingDatabase {
     return cursor;
   }
 
-  public Reader getExpireStartedMessages(@Nullable MasterSecret masterSecret) {
-    String where = EXPIRE_STARTED + " > 0";
-    return readerFor(masterSecret, rawQuery(where, null));
+  /*package*/ long getNextExpiration() {
+    SQLiteDatabase db     = databaseHelper.getReadableDatabase();
+    Cursor         cursor = null;
+
+    try {
+      cursor = db.query(TABLE_NAME, new String[] {"MIN(" + EXPIRES_AT + ")"}, EXPIRES_AT + " > 0",
+                        null, null, null, null);
+
+      if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+        return cursor.getLong(0);
+      }
+    } finally {
+      if (cursor != null) cursor.close();
+    }
+
+    return -1;
+  }
+
+  /**
+   * Deletes every message and attachment row whose expiration deadline is at or before
+   * {@code now}. Thread state is left for the caller to update, and the attachments' files
+   * are added to {@code attachmentFiles} for the caller to delete once its transaction has
+   * committed, so a rollback can't leave messages whose files are gone.
+   *
+   * @return the ids of the threads that had messages removed.
+   */
+  /*package*/ Set<Long> deleteExpiredMessages(long now, @NonNull List<File> attachmentFiles) {
+    SQLiteDatabase     db                 = databaseHelper.getWritableDatabase();
+    AttachmentDatabase attachmentDatabase = DatabaseFactory.getAttachmentDatabase(context);
+    String             where              = EXPIRED_WHERE;
+    String[]           args               = new String[] {String.valueOf(now)};
+    Set<Long>          threadIds          = new HashSet<>();
+    Cursor             cursor             = null;
+
+    try {
+      cursor = db.query(TABLE_NAME, new String[] {ID, THREAD_ID}, where, args, null, null, null);
+
+      while (cursor != null && cursor.moveToNext()) {
+        attachmentDatabase.deleteAttachmentRowsForMessage(cursor.getLong(0), attachmentFiles);
+        threadIds.add(cursor.getLong(1));
+      }
+    } finally {
+      if (cursor != null) cursor.close();
+    }
+
+    if (!threadIds.isEmpty()) {
+      db.delete(TABLE_NAME, where, args);
+    }
+
+    return threadIds;
   }
 
   public Reader getDecryptInProgressMessages(MasterSecret masterSecret) {
@@ -327,13 +381,13 @@ public class MmsDatabase extends MessagingDatabase {
   public void markAsSentFailed(long messageId) {
     long threadId = getThreadIdForMessage(messageId);
     updateMailboxBitmask(messageId, Types.BASE_TYPE_MASK, Types.BASE_SENT_FAILED_TYPE, Optional.of(threadId));
-    notifyConversationListeners(threadId);
+    notifyMessageUpdated(threadId, messageId);
   }
 
   public void markAsSent(long messageId, boolean secure) {
     long threadId = getThreadIdForMessage(messageId);
     updateMailboxBitmask(messageId, Types.BASE_TYPE_MASK, Types.BASE_SENT_TYPE | (secure ? Types.PUSH_MESSAGE_BIT | Types.SECURE_MESSAGE_BIT : 0), Optional.of(threadId));
-    notifyConversationListeners(threadId);
+    notifyMessageUpdated(threadId, messageId);
   }
 
   public void markDownloadState(long messageId, long state) {
@@ -342,7 +396,7 @@ public class MmsDatabase extends MessagingDatabase {
     contentValues.put(STATUS, state);
 
     database.update(TABLE_NAME, contentValues, ID_WHERE, new String[] {messageId + ""});
-    notifyConversationListeners(getThreadIdForMessage(messageId));
+    notifyMessageUpdated(getThreadIdForMessage(messageId), messageId);
   }
 
   public void markAsNoSession(long messageId, long threadId) {
@@ -382,14 +436,13 @@ public class MmsDatabase extends MessagingDatabase {
   }
 
   public void markExpireStarted(long messageId, long startedTimestamp) {
-    ContentValues contentValues = new ContentValues();
-    contentValues.put(EXPIRE_STARTED, startedTimestamp);
-
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
-    db.update(TABLE_NAME, contentValues, ID_WHERE, new String[] {String.valueOf(messageId)});
+    db.execSQL("UPDATE " + TABLE_NAME + " SET " + EXPIRE_STARTED + " = ?, " +
+                   EXPIRES_AT + " = ? + " + EXPIRES_IN + " WHERE " + ID + " = ?",
+               new Object[] {startedTimestamp, startedTimestamp, messageId});
 
     long threadId = getThreadIdForMessage(messageId);
-    notifyConversationListeners(threadId);
+    notifyMessageUpdated(threadId, messageId);
   }
 
   public void markAsNotified(long id) {
@@ -408,7 +461,7 @@ public class MmsDatabase extends MessagingDatabase {
     List<MarkedMessageInfo> result    = new LinkedList<>();
     Cursor                  cursor    = null;
 
-    database.beginTransaction();
+    QueryProfiler.getInstance().beginTransaction(database);
 
     try {
       cursor = database.query(TABLE_NAME, new String[] {ID, ADDRESS, DATE_SENT, MESSAGE_BOX, EXPIRES_IN, EXPIRE_STARTED}, where, selection, null, null, null);
@@ -457,6 +510,7 @@ public class MmsDatabase extends MessagingDatabase {
 
           if (expiresIn > 0) {
             values.put(EXPIRE_STARTED, expireStarted);
+            values.put(EXPIRES_AT, expireStarted + expiresIn);
             expiring.add(new Pair<>(id, expiresIn));
           }
 
@@ -672,7 +726,7 @@ public class MmsDatabase extends MessagingDatabase {
       DatabaseFactory.getThreadDatabase(context).update(threadId, true);
     }
 
-    notifyConversationListeners(threadId);
+    notifyMessageInserted(threadId, messageId);
     jobManager.add(new TrimThreadJob(context, threadId));
 
     return Optional.of(new InsertResult(messageId, threadId));
@@ -866,11 +920,12 @@ public class MmsDatabase extends MessagingDatabase {
 
     contentValues.put(PART_COUNT, attachments.size());
 
-    db.beginTransaction();
+    QueryProfiler.getInstance().beginTransaction(db);
     try {
       long messageId = db.insert(TABLE_NAME, null, contentValues);
 
-      partsDatabase.insertAttachmentsForMessage(masterSecret, messageId, attachments);
+      partsDatabase.insertAttachmentsForMessage(masterSecret, messageId, contentValues.getAsLong(THREAD_ID),
+                                                getMediaDate(contentValues), attachments);
 
       db.setTransactionSuccessful();
       return messageId;
@@ -886,6 +941,16 @@ public class MmsDatabase extends MessagingDatabase {
     }
   }
 
+  private long getMediaDate(@NonNull ContentValues contentValues) {
+    Long box = contentValues.getAsLong(MESSAGE_BOX);
+    Long date;
+
+    if (box != null && Types.isPushType(box)) date = contentValues.getAsLong(DATE_SENT);
+    else                                      date = contentValues.getAsLong(DATE_RECEIVED);
+
+    return date != null ? date : 0;
+  }
+
   public boolean delete(long messageId) {
     long               threadId           = getThreadIdForMessage(messageId);
     AttachmentDatabase attachmentDatabase = DatabaseFactory.getAttachmentDatabase(context);
@@ -894,7 +959,7 @@ public class MmsDatabase extends MessagingDatabase {
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
     database.delete(TABLE_NAME, ID_WHERE, new String[] {messageId+""});
     boolean threadDeleted = DatabaseFactory.getThreadDatabase(context).update(threadId, false);
-    notifyConversationListeners(threadId);
+    notifyMessageDeleted(threadId, messageId);
     return threadDeleted;
   }
 
@@ -18,6 +18,7 @@ public interface MmsSmsColumns {
   public static final String SUBSCRIPTION_ID          = "subscription_id";
   public static final String EXPIRES_IN               = "expires_in";
   public static final String EXPIRE_STARTED           = "expire_started";
+  public static final String EXPIRES_AT               = "expires_at";
   public static final String NOTIFIED                 = "notified";
 
   public static class Types {
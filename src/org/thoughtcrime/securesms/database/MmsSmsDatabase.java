@@ -23,7 +23,6 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.util.Log;
 
 import org.thoughtcrime.securesms.attachments.Attachment;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
@@ -31,7 +30,10 @@ import org.thoughtcrime.securesms.database.MessagingDatabase.SyncMessageId;
 import org.thoughtcrime.securesms.database.model.MessageRecord;
 import org.whispersystems.libsignal.util.guava.Optional;
 
+import java.io.File;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 
 public class MmsSmsDatabase extends Database {
@@ -136,6 +138,53 @@ public class MmsSmsDatabase extends Database {
     return count;
   }
 
+  /**
+   * @return the earliest pending expiration deadline across both tables, or -1 if none.
+   */
+  public long getNextExpiration() {
+    long smsNext = DatabaseFactory.getSmsDatabase(context).getNextExpiration();
+    long mmsNext = DatabaseFactory.getMmsDatabase(context).getNextExpiration();
+
+    if      (smsNext == -1) return mmsNext;
+    else if (mmsNext == -1) return smsNext;
+    else                    return Math.min(smsNext, mmsNext);
+  }
+
+  /**
+   * Deletes all messages that are due to expire at {@code now} in a single transaction,
+   * updating each affected thread once. Attachment files are only deleted after that
+   * transaction commits.
+   *
+   * @return the number of threads affected.
+   */
+  public int deleteExpiredMessages(long now) {
+    SQLiteDatabase db              = databaseHelper.getWritableDatabase();
+    Set<Long>      threadIds       = new HashSet<>();
+    List<File>     attachmentFiles = new LinkedList<>();
+
+    QueryProfiler.getInstance().beginTransaction(db);
+
+    try {
+      threadIds.addAll(DatabaseFactory.getSmsDatabase(context).deleteExpiredMessages(now));
+      threadIds.addAll(DatabaseFactory.getMmsDatabase(context).deleteExpiredMessages(now, attachmentFiles));
+
+      for (long threadId : threadIds) {
+        DatabaseFactory.getThreadDatabase(context).update(threadId, false);
+      }
+
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    for (File attachmentFile : attachmentFiles) {
+      attachmentFile.delete();
+    }
+
+    notifyConversationListeners(threadIds);
+    return threadIds.size();
+  }
+
   public void incrementDeliveryReceiptCount(SyncMessageId syncMessageId) {
     DatabaseFactory.getSmsDatabase(context).incrementDeliveryReceiptCount(syncMessageId);
     DatabaseFactory.getMmsDatabase(context).incrementDeliveryReceiptCount(syncMessageId);
@@ -296,7 +345,6 @@ public class MmsSmsDatabase extends Database {
     @SuppressWarnings("deprecation")
     String query      = outerQueryBuilder.buildQuery(projection, null, null, null, null, null, null);
 
-    Log.w("MmsSmsDatabase", "Executing query: " + query);
     SQLiteDatabase db = databaseHelper.getReadableDatabase();
     return db.rawQuery(query, null);
   }
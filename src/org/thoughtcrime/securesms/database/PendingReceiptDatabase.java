@@ -0,0 +1,117 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The durable side of the delivery receipt queue. Each row is a receipt which has been
+ * promised to a sender but not yet acknowledged by the server.
+ */
+public class PendingReceiptDatabase extends Database {
+
+  private static final String TABLE_NAME = "pending_receipt";
+  public  static final String ID         = "_id";
+  public  static final String ADDRESS    = "address";
+  public  static final String TIMESTAMP  = "timestamp";
+  public  static final String RELAY      = "relay";
+
+  public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" + ID + " INTEGER PRIMARY KEY, " +
+                                            ADDRESS + " TEXT, " + TIMESTAMP + " INTEGER, " + RELAY + " TEXT);";
+
+  public static final String[] CREATE_INDEXS = {
+    "CREATE UNIQUE INDEX IF NOT EXISTS pending_receipt_address_timestamp_index ON " + TABLE_NAME + " (" + ADDRESS + ", " + TIMESTAMP + ");"
+  };
+
+  public PendingReceiptDatabase(Context context, SQLiteOpenHelper databaseHelper) {
+    super(context, databaseHelper);
+  }
+
+  /**
+   * @return the new row, or -1 if this receipt is already queued.
+   */
+  public long insert(@NonNull String address, long timestamp, @Nullable String relay) {
+    ContentValues values = new ContentValues(3);
+    values.put(ADDRESS, address);
+    values.put(TIMESTAMP, timestamp);
+    values.put(RELAY, relay);
+
+    return databaseHelper.getWritableDatabase().insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+  }
+
+  public @NonNull List<PendingReceipt> getPendingReceipts() {
+    List<PendingReceipt> results = new LinkedList<>();
+
+    try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, null, null, null, null, null, ID + " ASC")) {
+      while (cursor != null && cursor.moveToNext()) {
+        results.add(new PendingReceipt(cursor.getLong(cursor.getColumnIndexOrThrow(ID)),
+                                       cursor.getString(cursor.getColumnIndexOrThrow(ADDRESS)),
+                                       cursor.getLong(cursor.getColumnIndexOrThrow(TIMESTAMP)),
+                                       cursor.getString(cursor.getColumnIndexOrThrow(RELAY))));
+      }
+    }
+
+    return results;
+  }
+
+  public void delete(@NonNull Collection<Long> ids) {
+    if (ids.isEmpty()) return;
+
+    SQLiteDatabase  db     = databaseHelper.getWritableDatabase();
+    SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_NAME + " WHERE " + ID_WHERE);
+
+    QueryProfiler.getInstance().beginTransaction(db);
+
+    try {
+      for (long id : ids) {
+        delete.bindLong(1, id);
+        delete.executeUpdateDelete();
+      }
+
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+      delete.close();
+    }
+  }
+
+  public static class PendingReceipt {
+
+    private final long   id;
+    private final String address;
+    private final long   timestamp;
+    private final String relay;
+
+    public PendingReceipt(long id, @NonNull String address, long timestamp, @Nullable String relay) {
+      this.id        = id;
+      this.address   = address;
+      this.timestamp = timestamp;
+      this.relay     = relay;
+    }
+
+    public long getId() {
+      return id;
+    }
+
+    public @NonNull String getAddress() {
+      return address;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    public @Nullable String getRelay() {
+      return relay;
+    }
+  }
+}
@@ -22,8 +22,9 @@ public class PlaintextBackupImporter {
       throws NoExternalStorageException, IOException
   {
     Log.w("PlaintextBackupImporter", "importPlaintext()");
-    SmsDatabase    db          = DatabaseFactory.getSmsDatabase(context);
-    SQLiteDatabase transaction = db.beginTransaction();
+    SmsDatabase     db          = DatabaseFactory.getSmsDatabase(context);
+    SQLiteDatabase  transaction = db.beginTransaction();
+    SQLiteStatement statement   = db.createInsertStatement(transaction);
 
     try {
       ThreadDatabase threads         = DatabaseFactory.getThreadDatabase(context);
@@ -35,7 +36,6 @@ public class PlaintextBackupImporter {
       while ((item = backup.getNext()) != null) {
         Recipient       recipient  = Recipient.from(context, Address.fromExternal(context, item.getAddress()), false);
         long            threadId   = threads.getThreadIdFor(recipient);
-        SQLiteStatement statement  = db.createInsertStatement(transaction);
 
         if (item.getAddress() == null || item.getAddress().equals("null"))
           continue;
@@ -69,6 +69,7 @@ public class PlaintextBackupImporter {
       Log.w("PlaintextBackupImporter", e);
       throw new IOException("XML Parsing error!");
     } finally {
+      statement.close();
       db.endTransaction(transaction);
     }
   }
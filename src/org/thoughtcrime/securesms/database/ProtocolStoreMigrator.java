@@ -0,0 +1,165 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.thoughtcrime.securesms.crypto.MasterCipher;
+import org.thoughtcrime.securesms.crypto.MasterSecret;
+import org.thoughtcrime.securesms.util.Conversions;
+import org.whispersystems.libsignal.InvalidMessageException;
+import org.whispersystems.libsignal.state.SessionRecord;
+import org.whispersystems.libsignal.state.SessionState;
+import org.whispersystems.libsignal.state.StorageProtos.SessionStructure;
+import org.whispersystems.signalservice.api.push.SignalServiceAddress;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Imports sessions and pre-keys from the file-per-record layout that came before their
+ * tables. Each file holds a version marker followed by a length-prefixed record.
+ *
+ * Records from before plaintext storage are encrypted with the master secret, which isn't
+ * available when the database is upgraded on open. Those files are left where they are and
+ * imported once the secret is. Imported files are returned rather than deleted, so the
+ * caller can delete them after the import commits.
+ */
+class ProtocolStoreMigrator {
+
+  private static final String TAG = ProtocolStoreMigrator.class.getSimpleName();
+
+  private static final String SESSIONS_DIRECTORY       = "sessions-v2";
+  private static final String PREKEYS_DIRECTORY        = "prekeys";
+  private static final String SIGNED_PREKEYS_DIRECTORY = "signed_prekeys";
+
+  private static final int SESSION_SINGLE_STATE_VERSION = 1;
+  private static final int SESSION_PLAINTEXT_VERSION    = 3;
+  private static final int PREKEY_PLAINTEXT_VERSION     = 2;
+
+  static @NonNull List<File> migrate(@NonNull Context context, @NonNull SQLiteDatabase db, @Nullable MasterSecret masterSecret) {
+    List<File> migrated = new LinkedList<>();
+
+    migrateSessions(new File(context.getFilesDir(), SESSIONS_DIRECTORY), db, masterSecret, migrated);
+    migratePreKeys(new File(context.getFilesDir(), PREKEYS_DIRECTORY), OneTimePreKeyDatabase.TABLE_NAME, db, masterSecret, migrated);
+    migratePreKeys(new File(context.getFilesDir(), SIGNED_PREKEYS_DIRECTORY), SignedPreKeyDatabase.TABLE_NAME, db, masterSecret, migrated);
+
+    Log.w(TAG, "Imported " + migrated.size() + " protocol store files.");
+
+    return migrated;
+  }
+
+  static void delete(@NonNull List<File> files) {
+    for (File file : files) {
+      if (!file.delete()) {
+        Log.w(TAG, "Failed to delete " + file.getName());
+      }
+    }
+  }
+
+  private static void migrateSessions(@NonNull File directory, @NonNull SQLiteDatabase db,
+                                      @Nullable MasterSecret masterSecret, @NonNull List<File> migrated)
+  {
+    File[] files = directory.listFiles();
+    if (files == null) return;
+
+    for (File file : files) {
+      try {
+        String[] parts    = file.getName().split("[.]");
+        int      deviceId = parts.length > 1 ? Integer.parseInt(parts[1]) : SignalServiceAddress.DEFAULT_DEVICE_ID;
+        byte[]   record   = readRecord(file, SESSION_PLAINTEXT_VERSION, masterSecret);
+
+        if (record == null) continue;
+
+        SessionRecord sessionRecord;
+
+        if (readVersion(file) == SESSION_SINGLE_STATE_VERSION) {
+          sessionRecord = new SessionRecord(new SessionState(SessionStructure.parseFrom(record)));
+        } else {
+          sessionRecord = new SessionRecord(record);
+        }
+
+        ContentValues values = new ContentValues(3);
+        values.put(SessionDatabase.ADDRESS, parts[0]);
+        values.put(SessionDatabase.DEVICE, deviceId);
+        values.put(SessionDatabase.RECORD, sessionRecord.serialize());
+
+        db.insertWithOnConflict(SessionDatabase.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        migrated.add(file);
+      } catch (IOException | NumberFormatException | InvalidMessageException e) {
+        Log.w(TAG, e);
+      }
+    }
+  }
+
+  private static void migratePreKeys(@NonNull File directory, @NonNull String table, @NonNull SQLiteDatabase db,
+                                     @Nullable MasterSecret masterSecret, @NonNull List<File> migrated)
+  {
+    File[] files = directory.listFiles();
+    if (files == null) return;
+
+    for (File file : files) {
+      try {
+        int    keyId  = Integer.parseInt(file.getName());
+        byte[] record = readRecord(file, PREKEY_PLAINTEXT_VERSION, masterSecret);
+
+        if (record == null) continue;
+
+        ContentValues values = new ContentValues(2);
+        values.put(OneTimePreKeyDatabase.KEY_ID, keyId);
+        values.put(OneTimePreKeyDatabase.RECORD, record);
+
+        db.replace(table, null, values);
+        migrated.add(file);
+      } catch (NumberFormatException e) {
+        Log.w(TAG, "Skipping " + file.getName());
+      } catch (IOException | InvalidMessageException e) {
+        Log.w(TAG, e);
+      }
+    }
+  }
+
+  /**
+   * @return the record, or null if it's encrypted and there's no master secret to read it.
+   */
+  private static @Nullable byte[] readRecord(@NonNull File file, int plaintextVersion, @Nullable MasterSecret masterSecret)
+      throws IOException, InvalidMessageException
+  {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      int version = readInteger(in);
+
+      if (version > plaintextVersion) {
+        throw new IOException("Unknown version: " + version);
+      }
+
+      byte[] record = new byte[readInteger(in)];
+      in.readFully(record);
+
+      if (version < plaintextVersion) {
+        if (masterSecret == null) return null;
+        else                      return new MasterCipher(masterSecret).decryptBytes(record);
+      }
+
+      return record;
+    }
+  }
+
+  private static int readVersion(@NonNull File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return readInteger(in);
+    }
+  }
+
+  private static int readInteger(@NonNull DataInputStream in) throws IOException {
+    byte[] integer = new byte[4];
+    in.readFully(integer);
+    return Conversions.byteArrayToInt(integer);
+  }
+}
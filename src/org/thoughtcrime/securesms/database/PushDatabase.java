@@ -5,21 +5,24 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
-import android.util.Log;
 
-import org.thoughtcrime.securesms.util.Base64;
 import org.whispersystems.libsignal.util.guava.Optional;
 import org.whispersystems.signalservice.api.messages.SignalServiceEnvelope;
-import org.whispersystems.signalservice.internal.util.Util;
 
-import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 public class PushDatabase extends Database {
 
   private static final String TAG = PushDatabase.class.getSimpleName();
 
-  private static final String TABLE_NAME   = "push";
+          static final String TABLE_NAME   = "push";
   public  static final String ID           = "_id";
   public  static final String TYPE         = "type";
   public  static final String SOURCE       = "source";
@@ -29,99 +32,212 @@ public class PushDatabase extends Database {
   public  static final String TIMESTAMP    = "timestamp";
 
   public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" + ID + " INTEGER PRIMARY KEY, " +
-      TYPE + " INTEGER, " + SOURCE + " TEXT, " + DEVICE_ID + " INTEGER, " + LEGACY_MSG + " TEXT, " + CONTENT + " TEXT, " + TIMESTAMP + " INTEGER);";
+      TYPE + " INTEGER, " + SOURCE + " TEXT, " + DEVICE_ID + " INTEGER, " + LEGACY_MSG + " BLOB, " + CONTENT + " BLOB, " + TIMESTAMP + " INTEGER);";
+
+  public static final String[] CREATE_INDEXS = {
+    "CREATE UNIQUE INDEX IF NOT EXISTS push_source_device_timestamp_index ON " + TABLE_NAME + " (" + SOURCE + ", " + DEVICE_ID + ", " + TIMESTAMP + ");"
+  };
+
+  static final String INSERT_OR_IGNORE = "INSERT OR IGNORE INTO " + TABLE_NAME + " (" + TYPE + ", " + SOURCE + ", " + DEVICE_ID + ", " +
+                                         LEGACY_MSG + ", " + CONTENT + ", " + TIMESTAMP + ") VALUES (?, ?, ?, ?, ?, ?)";
 
   public PushDatabase(Context context, SQLiteOpenHelper databaseHelper) {
     super(context, databaseHelper);
   }
 
+  /**
+   * Envelopes are identified by their sender, device and timestamp. Inserting one that's
+   * already queued returns the existing row.
+   */
   public long insert(@NonNull SignalServiceEnvelope envelope) {
-    Optional<Long> messageId = find(envelope);
-
-    if (messageId.isPresent()) {
-      return messageId.get();
-    } else {
-      ContentValues values = new ContentValues();
-      values.put(TYPE, envelope.getType());
-      values.put(SOURCE, envelope.getSource());
-      values.put(DEVICE_ID, envelope.getSourceDevice());
-      values.put(LEGACY_MSG, envelope.hasLegacyMessage() ? Base64.encodeBytes(envelope.getLegacyMessage()) : "");
-      values.put(CONTENT, envelope.hasContent() ? Base64.encodeBytes(envelope.getContent()) : "");
-      values.put(TIMESTAMP, envelope.getTimestamp());
-
-      return databaseHelper.getWritableDatabase().insert(TABLE_NAME, null, values);
-    }
+    ContentValues values = new ContentValues();
+    values.put(TYPE, envelope.getType());
+    values.put(SOURCE, envelope.getSource());
+    values.put(DEVICE_ID, envelope.getSourceDevice());
+    values.put(LEGACY_MSG, envelope.hasLegacyMessage() ? envelope.getLegacyMessage() : null);
+    values.put(CONTENT, envelope.hasContent() ? envelope.getContent() : null);
+    values.put(TIMESTAMP, envelope.getTimestamp());
+
+    long id = databaseHelper.getWritableDatabase().insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+
+    if (id != -1) return id;
+    else          return find(envelope).or(-1L);
   }
 
-  public SignalServiceEnvelope get(long id) throws NoSuchMessageException {
-    Cursor cursor = null;
+  /**
+   * Queues a batch of envelopes in a single transaction.
+   *
+   * @return the row of each envelope, in order, whether it was inserted or already queued.
+   */
+  public @NonNull List<Long> insert(@NonNull List<SignalServiceEnvelope> envelopes) {
+    SQLiteDatabase  db     = databaseHelper.getWritableDatabase();
+    SQLiteStatement insert = db.compileStatement(INSERT_OR_IGNORE);
+    List<Long>      ids    = new LinkedList<>();
+
+    QueryProfiler.getInstance().beginTransaction(db);
 
     try {
-      cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, null, ID_WHERE,
-                                                          new String[] {String.valueOf(id)},
-                                                          null, null, null);
-
-      if (cursor != null && cursor.moveToNext()) {
-        String legacyMessage = cursor.getString(cursor.getColumnIndexOrThrow(LEGACY_MSG));
-        String content       = cursor.getString(cursor.getColumnIndexOrThrow(CONTENT));
-
-        return new SignalServiceEnvelope(cursor.getInt(cursor.getColumnIndexOrThrow(TYPE)),
-                                         cursor.getString(cursor.getColumnIndexOrThrow(SOURCE)),
-                                         cursor.getInt(cursor.getColumnIndexOrThrow(DEVICE_ID)),
-                                         "",
-                                         cursor.getLong(cursor.getColumnIndexOrThrow(TIMESTAMP)),
-                                         Util.isEmpty(legacyMessage) ? null : Base64.decode(legacyMessage),
-                                         Util.isEmpty(content) ? null : Base64.decode(content));
+      for (SignalServiceEnvelope envelope : envelopes) {
+        insert.bindLong(1, envelope.getType());
+        insert.bindString(2, envelope.getSource());
+        insert.bindLong(3, envelope.getSourceDevice());
+        bindBlobOrNull(insert, 4, envelope.hasLegacyMessage() ? envelope.getLegacyMessage() : null);
+        bindBlobOrNull(insert, 5, envelope.hasContent() ? envelope.getContent() : null);
+        insert.bindLong(6, envelope.getTimestamp());
+
+        long id = insert.executeInsert();
+
+        if (id != -1) ids.add(id);
+        else          ids.add(find(envelope).or(-1L));
       }
-    } catch (IOException e) {
-      Log.w(TAG, e);
-      throw new NoSuchMessageException(e);
+
+      db.setTransactionSuccessful();
     } finally {
-      if (cursor != null)
-        cursor.close();
+      insert.close();
+      db.endTransaction();
     }
 
-    throw new NoSuchMessageException("Not found");
+    return ids;
+  }
+
+  public SignalServiceEnvelope get(long id) throws NoSuchMessageException {
+    try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, null, ID_WHERE,
+                                                                    new String[] {String.valueOf(id)},
+                                                                    null, null, null))
+    {
+      SignalServiceEnvelope envelope = new Reader(cursor).getNext();
+
+      if (envelope != null) return envelope;
+      else                  throw new NoSuchMessageException("Not found");
+    }
   }
 
   public Cursor getPending() {
-    return databaseHelper.getReadableDatabase().query(TABLE_NAME, null, null, null, null, null, null);
+    return databaseHelper.getReadableDatabase().query(TABLE_NAME, null, null, null, null, null, ID + " ASC");
+  }
+
+  /**
+   * @return the rows of every queued envelope, oldest first, without reading their contents.
+   */
+  public @NonNull List<Long> getPendingIds() {
+    List<Long> ids = new LinkedList<>();
+
+    try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, new String[] {ID}, null, null, null, null, ID + " ASC")) {
+      while (cursor != null && cursor.moveToNext()) {
+        ids.add(cursor.getLong(0));
+      }
+    }
+
+    return ids;
   }
 
   public void delete(long id) {
     databaseHelper.getWritableDatabase().delete(TABLE_NAME, ID_WHERE, new String[] {id+""});
   }
 
+  public void delete(@NonNull Collection<Long> ids) {
+    SQLiteDatabase  db     = databaseHelper.getWritableDatabase();
+    SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_NAME + " WHERE " + ID_WHERE);
+
+    QueryProfiler.getInstance().beginTransaction(db);
+
+    try {
+      for (long id : ids) {
+        delete.bindLong(1, id);
+        delete.executeUpdateDelete();
+      }
+
+      db.setTransactionSuccessful();
+    } finally {
+      delete.close();
+      db.endTransaction();
+    }
+  }
+
+  /**
+   * Reads and removes a batch of queued envelopes in one transaction. Claimed inside a
+   * caller's transaction, the envelopes are queued again if that transaction rolls back.
+   *
+   * @return the claimed envelopes by row, in the order asked for. Rows that are no longer
+   * queued are left out.
+   */
+  public @NonNull Map<Long, SignalServiceEnvelope> claim(@NonNull long[] ids) {
+    Map<Long, SignalServiceEnvelope> claimed = new LinkedHashMap<>(ids.length);
+
+    if (ids.length == 0) return claimed;
+
+    SQLiteDatabase                   db        = databaseHelper.getWritableDatabase();
+    Map<Long, SignalServiceEnvelope> envelopes = new HashMap<>(ids.length);
+    String                           where     = getIdsWhere(ids.length);
+    String[]                         args      = new String[ids.length];
+
+    for (int i=0;i<ids.length;i++) {
+      args[i] = String.valueOf(ids[i]);
+    }
+
+    QueryProfiler.getInstance().beginTransaction(db);
+
+    try {
+      try (Cursor cursor = db.query(TABLE_NAME, null, where, args, null, null, null)) {
+        Reader                reader = new Reader(cursor);
+        SignalServiceEnvelope envelope;
+
+        while ((envelope = reader.getNext()) != null) {
+          envelopes.put(reader.getCurrentId(), envelope);
+        }
+      }
+
+      db.delete(TABLE_NAME, where, args);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    for (long id : ids) {
+      SignalServiceEnvelope envelope = envelopes.get(id);
+      if (envelope != null) claimed.put(id, envelope);
+    }
+
+    return claimed;
+  }
+
   public Reader readerFor(Cursor cursor) {
     return new Reader(cursor);
   }
 
   private Optional<Long> find(SignalServiceEnvelope envelope) {
     SQLiteDatabase database = databaseHelper.getReadableDatabase();
-    Cursor         cursor   = null;
-
-    try {
-      cursor = database.query(TABLE_NAME, null, TYPE + " = ? AND " + SOURCE + " = ? AND " +
-                                                DEVICE_ID + " = ? AND " + LEGACY_MSG + " = ? AND " +
-                                                CONTENT + " = ? AND " + TIMESTAMP + " = ?" ,
-                              new String[] {String.valueOf(envelope.getType()),
-                                            envelope.getSource(),
-                                            String.valueOf(envelope.getSourceDevice()),
-                                            envelope.hasLegacyMessage() ? Base64.encodeBytes(envelope.getLegacyMessage()) : "",
-                                            envelope.hasContent() ? Base64.encodeBytes(envelope.getContent()) : "",
-                                            String.valueOf(envelope.getTimestamp())},
-                              null, null, null);
 
+    try (Cursor cursor = database.query(TABLE_NAME, new String[] {ID},
+                                        SOURCE + " = ? AND " + DEVICE_ID + " = ? AND " + TIMESTAMP + " = ?",
+                                        new String[] {envelope.getSource(),
+                                                      String.valueOf(envelope.getSourceDevice()),
+                                                      String.valueOf(envelope.getTimestamp())},
+                                        null, null, null))
+    {
       if (cursor != null && cursor.moveToFirst()) {
-        return Optional.of(cursor.getLong(cursor.getColumnIndexOrThrow(ID)));
+        return Optional.of(cursor.getLong(0));
       } else {
         return Optional.absent();
       }
-    } finally {
-      if (cursor != null) cursor.close();
     }
   }
 
+  static String getIdsWhere(int count) {
+    StringBuilder where = new StringBuilder(ID + " IN (");
+
+    for (int i=0;i<count;i++) {
+      where.append(i == 0 ? "?" : ", ?");
+    }
+
+    return where.append(")").toString();
+  }
+
+  private static void bindBlobOrNull(@NonNull SQLiteStatement statement, int index, byte[] value) {
+    if (value == null) statement.bindNull(index);
+    else               statement.bindBlob(index, value);
+  }
+
   public static class Reader {
     private final Cursor cursor;
 
@@ -130,23 +246,21 @@ public class PushDatabase extends Database {
     }
 
     public SignalServiceEnvelope getNext() {
-      try {
-        if (cursor == null || !cursor.moveToNext())
-          return null;
-
-        int    type          = cursor.getInt(cursor.getColumnIndexOrThrow(TYPE));
-        String source        = cursor.getString(cursor.getColumnIndexOrThrow(SOURCE));
-        int    deviceId      = cursor.getInt(cursor.getColumnIndexOrThrow(DEVICE_ID));
-        String legacyMessage = cursor.getString(cursor.getColumnIndexOrThrow(LEGACY_MSG));
-        String content       = cursor.getString(cursor.getColumnIndexOrThrow(CONTENT));
-        long   timestamp     = cursor.getLong(cursor.getColumnIndexOrThrow(TIMESTAMP));
-
-        return new SignalServiceEnvelope(type, source, deviceId, "", timestamp,
-                                         legacyMessage != null ? Base64.decode(legacyMessage) : null,
-                                         content != null ? Base64.decode(content) : null);
-      } catch (IOException e) {
-        throw new AssertionError(e);
-      }
+      if (cursor == null || !cursor.moveToNext())
+        return null;
+
+      int    type          = cursor.getInt(cursor.getColumnIndexOrThrow(TYPE));
+      String source        = cursor.getString(cursor.getColumnIndexOrThrow(SOURCE));
+      int    deviceId      = cursor.getInt(cursor.getColumnIndexOrThrow(DEVICE_ID));
+      byte[] legacyMessage = cursor.getBlob(cursor.getColumnIndexOrThrow(LEGACY_MSG));
+      byte[] content       = cursor.getBlob(cursor.getColumnIndexOrThrow(CONTENT));
+      long   timestamp     = cursor.getLong(cursor.getColumnIndexOrThrow(TIMESTAMP));
+
+      return new SignalServiceEnvelope(type, source, deviceId, "", timestamp, legacyMessage, content);
+    }
+
+    public long getCurrentId() {
+      return cursor.getLong(cursor.getColumnIndexOrThrow(ID));
     }
 
     public void close() {
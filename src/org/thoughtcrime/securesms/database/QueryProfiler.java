@@ -0,0 +1,302 @@
+package org.thoughtcrime.securesms.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteQuery;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import org.thoughtcrime.securesms.util.LRUCache;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cheap always-on profiling for the message database.
+ *
+ * Every cursor handed out by the database is timed while its query first executes. One query
+ * in {@link #SAMPLE_RATE} is folded into a per-statement-shape histogram. Queries slower than
+ * {@link #SLOW_QUERY_MILLIS} are always recorded, logged, and have their query plan captured
+ * once per shape, off the querying thread. The fast path is a nanoTime() pair and an
+ * increment. The SQL is only read back, and literals stripped from it, when a query is
+ * actually recorded. Row counts are the rows a query returned, since SQLite doesn't report
+ * how many it scanned. Captured plans that scan a whole table are marked as such instead.
+ *
+ * Time spent beginning transactions, which waits for the writer connection and the database
+ * lock, is recorded separately, as is time the change bus spends waiting for writers. The
+ * report is written to the log when a debug log is submitted.
+ */
+public class QueryProfiler {
+
+  private static final String TAG = QueryProfiler.class.getSimpleName();
+
+  private static final int  SAMPLE_RATE       = 16;
+  private static final long SLOW_QUERY_MILLIS = 100;
+  private static final int  MAX_SHAPES        = 100;
+  private static final int  MAX_PLANS         = 25;
+
+  private static final long[] BUCKET_BOUNDS_MILLIS = {1, 4, 16, 64, 256, 1024};
+
+  private static final String QUERY_PREFIX = "SQLiteQuery: ";
+
+  private static final QueryProfiler instance = new QueryProfiler();
+
+  public static QueryProfiler getInstance() {
+    return instance;
+  }
+
+  private final AtomicInteger          queryCounter     = new AtomicInteger();
+  private final Map<String, Histogram> shapes           = new LRUCache<>(MAX_SHAPES);
+  private final Map<String, String>    plans            = new LRUCache<>(MAX_PLANS);
+  private final Histogram              transactionWaits = new Histogram();
+  private final Histogram              barrierWaits     = new Histogram();
+  private final Executor               planExecutor     = Executors.newSingleThreadExecutor();
+
+  private QueryProfiler() {}
+
+  public SQLiteDatabase.CursorFactory getCursorFactory() {
+    return new SQLiteDatabase.CursorFactory() {
+      @Override
+      public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+        return new ProfilingCursor(db, driver, editTable, query);
+      }
+    };
+  }
+
+  /**
+   * Begins an exclusive transaction, recording how long it took to get the writer connection
+   * and the database lock.
+   */
+  public void beginTransaction(@NonNull SQLiteDatabase db) {
+    long start = System.nanoTime();
+    db.beginTransaction();
+    transactionWaits.record(System.nanoTime() - start, 0);
+  }
+
+  public void recordBarrierWait(long nanos) {
+    barrierWaits.record(nanos, 0);
+  }
+
+  public void logReport() {
+    Log.w(TAG, "Transaction begin waits: " + getSummary(transactionWaits));
+    Log.w(TAG, "Change bus writer waits: " + getSummary(barrierWaits));
+
+    synchronized (shapes) {
+      for (Map.Entry<String, Histogram> shape : shapes.entrySet()) {
+        Log.w(TAG, getSummary(shape.getValue()) + " :: " + shape.getKey());
+      }
+    }
+
+    synchronized (plans) {
+      for (Map.Entry<String, String> plan : plans.entrySet()) {
+        Log.w(TAG, "Plan for " + plan.getKey() + "\n" + plan.getValue());
+      }
+    }
+  }
+
+  private void onQueryExecuted(@NonNull SQLiteDatabase db, @NonNull SQLiteQuery query, long nanos, int rows) {
+    boolean slow    = nanos >= TimeUnit.MILLISECONDS.toNanos(SLOW_QUERY_MILLIS);
+    boolean sampled = queryCounter.incrementAndGet() % SAMPLE_RATE == 0;
+
+    if (!slow && !sampled) return;
+
+    String sql = getSql(query);
+    if (sql.startsWith("EXPLAIN")) return;
+
+    String shape = getShape(sql);
+
+    synchronized (shapes) {
+      Histogram histogram = shapes.get(shape);
+
+      if (histogram == null) {
+        histogram = new Histogram();
+        shapes.put(shape, histogram);
+      }
+
+      histogram.record(nanos, rows);
+    }
+
+    if (slow) {
+      Log.w(TAG, "Slow query (" + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms, " + rows + " rows returned): " + shape);
+      capturePlan(db, sql, shape);
+    }
+  }
+
+  private void capturePlan(@NonNull final SQLiteDatabase db, @NonNull final String sql, @NonNull final String shape) {
+    synchronized (plans) {
+      if (plans.containsKey(shape)) return;
+      plans.put(shape, "");
+    }
+
+    planExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        explain(db, sql, shape);
+      }
+    });
+  }
+
+  private void explain(@NonNull SQLiteDatabase db, @NonNull String sql, @NonNull String shape) {
+    StringBuilder plan = new StringBuilder();
+
+    SQLiteDatabase.CursorFactory plainFactory = new SQLiteDatabase.CursorFactory() {
+      @Override
+      public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+        return new SQLiteCursor(driver, editTable, query);
+      }
+    };
+
+    try (Cursor cursor = db.rawQueryWithFactory(plainFactory, "EXPLAIN QUERY PLAN " + sql, null, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+      }
+    } catch (SQLiteException e) {
+      Log.w(TAG, e);
+      return;
+    }
+
+    if (isFullScan(plan.toString())) {
+      plan.insert(0, "(full table scan)\n");
+    }
+
+    synchronized (plans) {
+      plans.put(shape, plan.toString());
+    }
+  }
+
+  /**
+   * A plan step that scans a table without an index reads every row of it, whatever the
+   * query returns.
+   */
+  static boolean isFullScan(@NonNull String plan) {
+    for (String step : plan.split("\n")) {
+      if (step.startsWith("SCAN TABLE") && !step.contains(" USING ")) return true;
+    }
+
+    return false;
+  }
+
+  private static @NonNull String getSql(@NonNull SQLiteQuery query) {
+    String description = query.toString();
+
+    if (description.startsWith(QUERY_PREFIX)) return description.substring(QUERY_PREFIX.length());
+    else                                      return description;
+  }
+
+  /**
+   * Reduces a statement to its shape by replacing numeric and string literals with '?', so
+   * that queries generated with inlined ids share a histogram.
+   */
+  static @NonNull String getShape(@NonNull String sql) {
+    StringBuilder shape = new StringBuilder(sql.length());
+    int           length = sql.length();
+
+    for (int i = 0; i < length; i++) {
+      char c = sql.charAt(i);
+
+      if (c == '\'') {
+        int end = i + 1;
+        while (end < length && sql.charAt(end) != '\'') end++;
+
+        shape.append('?');
+        i = end;
+      } else if (Character.isDigit(c) && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+        int end = i;
+        while (end + 1 < length && (Character.isDigit(sql.charAt(end + 1)) || sql.charAt(end + 1) == '.')) end++;
+
+        shape.append('?');
+        i = end;
+      } else {
+        shape.append(c);
+      }
+    }
+
+    return shape.toString();
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  private static @NonNull String getSummary(@NonNull Histogram histogram) {
+    synchronized (histogram) {
+      StringBuilder summary = new StringBuilder();
+
+      summary.append("n=").append(histogram.count)
+             .append(" avg=").append(histogram.count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(histogram.totalNanos / histogram.count)).append("us")
+             .append(" max=").append(TimeUnit.NANOSECONDS.toMillis(histogram.maxNanos)).append("ms")
+             .append(" returned=").append(histogram.totalRows)
+             .append(" [");
+
+      for (int i = 0; i < histogram.buckets.length; i++) {
+        if (i > 0) summary.append(' ');
+
+        if (i < BUCKET_BOUNDS_MILLIS.length) summary.append("<").append(BUCKET_BOUNDS_MILLIS[i]).append("ms:");
+        else                                 summary.append(">=").append(BUCKET_BOUNDS_MILLIS[BUCKET_BOUNDS_MILLIS.length - 1]).append("ms:");
+
+        summary.append(histogram.buckets[i]);
+      }
+
+      return summary.append(']').toString();
+    }
+  }
+
+  private static class Histogram {
+
+    private final long[] buckets = new long[BUCKET_BOUNDS_MILLIS.length + 1];
+
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private long totalRows;
+
+    synchronized void record(long nanos, int rows) {
+      long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+      int  bucket = 0;
+
+      while (bucket < BUCKET_BOUNDS_MILLIS.length && millis >= BUCKET_BOUNDS_MILLIS[bucket]) bucket++;
+
+      buckets[bucket]++;
+      count++;
+      totalNanos += nanos;
+      totalRows  += rows;
+      maxNanos    = Math.max(maxNanos, nanos);
+    }
+  }
+
+  private class ProfilingCursor extends SQLiteCursor {
+
+    private final SQLiteDatabase db;
+    private final SQLiteQuery    query;
+
+    private boolean executed;
+
+    ProfilingCursor(SQLiteDatabase db, SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+      super(driver, editTable, query);
+      this.db    = db;
+      this.query = query;
+    }
+
+    /**
+     * The query runs the first time the cursor is counted, which every move does first.
+     */
+    @Override
+    public int getCount() {
+      if (executed) return super.getCount();
+
+      long start = System.nanoTime();
+      int  count = super.getCount();
+
+      executed = true;
+      onQueryExecuted(db, query, System.nanoTime() - start, count);
+
+      return count;
+    }
+  }
+}
@@ -5,6 +5,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -16,10 +17,13 @@ import org.thoughtcrime.securesms.color.MaterialColor;
 import org.thoughtcrime.securesms.contacts.avatars.ContactPhotoFactory;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.Base64;
+import org.thoughtcrime.securesms.util.GroupUtil;
 import org.whispersystems.libsignal.util.Pair;
 import org.whispersystems.libsignal.util.guava.Optional;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -41,12 +45,16 @@ public class RecipientDatabase extends Database {
   private static final String SEEN_INVITE_REMINDER    = "seen_invite_reminder";
   private static final String DEFAULT_SUBSCRIPTION_ID = "default_subscription_id";
   private static final String EXPIRE_MESSAGES         = "expire_messages";
-  private static final String REGISTERED              = "registered";
+          static final String REGISTERED              = "registered";
   private static final String PROFILE_KEY             = "profile_key";
   private static final String SYSTEM_DISPLAY_NAME     = "system_display_name";
   private static final String SIGNAL_PROFILE_NAME     = "signal_profile_name";
   private static final String SIGNAL_PROFILE_AVATAR   = "signal_profile_avatar";
   private static final String PROFILE_SHARING         = "profile_sharing_approval";
+  private static final String PROFILE_FETCHED         = "profile_fetched";
+  private static final String PROFILE_HASH            = "profile_hash";
+
+  private static final int MAX_QUERY_ADDRESSES = 500;
 
   private static final String[] RECIPIENT_PROJECTION = new String[] {
       BLOCK, NOTIFICATION, VIBRATE, MUTE_UNTIL, COLOR, SEEN_INVITE_REMINDER, DEFAULT_SUBSCRIPTION_ID, EXPIRE_MESSAGES, REGISTERED,
@@ -110,7 +118,18 @@ public class RecipientDatabase extends Database {
           PROFILE_KEY + " TEXT DEFAULT NULL, " +
           SIGNAL_PROFILE_NAME + " TEXT DEFAULT NULL, " +
           SIGNAL_PROFILE_AVATAR + " TEXT DEFAULT NULL, " +
-          PROFILE_SHARING + " INTEGER DEFAULT 0);";
+          PROFILE_SHARING + " INTEGER DEFAULT 0, " +
+          PROFILE_FETCHED + " INTEGER DEFAULT 0, " +
+          PROFILE_HASH + " TEXT DEFAULT NULL);";
+
+  public static final String[] CREATE_INDEXS = {
+      "CREATE INDEX IF NOT EXISTS recipient_profile_fetched_index ON " + TABLE_NAME + " (" + PROFILE_FETCHED + ");"
+  };
+
+  static final String UPDATE_REGISTERED = "UPDATE " + TABLE_NAME + " SET " + REGISTERED + " = ? " +
+                                          "WHERE " + ADDRESS + " = ? AND " + REGISTERED + " != ?";
+  static final String INSERT_REGISTERED = "INSERT OR IGNORE INTO " + TABLE_NAME + " (" + ADDRESS + ", " + REGISTERED + ") " +
+                                          "VALUES (?, ?)";
 
   public RecipientDatabase(Context context, SQLiteOpenHelper databaseHelper) {
     super(context, databaseHelper);
@@ -195,7 +214,7 @@ public class RecipientDatabase extends Database {
 
   public BulkOperationsHandle resetAllDisplayNames() {
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
-    database.beginTransaction();
+    QueryProfiler.getInstance().beginTransaction(database);
 
     ContentValues contentValues = new ContentValues(1);
     contentValues.put(SYSTEM_DISPLAY_NAME, (String)null);
@@ -209,95 +228,179 @@ public class RecipientDatabase extends Database {
     ContentValues values = new ContentValues();
     values.put(COLOR, color.serialize());
     updateOrInsert(recipient.getAddress(), values);
-    recipient.resolve().setColor(color);
+    AfterCommit.run(() -> recipient.resolve().setColor(color));
   }
 
   public void setDefaultSubscriptionId(@NonNull Recipient recipient, int defaultSubscriptionId) {
     ContentValues values = new ContentValues();
     values.put(DEFAULT_SUBSCRIPTION_ID, defaultSubscriptionId);
     updateOrInsert(recipient.getAddress(), values);
-    recipient.resolve().setDefaultSubscriptionId(Optional.of(defaultSubscriptionId));
+    AfterCommit.run(() -> recipient.resolve().setDefaultSubscriptionId(Optional.of(defaultSubscriptionId)));
   }
 
   public void setBlocked(@NonNull Recipient recipient, boolean blocked) {
     ContentValues values = new ContentValues();
     values.put(BLOCK, blocked ? 1 : 0);
     updateOrInsert(recipient.getAddress(), values);
-    recipient.resolve().setBlocked(blocked);
+    AfterCommit.run(() -> recipient.resolve().setBlocked(blocked));
   }
 
   public void setRingtone(@NonNull Recipient recipient, @Nullable Uri notification) {
     ContentValues values = new ContentValues();
     values.put(NOTIFICATION, notification == null ? null : notification.toString());
     updateOrInsert(recipient.getAddress(), values);
-    recipient.resolve().setRingtone(notification);
+    AfterCommit.run(() -> recipient.resolve().setRingtone(notification));
   }
 
   public void setVibrate(@NonNull Recipient recipient, @NonNull VibrateState enabled) {
     ContentValues values = new ContentValues();
     values.put(VIBRATE, enabled.getId());
     updateOrInsert(recipient.getAddress(), values);
-    recipient.resolve().setVibrate(enabled);
+    AfterCommit.run(() -> recipient.resolve().setVibrate(enabled));
   }
 
   public void setMuted(@NonNull Recipient recipient, long until) {
     ContentValues values = new ContentValues();
     values.put(MUTE_UNTIL, until);
     updateOrInsert(recipient.getAddress(), values);
-    recipient.resolve().setMuted(until);
+    AfterCommit.run(() -> recipient.resolve().setMuted(until));
   }
 
   public void setSeenInviteReminder(@NonNull Recipient recipient, boolean seen) {
     ContentValues values = new ContentValues(1);
     values.put(SEEN_INVITE_REMINDER, seen ? 1 : 0);
     updateOrInsert(recipient.getAddress(), values);
-    recipient.resolve().setHasSeenInviteReminder(seen);
+    AfterCommit.run(() -> recipient.resolve().setHasSeenInviteReminder(seen));
   }
 
   public void setExpireMessages(@NonNull Recipient recipient, int expiration) {
-    recipient.setExpireMessages(expiration);
-
     ContentValues values = new ContentValues(1);
     values.put(EXPIRE_MESSAGES, expiration);
     updateOrInsert(recipient.getAddress(), values);
-    recipient.resolve().setExpireMessages(expiration);
+    AfterCommit.run(() -> recipient.resolve().setExpireMessages(expiration));
   }
 
   public void setProfileKey(@NonNull Recipient recipient, @Nullable byte[] profileKey) {
     ContentValues values = new ContentValues(1);
     values.put(PROFILE_KEY, profileKey == null ? null : Base64.encodeBytes(profileKey));
     updateOrInsert(recipient.getAddress(), values);
-    recipient.resolve().setProfileKey(profileKey);
+    AfterCommit.run(() -> recipient.resolve().setProfileKey(profileKey));
   }
 
   public void setProfileName(@NonNull Recipient recipient, @Nullable String profileName) {
     ContentValues contentValues = new ContentValues(1);
     contentValues.put(SIGNAL_PROFILE_NAME, profileName);
     updateOrInsert(recipient.getAddress(), contentValues);
-    recipient.resolve().setProfileName(profileName);
+    AfterCommit.run(() -> recipient.resolve().setProfileName(profileName));
   }
 
   public void setProfileAvatar(@NonNull Recipient recipient, @Nullable String profileAvatar) {
     ContentValues contentValues = new ContentValues(1);
     contentValues.put(SIGNAL_PROFILE_AVATAR, profileAvatar);
     updateOrInsert(recipient.getAddress(), contentValues);
-    recipient.resolve().setProfileAvatar(profileAvatar);
+    AfterCommit.run(() -> recipient.resolve().setProfileAvatar(profileAvatar));
   }
 
   public void setProfileSharing(@NonNull Recipient recipient, boolean enabled) {
     ContentValues contentValues = new ContentValues(1);
     contentValues.put(PROFILE_SHARING, enabled ? 1 : 0);
     updateOrInsert(recipient.getAddress(), contentValues);
-    recipient.setProfileSharing(enabled);
+    AfterCommit.run(() -> recipient.setProfileSharing(enabled));
   }
 
-  public Set<Recipient> getAllRecipients() {
+  /**
+   * @return those of the given addresses whose profiles were last fetched at or after the
+   * given time. They're looked up {@link #MAX_QUERY_ADDRESSES} at a time, which keeps each
+   * query under SQLite's limit on bound arguments.
+   */
+  public @NonNull Set<Address> getProfilesFetchedSince(@NonNull Collection<Address> addresses, long timestamp) {
     SQLiteDatabase db      = databaseHelper.getReadableDatabase();
-    Set<Recipient> results = new HashSet<>();
+    List<Address>  pending = new ArrayList<>(addresses);
+    Set<Address>   results = new HashSet<>();
+
+    for (int start = 0; start < pending.size(); start += MAX_QUERY_ADDRESSES) {
+      List<Address> chunk = pending.subList(start, Math.min(pending.size(), start + MAX_QUERY_ADDRESSES));
+      String[]      args  = new String[chunk.size() + 1];
+      StringBuilder where = new StringBuilder(PROFILE_FETCHED + " >= ? AND " + ADDRESS + " IN (");
+
+      args[0] = String.valueOf(timestamp);
+
+      for (int i = 0; i < chunk.size(); i++) {
+        where.append(i == 0 ? "?" : ", ?");
+        args[i + 1] = chunk.get(i).serialize();
+      }
+
+      try (Cursor cursor = db.query(TABLE_NAME, new String[] {ADDRESS}, where.append(")").toString(), args, null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          results.add(Address.fromSerialized(cursor.getString(0)));
+        }
+      }
+    }
+
+    return results;
+  }
+
+  public @Nullable String getProfileHash(@NonNull Address address) {
+    SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+    try (Cursor cursor = db.query(TABLE_NAME, new String[] {PROFILE_HASH}, ADDRESS + " = ?",
+                                  new String[] {address.serialize()}, null, null, null))
+    {
+      if (cursor != null && cursor.moveToFirst()) {
+        return cursor.getString(0);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Records a profile fetch. Nothing a recipient displays depends on it, so unlike the other
+   * setters this doesn't notify observers of the recipient table.
+   */
+  public void setProfileFetched(@NonNull Address address, long timestamp, @NonNull String hash) {
+    SQLiteDatabase database = databaseHelper.getWritableDatabase();
+    ContentValues  values   = new ContentValues(2);
+    values.put(PROFILE_FETCHED, timestamp);
+    values.put(PROFILE_HASH, hash);
+
+    QueryProfiler.getInstance().beginTransaction(database);
+
+    try {
+      updateOrInsert(database, address, values);
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+  }
+
+  public @NonNull Set<String> getAllAddresses() {
+    SQLiteDatabase db      = databaseHelper.getReadableDatabase();
+    Set<String>    results = new HashSet<>();
 
     try (Cursor cursor = db.query(TABLE_NAME, new String[] {ADDRESS}, null, null, null, null, null)) {
       while (cursor != null && cursor.moveToNext()) {
-        results.add(Recipient.from(context, Address.fromExternal(context, cursor.getString(0)), true));
+        String address = cursor.getString(0);
+
+        if (!GroupUtil.isEncodedGroup(address)) {
+          results.add(address);
+        }
+      }
+    }
+
+    return results;
+  }
+
+  public @NonNull Set<String> getAddressesWithKnownRegisteredState() {
+    SQLiteDatabase db      = databaseHelper.getReadableDatabase();
+    Set<String>    results = new HashSet<>();
+
+    try (Cursor cursor = db.query(TABLE_NAME, new String[] {ADDRESS}, REGISTERED + " != ?",
+                                  new String[] {String.valueOf(RegisteredState.UNKNOWN.getId())},
+                                  null, null, null))
+    {
+      while (cursor != null && cursor.moveToNext()) {
+        results.add(cursor.getString(0));
       }
     }
 
@@ -308,29 +411,75 @@ public class RecipientDatabase extends Database {
     ContentValues contentValues = new ContentValues(1);
     contentValues.put(REGISTERED, registeredState.getId());
     updateOrInsert(recipient.getAddress(), contentValues);
-    recipient.setRegistered(registeredState);
+    AfterCommit.run(() -> recipient.setRegistered(registeredState));
   }
 
-  public void setRegistered(@NonNull List<Recipient> activeRecipients,
-                            @NonNull List<Recipient> inactiveRecipients)
+  /**
+   * Applies a directory refresh in a single transaction. Only rows whose state actually
+   * changes are written, and only recipients already held in memory are updated.
+   */
+  public void setRegistered(@NonNull Collection<Address> activeAddresses,
+                            @NonNull Collection<Address> inactiveAddresses)
   {
-    for (Recipient activeRecipient : activeRecipients) {
-      ContentValues contentValues = new ContentValues(1);
-      contentValues.put(REGISTERED, RegisteredState.REGISTERED.getId());
+    SQLiteDatabase db              = databaseHelper.getWritableDatabase();
+    List<Address>  changedActive   = new LinkedList<>();
+    List<Address>  changedInactive = new LinkedList<>();
+
+    SQLiteStatement update = null;
+    SQLiteStatement insert = null;
+
+    QueryProfiler.getInstance().beginTransaction(db);
+
+    try {
+      update = db.compileStatement(UPDATE_REGISTERED);
+      insert = db.compileStatement(INSERT_REGISTERED);
+
+      setRegistered(update, insert, activeAddresses, RegisteredState.REGISTERED, changedActive);
+      setRegistered(update, insert, inactiveAddresses, RegisteredState.NOT_REGISTERED, changedInactive);
 
-      updateOrInsert(activeRecipient.getAddress(), contentValues);
-      activeRecipient.setRegistered(RegisteredState.REGISTERED);
+      db.setTransactionSuccessful();
+    } finally {
+      if (update != null) update.close();
+      if (insert != null) insert.close();
+      db.endTransaction();
     }
 
-    for (Recipient inactiveRecipient : inactiveRecipients) {
-      ContentValues contentValues = new ContentValues(1);
-      contentValues.put(REGISTERED, RegisteredState.NOT_REGISTERED.getId());
+    for (Address address : changedActive) {
+      Optional<Recipient> recipient = Recipient.fromCache(address);
+      if (recipient.isPresent()) recipient.get().setRegistered(RegisteredState.REGISTERED);
+    }
 
-      updateOrInsert(inactiveRecipient.getAddress(), contentValues);
-      inactiveRecipient.setRegistered(RegisteredState.NOT_REGISTERED);
+    for (Address address : changedInactive) {
+      Optional<Recipient> recipient = Recipient.fromCache(address);
+      if (recipient.isPresent()) recipient.get().setRegistered(RegisteredState.NOT_REGISTERED);
     }
 
-    context.getContentResolver().notifyChange(Uri.parse(RECIPIENT_PREFERENCES_URI), null);
+    if (!changedActive.isEmpty() || !changedInactive.isEmpty()) {
+      context.getContentResolver().notifyChange(Uri.parse(RECIPIENT_PREFERENCES_URI), null);
+    }
+  }
+
+  private void setRegistered(@NonNull SQLiteStatement update, @NonNull SQLiteStatement insert,
+                             @NonNull Collection<Address> addresses, @NonNull RegisteredState registeredState,
+                             @NonNull List<Address> changed)
+  {
+    for (Address address : addresses) {
+      update.bindLong(1, registeredState.getId());
+      update.bindString(2, address.serialize());
+      update.bindLong(3, registeredState.getId());
+
+      if (update.executeUpdateDelete() > 0) {
+        changed.add(address);
+        continue;
+      }
+
+      insert.bindString(1, address.serialize());
+      insert.bindLong(2, registeredState.getId());
+
+      if (insert.executeInsert() != -1) {
+        changed.add(address);
+      }
+    }
   }
 
   public List<Address> getRegistered() {
@@ -349,7 +498,7 @@ public class RecipientDatabase extends Database {
   private void updateOrInsert(Address address, ContentValues contentValues) {
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
 
-    database.beginTransaction();
+    QueryProfiler.getInstance().beginTransaction(database);
 
     updateOrInsert(database, address, contentValues);
 
@@ -0,0 +1,136 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.whispersystems.libsignal.state.SessionRecord;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Signal protocol sessions, one row per remote device. Sessions are written on the same
+ * connection as messages, so a decrypt and the message it produced can commit together.
+ */
+public class SessionDatabase extends Database {
+
+  private static final String TAG = SessionDatabase.class.getSimpleName();
+
+          static final String TABLE_NAME = "sessions";
+  public  static final String ID         = "_id";
+  public  static final String ADDRESS    = "address";
+  public  static final String DEVICE     = "device";
+  public  static final String RECORD     = "record";
+
+  public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + "(" + ID + " INTEGER PRIMARY KEY, " +
+                                            ADDRESS + " TEXT NOT NULL, " + DEVICE + " INTEGER NOT NULL, " +
+                                            RECORD + " BLOB NOT NULL, " +
+                                            "UNIQUE(" + ADDRESS + "," + DEVICE + ") ON CONFLICT REPLACE);";
+
+  SessionDatabase(Context context, SQLiteOpenHelper databaseHelper) {
+    super(context, databaseHelper);
+  }
+
+  public void store(@NonNull String address, int deviceId, @NonNull SessionRecord record) {
+    SQLiteDatabase database = databaseHelper.getWritableDatabase();
+
+    ContentValues values = new ContentValues(3);
+    values.put(ADDRESS, address);
+    values.put(DEVICE, deviceId);
+    values.put(RECORD, record.serialize());
+
+    database.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+  }
+
+  public @Nullable SessionRecord load(@NonNull String address, int deviceId) {
+    SQLiteDatabase database = databaseHelper.getReadableDatabase();
+
+    try (Cursor cursor = database.query(TABLE_NAME, new String[] {RECORD},
+                                        ADDRESS + " = ? AND " + DEVICE + " = ?",
+                                        new String[] {address, String.valueOf(deviceId)},
+                                        null, null, null))
+    {
+      if (cursor != null && cursor.moveToFirst()) {
+        return new SessionRecord(cursor.getBlob(0));
+      }
+    } catch (IOException e) {
+      Log.w(TAG, e);
+    }
+
+    return null;
+  }
+
+  public @NonNull List<Integer> getSubDevices(@NonNull String address, int defaultDeviceId) {
+    SQLiteDatabase database = databaseHelper.getReadableDatabase();
+    List<Integer>  results  = new LinkedList<>();
+
+    try (Cursor cursor = database.query(TABLE_NAME, new String[] {DEVICE},
+                                        ADDRESS + " = ? AND " + DEVICE + " != ?",
+                                        new String[] {address, String.valueOf(defaultDeviceId)},
+                                        null, null, null))
+    {
+      while (cursor != null && cursor.moveToNext()) {
+        results.add(cursor.getInt(0));
+      }
+    }
+
+    return results;
+  }
+
+  public @NonNull List<SessionRow> getAll() {
+    SQLiteDatabase   database = databaseHelper.getReadableDatabase();
+    List<SessionRow> results  = new LinkedList<>();
+
+    try (Cursor cursor = database.query(TABLE_NAME, new String[] {ADDRESS, DEVICE, RECORD}, null, null, null, null, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        try {
+          results.add(new SessionRow(cursor.getString(0), cursor.getInt(1), new SessionRecord(cursor.getBlob(2))));
+        } catch (IOException e) {
+          Log.w(TAG, e);
+        }
+      }
+    }
+
+    return results;
+  }
+
+  public void delete(@NonNull String address, int deviceId) {
+    databaseHelper.getWritableDatabase().delete(TABLE_NAME, ADDRESS + " = ? AND " + DEVICE + " = ?",
+                                                new String[] {address, String.valueOf(deviceId)});
+  }
+
+  public void deleteAllFor(@NonNull String address) {
+    databaseHelper.getWritableDatabase().delete(TABLE_NAME, ADDRESS + " = ?", new String[] {address});
+  }
+
+  public static final class SessionRow {
+    private final String        address;
+    private final int           deviceId;
+    private final SessionRecord record;
+
+    public SessionRow(@NonNull String address, int deviceId, @NonNull SessionRecord record) {
+      this.address  = address;
+      this.deviceId = deviceId;
+      this.record   = record;
+    }
+
+    public @NonNull String getAddress() {
+      return address;
+    }
+
+    public int getDeviceId() {
+      return deviceId;
+    }
+
+    public @NonNull SessionRecord getRecord() {
+      return record;
+    }
+  }
+}
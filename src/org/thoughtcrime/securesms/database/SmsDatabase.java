@@ -33,18 +33,19 @@ import org.thoughtcrime.securesms.database.documents.IdentityKeyMismatchList;
 import org.thoughtcrime.securesms.database.model.DisplayRecord;
 import org.thoughtcrime.securesms.database.model.MessageRecord;
 import org.thoughtcrime.securesms.database.model.SmsMessageRecord;
+import org.thoughtcrime.securesms.jobs.JobLanes;
 import org.thoughtcrime.securesms.jobs.TrimThreadJob;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.sms.IncomingGroupMessage;
 import org.thoughtcrime.securesms.sms.IncomingTextMessage;
 import org.thoughtcrime.securesms.sms.OutgoingTextMessage;
 import org.thoughtcrime.securesms.util.JsonUtils;
-import org.whispersystems.jobqueue.JobManager;
 import org.whispersystems.libsignal.util.guava.Optional;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -75,7 +76,8 @@ public class SmsDatabase extends MessagingDatabase {
     STATUS + " INTEGER DEFAULT -1," + TYPE + " INTEGER, " + REPLY_PATH_PRESENT + " INTEGER, " +
     RECEIPT_COUNT + " INTEGER DEFAULT 0," + SUBJECT + " TEXT, " + BODY + " TEXT, " +
     MISMATCHED_IDENTITIES + " TEXT DEFAULT NULL, " + SERVICE_CENTER + " TEXT, " + SUBSCRIPTION_ID + " INTEGER DEFAULT -1, " +
-    EXPIRES_IN + " INTEGER DEFAULT 0, " + EXPIRE_STARTED + " INTEGER DEFAULT 0, " + NOTIFIED + " DEFAULT 0, " + REPLY_BODY + " TEXT DEFAULT NULL);";
+    EXPIRES_IN + " INTEGER DEFAULT 0, " + EXPIRE_STARTED + " INTEGER DEFAULT 0, " + NOTIFIED + " DEFAULT 0, " + REPLY_BODY + " TEXT DEFAULT NULL, " +
+    EXPIRES_AT + " INTEGER DEFAULT 0);";
 
   public static final String[] CREATE_INDEXS = {
     "CREATE INDEX IF NOT EXISTS sms_thread_id_index ON " + TABLE_NAME + " (" + THREAD_ID + ");",
@@ -83,7 +85,8 @@ public class SmsDatabase extends MessagingDatabase {
     "CREATE INDEX IF NOT EXISTS sms_read_and_notified_and_thread_id_index ON " + TABLE_NAME + "(" + READ + "," + NOTIFIED + ","  + THREAD_ID + ");",
     "CREATE INDEX IF NOT EXISTS sms_type_index ON " + TABLE_NAME + " (" + TYPE + ");",
     "CREATE INDEX IF NOT EXISTS sms_date_sent_index ON " + TABLE_NAME + " (" + DATE_SENT + ");",
-    "CREATE INDEX IF NOT EXISTS sms_thread_date_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_RECEIVED + ");"
+    "CREATE INDEX IF NOT EXISTS sms_thread_date_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_RECEIVED + ");",
+    "CREATE INDEX IF NOT EXISTS sms_expires_at_index ON " + TABLE_NAME + " (" + EXPIRES_AT + ");"
   };
 
   private static final String[] MESSAGE_PROJECTION = new String[] {
@@ -97,7 +100,7 @@ public class SmsDatabase extends MessagingDatabase {
   };
 
   private static final EarlyReceiptCache earlyReceiptCache = new EarlyReceiptCache();
-  private final JobManager jobManager;
+  private final JobLanes jobManager;
 
   public SmsDatabase(Context context, SQLiteOpenHelper databaseHelper) {
     super(context, databaseHelper);
@@ -119,7 +122,7 @@ public class SmsDatabase extends MessagingDatabase {
     long threadId = getThreadIdForMessage(id);
 
     DatabaseFactory.getThreadDatabase(context).update(threadId, false);
-    notifyConversationListeners(threadId);
+    notifyMessageUpdated(threadId, id);
   }
 
   public long getThreadIdForMessage(long id) {
@@ -239,16 +242,15 @@ public class SmsDatabase extends MessagingDatabase {
   }
 
   public void markExpireStarted(long id, long startedAtTimestamp) {
-    ContentValues contentValues = new ContentValues();
-    contentValues.put(EXPIRE_STARTED, startedAtTimestamp);
-
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
-    db.update(TABLE_NAME, contentValues, ID_WHERE, new String[] {String.valueOf(id)});
+    db.execSQL("UPDATE " + TABLE_NAME + " SET " + EXPIRE_STARTED + " = ?, " +
+                   EXPIRES_AT + " = ? + " + EXPIRES_IN + " WHERE " + ID + " = ?",
+               new Object[] {startedAtTimestamp, startedAtTimestamp, id});
 
     long threadId = getThreadIdForMessage(id);
 
     DatabaseFactory.getThreadDatabase(context).update(threadId, false);
-    notifyConversationListeners(threadId);
+    notifyMessageUpdated(threadId, id);
   }
 
   public void markStatus(long id, int status) {
@@ -261,7 +263,7 @@ public class SmsDatabase extends MessagingDatabase {
 
     long threadId = getThreadIdForMessage(id);
     DatabaseFactory.getThreadDatabase(context).update(threadId, false);
-    notifyConversationListeners(threadId);
+    notifyMessageUpdated(threadId, id);
   }
 
   public void markAsSentFailed(long id) {
@@ -294,14 +296,15 @@ public class SmsDatabase extends MessagingDatabase {
 
           if (ourAddress.equals(theirAddress)) {
             long threadId = cursor.getLong(cursor.getColumnIndexOrThrow(THREAD_ID));
+            long id       = cursor.getLong(cursor.getColumnIndexOrThrow(ID));
 
             database.execSQL("UPDATE " + TABLE_NAME +
                              " SET " + RECEIPT_COUNT + " = " + RECEIPT_COUNT + " + 1 WHERE " +
                              ID + " = ?",
-                             new String[] {String.valueOf(cursor.getLong(cursor.getColumnIndexOrThrow(ID)))});
+                             new String[] {String.valueOf(id)});
 
             DatabaseFactory.getThreadDatabase(context).update(threadId, false);
-            notifyConversationListeners(threadId);
+            notifyMessageUpdated(threadId, id);
             foundMessage = true;
           }
         }
@@ -324,7 +327,7 @@ public class SmsDatabase extends MessagingDatabase {
     List<MarkedMessageInfo> results   = new LinkedList<>();
     Cursor                  cursor    = null;
 
-    database.beginTransaction();
+    QueryProfiler.getInstance().beginTransaction(database);
     try {
       cursor = database.query(TABLE_NAME, new String[] {ID, ADDRESS, DATE_SENT, TYPE, EXPIRES_IN, EXPIRE_STARTED}, where, selection, null, null, null);
 
@@ -374,6 +377,7 @@ public class SmsDatabase extends MessagingDatabase {
 
           if (expiresIn > 0) {
             contentValues.put(EXPIRE_STARTED, expireStarted);
+            contentValues.put(EXPIRES_AT, expireStarted + expiresIn);
             expiring.add(new Pair<>(id, expiresIn));
           }
 
@@ -473,7 +477,7 @@ public class SmsDatabase extends MessagingDatabase {
     long messageId    = db.insert(TABLE_NAME, null, values);
 
     DatabaseFactory.getThreadDatabase(context).update(threadId, true);
-    notifyConversationListeners(threadId);
+    notifyMessageInserted(threadId, messageId);
     jobManager.add(new TrimThreadJob(context, threadId));
 
     if (unread) {
@@ -564,7 +568,7 @@ public class SmsDatabase extends MessagingDatabase {
         DatabaseFactory.getRecipientDatabase(context).setDefaultSubscriptionId(recipient, message.getSubscriptionId());
       }
 
-      notifyConversationListeners(threadId);
+      notifyMessageInserted(threadId, messageId);
 
       if (!message.isIdentityUpdate() && !message.isIdentityVerified() && !message.isIdentityDefault()) {
         jobManager.add(new TrimThreadJob(context, threadId));
@@ -619,7 +623,7 @@ public class SmsDatabase extends MessagingDatabase {
 
     DatabaseFactory.getThreadDatabase(context).setHasSent(threadId, true);
 
-    notifyConversationListeners(threadId);
+    notifyMessageInserted(threadId, messageId);
 
     if (!message.isIdentityVerified() && !message.isIdentityDefault()) {
       jobManager.add(new TrimThreadJob(context, threadId));
@@ -653,10 +657,52 @@ public class SmsDatabase extends MessagingDatabase {
 //    return db.query(TABLE_NAME, MESSAGE_PROJECTION, selection, args, null, null, null);
 //  }
 
-  public Cursor getExpirationStartedMessages() {
-    String         where = EXPIRE_STARTED + " > 0";
-    SQLiteDatabase db    = databaseHelper.getReadableDatabase();
-    return db.query(TABLE_NAME, MESSAGE_PROJECTION, where, null, null, null, null);
+  /*package*/ long getNextExpiration() {
+    SQLiteDatabase db     = databaseHelper.getReadableDatabase();
+    Cursor         cursor = null;
+
+    try {
+      cursor = db.query(TABLE_NAME, new String[] {"MIN(" + EXPIRES_AT + ")"}, EXPIRES_AT + " > 0",
+                        null, null, null, null);
+
+      if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+        return cursor.getLong(0);
+      }
+    } finally {
+      if (cursor != null) cursor.close();
+    }
+
+    return -1;
+  }
+
+  /**
+   * Deletes every message whose expiration deadline is at or before {@code now}.
+   * Thread state is left for the caller to update, so that it can be done once per thread.
+   *
+   * @return the ids of the threads that had messages removed.
+   */
+  /*package*/ Set<Long> deleteExpiredMessages(long now) {
+    SQLiteDatabase db        = databaseHelper.getWritableDatabase();
+    String         where     = EXPIRED_WHERE;
+    String[]       args      = new String[] {String.valueOf(now)};
+    Set<Long>      threadIds = new HashSet<>();
+    Cursor         cursor    = null;
+
+    try {
+      cursor = db.query(true, TABLE_NAME, new String[] {THREAD_ID}, where, args, null, null, null, null);
+
+      while (cursor != null && cursor.moveToNext()) {
+        threadIds.add(cursor.getLong(0));
+      }
+    } finally {
+      if (cursor != null) cursor.close();
+    }
+
+    if (!threadIds.isEmpty()) {
+      db.delete(TABLE_NAME, where, args);
+    }
+
+    return threadIds;
   }
 
   public Cursor getMessage(long messageId) {
@@ -673,7 +719,7 @@ public class SmsDatabase extends MessagingDatabase {
     long threadId     = getThreadIdForMessage(messageId);
     db.delete(TABLE_NAME, ID_WHERE, new String[] {messageId+""});
     boolean threadDeleted = DatabaseFactory.getThreadDatabase(context).update(threadId, false);
-    notifyConversationListeners(threadId);
+    notifyMessageDeleted(threadId, messageId);
     return threadDeleted;
   }
 
@@ -728,7 +774,7 @@ public class SmsDatabase extends MessagingDatabase {
 
   /*package*/ SQLiteDatabase beginTransaction() {
     SQLiteDatabase database = databaseHelper.getWritableDatabase();
-    database.beginTransaction();
+    QueryProfiler.getInstance().beginTransaction(database);
     return database;
   }
 
@@ -737,6 +783,9 @@ public class SmsDatabase extends MessagingDatabase {
     database.endTransaction();
   }
 
+  /**
+   * @return an insert statement the caller binds and executes once per row, and closes when done.
+   */
   /*package*/ SQLiteStatement createInsertStatement(SQLiteDatabase database) {
     return database.compileStatement("INSERT INTO " + TABLE_NAME + " (" + ADDRESS + ", " +
                                                                       PERSON + ", " +
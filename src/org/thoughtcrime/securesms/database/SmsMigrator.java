@@ -170,8 +170,9 @@ public class SmsMigrator {
                                           ProgressDescription progress,
                                           long theirThreadId, long ourThreadId)
   {
-    SmsDatabase ourSmsDatabase = DatabaseFactory.getSmsDatabase(context);
-    Cursor cursor              = null;
+    SmsDatabase     ourSmsDatabase = DatabaseFactory.getSmsDatabase(context);
+    Cursor          cursor         = null;
+    SQLiteStatement statement      = null;
 
     try {
       Uri uri = Uri.parse("content://sms/conversations/" + theirThreadId);
@@ -185,7 +186,7 @@ public class SmsMigrator {
       }
 
       SQLiteDatabase transaction = ourSmsDatabase.beginTransaction();
-      SQLiteStatement statement  = ourSmsDatabase.createInsertStatement(transaction);
+      statement = ourSmsDatabase.createInsertStatement(transaction);
 
       while (cursor != null && cursor.moveToNext()) {
         int typeColumn = cursor.getColumnIndex(SmsDatabase.TYPE);
@@ -205,6 +206,8 @@ public class SmsMigrator {
     } finally {
       if (cursor != null)
         cursor.close();
+      if (statement != null)
+        statement.close();
     }
   }
 
@@ -590,7 +590,11 @@ public class ThreadDatabase extends Database {
   }
 
   public Reader readerFor(Cursor cursor, MasterCipher masterCipher) {
-    return new Reader(cursor, masterCipher);
+    return new Reader(cursor, masterCipher, null);
+  }
+
+  public Reader readerFor(Cursor cursor, @NonNull MasterCipher masterCipher, @NonNull ThreadRecordCache cache) {
+    return new Reader(cursor, masterCipher, cache);
   }
 
   public static class DistributionTypes {
@@ -602,12 +606,18 @@ public class ThreadDatabase extends Database {
 
   public class Reader {
 
-    private final Cursor       cursor;
-    private final MasterCipher masterCipher;
+    private final           Cursor            cursor;
+    private final           MasterCipher      masterCipher;
+    private final @Nullable ThreadRecordCache cache;
 
     public Reader(Cursor cursor, MasterCipher masterCipher) {
+      this(cursor, masterCipher, null);
+    }
+
+    private Reader(Cursor cursor, MasterCipher masterCipher, @Nullable ThreadRecordCache cache) {
       this.cursor       = cursor;
       this.masterCipher = masterCipher;
+      this.cache        = cache;
     }
 
     public ThreadRecord getNext() {
@@ -618,10 +628,46 @@ public class ThreadDatabase extends Database {
     }
 
     public ThreadRecord getCurrent() {
-      long    threadId         = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.ID));
-      int     distributionType = cursor.getInt(cursor.getColumnIndexOrThrow(ThreadDatabase.TYPE));
-      Address address          = Address.fromSerialized(cursor.getString(cursor.getColumnIndexOrThrow(ThreadDatabase.ADDRESS)));
+      long         threadId         = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.ID));
+      int          distributionType = cursor.getInt(cursor.getColumnIndexOrThrow(ThreadDatabase.TYPE));
+      Address      address          = Address.fromSerialized(cursor.getString(cursor.getColumnIndexOrThrow(ThreadDatabase.ADDRESS)));
+      long         date             = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.DATE));
+      long         type             = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.SNIPPET_TYPE));
+      String       snippet          = cursor.getString(cursor.getColumnIndexOrThrow(ThreadDatabase.SNIPPET));
+      ThreadRecord cached           = cache != null ? cache.get(threadId, date, type, snippet) : null;
+
+      Recipient          recipient;
+      DisplayRecord.Body body;
+
+      // The counts and flags below are cheap to read and change without touching the snippet,
+      // so only the decrypted body and the recipient are carried over from a cached record.
+      if (cached != null && Recipient.fromCache(address).isPresent()) {
+        recipient = Recipient.from(context, address, true);
+        body      = cached.getBody();
+      } else {
+        recipient = getRecipient(address, distributionType);
+        body      = getPlaintextBody(cursor);
+      }
+
+      long    count        = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.MESSAGE_COUNT));
+      long    read         = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.READ));
+      boolean archived     = cursor.getInt(cursor.getColumnIndex(ThreadDatabase.ARCHIVED)) != 0;
+      int     status       = cursor.getInt(cursor.getColumnIndexOrThrow(ThreadDatabase.STATUS));
+      int     receiptCount = cursor.getInt(cursor.getColumnIndexOrThrow(ThreadDatabase.RECEIPT_COUNT));
+      long    expiresIn    = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.EXPIRES_IN));
+      long    lastSeen     = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.LAST_SEEN));
+      Uri     snippetUri   = getSnippetUri(cursor);
+
+      ThreadRecord record = new ThreadRecord(context, body, snippetUri, recipient, date, count, read == 1,
+                                             threadId, receiptCount, status, type, distributionType, archived,
+                                             expiresIn, lastSeen);
+
+      if (cache != null) cache.put(record, snippet);
+
+      return record;
+    }
 
+    private Recipient getRecipient(Address address, int distributionType) {
       Optional<RecipientSettings> settings;
       Optional<GroupRecord>       groupRecord;
 
@@ -633,22 +679,7 @@ public class ThreadDatabase extends Database {
         groupRecord = Optional.absent();
       }
 
-      Recipient          recipient    = Recipient.from(context, address, settings, groupRecord, true);
-      DisplayRecord.Body body         = getPlaintextBody(cursor);
-      long               date         = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.DATE));
-      long               count        = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.MESSAGE_COUNT));
-      long               read         = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.READ));
-      long               type         = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.SNIPPET_TYPE));
-      boolean            archived     = cursor.getInt(cursor.getColumnIndex(ThreadDatabase.ARCHIVED)) != 0;
-      int                status       = cursor.getInt(cursor.getColumnIndexOrThrow(ThreadDatabase.STATUS));
-      int                receiptCount = cursor.getInt(cursor.getColumnIndexOrThrow(ThreadDatabase.RECEIPT_COUNT));
-      long               expiresIn    = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.EXPIRES_IN));
-      long               lastSeen     = cursor.getLong(cursor.getColumnIndexOrThrow(ThreadDatabase.LAST_SEEN));
-      Uri                snippetUri   = getSnippetUri(cursor);
-
-      return new ThreadRecord(context, body, snippetUri, recipient, date, count, read == 1,
-                              threadId, receiptCount, status, type, distributionType, archived,
-                              expiresIn, lastSeen);
+      return Recipient.from(context, address, settings, groupRecord, true);
     }
 
     private DisplayRecord.Body getPlaintextBody(Cursor cursor) {
@@ -0,0 +1,62 @@
+package org.thoughtcrime.securesms.database;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.thoughtcrime.securesms.database.model.ThreadRecord;
+import org.thoughtcrime.securesms.util.LRUCache;
+import org.thoughtcrime.securesms.util.Util;
+
+/**
+ * Decoded thread records for the conversation list.
+ *
+ * Reading a thread record decrypts its snippet and resolves its recipient. A record is reused
+ * for as long as the thread's date, snippet type and stored snippet are unchanged. Comparing
+ * the stored snippet is much cheaper than decrypting it, and catches a snippet that's
+ * replaced by one with the same date, which a cursor loaded before the change could otherwise
+ * put back. Threads reported on the {@link DatabaseChangeBus} are dropped as they change.
+ *
+ * The snippet is decrypted with the reader's MasterCipher, so a cache must only be shared by
+ * readers that all have one.
+ */
+public class ThreadRecordCache implements DatabaseChangeBus.Listener {
+
+  private static final int CACHE_SIZE = 500;
+
+  private final LRUCache<Long, CachedRecord> records = new LRUCache<>(CACHE_SIZE);
+
+  public synchronized @Nullable ThreadRecord get(long threadId, long date, long snippetType, @Nullable String snippet) {
+    CachedRecord cached = records.get(threadId);
+
+    if (cached != null                                 &&
+        cached.record.getDateReceived() == date        &&
+        cached.record.getSnippetType()  == snippetType &&
+        Util.equals(cached.snippet, snippet))
+    {
+      return cached.record;
+    }
+
+    return null;
+  }
+
+  public synchronized void put(@NonNull ThreadRecord record, @Nullable String snippet) {
+    records.put(record.getThreadId(), new CachedRecord(record, snippet));
+  }
+
+  @Override
+  public synchronized void onDatabaseChanged(@NonNull DatabaseChangeBus.ChangeSet changes) {
+    for (long threadId : changes.getThreadIds()) {
+      records.remove(threadId);
+    }
+  }
+
+  private static class CachedRecord {
+    private final           ThreadRecord record;
+    private final @Nullable String       snippet;
+
+    private CachedRecord(@NonNull ThreadRecord record, @Nullable String snippet) {
+      this.record  = record;
+      this.snippet = snippet;
+    }
+  }
+}
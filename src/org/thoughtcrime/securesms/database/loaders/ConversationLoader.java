@@ -2,23 +2,40 @@ package org.thoughtcrime.securesms.database.loaders;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.support.annotation.NonNull;
 
+import org.thoughtcrime.securesms.MessageBodyRenderer;
+import org.thoughtcrime.securesms.crypto.MasterSecret;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.database.MmsSmsColumns;
+import org.thoughtcrime.securesms.database.MmsSmsDatabase;
+import org.thoughtcrime.securesms.database.model.MessageRecord;
 import org.thoughtcrime.securesms.util.AbstractCursorLoader;
 import org.whispersystems.libsignal.util.Pair;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 public class ConversationLoader extends AbstractCursorLoader {
-  private final long    threadId;
-  private       long    limit;
-  private       long    lastSeen;
-  private       boolean hasSent;
 
-  public ConversationLoader(Context context, long threadId, long limit, long lastSeen) {
+  private static final int PRERENDER_LIMIT = 40;
+
+  private final MasterSecret masterSecret;
+  private final long         threadId;
+  private       long         limit;
+  private       long         lastSeen;
+  private       boolean      hasSent;
+
+  private volatile Pair<Cursor, Map<String, MessageRecord>> prerendered;
+
+  public ConversationLoader(Context context, MasterSecret masterSecret, long threadId, long limit, long lastSeen) {
     super(context);
-    this.threadId = threadId;
-    this.limit    = limit;
-    this.lastSeen = lastSeen;
-    this.hasSent  = true;
+    this.masterSecret = masterSecret;
+    this.threadId     = threadId;
+    this.limit        = limit;
+    this.lastSeen     = lastSeen;
+    this.hasSent      = true;
   }
 
   public boolean hasLimit() {
@@ -33,6 +50,17 @@ public class ConversationLoader extends AbstractCursorLoader {
     return hasSent;
   }
 
+  /**
+   * @return the records read while prerendering the given cursor, keyed by transport and id,
+   * so they don't have to be read and decrypted again when they're bound.
+   */
+  public @NonNull Map<String, MessageRecord> getPrerenderedRecords(@NonNull Cursor cursor) {
+    Pair<Cursor, Map<String, MessageRecord>> prerendered = this.prerendered;
+
+    if (prerendered != null && prerendered.first() == cursor) return prerendered.second();
+    else                                                      return Collections.emptyMap();
+  }
+
   @Override
   public Cursor getCursor() {
     Pair<Long, Boolean> lastSeenAndHasSent = DatabaseFactory.getThreadDatabase(context).getLastSeenAndHasSent(threadId);
@@ -43,6 +71,36 @@ public class ConversationLoader extends AbstractCursorLoader {
       this.lastSeen = lastSeenAndHasSent.first();
     }
 
-    return DatabaseFactory.getMmsSmsDatabase(context).getConversation(threadId, limit);
+    Cursor cursor = DatabaseFactory.getMmsSmsDatabase(context).getConversation(threadId, limit);
+    prerender(cursor);
+
+    return cursor;
+  }
+
+  /**
+   * Renders the bodies of the newest messages while we're still on the loader thread, so the
+   * rows shown first don't have to be linkified and emoji parsed while binding. The records
+   * are kept for the adapter, so each of them is only decrypted once.
+   */
+  private void prerender(Cursor cursor) {
+    MessageBodyRenderer        renderer = MessageBodyRenderer.getInstance();
+    MmsSmsDatabase.Reader      reader   = DatabaseFactory.getMmsSmsDatabase(context).readerFor(cursor, masterSecret);
+    Map<String, MessageRecord> records  = new HashMap<>(PRERENDER_LIMIT);
+
+    while (cursor.moveToNext() && cursor.getPosition() < PRERENDER_LIMIT) {
+      String        transport = cursor.getString(cursor.getColumnIndexOrThrow(MmsSmsDatabase.TRANSPORT));
+      long          id        = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.ID));
+      MessageRecord record    = reader.getCurrent();
+
+      if (!renderer.isRendered(id, MmsSmsDatabase.MMS_TRANSPORT.equals(transport))) {
+        renderer.prerender(context, record);
+      }
+
+      records.put(transport + id, record);
+    }
+
+    cursor.moveToPosition(-1);
+
+    this.prerendered = new Pair<>(cursor, records);
   }
 }
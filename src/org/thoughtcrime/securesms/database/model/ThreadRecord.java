@@ -68,6 +68,10 @@ public class ThreadRecord extends DisplayRecord {
     return snippetUri;
   }
 
+  public long getSnippetType() {
+    return type;
+  }
+
   @Override
   public SpannableString getDisplayBody() {
     if (SmsDatabase.Types.isDecryptInProgressType(type)) {
@@ -29,6 +29,7 @@ import org.thoughtcrime.securesms.jobs.RequestGroupInfoJob;
 import org.thoughtcrime.securesms.jobs.RetrieveProfileAvatarJob;
 import org.thoughtcrime.securesms.jobs.RetrieveProfileJob;
 import org.thoughtcrime.securesms.jobs.RotateSignedPreKeyJob;
+import org.thoughtcrime.securesms.push.DeliveryReceiptDispatcher;
 import org.thoughtcrime.securesms.push.SecurityEventListener;
 import org.thoughtcrime.securesms.push.SignalServiceNetworkAccess;
 import org.thoughtcrime.securesms.service.MessageRetrievalService;
@@ -69,7 +70,8 @@ import dagger.Provides;
                                      MultiDeviceVerifiedUpdateJob.class,
                                      CreateProfileActivity.class,
                                      RetrieveProfileAvatarJob.class,
-                                     MultiDeviceProfileKeyUpdateJob.class})
+                                     MultiDeviceProfileKeyUpdateJob.class,
+                                     DeliveryReceiptDispatcher.class})
 public class SignalCommunicationModule {
 
   private final Context                    context;
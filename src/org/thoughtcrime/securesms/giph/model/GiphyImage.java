@@ -13,6 +13,12 @@ public class GiphyImage {
   }
 
   public String getGifMmsUrl() {
+    if (images.downsized.size > 0 && images.downsized.size <= images.fixed_height_downsampled.size) {
+      // The downsampled rendition is meant to fit MMS size limits. If it's not any smaller,
+      // send the file we've already downloaded for the preview instead.
+      return getGifUrl();
+    }
+
     return images.fixed_height_downsampled.url;
   }
 
@@ -25,23 +31,9 @@ public class GiphyImage {
   }
 
   public static class ImageTypes {
-    @JsonProperty
-    private ImageData fixed_height;
-    @JsonProperty
-    private ImageData fixed_height_still;
     @JsonProperty
     private ImageData fixed_height_downsampled;
     @JsonProperty
-    private ImageData fixed_width;
-    @JsonProperty
-    private ImageData fixed_width_still;
-    @JsonProperty
-    private ImageData fixed_width_downsampled;
-    @JsonProperty
-    private ImageData fixed_width_small;
-    @JsonProperty
-    private ImageData downsized_medium;
-    @JsonProperty
     private ImageData downsized;
     @JsonProperty
     private ImageData downsized_still;
@@ -59,12 +51,6 @@ public class GiphyImage {
 
     @JsonProperty
     private int size;
-
-    @JsonProperty
-    private String mp4;
-
-    @JsonProperty
-    private String webp;
   }
 
 }
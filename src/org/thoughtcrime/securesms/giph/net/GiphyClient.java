@@ -0,0 +1,149 @@
+package org.thoughtcrime.securesms.giph.net;
+
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.thoughtcrime.securesms.giph.model.GiphyImage;
+import org.thoughtcrime.securesms.util.JsonUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Fetches pages of Giphy results through a shared client with an on-disk response cache, so
+ * paging back through a search or reopening the trending list doesn't refetch it.
+ */
+public class GiphyClient {
+
+  private static final String TAG = GiphyClient.class.getSimpleName();
+
+  private static final long CACHE_SIZE    = 5 * 1024 * 1024;
+  private static final int  CACHE_SECONDS = (int)TimeUnit.MINUTES.toSeconds(10);
+
+  private static volatile GiphyClient instance;
+
+  public static GiphyClient getInstance(@NonNull Context context) {
+    if (instance == null) {
+      synchronized (GiphyClient.class) {
+        if (instance == null) {
+          instance = new GiphyClient(new File(context.getCacheDir(), "giphy"));
+        }
+      }
+    }
+
+    return instance;
+  }
+
+  private final OkHttpClient client;
+  private final AtomicLong   networkBytes = new AtomicLong();
+
+  private GiphyClient(@NonNull File cacheDirectory) {
+    this(new OkHttpClient.Builder().cache(new Cache(cacheDirectory, CACHE_SIZE)));
+  }
+
+  @VisibleForTesting
+  GiphyClient(@NonNull OkHttpClient.Builder builder) {
+    this.client = builder.addNetworkInterceptor(new CacheControlInterceptor())
+//                         .proxySelector(new GiphyProxySelector())
+                         .build();
+  }
+
+  public @NonNull List<GiphyImage> getPage(@NonNull String url) throws IOException {
+    long     startTime = System.currentTimeMillis();
+    Request  request   = new Request.Builder().url(url).build();
+    Response response  = client.newCall(request).execute();
+
+    try {
+      if (!response.isSuccessful()) {
+        throw new IOException("Unexpected code " + response);
+      }
+
+      List<GiphyImage> results = parseImages(response.body().byteStream());
+
+      Log.w(TAG, "Loaded " + results.size() + " results " + (response.networkResponse() != null ? "from network" : "from cache") +
+                 " in " + (System.currentTimeMillis() - startTime) + "ms, " + networkBytes.get() + " bytes fetched so far");
+
+      return results;
+    } finally {
+      response.close();
+    }
+  }
+
+  public long getNetworkBytes() {
+    return networkBytes.get();
+  }
+
+  /**
+   * Reads the results out of a response as they're parsed, skipping the pagination and
+   * metadata objects and any renditions we don't display.
+   */
+  @VisibleForTesting
+  static @NonNull List<GiphyImage> parseImages(@NonNull InputStream in) throws IOException {
+    List<GiphyImage> results = new LinkedList<>();
+    JsonParser       parser  = JsonUtils.getMapper().getFactory().createParser(in);
+
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected an object");
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String    field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+
+        if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            results.add(parser.readValueAs(GiphyImage.class));
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } finally {
+      parser.close();
+    }
+
+    return results;
+  }
+
+  /**
+   * The API doesn't mark its responses as cacheable, so we give them a short lifetime
+   * ourselves. Trending and search results don't change quickly enough for it to matter.
+   */
+  private class CacheControlInterceptor implements Interceptor {
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+      Response response = chain.proceed(chain.request());
+
+      if (!response.isSuccessful()) {
+        return response;
+      }
+
+      if (response.body() != null && response.body().contentLength() > 0) {
+        networkBytes.addAndGet(response.body().contentLength());
+      }
+
+      return response.newBuilder()
+                     .removeHeader("Pragma")
+                     .header("Cache-Control", "public, max-age=" + CACHE_SECONDS)
+                     .build();
+    }
+  }
+}
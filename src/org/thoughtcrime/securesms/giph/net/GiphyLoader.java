@@ -5,22 +5,22 @@ import android.content.Context;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Log;
 
 
 import org.thoughtcrime.securesms.giph.model.GiphyImage;
-import org.thoughtcrime.securesms.giph.model.GiphyResponse;
 import org.thoughtcrime.securesms.util.AsyncLoader;
-import org.thoughtcrime.securesms.util.JsonUtils;
+import org.thoughtcrime.securesms.util.ThreadUtil;
 
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
-
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public abstract class GiphyLoader extends AsyncLoader<List<GiphyImage>> {
 
@@ -28,16 +28,24 @@ public abstract class GiphyLoader extends AsyncLoader<List<GiphyImage>> {
 
   public static int PAGE_SIZE = 100;
 
+  private static final ExecutorService prefetchExecutor = ThreadUtil.newDynamicSingleThreadedExecutor();
+
   @Nullable private String searchString;
 
-  private final OkHttpClient client;
+  private final GiphyClient client;
+
+  private int                      prefetchOffset = -1;
+  private Future<List<GiphyImage>> prefetchedPage;
 
   protected GiphyLoader(@NonNull Context context, @Nullable String searchString) {
+    this(context, searchString, GiphyClient.getInstance(context));
+  }
+
+  @VisibleForTesting
+  GiphyLoader(@NonNull Context context, @Nullable String searchString, @NonNull GiphyClient client) {
     super(context);
     this.searchString = searchString;
-    this.client       = new OkHttpClient.Builder()
-//                                        .proxySelector(new GiphyProxySelector())
-                                        .build();
+    this.client       = client;
   }
 
   @Override
@@ -46,25 +54,54 @@ public abstract class GiphyLoader extends AsyncLoader<List<GiphyImage>> {
   }
 
   public @NonNull List<GiphyImage> loadPage(int offset) {
-    try {
-      String url;
+    Future<List<GiphyImage>> prefetched = takePrefetchedPage(offset);
 
-      if (TextUtils.isEmpty(searchString)) url = String.format(getTrendingUrl(), offset);
-      else                                 url = String.format(getSearchUrl(), offset, Uri.encode(searchString));
+    if (prefetched != null) {
+      try {
+        return prefetched.get();
+      } catch (InterruptedException | ExecutionException e) {
+        Log.w(TAG, e);
+      }
+    }
 
-      Request  request  = new Request.Builder().url(url).build();
-      Response response = client.newCall(request).execute();
+    return fetchPage(offset);
+  }
 
-      if (!response.isSuccessful()) {
-        throw new IOException("Unexpected code " + response);
+  /**
+   * Starts loading the page at the given offset in the background, so that a following
+   * {@link #loadPage(int)} for it can return as soon as it's ready.
+   */
+  public synchronized void prefetchPage(final int offset) {
+    if (prefetchOffset == offset) return;
+
+    prefetchOffset = offset;
+    prefetchedPage = prefetchExecutor.submit(new Callable<List<GiphyImage>>() {
+      @Override
+      public List<GiphyImage> call() {
+        return fetchPage(offset);
       }
+    });
+  }
+
+  private synchronized @Nullable Future<List<GiphyImage>> takePrefetchedPage(int offset) {
+    if (prefetchOffset != offset) return null;
 
-      GiphyResponse    giphyResponse = JsonUtils.fromJson(response.body().byteStream(), GiphyResponse.class);
-      List<GiphyImage> results       = giphyResponse.getData();
+    Future<List<GiphyImage>> prefetched = prefetchedPage;
+
+    prefetchOffset = -1;
+    prefetchedPage = null;
+
+    return prefetched;
+  }
 
-      if (results == null) return new LinkedList<>();
-      else                 return results;
+  private @NonNull List<GiphyImage> fetchPage(int offset) {
+    try {
+      String url;
+
+      if (TextUtils.isEmpty(searchString)) url = String.format(getTrendingUrl(), offset);
+      else                                 url = String.format(getSearchUrl(), offset, Uri.encode(searchString));
 
+      return client.getPage(url);
     } catch (IOException e) {
       Log.w(TAG, e);
       return new LinkedList<>();
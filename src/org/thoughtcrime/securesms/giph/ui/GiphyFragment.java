@@ -21,6 +21,7 @@ import org.thoughtcrime.securesms.R;
 import org.thoughtcrime.securesms.giph.model.GiphyImage;
 import org.thoughtcrime.securesms.giph.net.GiphyLoader;
 import org.thoughtcrime.securesms.giph.util.InfiniteScrollListener;
+import org.thoughtcrime.securesms.giph.util.RecyclerViewPositionHelper;
 import org.thoughtcrime.securesms.util.ViewUtil;
 
 import java.util.LinkedList;
@@ -103,6 +104,21 @@ public abstract class GiphyFragment extends Fragment implements LoaderManager.Lo
   }
 
   private class GiphyScrollListener extends InfiniteScrollListener {
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+      super.onScrolled(recyclerView, dx, dy);
+
+      Loader<List<GiphyImage>> loader = getLoaderManager().getLoader(0);
+      if (loader == null) return;
+
+      int loaded      = giphyAdapter.getItemCount();
+      int lastVisible = RecyclerViewPositionHelper.createHelper(recyclerView).findLastVisibleItemPosition();
+
+      if (loaded > 0 && loaded % GiphyLoader.PAGE_SIZE == 0 && lastVisible >= loaded - GiphyLoader.PAGE_SIZE / 2) {
+        ((GiphyLoader)loader).prefetchPage(loaded);
+      }
+    }
+
     @Override
     public void onLoadMore(final int currentPage) {
       final Loader<List<GiphyImage>> loader = getLoaderManager().getLoader(0);
@@ -111,7 +127,7 @@ public abstract class GiphyFragment extends Fragment implements LoaderManager.Lo
       new AsyncTask<Void, Void, List<GiphyImage>>() {
         @Override
         protected List<GiphyImage> doInBackground(Void... params) {
-          return ((GiphyLoader)loader).loadPage(currentPage * GiphyLoader.PAGE_SIZE);
+          return ((GiphyLoader)loader).loadPage((currentPage - 1) * GiphyLoader.PAGE_SIZE);
         }
 
         protected void onPostExecute(List<GiphyImage> images) {
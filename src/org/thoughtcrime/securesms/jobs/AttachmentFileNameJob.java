@@ -62,7 +62,7 @@ public class AttachmentFileNameJob extends MasterSecretJob {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 
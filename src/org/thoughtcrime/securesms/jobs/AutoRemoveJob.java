@@ -14,6 +14,8 @@ import java.io.File;
 
 public class AutoRemoveJob extends ContextJob {
 
+  private static final long serialVersionUID = -2419793343072424168L;
+
   private static final String TAG = AutoRemoveJob.class.getSimpleName();
   @Nullable
   private transient MasterSecret masterSecret;
@@ -37,7 +39,7 @@ public class AutoRemoveJob extends ContextJob {
   public void onAdded() {}
 
   @Override
-  public void onRun() {
+  public void onExecute() {
     try {
       File directory = StorageUtil.getBackupDir();
       walkAndRemove(directory);
@@ -53,7 +55,7 @@ public class AutoRemoveJob extends ContextJob {
   }
 
   @Override
-  public void onCanceled() {}
+  public void onJobCanceled() {}
 
   public void walkAndRemove(File directory) {
     File files[] = directory.listFiles();
@@ -97,7 +97,7 @@ public class AvatarDownloadJob extends MasterSecretJob implements InjectableType
   }
 
   @Override
-  public void onCanceled() {}
+  public void onJobCanceled() {}
 
   @Override
   public boolean onShouldRetryThrowable(Exception exception) {
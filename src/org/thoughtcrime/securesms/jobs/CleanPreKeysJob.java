@@ -94,7 +94,7 @@ public class CleanPreKeysJob extends MasterSecretJob implements InjectableType {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     Log.w(TAG, "Failed to execute clean signed prekeys task.");
   }
 
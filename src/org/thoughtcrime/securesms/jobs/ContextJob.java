@@ -8,8 +8,14 @@ import org.whispersystems.jobqueue.dependencies.ContextDependent;
 
 public abstract class ContextJob extends Job implements ContextDependent {
 
+  private static final long serialVersionUID = 9116330013089607227L;
+
   protected transient Context context;
 
+  transient JobLanes.Lane lane;
+  transient long          queuedAt;
+  transient int           runs;
+
   protected ContextJob(Context context, JobParameters parameters) {
     super(parameters);
     this.context = context;
@@ -22,4 +28,30 @@ public abstract class ContextJob extends Job implements ContextDependent {
   protected Context getContext() {
     return context;
   }
+
+  @Override
+  public final void onRun() throws Exception {
+    JobTelemetry telemetry = JobTelemetry.getInstance();
+    long         startTime = System.currentTimeMillis();
+
+    telemetry.onStarted(this, startTime);
+
+    try {
+      onExecute();
+      telemetry.onFinished(this, System.currentTimeMillis() - startTime, true);
+    } catch (Exception e) {
+      telemetry.onFinished(this, System.currentTimeMillis() - startTime, false);
+      throw e;
+    }
+  }
+
+  @Override
+  public final void onCanceled() {
+    JobTelemetry.getInstance().onCanceled(this);
+    onJobCanceled();
+  }
+
+  public abstract void onExecute() throws Exception;
+
+  public abstract void onJobCanceled();
 }
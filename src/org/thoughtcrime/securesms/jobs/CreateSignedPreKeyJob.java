@@ -60,7 +60,7 @@ public class CreateSignedPreKeyJob extends MasterSecretJob implements Injectable
   }
 
   @Override
-  public void onCanceled() {}
+  public void onJobCanceled() {}
 
   @Override
   public boolean onShouldRetryThrowable(Exception exception) {
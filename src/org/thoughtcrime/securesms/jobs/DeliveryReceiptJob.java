@@ -47,7 +47,7 @@ public class DeliveryReceiptJob extends ContextJob implements InjectableType {
   public void onAdded() {}
 
   @Override
-  public void onRun() throws IOException {
+  public void onExecute() throws IOException {
     Log.w("DeliveryReceiptJob", "Sending delivery receipt...");
     SignalServiceMessageSender messageSender     = messageSenderFactory.create();
     SignalServiceAddress       textSecureAddress = new SignalServiceAddress(destination, Optional.fromNullable(relay));
@@ -56,7 +56,7 @@ public class DeliveryReceiptJob extends ContextJob implements InjectableType {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     Log.w(TAG, "Failed to send receipt after retry exhausted!");
   }
 
@@ -19,6 +19,8 @@ import java.io.IOException;
 
 public class DirectoryRefreshJob extends ContextJob {
 
+  private static final long serialVersionUID = 7088100742213233800L;
+
   @Nullable private transient Recipient    recipient;
   @Nullable private transient MasterSecret masterSecret;
 
@@ -43,7 +45,7 @@ public class DirectoryRefreshJob extends ContextJob {
   public void onAdded() {}
 
   @Override
-  public void onRun() throws IOException {
+  public void onExecute() throws IOException {
     Log.w("DirectoryRefreshJob", "DirectoryRefreshJob.onRun()");
     PowerManager          powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
     PowerManager.WakeLock wakeLock     = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "Directory Refresh");
@@ -68,5 +70,5 @@ public class DirectoryRefreshJob extends ContextJob {
   }
 
   @Override
-  public void onCanceled() {}
+  public void onJobCanceled() {}
 }
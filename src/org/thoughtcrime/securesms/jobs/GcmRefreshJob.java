@@ -42,6 +42,8 @@ import javax.inject.Inject;
 
 public class GcmRefreshJob extends ContextJob implements InjectableType {
 
+  private static final long serialVersionUID = -5430266744235024160L;
+
   private static final String TAG = GcmRefreshJob.class.getSimpleName();
 
   public static final String REGISTRATION_ID = "415026150283";
@@ -59,7 +61,7 @@ public class GcmRefreshJob extends ContextJob implements InjectableType {
   public void onAdded() {}
 
   @Override
-  public void onRun() throws Exception {
+  public void onExecute() throws Exception {
     if (TextSecurePreferences.isGcmDisabled(context)) return;
 
     Log.w(TAG, "Reregistering GCM...");
@@ -78,7 +80,7 @@ public class GcmRefreshJob extends ContextJob implements InjectableType {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     Log.w(TAG, "GCM reregistration failed after retry attempt exhaustion!");
   }
 
@@ -0,0 +1,170 @@
+package org.thoughtcrime.securesms.jobs;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import org.thoughtcrime.securesms.jobs.persistence.EncryptingJobSerializer;
+import org.thoughtcrime.securesms.jobs.requirements.MasterSecretRequirementProvider;
+import org.thoughtcrime.securesms.jobs.requirements.ServiceRequirementProvider;
+import org.thoughtcrime.securesms.util.TextSecurePreferences;
+import org.whispersystems.jobqueue.Job;
+import org.whispersystems.jobqueue.JobManager;
+import org.whispersystems.jobqueue.dependencies.DependencyInjector;
+import org.whispersystems.jobqueue.persistence.PersistentStorage;
+import org.whispersystems.jobqueue.requirements.NetworkRequirementProvider;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs jobs in separate lanes, each with its own JobManager and consumer threads, so that
+ * a slow contact sync or directory refresh can't hold up the messages a user is sending.
+ *
+ * Groups only order jobs within a single lane, so jobs that share a group have to be
+ * assigned the same lane. Jobs persisted in the old shared queue by earlier versions are
+ * moved to their lanes before any lane starts, so that they keep their order with the jobs
+ * of their group.
+ */
+public class JobLanes {
+
+  private static final String TAG = JobLanes.class.getSimpleName();
+
+  private static final String LEGACY_QUEUE = "TextSecureJobs";
+
+  public enum Lane {
+    SEND("TextSecureSendJobs", 2),
+    INBOUND("TextSecureInboundJobs", 2),
+    MEDIA("TextSecureMediaJobs", 2),
+    BACKGROUND("TextSecureBackgroundJobs", 2);
+
+    private final String name;
+    private final int    consumerThreads;
+
+    Lane(String name, int consumerThreads) {
+      this.name            = name;
+      this.consumerThreads = consumerThreads;
+    }
+  }
+
+  private final Map<Lane, JobManager> managers = new EnumMap<>(Lane.class);
+  private final ThreadLocal<List<Job>> heldJobs = new ThreadLocal<>();
+
+  public JobLanes(@NonNull Context context, @NonNull DependencyInjector dependencyInjector) {
+    if (!TextSecurePreferences.isJobLanesMigrated(context)) {
+      migrateLegacyQueue(context, dependencyInjector);
+    }
+
+    for (Lane lane : Lane.values()) {
+      managers.put(lane, JobManager.newBuilder(context)
+                                   .withName(lane.name)
+                                   .withDependencyInjector(dependencyInjector)
+                                   .withJobSerializer(new EncryptingJobSerializer())
+                                   .withRequirementProviders(new MasterSecretRequirementProvider(context),
+                                                             new ServiceRequirementProvider(context),
+                                                             new NetworkRequirementProvider(context))
+                                   .withConsumerThreads(lane.consumerThreads)
+                                   .build());
+    }
+  }
+
+  public void add(@NonNull Job job) {
+    List<Job> held = heldJobs.get();
+
+    if (held != null) {
+      held.add(job);
+      return;
+    }
+
+    Lane lane = getLane(job);
+
+    if (job instanceof ContextJob) {
+      JobTelemetry.getInstance().onAdded((ContextJob)job, lane);
+    }
+
+    managers.get(lane).add(job);
+  }
+
+  /**
+   * Holds the jobs added on this thread until {@link #releaseJobs(boolean)}. A job added
+   * inside a transaction could otherwise run before the rows it reads are committed.
+   */
+  public void holdJobs() {
+    if (heldJobs.get() == null) {
+      heldJobs.set(new LinkedList<Job>());
+    }
+  }
+
+  /**
+   * @param submit true to add the held jobs, false to drop them because the transaction
+   *               that created them rolled back.
+   */
+  public void releaseJobs(boolean submit) {
+    List<Job> held = heldJobs.get();
+    heldJobs.remove();
+
+    if (held != null && submit) {
+      for (Job job : held) {
+        add(job);
+      }
+    }
+  }
+
+  /**
+   * Runs once, on the first start of a version with lanes. A job is stored in its lane before
+   * it's removed from the old queue, so one interrupted here runs twice rather than not at all.
+   */
+  private static void migrateLegacyQueue(@NonNull Context context, @NonNull DependencyInjector dependencyInjector) {
+    PersistentStorage            legacy   = new PersistentStorage(context, LEGACY_QUEUE, new EncryptingJobSerializer(), dependencyInjector);
+    Map<Lane, PersistentStorage> storage  = new EnumMap<>(Lane.class);
+    int                          migrated = 0;
+
+    for (Job job : legacy.getAllUnencrypted()) {
+      Lane lane = getLane(job);
+
+      if (!storage.containsKey(lane)) {
+        storage.put(lane, new PersistentStorage(context, lane.name, new EncryptingJobSerializer(), dependencyInjector));
+      }
+
+      try {
+        storage.get(lane).store(job);
+        legacy.remove(job.getPersistentId());
+        migrated++;
+      } catch (IOException e) {
+        Log.w(TAG, e);
+      }
+    }
+
+    Log.w(TAG, "Moved " + migrated + " jobs from the legacy queue to their lanes");
+    TextSecurePreferences.setJobLanesMigrated(context, true);
+  }
+
+  @VisibleForTesting
+  static @NonNull Lane getLane(@NonNull Job job) {
+    // MMS sends and downloads share the "mms-operation" group
+    if (job instanceof MmsSendJob || job instanceof MmsDownloadJob ||
+        job instanceof AttachmentDownloadJob || job instanceof AvatarDownloadJob ||
+        job instanceof RetrieveProfileAvatarJob)
+    {
+      return Lane.MEDIA;
+    }
+
+    if (job instanceof SendJob || job instanceof SmsSentJob) {
+      return Lane.SEND;
+    }
+
+    if (job instanceof PushReceivedJob || job instanceof PushDecryptJob ||
+        job instanceof SmsReceiveJob || job instanceof MmsReceiveJob ||
+        job instanceof MasterSecretDecryptJob || job instanceof DeliveryReceiptJob ||
+        job instanceof PushGroupUpdateJob || job instanceof RequestGroupInfoJob)
+    {
+      return Lane.INBOUND;
+    }
+
+    return Lane.BACKGROUND;
+  }
+}
@@ -0,0 +1,132 @@
+package org.thoughtcrime.securesms.jobs;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per job class counters for the jobs run through {@link JobLanes}.
+ *
+ * Queue wait runs from when a job is added to when it first starts, so it includes any time
+ * spent waiting for its requirements. Jobs restored from storage after a restart have no
+ * queue wait, and their first run isn't counted as a retry. A job canceled before it starts,
+ * like one that couldn't be persisted, stops counting as waiting. The counters are in memory
+ * only and are written to the log when a debug log is submitted.
+ */
+public class JobTelemetry {
+
+  private static final String TAG = JobTelemetry.class.getSimpleName();
+
+  private static final JobTelemetry instance = new JobTelemetry();
+
+  public static JobTelemetry getInstance() {
+    return instance;
+  }
+
+  private final Map<String, JobStats>      stats   = new TreeMap<>();
+  private final Map<JobLanes.Lane, Integer> waiting = new EnumMap<>(JobLanes.Lane.class);
+
+  JobTelemetry() {}
+
+  synchronized void onAdded(@NonNull ContextJob job, @NonNull JobLanes.Lane lane) {
+    job.lane     = lane;
+    job.queuedAt = System.currentTimeMillis();
+
+    waiting.put(lane, getWaiting(lane) + 1);
+  }
+
+  synchronized void onStarted(@NonNull ContextJob job, long startTime) {
+    JobStats jobStats = getStats(job);
+
+    if (job.runs++ > 0) {
+      jobStats.retries++;
+    } else if (job.queuedAt > 0) {
+      jobStats.queued++;
+      jobStats.totalWaitMillis += startTime - job.queuedAt;
+      jobStats.maxWaitMillis    = Math.max(jobStats.maxWaitMillis, startTime - job.queuedAt);
+
+      waiting.put(job.lane, getWaiting(job.lane) - 1);
+    }
+  }
+
+  synchronized void onCanceled(@NonNull ContextJob job) {
+    getStats(job).canceled++;
+
+    if (job.runs == 0 && job.queuedAt > 0) {
+      waiting.put(job.lane, getWaiting(job.lane) - 1);
+      job.queuedAt = 0;
+    }
+  }
+
+  synchronized void onFinished(@NonNull ContextJob job, long runMillis, boolean success) {
+    JobStats jobStats = getStats(job);
+
+    jobStats.runs++;
+    jobStats.totalRunMillis += runMillis;
+    jobStats.maxRunMillis    = Math.max(jobStats.maxRunMillis, runMillis);
+
+    if (!success) jobStats.failures++;
+  }
+
+  public synchronized @NonNull String getReport() {
+    StringBuilder report = new StringBuilder();
+
+    for (JobLanes.Lane lane : JobLanes.Lane.values()) {
+      report.append(String.format(Locale.US, "%s lane: %d waiting\n", lane.name(), getWaiting(lane)));
+    }
+
+    for (Map.Entry<String, JobStats> entry : stats.entrySet()) {
+      JobStats jobStats = entry.getValue();
+
+      report.append(String.format(Locale.US, "%s: %d runs, %d retries, %d failures, %d canceled, run avg %dms max %dms, wait avg %dms max %dms\n",
+                                  entry.getKey(), jobStats.runs, jobStats.retries, jobStats.failures, jobStats.canceled,
+                                  average(jobStats.totalRunMillis, jobStats.runs), jobStats.maxRunMillis,
+                                  average(jobStats.totalWaitMillis, jobStats.queued), jobStats.maxWaitMillis));
+    }
+
+    return report.toString();
+  }
+
+  public void logReport() {
+    for (String line : getReport().split("\n")) {
+      Log.w(TAG, line);
+    }
+  }
+
+  private int getWaiting(JobLanes.Lane lane) {
+    Integer count = waiting.get(lane);
+    return count != null ? count : 0;
+  }
+
+  private @NonNull JobStats getStats(@NonNull ContextJob job) {
+    String   name     = job.getClass().getSimpleName();
+    JobStats jobStats = stats.get(name);
+
+    if (jobStats == null) {
+      jobStats = new JobStats();
+      stats.put(name, jobStats);
+    }
+
+    return jobStats;
+  }
+
+  private static long average(long total, long count) {
+    return count > 0 ? total / count : 0;
+  }
+
+  private static class JobStats {
+    private long runs;
+    private long queued;
+    private long retries;
+    private long failures;
+    private long canceled;
+    private long totalRunMillis;
+    private long maxRunMillis;
+    private long totalWaitMillis;
+    private long maxWaitMillis;
+  }
+}
@@ -80,7 +80,7 @@ public class MasterSecretDecryptJob extends MasterSecretJob {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 
@@ -151,7 +151,7 @@ public class MmsDownloadJob extends MasterSecretJob {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     MmsDatabase database = DatabaseFactory.getMmsDatabase(context);
     database.markDownloadState(messageId, MmsDatabase.Status.DOWNLOAD_SOFT_FAILURE);
 
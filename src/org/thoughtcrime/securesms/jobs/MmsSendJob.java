@@ -106,7 +106,7 @@ public class MmsSendJob extends SendJob {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     DatabaseFactory.getMmsDatabase(context).markAsSentFailed(messageId);
     notifyMediaMessageDeliveryFailed(context, messageId);
   }
@@ -73,7 +73,7 @@ public class MultiDeviceBlockedUpdateJob extends MasterSecretJob implements Inje
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 }
@@ -167,7 +167,7 @@ public class MultiDeviceContactUpdateJob extends MasterSecretJob implements Inje
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 
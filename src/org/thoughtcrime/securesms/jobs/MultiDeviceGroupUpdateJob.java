@@ -104,7 +104,7 @@ public class MultiDeviceGroupUpdateJob extends MasterSecretJob implements Inject
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 
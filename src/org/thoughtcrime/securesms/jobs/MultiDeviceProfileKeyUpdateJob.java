@@ -86,7 +86,7 @@ public class MultiDeviceProfileKeyUpdateJob extends MasterSecretJob implements I
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     Log.w(TAG, "Profile key sync failed!");
   }
 }
\ No newline at end of file
@@ -77,7 +77,7 @@ public class MultiDeviceReadUpdateJob extends MasterSecretJob implements Injecta
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 
@@ -51,7 +51,7 @@ public class MultiDeviceVerifiedUpdateJob extends ContextJob implements Injectab
   }
 
   @Override
-  public void onRun() throws IOException, UntrustedIdentityException {
+  public void onExecute() throws IOException, UntrustedIdentityException {
     try {
       if (!TextSecurePreferences.isMultiDevice(context)) {
         Log.w(TAG, "Not multi device...");
@@ -98,7 +98,7 @@ public class MultiDeviceVerifiedUpdateJob extends ContextJob implements Injectab
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 }
\ No newline at end of file
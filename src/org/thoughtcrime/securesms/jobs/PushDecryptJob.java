@@ -2,6 +2,7 @@ package org.thoughtcrime.securesms.jobs;
 
 import android.content.Context;
 import android.content.Intent;
+import android.database.sqlite.SQLiteDatabase;
 import android.support.annotation.NonNull;
 import android.util.Log;
 import android.util.Pair;
@@ -17,13 +18,15 @@ import org.thoughtcrime.securesms.crypto.SecurityEvent;
 import org.thoughtcrime.securesms.crypto.storage.SignalProtocolStoreImpl;
 import org.thoughtcrime.securesms.crypto.storage.TextSecureSessionStore;
 import org.thoughtcrime.securesms.database.Address;
+import org.thoughtcrime.securesms.database.AfterCommit;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.database.DecryptTransaction;
 import org.thoughtcrime.securesms.database.EncryptingSmsDatabase;
 import org.thoughtcrime.securesms.database.GroupDatabase;
+import org.thoughtcrime.securesms.database.IdentityDatabase;
 import org.thoughtcrime.securesms.database.MessagingDatabase.InsertResult;
 import org.thoughtcrime.securesms.database.MessagingDatabase.SyncMessageId;
 import org.thoughtcrime.securesms.database.MmsDatabase;
-import org.thoughtcrime.securesms.database.NoSuchMessageException;
 import org.thoughtcrime.securesms.database.PushDatabase;
 import org.thoughtcrime.securesms.database.RecipientDatabase;
 import org.thoughtcrime.securesms.database.SmsDatabase;
@@ -82,29 +85,65 @@ import org.whispersystems.signalservice.api.messages.multidevice.VerifiedMessage
 import org.whispersystems.signalservice.api.push.SignalServiceAddress;
 
 import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import static org.whispersystems.libsignal.SessionCipher.SESSION_LOCK;
+
+/**
+ * Decrypts queued envelopes and stores the messages they carry.
+ *
+ * Envelopes are decrypted in batches, each in one transaction that also holds the sessions
+ * they ratchet and the removal of the envelopes from the queue. A message is stored if and
+ * only if its session advanced, and a batch costs one commit rather than several per
+ * message. Jobs, call intents, notifications and updates to recipients in memory wait for
+ * the commit, so they never look for rows that aren't visible yet, and nothing of a batch
+ * that rolled back is left behind when its envelopes are retried.
+ */
 public class PushDecryptJob extends ContextJob {
 
   private static final long serialVersionUID = 2L;
 
   public static final String TAG = PushDecryptJob.class.getSimpleName();
 
-  private final long messageId;
-  private final long smsMessageId;
+  private static final int  MAX_MESSAGES_PER_TRANSACTION = 50;
+  private static final int  MAX_MESSAGES_PER_CLAIM       = 10;
+  private static final long MAX_TRANSACTION_MILLIS       = 250;
+
+  private final long   messageId;
+  private final long   smsMessageId;
+  private final long[] messageIds;
+
+  /**
+   * Decrypts every envelope still queued when the job runs, including any whose fetch was
+   * interrupted before their decryption was scheduled.
+   */
+  public PushDecryptJob(Context context) {
+    this(context, new long[0], -1);
+  }
 
   public PushDecryptJob(Context context, long pushMessageId) {
     this(context, pushMessageId, -1);
   }
 
   public PushDecryptJob(Context context, long pushMessageId, long smsMessageId) {
+    this(context, new long[] {pushMessageId}, smsMessageId);
+  }
+
+  public PushDecryptJob(Context context, @NonNull List<Long> pushMessageIds) {
+    this(context, toArray(pushMessageIds), -1);
+  }
+
+  private PushDecryptJob(Context context, @NonNull long[] pushMessageIds, long smsMessageId) {
     super(context, JobParameters.newBuilder()
                                 .withPersistence()
                                 .withGroupId("__PUSH_DECRYPT_JOB__")
                                 .withWakeLock(true, 5, TimeUnit.SECONDS)
                                 .create());
-    this.messageId    = pushMessageId;
+    this.messageId    = pushMessageIds.length > 0 ? pushMessageIds[0] : -1;
+    this.messageIds   = pushMessageIds;
     this.smsMessageId = smsMessageId;
   }
 
@@ -112,26 +151,152 @@ public class PushDecryptJob extends ContextJob {
   public void onAdded() {}
 
   @Override
-  public void onRun() throws NoSuchMessageException {
+  public void onExecute() {
 
     if (!IdentityKeyUtil.hasIdentityKey(context)) {
       Log.w(TAG, "Skipping job, waiting for migration...");
       return;
     }
 
-    MasterSecret          masterSecret         = KeyCachingService.getMasterSecret(context);
-    PushDatabase          database             = DatabaseFactory.getPushDatabase(context);
-    SignalServiceEnvelope envelope             = database.get(messageId);
-    Optional<Long>        optionalSmsMessageId = smsMessageId > 0 ? Optional.of(smsMessageId) :
-                                                                 Optional.<Long>absent();
+    MasterSecret masterSecret = KeyCachingService.getMasterSecret(context);
+    long[]       pushIds      = getMessageIds();
 
     MasterSecretUnion masterSecretUnion;
 
     if (masterSecret == null) masterSecretUnion = new MasterSecretUnion(MasterSecretUtil.getAsymmetricMasterSecret(context, null));
     else                      masterSecretUnion = new MasterSecretUnion(masterSecret);
 
-    handleMessage(masterSecretUnion, envelope, optionalSmsMessageId);
-    database.delete(messageId);
+    int decrypted = 0;
+
+    while (decrypted < pushIds.length) {
+      long[] batch = Arrays.copyOfRange(pushIds, decrypted, Math.min(pushIds.length, decrypted + MAX_MESSAGES_PER_TRANSACTION));
+
+      try {
+        decrypted += decrypt(masterSecretUnion, batch);
+      } catch (RuntimeException e) {
+        if (batch.length == 1) throw e;
+
+        Log.w(TAG, "Batch rolled back, decrypting its envelopes one at a time", e);
+
+        for (long pushId : batch) {
+          try {
+            decrypt(masterSecretUnion, new long[] {pushId});
+          } catch (RuntimeException e2) {
+            Log.w(TAG, e2);
+          }
+        }
+
+        decrypted += batch.length;
+      }
+    }
+  }
+
+  /**
+   * The session lock is taken per envelope, while the transaction is kept open across the
+   * batch. A sender that takes the lock between two envelopes has the batch commit at its next
+   * claim, see {@link DecryptTransaction}.
+   *
+   * Envelopes are claimed from the push queue {@link #MAX_MESSAGES_PER_CLAIM} at a time. A
+   * batch commits early once it has held the writer for {@link #MAX_TRANSACTION_MILLIS},
+   * checked between claims, so that a backlog of slow envelopes can't keep the rest of the
+   * app from writing.
+   *
+   * @return the number of envelopes handled, from the start of pushIds.
+   */
+  private int decrypt(@NonNull MasterSecretUnion masterSecret, @NonNull long[] pushIds) {
+    PushDatabase     pushDatabase     = DatabaseFactory.getPushDatabase(context);
+    IdentityDatabase identityDatabase = DatabaseFactory.getIdentityDatabase(context);
+    SQLiteDatabase   database         = DatabaseFactory.getInstance(context).getRawDatabase();
+    JobLanes         jobManager       = ApplicationContext.getInstance(context).getJobManager();
+    Optional<Long>   smsMessageId     = this.smsMessageId > 0 ? Optional.of(this.smsMessageId) : Optional.<Long>absent();
+    boolean          committed        = false;
+    int              handled          = 0;
+
+    AfterCommit.hold();
+
+    try {
+      jobManager.holdJobs();
+
+      synchronized (SESSION_LOCK) {
+        DecryptTransaction.begin(database);
+      }
+
+      try {
+        long startTime = System.currentTimeMillis();
+
+        while (handled < pushIds.length) {
+          if (handled > 0 && (System.currentTimeMillis() - startTime > MAX_TRANSACTION_MILLIS || isCommitRequested())) {
+            break;
+          }
+
+          long[]                           claim     = Arrays.copyOfRange(pushIds, handled, Math.min(pushIds.length, handled + MAX_MESSAGES_PER_CLAIM));
+          Map<Long, SignalServiceEnvelope> envelopes = pushDatabase.claim(claim);
+
+          for (long pushId : claim) {
+            SignalServiceEnvelope envelope = envelopes.get(pushId);
+
+            if (envelope != null) {
+              synchronized (SESSION_LOCK) {
+                handleMessage(masterSecret, envelope, smsMessageId);
+              }
+            } else {
+              Log.w(TAG, "Envelope already decrypted: " + pushId);
+            }
+          }
+
+          handled += claim.length;
+        }
+
+        database.setTransactionSuccessful();
+        committed = true;
+      } finally {
+        database.endTransaction();
+        DecryptTransaction.end();
+        jobManager.releaseJobs(committed);
+      }
+    } finally {
+      AfterCommit.release(committed);
+      identityDatabase.clearUncommitted();
+    }
+
+    return handled;
+  }
+
+  private static boolean isCommitRequested() {
+    synchronized (SESSION_LOCK) {
+      return DecryptTransaction.isCommitRequested();
+    }
+  }
+
+  private long[] getMessageIds() {
+    if      (messageIds == null)    return new long[] {messageId};
+    else if (messageIds.length > 0) return messageIds;
+    else                            return toArray(DatabaseFactory.getPushDatabase(context).getPendingIds());
+  }
+
+  private static long[] toArray(@NonNull List<Long> ids) {
+    long[] array = new long[ids.size()];
+    int    i     = 0;
+
+    for (long id : ids) {
+      array[i++] = id;
+    }
+
+    return array;
+  }
+
+  private void updateNotification(@NonNull MasterSecretUnion masterSecret) {
+    MasterSecret secret = masterSecret.getMasterSecret().orNull();
+    AfterCommit.run(() -> MessageNotifier.updateNotification(context, secret));
+  }
+
+  private void updateNotification(@NonNull MasterSecretUnion masterSecret, long threadId) {
+    MasterSecret secret = masterSecret.getMasterSecret().orNull();
+    AfterCommit.run(() -> MessageNotifier.updateNotification(context, secret, threadId));
+  }
+
+  private void startCallService(@NonNull Intent intent) {
+    AfterCommit.run(() -> context.startService(intent));
   }
 
   @Override
@@ -140,7 +305,7 @@ public class PushDecryptJob extends ContextJob {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 
@@ -230,7 +395,7 @@ public class PushDecryptJob extends ContextJob {
       intent.putExtra(WebRtcCallService.EXTRA_REMOTE_ADDRESS, Address.fromExternal(context, envelope.getSource()));
       intent.putExtra(WebRtcCallService.EXTRA_REMOTE_DESCRIPTION, message.getDescription());
       intent.putExtra(WebRtcCallService.EXTRA_TIMESTAMP, envelope.getTimestamp());
-      context.startService(intent);
+      startCallService(intent);
     }
   }
 
@@ -243,7 +408,7 @@ public class PushDecryptJob extends ContextJob {
     intent.putExtra(WebRtcCallService.EXTRA_CALL_ID, message.getId());
     intent.putExtra(WebRtcCallService.EXTRA_REMOTE_ADDRESS, Address.fromExternal(context, envelope.getSource()));
     intent.putExtra(WebRtcCallService.EXTRA_REMOTE_DESCRIPTION, message.getDescription());
-    context.startService(intent);
+    startCallService(intent);
   }
 
   private void handleCallIceUpdateMessage(@NonNull SignalServiceEnvelope envelope,
@@ -258,7 +423,7 @@ public class PushDecryptJob extends ContextJob {
       intent.putExtra(WebRtcCallService.EXTRA_ICE_SDP, message.getSdp());
       intent.putExtra(WebRtcCallService.EXTRA_ICE_SDP_MID, message.getSdpMid());
       intent.putExtra(WebRtcCallService.EXTRA_ICE_SDP_LINE_INDEX, message.getSdpMLineIndex());
-      context.startService(intent);
+      startCallService(intent);
     }
   }
 
@@ -274,7 +439,7 @@ public class PushDecryptJob extends ContextJob {
       intent.setAction(WebRtcCallService.ACTION_REMOTE_HANGUP);
       intent.putExtra(WebRtcCallService.EXTRA_CALL_ID, message.getId());
       intent.putExtra(WebRtcCallService.EXTRA_REMOTE_ADDRESS, Address.fromExternal(context, envelope.getSource()));
-      context.startService(intent);
+      startCallService(intent);
     }
   }
 
@@ -285,7 +450,7 @@ public class PushDecryptJob extends ContextJob {
     intent.setAction(WebRtcCallService.ACTION_REMOTE_BUSY);
     intent.putExtra(WebRtcCallService.EXTRA_CALL_ID, message.getId());
     intent.putExtra(WebRtcCallService.EXTRA_REMOTE_ADDRESS, Address.fromExternal(context, envelope.getSource()));
-    context.startService(intent);
+    startCallService(intent);
   }
 
   private void handleEndSessionMessage(@NonNull MasterSecretUnion        masterSecret,
@@ -316,8 +481,8 @@ public class PushDecryptJob extends ContextJob {
       SessionStore sessionStore = new TextSecureSessionStore(context);
       sessionStore.deleteAllSessions(envelope.getSource());
 
-      SecurityEvent.broadcastSecurityUpdateEvent(context);
-      MessageNotifier.updateNotification(context, masterSecret.getMasterSecret().orNull(), threadId);
+      AfterCommit.run(() -> SecurityEvent.broadcastSecurityUpdateEvent(context));
+      updateNotification(masterSecret, threadId);
     }
   }
 
@@ -336,7 +501,7 @@ public class PushDecryptJob extends ContextJob {
       SessionStore sessionStore = new TextSecureSessionStore(context);
       sessionStore.deleteAllSessions(recipient.getAddress().toPhoneString());
 
-      SecurityEvent.broadcastSecurityUpdateEvent(context);
+      AfterCommit.run(() -> SecurityEvent.broadcastSecurityUpdateEvent(context));
 
       long messageId = database.insertMessageOutbox(masterSecret, threadId, outgoingEndSessionMessage,
                                                     false, message.getTimestamp(), null);
@@ -443,10 +608,10 @@ public class PushDecryptJob extends ContextJob {
 
     if (threadId != null) {
       DatabaseFactory.getThreadDatabase(getContext()).setRead(threadId, true);
-      MessageNotifier.updateNotification(getContext(), masterSecret.getMasterSecret().orNull());
+      updateNotification(masterSecret);
     }
 
-    MessageNotifier.setLastDesktopActivityTimestamp(message.getTimestamp());
+    AfterCommit.run(() -> MessageNotifier.setLastDesktopActivityTimestamp(message.getTimestamp()));
   }
 
   private void handleSynchronizeRequestMessage(@NonNull MasterSecretUnion masterSecret,
@@ -492,9 +657,12 @@ public class PushDecryptJob extends ContextJob {
       }
     }
 
-    MessageNotifier.setLastDesktopActivityTimestamp(envelopeTimestamp);
-    MessageNotifier.cancelDelayedNotifications();
-    MessageNotifier.updateNotification(context, masterSecret.getMasterSecret().orNull());
+    AfterCommit.run(() -> {
+      MessageNotifier.setLastDesktopActivityTimestamp(envelopeTimestamp);
+      MessageNotifier.cancelDelayedNotifications();
+    });
+
+    updateNotification(masterSecret);
   }
 
   private void handleMediaMessage(@NonNull MasterSecretUnion masterSecret,
@@ -540,7 +708,7 @@ public class PushDecryptJob extends ContextJob {
         DatabaseFactory.getSmsDatabase(context).deleteMessage(smsMessageId.get());
       }
 
-      MessageNotifier.updateNotification(context, masterSecret.getMasterSecret().orNull(), insertResult.get().getThreadId());
+      updateNotification(masterSecret, insertResult.get().getThreadId());
     }
   }
 
@@ -652,7 +820,7 @@ public class PushDecryptJob extends ContextJob {
     }
 
     if (threadId != null) {
-      MessageNotifier.updateNotification(context, masterSecret.getMasterSecret().orNull(), threadId);
+      updateNotification(masterSecret, threadId);
     }
   }
 
@@ -702,7 +870,7 @@ public class PushDecryptJob extends ContextJob {
 
       if (insertResult.isPresent()) {
         smsDatabase.markAsInvalidVersionKeyExchange(insertResult.get().getMessageId());
-        MessageNotifier.updateNotification(context, masterSecret.getMasterSecret().orNull(), insertResult.get().getThreadId());
+        updateNotification(masterSecret, insertResult.get().getThreadId());
       }
     } else {
       smsDatabase.markAsInvalidVersionKeyExchange(smsMessageId.get());
@@ -720,7 +888,7 @@ public class PushDecryptJob extends ContextJob {
 
       if (insertResult.isPresent()) {
         smsDatabase.markAsDecryptFailed(insertResult.get().getMessageId());
-        MessageNotifier.updateNotification(context, masterSecret.getMasterSecret().orNull(), insertResult.get().getThreadId());
+        updateNotification(masterSecret, insertResult.get().getThreadId());
       }
     } else {
       smsDatabase.markAsDecryptFailed(smsMessageId.get());
@@ -738,7 +906,7 @@ public class PushDecryptJob extends ContextJob {
 
       if (insertResult.isPresent()) {
         smsDatabase.markAsNoSession(insertResult.get().getMessageId());
-        MessageNotifier.updateNotification(context, masterSecret.getMasterSecret().orNull(), insertResult.get().getThreadId());
+        updateNotification(masterSecret, insertResult.get().getThreadId());
       }
     } else {
       smsDatabase.markAsNoSession(smsMessageId.get());
@@ -756,7 +924,7 @@ public class PushDecryptJob extends ContextJob {
 
       if (insertResult.isPresent()) {
         smsDatabase.markAsLegacyVersion(insertResult.get().getMessageId());
-        MessageNotifier.updateNotification(context, masterSecret.getMasterSecret().orNull(), insertResult.get().getThreadId());
+        updateNotification(masterSecret, insertResult.get().getThreadId());
       }
     } else {
       smsDatabase.markAsLegacyVersion(smsMessageId.get());
@@ -802,7 +970,7 @@ public class PushDecryptJob extends ContextJob {
 
         if (insertResult.isPresent()) {
           database.setMismatchedIdentity(insertResult.get().getMessageId(), sourceAddress, identityKey);
-          MessageNotifier.updateNotification(context, masterSecret.getMasterSecret().orNull(), insertResult.get().getThreadId());
+          updateNotification(masterSecret, insertResult.get().getThreadId());
         }
       } else {
         database.updateMessageBody(masterSecret, smsMessageId.get(), encoded);
@@ -823,7 +991,7 @@ public class PushDecryptJob extends ContextJob {
 
     if (recipient.getProfileKey() == null || !MessageDigest.isEqual(recipient.getProfileKey(), message.getProfileKey().get())) {
       database.setProfileKey(recipient, message.getProfileKey().get());
-      ApplicationContext.getInstance(context).getJobManager().add(new RetrieveProfileJob(context, recipient));
+      ApplicationContext.getInstance(context).getJobManager().add(new RetrieveProfileJob(context, recipient, 0));
     }
   }
 
@@ -19,14 +19,16 @@ import org.thoughtcrime.securesms.mms.MediaConstraints;
 import org.thoughtcrime.securesms.mms.MmsException;
 import org.thoughtcrime.securesms.mms.OutgoingGroupMediaMessage;
 import org.thoughtcrime.securesms.mms.OutgoingMediaMessage;
+import org.thoughtcrime.securesms.push.GroupSendEngine;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.recipients.RecipientFormattingException;
+import org.thoughtcrime.securesms.transport.RetryLaterException;
 import org.thoughtcrime.securesms.transport.UndeliverableMessageException;
 import org.thoughtcrime.securesms.util.GroupUtil;
+import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.whispersystems.jobqueue.JobParameters;
 import org.whispersystems.jobqueue.requirements.NetworkRequirement;
 import org.whispersystems.libsignal.util.guava.Optional;
-import org.whispersystems.signalservice.api.SignalServiceMessageSender;
 import org.whispersystems.signalservice.api.crypto.UntrustedIdentityException;
 import org.whispersystems.signalservice.api.messages.SignalServiceAttachment;
 import org.whispersystems.signalservice.api.messages.SignalServiceDataMessage;
@@ -79,14 +81,17 @@ public class PushGroupSendJob extends PushSendJob implements InjectableType {
 
   @Override
   public void onPushSend(MasterSecret masterSecret)
-      throws MmsException, IOException, NoSuchMessageException
+      throws MmsException, IOException, NoSuchMessageException, RetryLaterException
   {
-    MmsDatabase          database = DatabaseFactory.getMmsDatabase(context);
-    OutgoingMediaMessage message  = database.getOutgoingMessage(masterSecret, messageId);
+    MmsDatabase          database         = DatabaseFactory.getMmsDatabase(context);
+    OutgoingMediaMessage message          = database.getOutgoingMessage(masterSecret, messageId);
+    List<NetworkFailure> previousFailures = filterAddress == null ? database.getFailures(messageId)
+                                                                  : new LinkedList<NetworkFailure>();
 
     try {
-      deliver(masterSecret, message, filterAddress == null ? null : Address.fromSerialized(filterAddress), recipients);
+      deliver(masterSecret, message, getDestinations(message, previousFailures));
 
+      updateFailures(database, previousFailures, new LinkedList<NetworkFailure>());
       database.markAsSent(messageId, true);
       markAttachmentsUploaded(messageId, message.getAttachments());
 
@@ -112,11 +117,13 @@ public class PushGroupSendJob extends PushSendJob implements InjectableType {
         database.addMismatchedIdentity(messageId, Address.fromSerialized(uie.getE164Number()), uie.getIdentityKey());
       }
 
-      database.addFailures(messageId, failures);
+      updateFailures(database, previousFailures, failures);
 
       if (e.getNetworkExceptions().isEmpty() && e.getUntrustedIdentityExceptions().isEmpty()) {
         database.markAsSent(messageId, true);
         markAttachmentsUploaded(messageId, message.getAttachments());
+      } else if (e.getUntrustedIdentityExceptions().isEmpty()) {
+        throw new RetryLaterException(new IOException("Failed to reach " + failures.size() + " members"));
       } else {
         database.markAsSentFailed(messageId);
         notifyMediaMessageDeliveryFailed(context, messageId);
@@ -126,31 +133,71 @@ public class PushGroupSendJob extends PushSendJob implements InjectableType {
 
   @Override
   public boolean onShouldRetryThrowable(Exception exception) {
-    if (exception instanceof IOException) return true;
+    if (exception instanceof IOException)         return true;
+    if (exception instanceof RetryLaterException) return true;
     return false;
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     DatabaseFactory.getMmsDatabase(context).markAsSentFailed(messageId);
+    notifyMediaMessageDeliveryFailed(context, messageId);
   }
 
-  private void deliver(MasterSecret masterSecret, OutgoingMediaMessage message, @Nullable Address filterAddress, List<Recipient> recipients)
+  /**
+   * A message that already has network failures recorded was delivered to everyone else,
+   * so only those members are retried.
+   */
+  private List<Address> getDestinations(OutgoingMediaMessage message, List<NetworkFailure> previousFailures) {
+    List<Address> destinations = new LinkedList<>();
+
+    if (filterAddress != null) {
+      destinations.add(Address.fromSerialized(filterAddress));
+    } else if (!previousFailures.isEmpty()) {
+      for (NetworkFailure failure : previousFailures) {
+        destinations.add(failure.getAddress());
+      }
+    } else {
+      List<Recipient> members = recipients;
+
+      if (members == null) {
+        members = DatabaseFactory.getGroupDatabase(context).getGroupMembers(message.getRecipient().getAddress().toGroupString(), false);
+      }
+
+      for (Recipient member : members) {
+        destinations.add(member.getAddress());
+      }
+    }
+
+    return destinations;
+  }
+
+  private void updateFailures(MmsDatabase database, List<NetworkFailure> previousFailures, List<NetworkFailure> failures) {
+    List<NetworkFailure> added = new LinkedList<>(failures);
+    added.removeAll(previousFailures);
+
+    for (NetworkFailure previousFailure : previousFailures) {
+      if (!failures.contains(previousFailure)) {
+        database.removeFailure(messageId, previousFailure);
+      }
+    }
+
+    if (!added.isEmpty()) {
+      database.addFailures(messageId, added);
+    }
+  }
+
+  private void deliver(MasterSecret masterSecret, OutgoingMediaMessage message, List<Address> destinations)
       throws IOException, RecipientFormattingException, InvalidNumberException,
       EncapsulatedExceptions, UndeliverableMessageException
   {
-    SignalServiceMessageSender    messageSender     = messageSenderFactory.create();
+    GroupSendEngine               sendEngine        = new GroupSendEngine(messageSenderFactory, TextSecurePreferences.isMultiDevice(context));
     String                        groupId           = message.getRecipient().getAddress().toGroupString();
     Optional<byte[]>              profileKey        = getProfileKey(message.getRecipient());
-    if (recipients == null)       recipients        = DatabaseFactory.getGroupDatabase(context).getGroupMembers(groupId, false);
     MediaConstraints              mediaConstraints  = MediaConstraints.getPushMediaConstraints();
     List<Attachment>              scaledAttachments = scaleAttachments(masterSecret, mediaConstraints, message.getAttachments());
     List<SignalServiceAttachment> attachmentStreams = getAttachmentsFor(masterSecret, scaledAttachments);
-
-    List<SignalServiceAddress>    addresses;
-
-    if (filterAddress != null) addresses = getPushAddresses(filterAddress);
-    else                       addresses = getPushAddresses(recipients);
+    List<SignalServiceAddress>    addresses         = getPushAddresses(destinations);
 
     if (message.isGroup()) {
       OutgoingGroupMediaMessage groupMessage     = (OutgoingGroupMediaMessage) message;
@@ -164,7 +211,7 @@ public class PushGroupSendJob extends PushSendJob implements InjectableType {
                                                                            .asGroupMessage(group)
                                                                            .build();
 
-      messageSender.sendMessage(addresses, groupDataMessage);
+      sendEngine.sendMessage(addresses, groupDataMessage);
     } else {
       SignalServiceGroup       group        = new SignalServiceGroup(GroupUtil.getDecodedId(groupId));
       SignalServiceDataMessage groupMessage = SignalServiceDataMessage.newBuilder()
@@ -178,21 +225,15 @@ public class PushGroupSendJob extends PushSendJob implements InjectableType {
                                                                       .withProfileKey(profileKey.orNull())
                                                                       .build();
 
-      messageSender.sendMessage(addresses, groupMessage);
+      sendEngine.sendMessage(addresses, groupMessage);
     }
   }
 
-  private List<SignalServiceAddress> getPushAddresses(Address address) {
-    List<SignalServiceAddress> addresses = new LinkedList<>();
-    addresses.add(getPushAddress(address));
-    return addresses;
-  }
-
-  private List<SignalServiceAddress> getPushAddresses(List<Recipient> recipients) {
+  private List<SignalServiceAddress> getPushAddresses(List<Address> destinations) {
     List<SignalServiceAddress> addresses = new LinkedList<>();
 
-    for (Recipient recipient : recipients) {
-      addresses.add(getPushAddress(recipient.getAddress()));
+    for (Address destination : destinations) {
+      addresses.add(getPushAddress(destination));
     }
 
     return addresses;
@@ -58,7 +58,7 @@ public class PushGroupUpdateJob extends ContextJob implements InjectableType {
   public void onAdded() {}
 
   @Override
-  public void onRun() throws IOException, UntrustedIdentityException {
+  public void onExecute() throws IOException, UntrustedIdentityException {
     SignalServiceMessageSender messageSender = messageSenderFactory.create();
     GroupDatabase              groupDatabase = DatabaseFactory.getGroupDatabase(context);
     Optional<GroupRecord>      record        = groupDatabase.getGroup(GroupUtil.getEncodedId(groupId, false));
@@ -113,7 +113,7 @@ public class PushGroupUpdateJob extends ContextJob implements InjectableType {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 }
@@ -3,6 +3,7 @@ package org.thoughtcrime.securesms.jobs;
 import android.content.Context;
 import android.util.Log;
 
+import org.thoughtcrime.securesms.ApplicationContext;
 import org.thoughtcrime.securesms.dependencies.InjectableType;
 import org.thoughtcrime.securesms.notifications.MessageNotifier;
 import org.whispersystems.jobqueue.JobParameters;
@@ -12,14 +13,20 @@ import org.whispersystems.signalservice.api.messages.SignalServiceEnvelope;
 import org.whispersystems.signalservice.api.push.exceptions.PushNetworkException;
 
 import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 public class PushNotificationReceiveJob extends PushReceivedJob implements InjectableType {
 
+  private static final long serialVersionUID = 4363556390790396265L;
+
   private static final String TAG = PushNotificationReceiveJob.class.getSimpleName();
 
+  private static final int DECRYPT_BATCH_SIZE = 50;
+
   @Inject transient SignalServiceMessageReceiver receiver;
 
   public PushNotificationReceiveJob(Context context) {
@@ -32,14 +39,35 @@ public class PushNotificationReceiveJob extends PushReceivedJob implements Injec
   @Override
   public void onAdded() {}
 
+  /**
+   * Envelopes are handed to the decrypt queue every {@link #DECRYPT_BATCH_SIZE} as they're
+   * stored, so that a long fetch doesn't hold them all back until it's done.
+   */
   @Override
-  public void onRun() throws IOException {
-    receiver.retrieveMessages(new SignalServiceMessageReceiver.MessageReceivedCallback() {
-      @Override
-      public void onMessage(SignalServiceEnvelope envelope) {
-        handle(envelope, false);
-      }
-    });
+  public void onExecute() throws IOException {
+    final List<Long> pushIds = new LinkedList<>();
+
+    try {
+      receiver.retrieveMessages(new SignalServiceMessageReceiver.MessageReceivedCallback() {
+        @Override
+        public void onMessage(SignalServiceEnvelope envelope) {
+          handle(envelope, false, pushIds);
+
+          if (pushIds.size() >= DECRYPT_BATCH_SIZE) {
+            scheduleDecrypt(pushIds);
+          }
+        }
+      });
+    } finally {
+      scheduleDecrypt(pushIds);
+    }
+  }
+
+  private void scheduleDecrypt(List<Long> pushIds) {
+    if (!pushIds.isEmpty()) {
+      ApplicationContext.getInstance(context).getJobManager().add(new PushDecryptJob(context, pushIds));
+      pushIds.clear();
+    }
   }
 
   @Override
@@ -49,7 +77,7 @@ public class PushNotificationReceiveJob extends PushReceivedJob implements Injec
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     Log.w(TAG, "***** Failed to download pending message!");
 //    MessageNotifier.notifyMessagesPending(getContext());
   }
@@ -13,15 +13,17 @@ import org.thoughtcrime.securesms.database.RecipientDatabase.RecipientSettings;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.service.KeyCachingService;
 import org.thoughtcrime.securesms.util.Util;
-import org.whispersystems.jobqueue.JobManager;
 import org.whispersystems.jobqueue.JobParameters;
 import org.whispersystems.libsignal.util.guava.Optional;
 import org.whispersystems.signalservice.api.messages.SignalServiceEnvelope;
 
 import java.util.LinkedList;
+import java.util.List;
 
 public abstract class PushReceivedJob extends ContextJob {
 
+  private static final long serialVersionUID = 3162290118922463684L;
+
   private static final String TAG = PushReceivedJob.class.getSimpleName();
 
   protected PushReceivedJob(Context context, JobParameters parameters) {
@@ -29,6 +31,20 @@ public abstract class PushReceivedJob extends ContextJob {
   }
 
   public void handle(SignalServiceEnvelope envelope, boolean sendExplicitReceipt) {
+    List<Long> pushIds = new LinkedList<>();
+
+    handle(envelope, sendExplicitReceipt, pushIds);
+
+    if (!pushIds.isEmpty()) {
+      ApplicationContext.getInstance(context).getJobManager().add(new PushDecryptJob(context, pushIds));
+    }
+  }
+
+  /**
+   * Stores the envelope and appends its id to pushIds rather than scheduling its decryption,
+   * so that envelopes retrieved together can be decrypted together.
+   */
+  protected void handle(SignalServiceEnvelope envelope, boolean sendExplicitReceipt, List<Long> pushIds) {
     Address   source    = Address.fromExternal(context, envelope.getSource());
     Recipient recipient = Recipient.from(context, source, false);
 
@@ -40,27 +56,25 @@ public abstract class PushReceivedJob extends ContextJob {
     if (envelope.isReceipt()) {
       handleReceipt(envelope);
     } else if (envelope.isPreKeySignalMessage() || envelope.isSignalMessage()) {
-      handleMessage(envelope, source, sendExplicitReceipt);
+      handleMessage(envelope, source, sendExplicitReceipt, pushIds);
     } else {
       Log.w(TAG, "Received envelope of unknown type: " + envelope.getType());
     }
   }
 
-  private void handleMessage(SignalServiceEnvelope envelope, Address source, boolean sendExplicitReceipt) {
-    Recipient  recipients = Recipient.from(context, source, false);
-    JobManager jobManager = ApplicationContext.getInstance(context).getJobManager();
+  private void handleMessage(SignalServiceEnvelope envelope, Address source, boolean sendExplicitReceipt, List<Long> pushIds) {
+    Recipient recipients = Recipient.from(context, source, false);
 
     if (!recipients.isBlocked()) {
-      long messageId = DatabaseFactory.getPushDatabase(context).insert(envelope);
-      jobManager.add(new PushDecryptJob(context, messageId));
+      pushIds.add(DatabaseFactory.getPushDatabase(context).insert(envelope));
     } else {
       Log.w(TAG, "*** Received blocked push message, ignoring...");
     }
 
     if (sendExplicitReceipt) {
-      jobManager.add(new DeliveryReceiptJob(context, envelope.getSource(),
-                                            envelope.getTimestamp(),
-                                            envelope.getRelay()));
+      ApplicationContext.getInstance(context)
+                        .getDeliveryReceiptDispatcher()
+                        .enqueue(envelope.getSource(), envelope.getTimestamp(), envelope.getRelay());
     }
   }
 
@@ -80,6 +80,10 @@ public abstract class PushSendJob extends SendJob {
     return new SignalServiceAddress(address.toPhoneString(), Optional.fromNullable(relay));
   }
 
+  // Note that every send uploads its attachments again, even if the same data was sent
+  // elsewhere moments ago. The service library only turns streams into pointers and drops
+  // any pointer it's given, and it doesn't return the pointers it creates, so there's
+  // nothing we could hand it for reuse until it gains support for that.
   protected List<SignalServiceAttachment> getAttachmentsFor(MasterSecret masterSecret, List<Attachment> parts) {
     List<SignalServiceAttachment> attachments = new LinkedList<>();
 
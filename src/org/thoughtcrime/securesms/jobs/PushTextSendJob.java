@@ -85,7 +85,7 @@ public class PushTextSendJob extends PushSendJob implements InjectableType {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     DatabaseFactory.getSmsDatabase(context).markAsSentFailed(messageId);
 
     long      threadId  = DatabaseFactory.getSmsDatabase(context).getThreadIdForMessage(messageId);
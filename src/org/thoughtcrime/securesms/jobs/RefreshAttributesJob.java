@@ -36,7 +36,7 @@ public class RefreshAttributesJob extends ContextJob implements InjectableType {
   public void onAdded() {}
 
   @Override
-  public void onRun() throws IOException {
+  public void onExecute() throws IOException {
     String  signalingKey      = TextSecurePreferences.getSignalingKey(context);
     int     registrationId    = TextSecurePreferences.getLocalRegistrationId(context);
     boolean fetchesMessages   = TextSecurePreferences.isGcmDisabled(context);
@@ -50,7 +50,7 @@ public class RefreshAttributesJob extends ContextJob implements InjectableType {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     Log.w(TAG, "Failed to update account attributes!");
   }
 }
@@ -45,7 +45,7 @@ public class RequestGroupInfoJob extends ContextJob implements InjectableType {
   public void onAdded() {}
 
   @Override
-  public void onRun() throws IOException, UntrustedIdentityException {
+  public void onExecute() throws IOException, UntrustedIdentityException {
     SignalServiceMessageSender messageSender = messageSenderFactory.create();
 
     SignalServiceGroup         group         = SignalServiceGroup.newBuilder(Type.REQUEST_INFO)
@@ -66,7 +66,7 @@ public class RequestGroupInfoJob extends ContextJob implements InjectableType {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 }
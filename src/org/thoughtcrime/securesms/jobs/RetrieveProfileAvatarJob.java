@@ -27,6 +27,8 @@ import javax.inject.Inject;
 
 public class RetrieveProfileAvatarJob extends ContextJob implements InjectableType {
 
+  private static final long serialVersionUID = -1031982241533391879L;
+
   private static final String TAG = RetrieveProfileAvatarJob.class.getSimpleName();
 
   private static final int MAX_PROFILE_SIZE_BYTES = 20 * 1024 * 1024;
@@ -50,7 +52,7 @@ public class RetrieveProfileAvatarJob extends ContextJob implements InjectableTy
   public void onAdded() {}
 
   @Override
-  public void onRun() throws IOException {
+  public void onExecute() throws IOException {
     if (true) return ;
     RecipientDatabase database   = DatabaseFactory.getRecipientDatabase(context);
     byte[]            profileKey = recipient.resolve().getProfileKey();
@@ -99,7 +101,7 @@ public class RetrieveProfileAvatarJob extends ContextJob implements InjectableTy
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 }
\ No newline at end of file
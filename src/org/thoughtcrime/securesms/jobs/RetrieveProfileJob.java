@@ -7,12 +7,16 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import org.thoughtcrime.securesms.ApplicationContext;
+import org.thoughtcrime.securesms.BuildConfig;
+import org.thoughtcrime.securesms.database.Address;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.database.RecipientDatabase;
 import org.thoughtcrime.securesms.database.RecipientDatabase.RecipientSettings;
 import org.thoughtcrime.securesms.dependencies.InjectableType;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.service.MessageRetrievalService;
 import org.thoughtcrime.securesms.util.Base64;
+import org.thoughtcrime.securesms.util.Hex;
 import org.thoughtcrime.securesms.util.IdentityUtil;
 import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.jobqueue.JobParameters;
@@ -24,83 +28,261 @@ import org.whispersystems.signalservice.api.SignalServiceMessageReceiver;
 import org.whispersystems.signalservice.api.crypto.ProfileCipher;
 import org.whispersystems.signalservice.api.profiles.SignalServiceProfile;
 import org.whispersystems.signalservice.api.push.SignalServiceAddress;
+import org.whispersystems.signalservice.api.push.exceptions.PushNetworkException;
+import org.whispersystems.signalservice.api.push.exceptions.RateLimitException;
 import org.whispersystems.signalservice.api.util.InvalidNumberException;
 
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 
+/**
+ * Fetches the profiles of a recipient, or of every member of a group.
+ *
+ * Profiles fetched within the job's max age are skipped, so reopening a conversation doesn't
+ * fetch them again. The rest are fetched in parallel over a small shared pool, and every
+ * fetch waits for a slot from a shared rate limit. A hash of each profile and the profile key
+ * it was decrypted with is stored alongside the fetch time. When it hasn't changed, the
+ * identity key, name and avatar are all left alone and no avatar download is queued.
+ *
+ * The default max age is the build's PROFILE_FETCH_TTL_MILLIS. Fetches that were skipped,
+ * made, failed or rate limited, and the time fetches and jobs took, are counted for the
+ * debug log.
+ */
 public class RetrieveProfileJob extends ContextJob implements InjectableType {
 
+  private static final long serialVersionUID = 3079149831758225467L;
+
   private static final String TAG = RetrieveProfileJob.class.getSimpleName();
 
+  public static final long DEFAULT_MAX_AGE = BuildConfig.PROFILE_FETCH_TTL_MILLIS;
+
+  private static final int  MAX_CONCURRENT_FETCHES    = 4;
+  private static final long MIN_FETCH_INTERVAL_MILLIS = 100;
+
+  private static final Executor FETCH_EXECUTOR = newFetchExecutor();
+
+  private static final FetchStats stats = new FetchStats();
+
+  private static long nextFetchTime;
+
   @Inject transient SignalServiceMessageReceiver receiver;
 
   private final Recipient recipient;
+  private final long      maxAge;
 
   public RetrieveProfileJob(Context context, Recipient recipient) {
+    this(context, recipient, DEFAULT_MAX_AGE);
+  }
+
+  /**
+   * @param maxAge how long ago a profile can have been fetched and still be skipped, or 0 to
+   *               fetch every profile.
+   */
+  public RetrieveProfileJob(Context context, Recipient recipient, long maxAge) {
     super(context, JobParameters.newBuilder()
                                 .withRetryCount(3)
                                 .create());
 
     this.recipient = recipient;
+    this.maxAge    = maxAge;
   }
 
   @Override
   public void onAdded() {}
 
+  public static void logReport() {
+    Log.w(TAG, stats.getReport());
+  }
+
   @Override
-  public void onRun() throws IOException, InvalidKeyException {
+  public void onExecute() throws IOException {
+    long            start      = System.currentTimeMillis();
+    List<Recipient> recipients = getRecipients();
+    List<Recipient> stale      = getStaleRecipients(recipients);
+
+    stats.onSkipped(recipients.size() - stale.size());
+
     try {
-      if (recipient.isGroupRecipient()) handleGroupRecipient(recipient);
-      else                              handleIndividualRecipient(recipient);
-    } catch (InvalidNumberException e) {
-      Log.w(TAG, e);
+      if      (stale.size() == 1) fetchProfile(stale.get(0));
+      else if (stale.size() > 1)  fetchProfiles(stale);
+    } finally {
+      stats.onJobFinished(System.currentTimeMillis() - start);
     }
   }
 
+  /**
+   * Profiles fetched before a network failure are fresh by the retry, so it only fetches the
+   * ones that failed.
+   */
   @Override
   public boolean onShouldRetry(Exception e) {
-    return false;
+    return e instanceof PushNetworkException;
   }
 
   @Override
-  public void onCanceled() {}
+  public void onJobCanceled() {}
+
+  private @NonNull List<Recipient> getRecipients() {
+    if (recipient.isGroupRecipient()) {
+      return DatabaseFactory.getGroupDatabase(context).getGroupMembers(recipient.getAddress().toGroupString(), false);
+    } else {
+      return Collections.singletonList(recipient);
+    }
+  }
+
+  private @NonNull List<Recipient> getStaleRecipients(@NonNull List<Recipient> recipients) {
+    if (maxAge <= 0) return recipients;
+
+    List<Address> addresses = new LinkedList<>();
+
+    for (Recipient recipient : recipients) {
+      addresses.add(recipient.getAddress());
+    }
 
-  private void handleIndividualRecipient(Recipient recipient)
-      throws IOException, InvalidKeyException, InvalidNumberException
-  {
-    String               number  = recipient.getAddress().toPhoneString();
-    SignalServiceProfile profile = retrieveProfile(number);
+    Set<Address>    fresh = DatabaseFactory.getRecipientDatabase(context).getProfilesFetchedSince(addresses, System.currentTimeMillis() - maxAge);
+    List<Recipient> stale = new LinkedList<>();
 
-    setIdentityKey(recipient, profile.getIdentityKey());
-    setProfileName(recipient, profile.getName());
-    setProfileAvatar(recipient, profile.getAvatar());
+    for (Recipient recipient : recipients) {
+      if (!fresh.contains(recipient.getAddress())) stale.add(recipient);
+    }
+
+    return stale;
   }
 
-  private void handleGroupRecipient(Recipient group)
-      throws IOException, InvalidKeyException, InvalidNumberException
-  {
-    List<Recipient> recipients = DatabaseFactory.getGroupDatabase(context).getGroupMembers(group.getAddress().toGroupString(), false);
+  /**
+   * A failed fetch doesn't stop the others. Its profile isn't marked as fetched, and once the
+   * rest have finished the first failure is thrown, so the job fails and a retry or the next
+   * run picks it up again. A rate limit response cancels the fetches that haven't started.
+   */
+  private void fetchProfiles(@NonNull List<Recipient> recipients) throws IOException {
+    CompletionService<Void> completionService = new ExecutorCompletionService<>(FETCH_EXECUTOR);
+    AtomicBoolean           rateLimited       = new AtomicBoolean(false);
+    IOException             failure           = null;
+    int                     failures          = 0;
 
     for (Recipient recipient : recipients) {
-      handleIndividualRecipient(recipient);
+      completionService.submit(new FetchTask(recipient, rateLimited));
+    }
+
+    for (int i = 0; i < recipients.size(); i++) {
+      try {
+        completionService.take().get();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        if      (e.getCause() instanceof IOException)      failures++;
+        else if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+        else                                               throw new AssertionError(e);
+
+        if (failure == null) failure = (IOException) e.getCause();
+      }
+    }
+
+    if (failure != null) {
+      Log.w(TAG, failures + " of " + recipients.size() + " profile fetches failed");
+      throw failure;
     }
   }
 
-  private SignalServiceProfile retrieveProfile(@NonNull String number) throws IOException {
-    SignalServiceMessagePipe pipe = MessageRetrievalService.getPipe();
+  private void fetchProfile(@NonNull Recipient recipient) throws IOException {
+    try {
+      awaitFetchSlot();
+
+      RecipientDatabase    database = DatabaseFactory.getRecipientDatabase(context);
+      SignalServiceProfile profile  = retrieveProfile(recipient.getAddress().toPhoneString());
+      String               hash     = getProfileHash(recipient, profile);
+
+      if (!hash.equals(database.getProfileHash(recipient.getAddress()))) {
+        stats.onChanged();
+        setIdentityKey(recipient, profile.getIdentityKey());
+        setProfileName(recipient, profile.getName());
+        setProfileAvatar(recipient, profile.getAvatar());
+      }
+
+      database.setProfileFetched(recipient.getAddress(), System.currentTimeMillis(), hash);
+    } catch (InvalidNumberException e) {
+      Log.w(TAG, e);
+    }
+  }
+
+  private static @NonNull String getProfileHash(@NonNull Recipient recipient, @NonNull SignalServiceProfile profile) {
+    try {
+      MessageDigest digest     = MessageDigest.getInstance("SHA-256");
+      byte[]        profileKey = recipient.getProfileKey();
+
+      if (profileKey != null) digest.update(profileKey);
 
-    if (pipe != null) {
+      for (String field : new String[] {profile.getIdentityKey(), profile.getName(), profile.getAvatar()}) {
+        digest.update((byte)(field == null ? 0 : 1));
+        if (field != null) digest.update(field.getBytes());
+      }
+
+      return Hex.toStringCondensed(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static void awaitFetchSlot() throws IOException {
+    long delay;
+
+    synchronized (RetrieveProfileJob.class) {
+      long now  = System.currentTimeMillis();
+      long slot = Math.max(now, nextFetchTime);
+
+      nextFetchTime = slot + MIN_FETCH_INTERVAL_MILLIS;
+      delay         = slot - now;
+    }
+
+    if (delay > 0) {
       try {
-        return pipe.getProfile(new SignalServiceAddress(number));
-      } catch (IOException e) {
-        Log.w(TAG, e);
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
       }
     }
+  }
+
+  private SignalServiceProfile retrieveProfile(@NonNull String number) throws IOException {
+    SignalServiceMessagePipe pipe  = MessageRetrievalService.getPipe();
+    long                     start = System.currentTimeMillis();
+
+    try {
+      if (pipe != null) {
+        try {
+          return pipe.getProfile(new SignalServiceAddress(number));
+        } catch (IOException e) {
+          Log.w(TAG, e);
+        }
+      }
 
-    return receiver.retrieveProfile(new SignalServiceAddress(number));
+      return receiver.retrieveProfile(new SignalServiceAddress(number));
+    } catch (RateLimitException e) {
+      stats.onRateLimited();
+      throw e;
+    } catch (IOException e) {
+      stats.onFailed();
+      throw e;
+    } finally {
+      stats.onRequest(System.currentTimeMillis() - start);
+    }
   }
 
   private void setIdentityKey(Recipient recipient, String identityKeyValue) {
@@ -155,4 +337,86 @@ public class RetrieveProfileJob extends ContextJob implements InjectableType {
           .add(new RetrieveProfileAvatarJob(context, recipient, profileAvatar));
     }
   }
+
+  private static Executor newFetchExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT_FETCHES, MAX_CONCURRENT_FETCHES,
+                                                         30, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private class FetchTask implements Callable<Void> {
+
+    private final Recipient     recipient;
+    private final AtomicBoolean rateLimited;
+
+    private FetchTask(@NonNull Recipient recipient, @NonNull AtomicBoolean rateLimited) {
+      this.recipient   = recipient;
+      this.rateLimited = rateLimited;
+    }
+
+    @Override
+    public Void call() throws IOException {
+      if (rateLimited.get()) return null;
+
+      try {
+        fetchProfile(recipient);
+      } catch (RateLimitException e) {
+        rateLimited.set(true);
+        throw e;
+      }
+
+      return null;
+    }
+  }
+
+  private static class FetchStats {
+
+    private long skipped;
+    private long requests;
+    private long changed;
+    private long failed;
+    private long rateLimited;
+    private long totalRequestMillis;
+    private long maxRequestMillis;
+    private long jobs;
+    private long totalJobMillis;
+    private long maxJobMillis;
+
+    synchronized void onSkipped(int count) {
+      skipped += count;
+    }
+
+    synchronized void onRequest(long millis) {
+      requests++;
+      totalRequestMillis += millis;
+      maxRequestMillis    = Math.max(maxRequestMillis, millis);
+    }
+
+    synchronized void onChanged() {
+      changed++;
+    }
+
+    synchronized void onFailed() {
+      failed++;
+    }
+
+    synchronized void onRateLimited() {
+      rateLimited++;
+    }
+
+    synchronized void onJobFinished(long millis) {
+      jobs++;
+      totalJobMillis += millis;
+      maxJobMillis    = Math.max(maxJobMillis, millis);
+    }
+
+    synchronized @NonNull String getReport() {
+      return String.format(Locale.US, "%d requests avoided, %d made, %d changed, %d failed, %d rate limited, request avg %dms max %dms, %d jobs avg %dms max %dms",
+                           skipped, requests, changed, failed, rateLimited,
+                           requests > 0 ? totalRequestMillis / requests : 0, maxRequestMillis,
+                           jobs, jobs > 0 ? totalJobMillis / jobs : 0, maxJobMillis);
+    }
+  }
 }
@@ -63,7 +63,7 @@ public class RotateSignedPreKeyJob extends MasterSecretJob implements Injectable
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     TextSecurePreferences.setSignedPreKeyFailureCount(context, TextSecurePreferences.getSignedPreKeyFailureCount(context) + 1);
   }
 }
@@ -45,7 +45,7 @@ public class SmsReceiveJob extends ContextJob {
   public void onAdded() {}
 
   @Override
-  public void onRun() {
+  public void onExecute() {
     Log.w(TAG, "onRun()");
     
     Optional<IncomingTextMessage> message      = assembleMessageFragments(pdus, subscriptionId);
@@ -73,7 +73,7 @@ public class SmsReceiveJob extends ContextJob {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 
@@ -63,8 +63,8 @@ public class SmsSendJob extends SendJob {
   }
 
   @Override
-  public void onCanceled() {
-    Log.w(TAG, "onCanceled()");
+  public void onJobCanceled() {
+    Log.w(TAG, "onJobCanceled()");
     long      threadId  = DatabaseFactory.getSmsDatabase(context).getThreadIdForMessage(messageId);
     Recipient recipient = DatabaseFactory.getThreadDatabase(context).getRecipientForThreadId(threadId);
 
@@ -60,7 +60,7 @@ public class SmsSentJob extends MasterSecretJob {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
 
   }
 
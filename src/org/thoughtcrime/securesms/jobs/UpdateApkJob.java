@@ -34,6 +34,8 @@ import okhttp3.Response;
 
 public class UpdateApkJob extends ContextJob {
 
+  private static final long serialVersionUID = -1638424898175362184L;
+
   private static final String TAG = UpdateApkJob.class.getSimpleName();
 
   public UpdateApkJob(Context context) {
@@ -49,7 +51,7 @@ public class UpdateApkJob extends ContextJob {
   public void onAdded() {}
 
   @Override
-  public void onRun() throws IOException, PackageManager.NameNotFoundException {
+  public void onExecute() throws IOException, PackageManager.NameNotFoundException {
     if (!BuildConfig.PLAY_STORE_DISABLED) return;
 
     Log.w(TAG, "Checking for APK update...");
@@ -89,7 +91,7 @@ public class UpdateApkJob extends ContextJob {
   }
 
   @Override
-  public void onCanceled() {
+  public void onJobCanceled() {
     Log.w(TAG, "Update check failed");
   }
 
@@ -2,6 +2,8 @@ package org.thoughtcrime.securesms.media;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
@@ -25,17 +27,63 @@ public class MediaData {
   private ArrayList<Media> listVideo = new ArrayList<>();
   private ArrayList<Media> listAudio = new ArrayList<>();
   private ArrayList<Media> listFile = new ArrayList<>();
+  private int[]            counts   = new int[4];
+  private MediaDatabase.MediaPosition lastPosition;
+
+  /**
+   * Loads the newest {@code limit} items of each kind, and how many there are in total.
+   */
+  public MediaData(Context context, MasterSecret masterSecret, int limit) {
+    this(context, masterSecret, limit, AttachmentDatabase.MEDIA_KIND_IMAGE, AttachmentDatabase.MEDIA_KIND_VIDEO,
+         AttachmentDatabase.MEDIA_KIND_AUDIO, AttachmentDatabase.MEDIA_KIND_OTHER);
+  }
+
+  public MediaData(Context context, MasterSecret masterSecret, int limit, int... mediaKinds) {
+    this.context = context;
+    this.masterSecret = masterSecret;
 
-  public MediaData(Context context, MasterSecret masterSecret) {
+    for (int mediaKind : mediaKinds) {
+      counts[mediaKind] = DatabaseFactory.getMediaDatabase(context).getMediaCountByKind(mediaKind);
+      loadDataFromDatabase(mediaKind, limit, null);
+    }
+  }
+
+  /**
+   * Loads the {@code limit} items of one kind that follow {@code after}, the position of the
+   * last item of an earlier load. Totals aren't counted again.
+   */
+  public MediaData(Context context, MasterSecret masterSecret, int limit, int mediaKind,
+                   @NonNull MediaDatabase.MediaPosition after)
+  {
     this.context = context;
     this.masterSecret = masterSecret;
-    loadDataFromDatabase();
+
+    loadDataFromDatabase(mediaKind, limit, after);
   }
 
   public ArrayList<Media> getListData() {
     return this.list;
   }
 
+  public int getCount(int mediaKind) {
+    return counts[mediaKind];
+  }
+
+  /**
+   * @return the position of the last item loaded, to load the following ones from.
+   */
+  public @Nullable MediaDatabase.MediaPosition getLastPosition() {
+    return lastPosition;
+  }
+
+  public boolean isEmpty() {
+    for (int count : counts) {
+      if (count > 0) return false;
+    }
+
+    return true;
+  }
+
   public ArrayList getListThumbnail() {
     int limit = 4;
     ArrayList<Media> tmpImg = new ArrayList<>();
@@ -105,10 +153,12 @@ public class MediaData {
     return tmp;
   }
 
-  public void loadDataFromDatabase() {
-    Cursor cursor = DatabaseFactory.getMediaDatabase(context).getAllMedia();
+  private void loadDataFromDatabase(int mediaKind, int limit, @Nullable MediaDatabase.MediaPosition after) {
+    MediaDatabase database = DatabaseFactory.getMediaDatabase(context);
+    Cursor        cursor   = database.getMediaByKind(mediaKind, limit, after);
 
     while (cursor != null && cursor.moveToNext()) {
+      lastPosition = MediaDatabase.MediaPosition.from(cursor);
       media = new Media();
       final MediaDatabase.MediaRecord mediaRecord = MediaDatabase.MediaRecord.from(context, masterSecret, cursor);
 
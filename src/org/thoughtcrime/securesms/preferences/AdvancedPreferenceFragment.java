@@ -26,6 +26,7 @@ import org.thoughtcrime.securesms.RegistrationActivity;
 import org.thoughtcrime.securesms.contacts.ContactAccessor;
 import org.thoughtcrime.securesms.contacts.ContactIdentityManager;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
+import org.thoughtcrime.securesms.jobs.JobTelemetry;
 import org.thoughtcrime.securesms.push.AccountManagerFactory;
 import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.thoughtcrime.securesms.util.task.ProgressDialogAsyncTask;
@@ -41,6 +42,7 @@ public class AdvancedPreferenceFragment extends PreferenceFragment {
   private static final String PUSH_MESSAGING_PREF   = "pref_toggle_push_messaging";
   private static final String SUBMIT_DEBUG_LOG_PREF = "pref_submit_debug_logs";
   private static final String APP_VERSION_PREF = "pref_app_version";
+  private static final String JOB_STATISTICS_PREF = "pref_job_statistics";
 
   private static final int PICK_IDENTITY_CONTACT = 1;
 
@@ -61,6 +63,8 @@ public class AdvancedPreferenceFragment extends PreferenceFragment {
 
     Preference appVersion = this.findPreference(APP_VERSION_PREF);
     appVersion.setSummary(getVersion(getActivity()));
+
+    this.findPreference(JOB_STATISTICS_PREF).setOnPreferenceClickListener(new JobStatisticsListener());
   }
 
   @Override
@@ -157,6 +161,18 @@ public class AdvancedPreferenceFragment extends PreferenceFragment {
     }
   }
 
+  private class JobStatisticsListener implements Preference.OnPreferenceClickListener {
+    @Override
+    public boolean onPreferenceClick(Preference preference) {
+      new AlertDialog.Builder(getActivity())
+          .setTitle(R.string.preferences__job_statistics)
+          .setMessage(JobTelemetry.getInstance().getReport())
+          .setPositiveButton(android.R.string.ok, null)
+          .show();
+      return true;
+    }
+  }
+
   private class PushMessagingClickListener implements Preference.OnPreferenceChangeListener {
     private static final int SUCCESS       = 0;
     private static final int NETWORK_ERROR = 1;
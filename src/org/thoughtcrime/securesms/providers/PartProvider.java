@@ -23,10 +23,10 @@ import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
-import android.os.MemoryFile;
 import android.os.ParcelFileDescriptor;
 import android.provider.OpenableColumns;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import org.thoughtcrime.securesms.attachments.AttachmentId;
@@ -35,13 +35,18 @@ import org.thoughtcrime.securesms.crypto.MasterSecret;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.mms.PartUriParser;
 import org.thoughtcrime.securesms.service.KeyCachingService;
-import org.thoughtcrime.securesms.util.MemoryFileUtil;
+import org.thoughtcrime.securesms.util.MediaUtil;
 import org.thoughtcrime.securesms.util.Util;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class PartProvider extends ContentProvider {
 
@@ -50,9 +55,13 @@ public class PartProvider extends ContentProvider {
   private static final String CONTENT_URI_STRING = "content://id.kita.pesan.secure.provider/part";
   private static final Uri    CONTENT_URI        = Uri.parse(CONTENT_URI_STRING);
   private static final int    SINGLE_ROW         = 1;
+  private static final String STREAM_PARAMETER   = "stream";
+          static final int    STREAM_BUFFER_SIZE = 64 * 1024;
 
   private static final UriMatcher uriMatcher;
 
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
   static {
     uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
     uriMatcher.addURI("id.kita.pesan.secure.provider", "part/*/#", SINGLE_ROW);
@@ -69,6 +78,14 @@ public class PartProvider extends ContentProvider {
     return ContentUris.withAppendedId(uri, attachmentId.getRowId());
   }
 
+  /**
+   * A uri for receivers that only read the attachment once, front to back. It's opened as a
+   * pipe, which starts delivering data sooner but can't be seeked.
+   */
+  public static Uri getStreamingContentUri(AttachmentId attachmentId) {
+    return getContentUri(attachmentId).buildUpon().appendQueryParameter(STREAM_PARAMETER, "1").build();
+  }
+
   @Override
   public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
     final MasterSecret masterSecret = KeyCachingService.getMasterSecret(getContext());
@@ -84,7 +101,12 @@ public class PartProvider extends ContentProvider {
       Log.w(TAG, "Parting out a single row...");
       try {
         final PartUriParser partUri = new PartUriParser(uri);
-        return getParcelStreamForAttachment(masterSecret, partUri.getPartId());
+
+        if (isStreamed(uri, masterSecret, partUri.getPartId())) {
+          return getParcelStreamForAttachment(masterSecret, partUri.getPartId());
+        } else {
+          return getParcelFileForAttachment(masterSecret, partUri.getPartId());
+        }
       } catch (IOException ioe) {
         Log.w(TAG, ioe);
         throw new FileNotFoundException("Error opening file");
@@ -144,6 +166,8 @@ public class PartProvider extends ContentProvider {
         for (int i=0;i<projection.length;i++) {
           if (OpenableColumns.DISPLAY_NAME.equals(projection[i])) {
             resultRow[i] = attachment.getFileName();
+          } else if (OpenableColumns.SIZE.equals(projection[i])) {
+            resultRow[i] = attachment.getSize();
           }
         }
 
@@ -160,17 +184,94 @@ public class PartProvider extends ContentProvider {
     return 0;
   }
 
+  private boolean isStreamed(@NonNull Uri uri, @NonNull MasterSecret masterSecret, @NonNull AttachmentId attachmentId) {
+    if (uri.getQueryParameter(STREAM_PARAMETER) != null) return true;
+
+    DatabaseAttachment attachment = DatabaseFactory.getAttachmentDatabase(getContext()).getAttachment(masterSecret, attachmentId);
+    return attachment != null && MediaUtil.isTextType(attachment.getContentType());
+  }
+
+  /**
+   * Decrypts the attachment into a file in the cache directory, which is unlinked as soon as
+   * it's opened, so receivers can seek and learn its length as they could with the old
+   * MemoryFile. Plaintext is only held in memory a buffer at a time.
+   */
+  private ParcelFileDescriptor getParcelFileForAttachment(MasterSecret masterSecret, AttachmentId attachmentId) throws IOException {
+    InputStream in = DatabaseFactory.getAttachmentDatabase(getContext()).getAttachmentStream(masterSecret, attachmentId);
+
+    try (RandomAccessFile file = decryptToUnlinkedFile(in, getContext().getCacheDir())) {
+      return ParcelFileDescriptor.dup(file.getFD());
+    }
+  }
+
+  /**
+   * Copies the stream into a new file in the directory and opens it for reading. The file is
+   * deleted before it's returned, so it goes away with the last descriptor open on it.
+   */
+  @VisibleForTesting
+  static @NonNull RandomAccessFile decryptToUnlinkedFile(@NonNull InputStream in, @NonNull File directory) throws IOException {
+    File file = File.createTempFile("part", ".tmp", directory);
+
+    try {
+      try (OutputStream out = new FileOutputStream(file)) {
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        int    read;
+
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+      }
+
+      return new RandomAccessFile(file, "r");
+    } finally {
+      Util.close(in);
+
+      if (!file.delete()) {
+        Log.w(TAG, "Failed to delete " + file);
+      }
+    }
+  }
+
+  /**
+   * Streams the decrypted attachment through a pipe as it's read, so the receiver gets its
+   * first bytes after a single decryption pass and we never hold more than a buffer of plaintext.
+   * The plaintext length is reported through {@link OpenableColumns#SIZE} instead.
+   */
   private ParcelFileDescriptor getParcelStreamForAttachment(MasterSecret masterSecret, AttachmentId attachmentId) throws IOException {
-    long       plaintextLength = Util.getStreamLength(DatabaseFactory.getAttachmentDatabase(getContext()).getAttachmentStream(masterSecret, attachmentId));
-    MemoryFile memoryFile      = new MemoryFile(attachmentId.toString(), Util.toIntExact(plaintextLength));
+    final InputStream            in   = DatabaseFactory.getAttachmentDatabase(getContext()).getAttachmentStream(masterSecret, attachmentId);
+    final ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createReliablePipe();
+    final ParcelFileDescriptor   sink = pipe[1];
+
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        OutputStream out    = new FileOutputStream(sink.getFileDescriptor());
+        byte[]       buffer = new byte[STREAM_BUFFER_SIZE];
+        int          read;
+
+        try {
+          while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+          }
 
-    InputStream  in  = DatabaseFactory.getAttachmentDatabase(getContext()).getAttachmentStream(masterSecret, attachmentId);
-    OutputStream out = memoryFile.getOutputStream();
+          sink.close();
+        } catch (IOException e) {
+          Log.w(TAG, e);
+          closeWithError(sink, e);
+        } finally {
+          Util.close(in);
+        }
+      }
+    });
 
-    Util.copy(in, out);
-    Util.close(out);
-    Util.close(in);
+    return pipe[0];
+  }
 
-    return MemoryFileUtil.getParcelFileDescriptor(memoryFile);
+  private static void closeWithError(ParcelFileDescriptor sink, IOException e) {
+    try {
+      sink.closeWithError(e.getMessage());
+    } catch (IOException ioe) {
+      Log.w(TAG, ioe);
+    }
   }
 }
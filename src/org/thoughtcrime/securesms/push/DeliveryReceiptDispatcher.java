@@ -0,0 +1,212 @@
+package org.thoughtcrime.securesms.push;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import org.thoughtcrime.securesms.ApplicationContext;
+import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.database.PendingReceiptDatabase;
+import org.thoughtcrime.securesms.database.PendingReceiptDatabase.PendingReceipt;
+import org.thoughtcrime.securesms.dependencies.InjectableType;
+import org.whispersystems.libsignal.util.guava.Optional;
+import org.whispersystems.signalservice.api.SignalServiceMessageSender;
+import org.whispersystems.signalservice.api.push.SignalServiceAddress;
+import org.whispersystems.signalservice.api.push.exceptions.PushNetworkException;
+import org.whispersystems.signalservice.api.push.exceptions.RateLimitException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import static org.thoughtcrime.securesms.dependencies.SignalCommunicationModule.SignalMessageSenderFactory;
+
+/**
+ * Sends delivery receipts for inbound messages.
+ *
+ * Receipts used to be sent by one persisted DeliveryReceiptJob each, so draining a backlog
+ * wrote, encrypted and later deleted a job for every message received. Now a receipt is a
+ * single row in {@link PendingReceiptDatabase} plus an entry in an in-memory queue.
+ *
+ * Receipts are grouped by destination. A destination's first receipt waits
+ * {@link #COALESCE_MILLIS} before it's drained, so a burst of messages from one sender goes
+ * out as one batch, with one sender and one database transaction to clear it. The service
+ * still takes a receipt per timestamp. Each destination is drained by one task at a time,
+ * and up to {@link #MAX_CONCURRENT_DESTINATIONS} destinations are drained in parallel. If the
+ * network fails or the server rate limits us, only that destination backs off, and
+ * its receipts stay in the log until they are sent. Receipts the server rejects outright
+ * are dropped, as the job did.
+ */
+public class DeliveryReceiptDispatcher implements InjectableType {
+
+  private static final String TAG = DeliveryReceiptDispatcher.class.getSimpleName();
+
+  private static final int  MAX_CONCURRENT_DESTINATIONS = 4;
+  private static final long COALESCE_MILLIS             = 100;
+  private static final long MIN_BACKOFF_MILLIS          = TimeUnit.SECONDS.toMillis(1);
+  private static final long MAX_BACKOFF_MILLIS          = TimeUnit.MINUTES.toMillis(15);
+
+  @Inject SignalMessageSenderFactory messageSenderFactory;
+
+  private final PendingReceiptDatabase   database;
+  private final ScheduledExecutorService executor;
+  private final long                     coalesceMillis;
+  private final Map<String, Destination> destinations = new HashMap<>();
+
+  private final AtomicLong receiptsSent    = new AtomicLong();
+  private final AtomicLong receiptsDropped = new AtomicLong();
+
+  public DeliveryReceiptDispatcher(@NonNull Context context) {
+    this.database       = DatabaseFactory.getPendingReceiptDatabase(context);
+    this.executor       = new ScheduledThreadPoolExecutor(MAX_CONCURRENT_DESTINATIONS);
+    this.coalesceMillis = COALESCE_MILLIS;
+
+    ApplicationContext.getInstance(context).injectDependencies(this);
+
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        for (PendingReceipt receipt : database.getPendingReceipts()) {
+          addPending(receipt);
+        }
+      }
+    });
+  }
+
+  @VisibleForTesting
+  DeliveryReceiptDispatcher(@NonNull SignalMessageSenderFactory messageSenderFactory,
+                            @NonNull PendingReceiptDatabase database,
+                            @NonNull ScheduledExecutorService executor,
+                            long coalesceMillis)
+  {
+    this.messageSenderFactory = messageSenderFactory;
+    this.database             = database;
+    this.executor             = executor;
+    this.coalesceMillis       = coalesceMillis;
+  }
+
+  /**
+   * Records the receipt durably and queues it for sending. Receipts already queued for
+   * the same destination and timestamp are ignored.
+   */
+  public void enqueue(@NonNull String destination, long timestamp, @Nullable String relay) {
+    long id = database.insert(destination, timestamp, relay);
+
+    if (id != -1) {
+      addPending(new PendingReceipt(id, destination, timestamp, relay));
+    }
+  }
+
+  public long getReceiptsSent() {
+    return receiptsSent.get();
+  }
+
+  public long getReceiptsDropped() {
+    return receiptsDropped.get();
+  }
+
+  private synchronized void addPending(@NonNull PendingReceipt receipt) {
+    Destination destination = destinations.get(receipt.getAddress());
+
+    if (destination == null) {
+      destination = new Destination(receipt.getAddress());
+      destinations.put(receipt.getAddress(), destination);
+    }
+
+    destination.pending.put(receipt.getId(), receipt);
+
+    if (!destination.scheduled) {
+      destination.scheduled = true;
+      executor.schedule(new DrainTask(destination), coalesceMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private synchronized @NonNull List<PendingReceipt> getPending(@NonNull Destination destination) {
+    List<PendingReceipt> pending = new LinkedList<>(destination.pending.values());
+
+    if (pending.isEmpty()) {
+      destination.scheduled = false;
+      destinations.remove(destination.address);
+    }
+
+    return pending;
+  }
+
+  private synchronized void removePending(@NonNull Destination destination, @NonNull List<Long> ids) {
+    for (long id : ids) {
+      destination.pending.remove(id);
+    }
+  }
+
+  private static class Destination {
+
+    private final String                    address;
+    private final Map<Long, PendingReceipt> pending = new LinkedHashMap<>();
+
+    private boolean scheduled;
+    private long    backoffMillis;
+
+    private Destination(@NonNull String address) {
+      this.address = address;
+    }
+  }
+
+  private class DrainTask implements Runnable {
+
+    private final Destination destination;
+
+    private DrainTask(@NonNull Destination destination) {
+      this.destination = destination;
+    }
+
+    @Override
+    public void run() {
+      List<PendingReceipt> pending;
+
+      while (!(pending = getPending(destination)).isEmpty()) {
+        SignalServiceMessageSender messageSender = messageSenderFactory.create();
+        List<Long>                 finished      = new LinkedList<>();
+        boolean                    retry         = false;
+
+        for (PendingReceipt receipt : pending) {
+          try {
+            messageSender.sendDeliveryReceipt(new SignalServiceAddress(receipt.getAddress(), Optional.fromNullable(receipt.getRelay())),
+                                              receipt.getTimestamp());
+            receiptsSent.incrementAndGet();
+            finished.add(receipt.getId());
+          } catch (PushNetworkException | RateLimitException e) {
+            Log.w(TAG, e);
+            retry = true;
+            break;
+          } catch (IOException e) {
+            Log.w(TAG, "Dropping receipt", e);
+            receiptsDropped.incrementAndGet();
+            finished.add(receipt.getId());
+          }
+        }
+
+        database.delete(finished);
+        removePending(destination, finished);
+
+        if (retry) {
+          destination.backoffMillis = Math.min(MAX_BACKOFF_MILLIS, Math.max(MIN_BACKOFF_MILLIS, destination.backoffMillis * 2));
+          executor.schedule(this, destination.backoffMillis, TimeUnit.MILLISECONDS);
+          return;
+        }
+
+        destination.backoffMillis = 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package org.thoughtcrime.securesms.push;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import org.thoughtcrime.securesms.dependencies.SignalCommunicationModule.SignalMessageSenderFactory;
+import org.whispersystems.signalservice.api.SignalServiceMessageSender;
+import org.whispersystems.signalservice.api.crypto.UntrustedIdentityException;
+import org.whispersystems.signalservice.api.messages.SignalServiceAttachment;
+import org.whispersystems.signalservice.api.messages.SignalServiceDataMessage;
+import org.whispersystems.signalservice.api.messages.SignalServiceGroup;
+import org.whispersystems.signalservice.api.push.SignalServiceAddress;
+import org.whispersystems.signalservice.api.push.exceptions.EncapsulatedExceptions;
+import org.whispersystems.signalservice.api.push.exceptions.NetworkFailureException;
+import org.whispersystems.signalservice.api.push.exceptions.UnregisteredUserException;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans a group message out to its members. Plain messages are sent by a small bounded pool of
+ * workers which take members from a shared queue, so that network round trips overlap instead
+ * of queueing behind each other. Each worker sends through its own
+ * {@link SignalServiceMessageSender}, since a sender isn't safe to share between threads.
+ *
+ * Only the network leg runs in parallel. Encrypting for each member takes libsignal's
+ * session lock, so encryption is still one member at a time.
+ *
+ * Messages which carry attachments, or which need a sync transcript for linked devices, still
+ * go through a single batched send: the service library uploads attachments and sends the
+ * transcript once per call, and doesn't expose either step on its own.
+ *
+ * Per-recipient failures are reported the same way {@link SignalServiceMessageSender} reports
+ * them, as {@link EncapsulatedExceptions}.
+ */
+public class GroupSendEngine {
+
+  private static final String TAG = GroupSendEngine.class.getSimpleName();
+
+  private static final int MAX_CONCURRENT_SENDS = 8;
+
+  private static final Executor SEND_EXECUTOR = newSendExecutor();
+
+  private final SignalMessageSenderFactory messageSenderFactory;
+  private final boolean                    multiDevice;
+  private final Executor                   executor;
+
+  public GroupSendEngine(@NonNull SignalMessageSenderFactory messageSenderFactory, boolean multiDevice) {
+    this(messageSenderFactory, multiDevice, SEND_EXECUTOR);
+  }
+
+  @VisibleForTesting
+  GroupSendEngine(@NonNull SignalMessageSenderFactory messageSenderFactory, boolean multiDevice, @NonNull Executor executor) {
+    this.messageSenderFactory = messageSenderFactory;
+    this.multiDevice          = multiDevice;
+    this.executor             = executor;
+  }
+
+  public void sendMessage(@NonNull List<SignalServiceAddress> recipients, @NonNull SignalServiceDataMessage message)
+      throws IOException, EncapsulatedExceptions
+  {
+    if (recipients.size() <= 1 || multiDevice || hasAttachmentStreams(message)) {
+      if (recipients.size() > 1) {
+        Log.i(TAG, "Sending to " + recipients.size() + " members in one batch " + (multiDevice ? "for linked devices" : "with attachments"));
+      }
+
+      messageSenderFactory.create().sendMessage(recipients, message);
+      return;
+    }
+
+    CompletionService<List<Exception>> completionService   = new ExecutorCompletionService<>(executor);
+    Queue<SignalServiceAddress>        pending             = new ConcurrentLinkedQueue<>(recipients);
+    int                                workers             = Math.min(MAX_CONCURRENT_SENDS, recipients.size());
+    List<UntrustedIdentityException>   untrustedIdentities = new LinkedList<>();
+    List<UnregisteredUserException>    unregisteredUsers   = new LinkedList<>();
+    List<NetworkFailureException>      networkFailures     = new LinkedList<>();
+
+    for (int i = 0; i < workers; i++) {
+      completionService.submit(new SendWorker(messageSenderFactory.create(), pending, message));
+    }
+
+    for (int i = 0; i < workers; i++) {
+      for (Exception failure : awaitNext(completionService)) {
+        if      (failure instanceof UntrustedIdentityException) untrustedIdentities.add((UntrustedIdentityException) failure);
+        else if (failure instanceof UnregisteredUserException)  unregisteredUsers.add((UnregisteredUserException) failure);
+        else if (failure instanceof NetworkFailureException)    networkFailures.add((NetworkFailureException) failure);
+      }
+    }
+
+    if (!untrustedIdentities.isEmpty() || !unregisteredUsers.isEmpty() || !networkFailures.isEmpty()) {
+      throw new EncapsulatedExceptions(untrustedIdentities, unregisteredUsers, networkFailures);
+    }
+  }
+
+  private @NonNull List<Exception> awaitNext(CompletionService<List<Exception>> completionService) throws IOException {
+    try {
+      return completionService.take().get();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      else                                          throw new AssertionError(e);
+    }
+  }
+
+  private static boolean hasAttachmentStreams(SignalServiceDataMessage message) {
+    if (message.getAttachments().isPresent()) {
+      for (SignalServiceAttachment attachment : message.getAttachments().get()) {
+        if (attachment.isStream()) return true;
+      }
+    }
+
+    if (message.getGroupInfo().isPresent()) {
+      SignalServiceGroup group = message.getGroupInfo().get();
+      return group.getAvatar().isPresent() && group.getAvatar().get().isStream();
+    }
+
+    return false;
+  }
+
+  private static Executor newSendExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT_SENDS, MAX_CONCURRENT_SENDS,
+                                                         30, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static class SendWorker implements Callable<List<Exception>> {
+
+    private final SignalServiceMessageSender  messageSender;
+    private final Queue<SignalServiceAddress> pending;
+    private final SignalServiceDataMessage    message;
+
+    private SendWorker(SignalServiceMessageSender messageSender, Queue<SignalServiceAddress> pending, SignalServiceDataMessage message) {
+      this.messageSender = messageSender;
+      this.pending       = pending;
+      this.message       = message;
+    }
+
+    @Override
+    public @NonNull List<Exception> call() {
+      List<Exception>      failures = new LinkedList<>();
+      SignalServiceAddress recipient;
+
+      while ((recipient = pending.poll()) != null) {
+        try {
+          messageSender.sendMessage(recipient, message);
+        } catch (UntrustedIdentityException | UnregisteredUserException e) {
+          Log.w(TAG, e);
+          failures.add(e);
+        } catch (IOException e) {
+          Log.w(TAG, e);
+          failures.add(new NetworkFailureException(recipient.getNumber(), e));
+        }
+      }
+
+      return failures;
+    }
+  }
+}
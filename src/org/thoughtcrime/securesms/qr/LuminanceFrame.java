@@ -0,0 +1,78 @@
+package org.thoughtcrime.securesms.qr;
+
+import android.support.annotation.NonNull;
+
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+/**
+ * The part of a camera preview frame that the scanner decodes.
+ *
+ * Only a centered square a little larger than the viewfinder scrim is kept, and large
+ * crops are averaged down 2x2 so ZXing doesn't have to binarize millions of pixels of
+ * background on high resolution previews. The buffer is reused from frame to frame and only
+ * grows if the preview size does.
+ */
+public class LuminanceFrame {
+
+  private static final float CROP_RATIO        = 0.9f;
+  private static final int   MAX_UNSCALED_SIDE = 600;
+
+  private byte[] luminance = new byte[0];
+  private int    side;
+
+  /**
+   * Copies the viewfinder region out of the Y plane of an NV21 frame.
+   */
+  public void set(@NonNull byte[] data, int width, int height) {
+    int cropSide = (int)(Math.min(width, height) * CROP_RATIO);
+    int left     = (width - cropSide) / 2;
+    int top      = (height - cropSide) / 2;
+
+    if (cropSide > MAX_UNSCALED_SIDE) downsample(data, width, left, top, cropSide / 2);
+    else                              crop(data, width, left, top, cropSide);
+  }
+
+  public @NonNull PlanarYUVLuminanceSource getLuminanceSource() {
+    return new PlanarYUVLuminanceSource(luminance, side, side, 0, 0, side, side, false);
+  }
+
+  public int getSide() {
+    return side;
+  }
+
+  byte[] getLuminance() {
+    return luminance;
+  }
+
+  private void crop(byte[] data, int width, int left, int top, int cropSide) {
+    ensureCapacity(cropSide);
+
+    for (int y = 0; y < cropSide; y++) {
+      System.arraycopy(data, (top + y) * width + left, luminance, y * cropSide, cropSide);
+    }
+  }
+
+  private void downsample(byte[] data, int width, int left, int top, int scaledSide) {
+    ensureCapacity(scaledSide);
+
+    for (int y = 0; y < scaledSide; y++) {
+      int row = (top + y * 2) * width + left;
+
+      for (int x = 0; x < scaledSide; x++) {
+        int offset = row + x * 2;
+        int sum    = (data[offset] & 0xff) + (data[offset + 1] & 0xff) +
+                     (data[offset + width] & 0xff) + (data[offset + width + 1] & 0xff);
+
+        luminance[y * scaledSide + x] = (byte)(sum >> 2);
+      }
+    }
+  }
+
+  private void ensureCapacity(int side) {
+    if (luminance.length < side * side) {
+      luminance = new byte[side * side];
+    }
+
+    this.side = side;
+  }
+}
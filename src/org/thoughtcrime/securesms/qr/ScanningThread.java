@@ -1,6 +1,5 @@
 package org.thoughtcrime.securesms.qr;
 
-import android.content.res.Configuration;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
@@ -10,7 +9,6 @@ import com.google.zxing.ChecksumException;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.FormatException;
 import com.google.zxing.NotFoundException;
-import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.Result;
 import com.google.zxing.common.HybridBinarizer;
 import com.google.zxing.qrcode.QRCodeReader;
@@ -23,6 +21,14 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Decodes QR codes from camera preview frames.
+ *
+ * The viewfinder region of each frame is copied out on the camera thread into a single
+ * pending slot, replacing whatever frame was waiting there, and this thread swaps it with
+ * the one it last decoded. A slow decode only ever drops stale frames, and the camera's
+ * buffers can be handed back as soon as the callback returns.
+ */
 public class ScanningThread extends Thread implements CameraView.PreviewCallback {
 
   private static final String TAG = ScanningThread.class.getSimpleName();
@@ -31,8 +37,10 @@ public class ScanningThread extends Thread implements CameraView.PreviewCallback
   private final AtomicReference<ScanListener> scanListener = new AtomicReference<>();
   private final Map<DecodeHintType, String>   hints        = new HashMap<>();
 
-  private boolean scanning = true;
-  private PreviewFrame previewFrame;
+  private boolean        scanning     = true;
+  private boolean        hasPending   = false;
+  private LuminanceFrame pendingFrame = new LuminanceFrame();
+  private LuminanceFrame currentFrame = new LuminanceFrame();
 
   public void setCharacterSet(String characterSet) {
     hints.put(DecodeHintType.CHARACTER_SET, characterSet);
@@ -46,7 +54,8 @@ public class ScanningThread extends Thread implements CameraView.PreviewCallback
   public void onPreviewFrame(@NonNull PreviewFrame previewFrame) {
     try {
       synchronized (this) {
-        this.previewFrame = previewFrame;
+        pendingFrame.set(previewFrame.getData(), previewFrame.getWidth(), previewFrame.getHeight());
+        hasPending = true;
         this.notify();
       }
     } catch (RuntimeException e) {
@@ -58,20 +67,20 @@ public class ScanningThread extends Thread implements CameraView.PreviewCallback
   @Override
   public void run() {
     while (true) {
-      PreviewFrame ourFrame;
-
       synchronized (this) {
-        while (scanning && previewFrame == null) {
+        while (scanning && !hasPending) {
           Util.wait(this, 0);
         }
 
         if (!scanning) return;
-        else           ourFrame = previewFrame;
 
-        previewFrame = null;
+        LuminanceFrame swap = currentFrame;
+        currentFrame = pendingFrame;
+        pendingFrame = swap;
+        hasPending   = false;
       }
 
-      String       data         = getScannedData(ourFrame.getData(), ourFrame.getWidth(), ourFrame.getHeight(), ourFrame.getOrientation());
+      String       data         = getScannedData(currentFrame);
       ScanListener scanListener = this.scanListener.get();
 
       if (data != null && scanListener != null) {
@@ -88,28 +97,10 @@ public class ScanningThread extends Thread implements CameraView.PreviewCallback
     }
   }
 
-  private @Nullable String getScannedData(byte[] data, int width, int height, int orientation) {
+  // QR codes decode at any rotation, so the frame is scanned as the camera delivers it
+  private @Nullable String getScannedData(@NonNull LuminanceFrame frame) {
     try {
-      if (orientation == Configuration.ORIENTATION_PORTRAIT) {
-        byte[] rotatedData = new byte[data.length];
-
-        for (int y = 0; y < height; y++) {
-          for (int x = 0; x < width; x++) {
-            rotatedData[x * height + height - y - 1] = data[x + y * width];
-          }
-        }
-
-        int tmp = width;
-        width  = height;
-        height = tmp;
-        data   = rotatedData;
-      }
-
-      PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(data, width, height,
-                                                                     0, 0, width, height,
-                                                                     false);
-
-      BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+      BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(frame.getLuminanceSource()));
       Result       result = reader.decode(bitmap, hints);
 
       if (result != null) return result.getText();
@@ -57,28 +57,31 @@ public class Recipient implements RecipientModifiedListener {
   private final @NonNull Address address;
   private final @NonNull List<Recipient> participants = new LinkedList<>();
 
-  private @Nullable String  name;
-  private @Nullable String  customLabel;
-  private           boolean stale;
-  private           boolean resolving;
-
-  private           ContactPhoto      contactPhoto;
-  private           Uri               contactUri;
-  private @Nullable Uri               ringtone              = null;
-  private           long              mutedUntil            = 0;
-  private           boolean           blocked               = false;
-  private           VibrateState      vibrate               = VibrateState.DEFAULT;
-  private           int               expireMessages        = 0;
-  private           Optional<Integer> defaultSubscriptionId = Optional.absent();
-  private @NonNull  RegisteredState   registered            = RegisteredState.UNKNOWN;
-
-  private @Nullable MaterialColor  color;
-  private           boolean        seenInviteReminder;
-  private @Nullable byte[]         profileKey;
-  private @Nullable String         profileName;
-  private @Nullable String         profileAvatar;
-  private           boolean        profileSharing;
-  private           boolean        isSystemContact;
+  // Fields are volatile so that getters, which run for every bound conversation row and
+  // notification, can read them without taking the recipient's monitor. Writers still
+  // synchronize, since resolve() waits on it.
+  private volatile @Nullable String  name;
+  private volatile @Nullable String  customLabel;
+  private volatile           boolean stale;
+  private volatile           boolean resolving;
+
+  private volatile           ContactPhoto      contactPhoto;
+  private volatile           Uri               contactUri;
+  private volatile @Nullable Uri               ringtone              = null;
+  private volatile           long              mutedUntil            = 0;
+  private volatile           boolean           blocked               = false;
+  private volatile           VibrateState      vibrate               = VibrateState.DEFAULT;
+  private volatile           int               expireMessages        = 0;
+  private volatile           Optional<Integer> defaultSubscriptionId = Optional.absent();
+  private volatile @NonNull  RegisteredState   registered            = RegisteredState.UNKNOWN;
+
+  private volatile @Nullable MaterialColor  color;
+  private volatile           boolean        seenInviteReminder;
+  private volatile @Nullable byte[]         profileKey;
+  private volatile @Nullable String         profileName;
+  private volatile @Nullable String         profileAvatar;
+  private volatile           boolean        profileSharing;
+  private volatile           boolean        isSystemContact;
 
 
   public static @NonNull Recipient from(@NonNull Context context, @NonNull Address address, boolean asynchronous) {
@@ -91,11 +94,23 @@ public class Recipient implements RecipientModifiedListener {
     return provider.getRecipient(context, address, settings, groupRecord, asynchronous);
   }
 
+  public static @NonNull Optional<Recipient> fromCache(@NonNull Address address) {
+    return Optional.fromNullable(provider.getCachedRecipient(address));
+  }
+
   public static void clearCache(Context context) {
     provider.clearCache();
     context.sendBroadcast(new Intent(RECIPIENT_CLEAR_ACTION));
   }
 
+  /**
+   * Marks a single cached recipient as stale. It's still served to callers, and refreshed
+   * in place the next time it's looked up.
+   */
+  public static void invalidate(@NonNull Address address) {
+    provider.invalidate(address);
+  }
+
   Recipient(@NonNull  Address address,
             @Nullable Recipient stale,
             @NonNull  Optional<RecipientDetails> details,
@@ -150,51 +165,7 @@ public class Recipient implements RecipientModifiedListener {
       this.participants.addAll(details.get().participants);
     }
 
-    future.addListener(new FutureTaskListener<RecipientDetails>() {
-      @Override
-      public void onSuccess(RecipientDetails result) {
-        if (result != null) {
-          synchronized (Recipient.this) {
-            Recipient.this.name                  = result.name;
-            Recipient.this.contactUri            = result.contactUri;
-            Recipient.this.contactPhoto          = result.avatar;
-            Recipient.this.color                 = result.color;
-            Recipient.this.customLabel           = result.customLabel;
-            Recipient.this.ringtone              = result.ringtone;
-            Recipient.this.mutedUntil            = result.mutedUntil;
-            Recipient.this.blocked               = result.blocked;
-            Recipient.this.vibrate               = result.vibrateState;
-            Recipient.this.expireMessages        = result.expireMessages;
-            Recipient.this.seenInviteReminder    = result.seenInviteReminder;
-            Recipient.this.defaultSubscriptionId = result.defaultSubscriptionId;
-            Recipient.this.registered            = result.registered;
-            Recipient.this.profileKey            = result.profileKey;
-            Recipient.this.profileName           = result.profileName;
-            Recipient.this.profileAvatar         = result.profileAvatar;
-            Recipient.this.profileSharing        = result.profileSharing;
-            Recipient.this.profileName           = result.profileName;
-            Recipient.this.isSystemContact       = result.systemContact;
-
-            Recipient.this.participants.clear();
-            Recipient.this.participants.addAll(result.participants);
-            Recipient.this.resolving = false;
-
-            if (!listeners.isEmpty()) {
-              for (Recipient recipient : participants) recipient.addListener(Recipient.this);
-            }
-
-            Recipient.this.notifyAll();
-          }
-
-          notifyListeners();
-        }
-      }
-
-      @Override
-      public void onFailure(ExecutionException error) {
-        Log.w(TAG, error);
-      }
-    });
+    refresh(future);
   }
 
   Recipient(@NonNull Address address, @NonNull RecipientDetails details) {
@@ -221,25 +192,98 @@ public class Recipient implements RecipientModifiedListener {
     this.resolving    = false;
   }
 
-  public synchronized @Nullable Uri getContactUri() {
+  /**
+   * Applies the details once the future resolves, updating this recipient in place and
+   * notifying its listeners. The recipient counts as resolving until then.
+   */
+  void refresh(@NonNull ListenableFutureTask<RecipientDetails> future) {
+    this.resolving = true;
+
+    future.addListener(new FutureTaskListener<RecipientDetails>() {
+      @Override
+      public void onSuccess(RecipientDetails result) {
+        if (result != null) refresh(result);
+        else                finishResolving();
+      }
+
+      @Override
+      public void onFailure(ExecutionException error) {
+        Log.w(TAG, error);
+        finishResolving();
+      }
+    });
+  }
+
+  /**
+   * Applies details that were loaded synchronously, updating this recipient in place and
+   * notifying its listeners.
+   */
+  void refresh(@NonNull RecipientDetails details) {
+    synchronized (this) {
+      this.name                  = details.name;
+      this.contactUri            = details.contactUri;
+      this.contactPhoto          = details.avatar;
+      this.color                 = details.color;
+      this.customLabel           = details.customLabel;
+      this.ringtone              = details.ringtone;
+      this.mutedUntil            = details.mutedUntil;
+      this.blocked               = details.blocked;
+      this.vibrate               = details.vibrateState;
+      this.expireMessages        = details.expireMessages;
+      this.seenInviteReminder    = details.seenInviteReminder;
+      this.defaultSubscriptionId = details.defaultSubscriptionId;
+      this.registered            = details.registered;
+      this.profileKey            = details.profileKey;
+      this.profileName           = details.profileName;
+      this.profileAvatar         = details.profileAvatar;
+      this.profileSharing        = details.profileSharing;
+      this.isSystemContact       = details.systemContact;
+
+      this.participants.clear();
+      this.participants.addAll(details.participants);
+      this.resolving = false;
+
+      if (!listeners.isEmpty()) {
+        for (Recipient recipient : participants) recipient.addListener(this);
+      }
+
+      notifyAll();
+    }
+
+    notifyListeners();
+  }
+
+  private synchronized void finishResolving() {
+    this.resolving = false;
+    notifyAll();
+  }
+
+  public @Nullable Uri getContactUri() {
     return this.contactUri;
   }
 
-  public synchronized @Nullable String getName() {
-    if (this.name == null && isMmsGroupRecipient()) {
+  public @Nullable String getName() {
+    String name = this.name;
+
+    if (name == null && isMmsGroupRecipient()) {
       List<String> names = new LinkedList<>();
 
-      for (Recipient recipient : participants) {
-        names.add(recipient.toShortString());
+      synchronized (this) {
+        for (Recipient recipient : participants) {
+          names.add(recipient.toShortString());
+        }
       }
 
       return Util.join(names, ", ");
     }
 
-    return this.name;
+    return name;
   }
 
-  public synchronized @NonNull MaterialColor getColor() {
+  public @NonNull MaterialColor getColor() {
+    MaterialColor color = this.color;
+    String        name  = this.name;
+
     if      (isGroupRecipient()) return MaterialColor.GROUP;
     else if (color != null)      return color;
     else if (name != null)       return ContactColors.generateFor(name);
@@ -262,7 +306,7 @@ public class Recipient implements RecipientModifiedListener {
     return customLabel;
   }
 
-  public synchronized Optional<Integer> getDefaultSubscriptionId() {
+  public Optional<Integer> getDefaultSubscriptionId() {
     return defaultSubscriptionId;
   }
 
@@ -274,7 +318,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized @Nullable String getProfileName() {
+  public @Nullable String getProfileName() {
     return profileName;
   }
 
@@ -286,7 +330,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized @Nullable String getProfileAvatar() {
+  public @Nullable String getProfileAvatar() {
     return profileAvatar;
   }
 
@@ -298,7 +342,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized boolean isProfileSharing() {
+  public boolean isProfileSharing() {
     return profileSharing;
   }
 
@@ -341,11 +385,12 @@ public class Recipient implements RecipientModifiedListener {
     }
   }
 
-  public synchronized String toShortString() {
-    return (getName() == null ? address.serialize() : getName());
+  public String toShortString() {
+    String name = getName();
+    return (name == null ? address.serialize() : name);
   }
 
-  public synchronized @NonNull ContactPhoto getContactPhoto() {
+  public @NonNull ContactPhoto getContactPhoto() {
     return contactPhoto;
   }
 
@@ -357,7 +402,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized @Nullable Uri getRingtone() {
+  public @Nullable Uri getRingtone() {
     return ringtone;
   }
 
@@ -369,7 +414,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized boolean isMuted() {
+  public boolean isMuted() {
     return System.currentTimeMillis() <= mutedUntil;
   }
 
@@ -381,7 +426,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized boolean isBlocked() {
+  public boolean isBlocked() {
     return blocked;
   }
 
@@ -393,7 +438,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized VibrateState getVibrate() {
+  public VibrateState getVibrate() {
     return vibrate;
   }
 
@@ -405,7 +450,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized int getExpireMessages() {
+  public int getExpireMessages() {
     return expireMessages;
   }
 
@@ -417,7 +462,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized boolean hasSeenInviteReminder() {
+  public boolean hasSeenInviteReminder() {
     return seenInviteReminder;
   }
 
@@ -429,7 +474,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized RegisteredState getRegistered() {
+  public RegisteredState getRegistered() {
     if      (isPushGroupRecipient()) return RegisteredState.REGISTERED;
     else if (isMmsGroupRecipient())  return RegisteredState.NOT_REGISTERED;
 
@@ -444,7 +489,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized @Nullable byte[] getProfileKey() {
+  public @Nullable byte[] getProfileKey() {
     return profileKey;
   }
 
@@ -456,7 +501,7 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized boolean isSystemContact() {
+  public boolean isSystemContact() {
     return isSystemContact;
   }
 
@@ -469,9 +514,13 @@ public class Recipient implements RecipientModifiedListener {
     notifyListeners();
   }
 
-  public synchronized Recipient resolve() {
-    while (resolving) Util.wait(this, 0);
-    return this;
+  public Recipient resolve() {
+    if (!resolving) return this;
+
+    synchronized (this) {
+      while (resolving) Util.wait(this, 0);
+      return this;
+    }
   }
 
 
@@ -514,7 +563,18 @@ public class Recipient implements RecipientModifiedListener {
     this.stale = true;
   }
 
-  synchronized boolean isResolving() {
+  /**
+   * @return true if this call cleared the stale flag, in which case the caller is the one
+   *         responsible for refreshing the recipient.
+   */
+  synchronized boolean clearStale() {
+    if (!stale) return false;
+
+    stale = false;
+    return true;
+  }
+
+  boolean isResolving() {
     return resolving;
   }
 
@@ -23,6 +23,7 @@ import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.PhoneLookup;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -37,12 +38,13 @@ import org.thoughtcrime.securesms.database.RecipientDatabase;
 import org.thoughtcrime.securesms.database.RecipientDatabase.RecipientSettings;
 import org.thoughtcrime.securesms.database.RecipientDatabase.RegisteredState;
 import org.thoughtcrime.securesms.database.RecipientDatabase.VibrateState;
-import org.thoughtcrime.securesms.util.LRUCache;
 import org.thoughtcrime.securesms.util.ListenableFutureTask;
 import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.libsignal.util.guava.Optional;
 
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -73,6 +75,11 @@ class RecipientProvider {
   @NonNull Recipient getRecipient(Context context, Address address, Optional<RecipientSettings> settings, Optional<GroupRecord> groupRecord, boolean asynchronous) {
     Recipient cachedRecipient = recipientCache.get(address);
 
+    if (cachedRecipient != null && cachedRecipient.isStale() && !cachedRecipient.isResolving() && cachedRecipient.clearStale()) {
+      if (asynchronous) cachedRecipient.refresh(getRecipientDetailsAsync(context, address, settings, groupRecord));
+      else              cachedRecipient.refresh(getRecipientDetailsSync(context, address, settings, groupRecord, false));
+    }
+
     if (cachedRecipient != null && !cachedRecipient.isStale() && (asynchronous || !cachedRecipient.isResolving()) && ((!groupRecord.isPresent() && !settings.isPresent()) || !cachedRecipient.isResolving() || cachedRecipient.getName() != null)) {
       return cachedRecipient;
     }
@@ -89,10 +96,18 @@ class RecipientProvider {
     return cachedRecipient;
   }
 
+  @Nullable Recipient getCachedRecipient(@NonNull Address address) {
+    return recipientCache.get(address);
+  }
+
   void clearCache() {
     recipientCache.reset();
   }
 
+  void invalidate(@NonNull Address address) {
+    recipientCache.invalidate(address);
+  }
+
   private @NonNull Optional<RecipientDetails> createPrefetchedRecipientDetails(@NonNull Context context, @NonNull Address address,
                                                                                @NonNull Optional<RecipientSettings> settings,
                                                                                @NonNull Optional<GroupRecord> groupRecord)
@@ -239,24 +254,109 @@ class RecipientProvider {
     }
   }
 
-  private static class RecipientCache {
+  /**
+   * Recipients are spread over independently locked segments, so that lookups for different
+   * addresses don't contend on one monitor. Each segment is an access-ordered LRU bounded by
+   * an estimate of the memory its recipients hold, and the total budget scales with the heap.
+   *
+   * Invalidated recipients are only marked stale. They keep being served, and are refreshed
+   * in place by the next lookup.
+   */
+  @VisibleForTesting
+  static class RecipientCache {
+
+    private static final int  SEGMENTS         = 16;
+    private static final long MAX_BUDGET_BYTES = 4 * 1024 * 1024;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    RecipientCache() {
+      long budget = Math.min(MAX_BUDGET_BYTES, Runtime.getRuntime().maxMemory() / 64);
+
+      for (int i = 0; i < SEGMENTS; i++) {
+        segments[i] = new Segment(budget / SEGMENTS);
+      }
+    }
+
+    public Recipient get(Address address) {
+      Segment segment = getSegment(address);
+
+      synchronized (segment) {
+        return segment.getRecipient(address);
+      }
+    }
+
+    public void set(Address address, Recipient recipient) {
+      Segment segment = getSegment(address);
+
+      synchronized (segment) {
+        segment.putRecipient(address, recipient);
+      }
+    }
+
+    public void invalidate(Address address) {
+      Recipient recipient = get(address);
+      if (recipient != null) recipient.setStale();
+    }
+
+    public void reset() {
+      for (Segment segment : segments) {
+        synchronized (segment) {
+          for (Entry entry : segment.values()) {
+            entry.recipient.setStale();
+          }
+        }
+      }
+    }
+
+    private Segment getSegment(Address address) {
+      int hash = address.hashCode();
+      return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+  }
+
+  private static class Segment extends LinkedHashMap<Address, Entry> {
+
+    private static final int RECIPIENT_BYTES   = 1024;
+    private static final int PARTICIPANT_BYTES = 32;
 
-    private final Map<Address,Recipient> cache = new LRUCache<>(1000);
+    private final long budgetBytes;
+    private       long sizeBytes;
 
-    public synchronized Recipient get(Address address) {
-      return cache.get(address);
+    Segment(long budgetBytes) {
+      super(16, 0.75f, true);
+      this.budgetBytes = budgetBytes;
     }
 
-    public synchronized void set(Address address, Recipient recipient) {
-      cache.put(address, recipient);
+    Recipient getRecipient(Address address) {
+      Entry entry = get(address);
+      return entry != null ? entry.recipient : null;
     }
 
-    public synchronized void reset() {
-      for (Recipient recipient : cache.values()) {
-        recipient.setStale();
+    void putRecipient(Address address, Recipient recipient) {
+      Entry entry    = new Entry(recipient, RECIPIENT_BYTES + PARTICIPANT_BYTES * recipient.getParticipants().size());
+      Entry previous = put(address, entry);
+
+      if (previous != null) sizeBytes -= previous.sizeBytes;
+      sizeBytes += entry.sizeBytes;
+
+      Iterator<Entry> iterator = values().iterator();
+
+      while (sizeBytes > budgetBytes && size() > 1 && iterator.hasNext()) {
+        sizeBytes -= iterator.next().sizeBytes;
+        iterator.remove();
       }
     }
+  }
 
+  private static class Entry {
+    private final Recipient recipient;
+    private final int       sizeBytes;
+
+    private Entry(Recipient recipient, int sizeBytes) {
+      this.recipient = recipient;
+      this.sizeBytes = sizeBytes;
+    }
   }
 
 }
\ No newline at end of file
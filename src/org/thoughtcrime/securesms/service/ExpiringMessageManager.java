@@ -4,32 +4,39 @@ import android.content.Context;
 import android.util.Log;
 
 import org.thoughtcrime.securesms.database.DatabaseFactory;
-import org.thoughtcrime.securesms.database.MmsDatabase;
-import org.thoughtcrime.securesms.database.SmsDatabase;
-import org.thoughtcrime.securesms.database.model.MessageRecord;
+import org.thoughtcrime.securesms.database.MmsSmsDatabase;
 
-import java.util.Comparator;
-import java.util.TreeSet;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
+/**
+ * Deletes disappearing messages once their deadline passes. Deadlines are persisted in the
+ * indexed expires_at column, so nothing is held in memory: the processing thread asks the
+ * database for the next deadline, sleeps until then, and deletes everything that is due
+ * in one batch.
+ */
 public class ExpiringMessageManager {
 
   private static final String TAG = ExpiringMessageManager.class.getSimpleName();
 
-  private final TreeSet<ExpiringMessageReference> expiringMessageReferences = new TreeSet<>(new ExpiringMessageComparator());
-  private final Executor                          executor                  = Executors.newSingleThreadExecutor();
+  /**
+   * Deadlines falling this close together are handled by a single wakeup.
+   */
+  private static final long BATCH_WINDOW_MILLIS = 500;
 
-  private final SmsDatabase smsDatabase;
-  private final MmsDatabase mmsDatabase;
-  private final Context     context;
+  private final Object   lock     = new Object();
+  private final Executor executor = Executors.newSingleThreadExecutor();
+
+  private final MmsSmsDatabase database;
+  private final Context        context;
+
+  private boolean rescheduleRequested;
+  private long    alarmDeadline = -1;
 
   public ExpiringMessageManager(Context context) {
-    this.context     = context.getApplicationContext();
-    this.smsDatabase = DatabaseFactory.getSmsDatabase(context);
-    this.mmsDatabase = DatabaseFactory.getMmsDatabase(context);
+    this.context  = context.getApplicationContext();
+    this.database = DatabaseFactory.getMmsSmsDatabase(context);
 
-    executor.execute(new LoadTask());
     executor.execute(new ProcessTask());
   }
 
@@ -37,112 +44,62 @@ public class ExpiringMessageManager {
     scheduleDeletion(id, mms, System.currentTimeMillis(), expiresInMillis);
   }
 
+  /**
+   * The deadline itself is recorded by markExpireStarted()/setTimestampRead(), this
+   * only wakes the processing thread so that it picks up the new deadline.
+   */
   public void scheduleDeletion(long id, boolean mms, long startedAtTimestamp, long expiresInMillis) {
-    long expiresAtMillis = startedAtTimestamp + expiresInMillis;
-
-    synchronized (expiringMessageReferences) {
-      expiringMessageReferences.add(new ExpiringMessageReference(id, mms, expiresAtMillis));
-      expiringMessageReferences.notifyAll();
-    }
+    checkSchedule();
   }
 
   public void checkSchedule() {
-    synchronized (expiringMessageReferences) {
-      expiringMessageReferences.notifyAll();
-    }
-  }
-
-  private class LoadTask implements Runnable {
-    public void run() {
-      SmsDatabase.Reader smsReader = smsDatabase.readerFor(smsDatabase.getExpirationStartedMessages());
-      MmsDatabase.Reader mmsReader = mmsDatabase.getExpireStartedMessages(null);
-
-      MessageRecord messageRecord = null;
-
-      while ((messageRecord = smsReader.getNext()) != null) {
-        expiringMessageReferences.add(new ExpiringMessageReference(messageRecord.getId(),
-                                                                   messageRecord.isMms(),
-                                                                   messageRecord.getExpireStarted() + messageRecord.getExpiresIn()));
-      }
-
-      while ((messageRecord = mmsReader.getNext()) != null) {
-        expiringMessageReferences.add(new ExpiringMessageReference(messageRecord.getId(),
-                                                                   messageRecord.isMms(),
-                                                                   messageRecord.getExpireStarted() + messageRecord.getExpiresIn()));
-      }
+    synchronized (lock) {
+      rescheduleRequested = true;
+      lock.notifyAll();
     }
   }
 
   private class ProcessTask implements Runnable {
     public void run() {
       while (true) {
-        ExpiringMessageReference expiredMessage = null;
+        synchronized (lock) {
+          rescheduleRequested = false;
+        }
 
-        synchronized (expiringMessageReferences) {
+        int  affectedThreads = database.deleteExpiredMessages(System.currentTimeMillis());
+        long nextDeadline    = database.getNextExpiration();
+
+        if (affectedThreads > 0) {
+          Log.w(TAG, "Expired messages in " + affectedThreads + " threads");
+        }
+
+        synchronized (lock) {
           try {
-            while (expiringMessageReferences.isEmpty()) expiringMessageReferences.wait();
+            if (rescheduleRequested) continue;
+
+            if (nextDeadline == -1) {
+              lock.wait();
+              continue;
+            }
 
-            ExpiringMessageReference nextReference = expiringMessageReferences.first();
-            long                     waitTime      = nextReference.expiresAtMillis - System.currentTimeMillis();
+            long waitTime = nextDeadline - System.currentTimeMillis();
 
             if (waitTime > 0) {
-              ExpirationListener.setAlarm(context, waitTime);
-              expiringMessageReferences.wait(waitTime);
-            } else {
-              expiredMessage = nextReference;
-              expiringMessageReferences.remove(nextReference);
-            }
+              waitTime += BATCH_WINDOW_MILLIS;
+
+              if (alarmDeadline != nextDeadline) {
+                ExpirationListener.setAlarm(context, waitTime);
+                alarmDeadline = nextDeadline;
+              }
 
+              lock.wait(waitTime);
+            }
           } catch (InterruptedException e) {
             Log.w(TAG, e);
           }
         }
-
-        if (expiredMessage != null) {
-          if (expiredMessage.mms) mmsDatabase.delete(expiredMessage.id);
-          else                    smsDatabase.deleteMessage(expiredMessage.id);
-        }
       }
     }
   }
 
-  private static class ExpiringMessageReference {
-    private final long    id;
-    private final boolean mms;
-    private final long    expiresAtMillis;
-
-    private ExpiringMessageReference(long id, boolean mms, long expiresAtMillis) {
-      this.id = id;
-      this.mms = mms;
-      this.expiresAtMillis = expiresAtMillis;
-    }
-
-    @Override
-    public boolean equals(Object other) {
-      if (other == null) return false;
-      if (!(other instanceof ExpiringMessageReference)) return false;
-
-      ExpiringMessageReference that = (ExpiringMessageReference)other;
-      return this.id == that.id && this.mms == that.mms && this.expiresAtMillis == that.expiresAtMillis;
-    }
-
-    @Override
-    public int hashCode() {
-      return (int)this.id ^ (mms ? 1 : 0) ^ (int)expiresAtMillis;
-    }
-  }
-
-  private static class ExpiringMessageComparator implements Comparator<ExpiringMessageReference> {
-    @Override
-    public int compare(ExpiringMessageReference lhs, ExpiringMessageReference rhs) {
-      if      (lhs.expiresAtMillis < rhs.expiresAtMillis) return -1;
-      else if (lhs.expiresAtMillis > rhs.expiresAtMillis) return 1;
-      else if (lhs.id < rhs.id)                           return -1;
-      else if (lhs.id > rhs.id)                           return 1;
-      else if (!lhs.mms && rhs.mms)                       return -1;
-      else if (lhs.mms && !rhs.mms)                       return 1;
-      else                                                return 0;
-    }
-  }
-
 }
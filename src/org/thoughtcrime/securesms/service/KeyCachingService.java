@@ -38,6 +38,7 @@ import org.thoughtcrime.securesms.ConversationListActivity;
 import org.thoughtcrime.securesms.DatabaseUpgradeActivity;
 import org.thoughtcrime.securesms.DummyActivity;
 import org.thoughtcrime.securesms.R;
+import org.thoughtcrime.securesms.components.subsampling.TileCache;
 import org.thoughtcrime.securesms.crypto.InvalidPassphraseException;
 import org.thoughtcrime.securesms.crypto.MasterSecret;
 import org.thoughtcrime.securesms.crypto.MasterSecretUtil;
@@ -191,6 +192,7 @@ public class KeyCachingService extends Service {
   private void handleClearKey() {
     Log.w("KeyCachingService", "handleClearKey()");
     KeyCachingService.masterSecret = null;
+    TileCache.getInstance().clear();
     stopForeground(true);
 
     Intent intent = new Intent(CLEAR_KEY_EVENT);
@@ -7,8 +7,8 @@ import android.telephony.SmsMessage;
 import android.util.Log;
 
 import org.thoughtcrime.securesms.ApplicationContext;
+import org.thoughtcrime.securesms.jobs.JobLanes;
 import org.thoughtcrime.securesms.jobs.SmsSentJob;
-import org.whispersystems.jobqueue.JobManager;
 
 public class SmsDeliveryListener extends BroadcastReceiver {
 
@@ -19,7 +19,7 @@ public class SmsDeliveryListener extends BroadcastReceiver {
 
   @Override
   public void onReceive(Context context, Intent intent) {
-    JobManager jobManager = ApplicationContext.getInstance(context).getJobManager();
+    JobLanes jobManager = ApplicationContext.getInstance(context).getJobManager();
     long       messageId  = intent.getLongExtra("message_id", -1);
 
     switch (intent.getAction()) {
@@ -13,9 +13,6 @@ import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.annimon.stream.Collectors;
-import com.annimon.stream.Stream;
-
 import org.thoughtcrime.securesms.ApplicationContext;
 import org.thoughtcrime.securesms.R;
 import org.thoughtcrime.securesms.contacts.ContactAccessor;
@@ -38,21 +35,29 @@ import org.whispersystems.signalservice.api.push.ContactTokenDetails;
 
 import java.io.IOException;
 import java.util.Calendar;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class DirectoryHelper {
 
   private static final String TAG = DirectoryHelper.class.getSimpleName();
 
+  private static final long FULL_REFRESH_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
   public static void refreshDirectory(@NonNull Context context, @Nullable MasterSecret masterSecret)
       throws IOException
+  {
+    refreshDirectory(context, masterSecret, isFullRefreshDue(context));
+  }
+
+  public static void refreshDirectory(@NonNull Context context, @Nullable MasterSecret masterSecret, boolean full)
+      throws IOException
   {
     if (TextUtils.isEmpty(TextSecurePreferences.getLocalNumber(context))) return;
 
-    RefreshResult result = refreshDirectory(context, AccountManagerFactory.createManager(context));
+    RefreshResult result = refreshDirectory(context, AccountManagerFactory.createManager(context), full);
 
     if (!result.getNewUsers().isEmpty() && TextSecurePreferences.isMultiDevice(context)) {
       ApplicationContext.getInstance(context)
@@ -67,35 +72,65 @@ public class DirectoryHelper {
 
   public static @NonNull RefreshResult refreshDirectory(@NonNull Context context, @NonNull SignalServiceAccountManager accountManager)
       throws IOException
+  {
+    return refreshDirectory(context, accountManager, true);
+  }
+
+  /**
+   * A full refresh asks the server about every number we know of. An incremental refresh
+   * only asks about numbers whose registration state we've never determined, which are
+   * the ones added to the address book or the recipient table since the last refresh.
+   */
+  private static @NonNull RefreshResult refreshDirectory(@NonNull Context context,
+                                                         @NonNull SignalServiceAccountManager accountManager,
+                                                         boolean full)
+      throws IOException
   {
     if (TextUtils.isEmpty(TextSecurePreferences.getLocalNumber(context))) {
       return new RefreshResult(new LinkedList<>(), false);
     }
 
-    RecipientDatabase recipientDatabase                       = DatabaseFactory.getRecipientDatabase(context);
-    Stream<String>    eligibleRecipientDatabaseContactNumbers = Stream.of(recipientDatabase.getAllRecipients()).map(recipient -> recipient.getAddress().serialize());
-    Stream<String>    eligibleSystemDatabaseContactNumbers    = Stream.of(ContactAccessor.getInstance().getAllContactsWithNumbers(context)).map(Address::serialize);
-    Set<String>       eligibleContactNumbers                  = Stream.concat(eligibleRecipientDatabaseContactNumbers, eligibleSystemDatabaseContactNumbers).collect(Collectors.toSet());
+    long              startTime         = System.currentTimeMillis();
+    RecipientDatabase recipientDatabase = DatabaseFactory.getRecipientDatabase(context);
+    Set<String>       contactNumbers    = recipientDatabase.getAllAddresses();
 
-    List<ContactTokenDetails> activeTokens = accountManager.getContacts(eligibleContactNumbers);
+    for (Address systemContact : ContactAccessor.getInstance().getAllContactsWithNumbers(context)) {
+      contactNumbers.add(systemContact.serialize());
+    }
 
-    if (activeTokens != null) {
-      List<Recipient> activeRecipients   = new LinkedList<>();
-      List<Recipient> inactiveRecipients = new LinkedList<>();
+    if (!full) {
+      contactNumbers.removeAll(recipientDatabase.getAddressesWithKnownRegisteredState());
+    }
+
+    if (contactNumbers.isEmpty()) {
+      return updateContactsDatabase(context, new LinkedList<>(), false);
+    }
 
-      Set<String>  inactiveContactNumbers = new HashSet<>(eligibleContactNumbers);
+    List<ContactTokenDetails> activeTokens = accountManager.getContacts(contactNumbers);
+
+    if (activeTokens != null) {
+      List<Address> activeAddresses   = new LinkedList<>();
+      List<Address> inactiveAddresses = new LinkedList<>();
 
       for (ContactTokenDetails activeToken : activeTokens) {
-        activeRecipients.add(Recipient.from(context, Address.fromSerialized(activeToken.getNumber()), true));
-        inactiveContactNumbers.remove(activeToken.getNumber());
+        activeAddresses.add(Address.fromSerialized(activeToken.getNumber()));
+        contactNumbers.remove(activeToken.getNumber());
+      }
+
+      for (String inactiveContactNumber : contactNumbers) {
+        inactiveAddresses.add(Address.fromSerialized(inactiveContactNumber));
       }
 
-      for (String inactiveContactNumber : inactiveContactNumbers) {
-        inactiveRecipients.add(Recipient.from(context, Address.fromSerialized(inactiveContactNumber), true));
+      recipientDatabase.setRegistered(activeAddresses, inactiveAddresses);
+
+      if (full) {
+        TextSecurePreferences.setDirectoryFullRefreshTime(context, startTime);
       }
 
-      recipientDatabase.setRegistered(activeRecipients, inactiveRecipients);
-      return updateContactsDatabase(context, Stream.of(activeRecipients).map(Recipient::getAddress).toList(), true);
+      Log.w(TAG, (full ? "Full" : "Incremental") + " refresh of " + (activeAddresses.size() + inactiveAddresses.size()) +
+                 " numbers took " + (System.currentTimeMillis() - startTime) + "ms");
+
+      return updateContactsDatabase(context, activeAddresses, full);
     }
 
     return new RefreshResult(new LinkedList<>(), false);
@@ -131,6 +166,13 @@ public class DirectoryHelper {
     }
   }
 
+  private static boolean isFullRefreshDue(@NonNull Context context) {
+    long lastFullRefresh = TextSecurePreferences.getDirectoryFullRefreshTime(context);
+    long now             = System.currentTimeMillis();
+
+    return now < lastFullRefresh || now - lastFullRefresh > FULL_REFRESH_INTERVAL;
+  }
+
   private static @NonNull RefreshResult updateContactsDatabase(@NonNull Context context, @NonNull List<Address> activeAddresses, boolean removeMissing) {
     Optional<AccountHolder> account = getOrCreateAccount(context);
 
@@ -0,0 +1,119 @@
+package org.thoughtcrime.securesms.util;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame times and bind times for a list, recorded only while it scrolls.
+ *
+ * A frame's time is the interval between successive frame callbacks, so a frame that misses
+ * vsync shows up as a long interval. Frames over {@link #SLOW_FRAME_NANOS} are counted as
+ * slow. The counters are in memory only and are written to the log when a debug log is
+ * submitted.
+ */
+public class FrameTimeRecorder extends RecyclerView.OnScrollListener implements Choreographer.FrameCallback {
+
+  private static final String TAG = FrameTimeRecorder.class.getSimpleName();
+
+  private static final long SLOW_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(17);
+
+  private static final Map<String, FrameTimeRecorder> recorders = new TreeMap<>();
+
+  public static synchronized @NonNull FrameTimeRecorder forList(@NonNull String name) {
+    FrameTimeRecorder recorder = recorders.get(name);
+
+    if (recorder == null) {
+      recorder = new FrameTimeRecorder();
+      recorders.put(name, recorder);
+    }
+
+    return recorder;
+  }
+
+  public static synchronized void logReport() {
+    for (Map.Entry<String, FrameTimeRecorder> entry : recorders.entrySet()) {
+      Log.w(TAG, entry.getKey() + ": " + entry.getValue().getReport());
+    }
+  }
+
+  private boolean scrolling;
+  private boolean callbackPosted;
+  private long    lastFrameNanos;
+
+  private long frames;
+  private long slowFrames;
+  private long totalFrameNanos;
+  private long maxFrameNanos;
+  private long binds;
+  private long totalBindNanos;
+  private long maxBindNanos;
+
+  private FrameTimeRecorder() {}
+
+  public void attach(@NonNull RecyclerView list) {
+    list.addOnScrollListener(this);
+  }
+
+  public synchronized void recordBind(long nanos) {
+    binds++;
+    totalBindNanos += nanos;
+    maxBindNanos    = Math.max(maxBindNanos, nanos);
+  }
+
+  @Override
+  public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+    if (newState != RecyclerView.SCROLL_STATE_IDLE && !scrolling) {
+      scrolling      = true;
+      lastFrameNanos = 0;
+      postFrameCallback();
+    } else if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+      scrolling = false;
+    }
+  }
+
+  @Override
+  public void doFrame(long frameTimeNanos) {
+    callbackPosted = false;
+
+    if (!scrolling) return;
+
+    if (lastFrameNanos > 0) {
+      recordFrame(frameTimeNanos - lastFrameNanos);
+    }
+
+    lastFrameNanos = frameTimeNanos;
+    postFrameCallback();
+  }
+
+  private void postFrameCallback() {
+    if (!callbackPosted) {
+      callbackPosted = true;
+      Choreographer.getInstance().postFrameCallback(this);
+    }
+  }
+
+  private synchronized void recordFrame(long nanos) {
+    frames++;
+    totalFrameNanos += nanos;
+    maxFrameNanos    = Math.max(maxFrameNanos, nanos);
+
+    if (nanos > SLOW_FRAME_NANOS) slowFrames++;
+  }
+
+  private synchronized @NonNull String getReport() {
+    return String.format(Locale.US, "%d frames, %d slow, frame avg %.1fms max %.1fms, %d binds, bind avg %.2fms max %.2fms",
+                         frames, slowFrames, averageMillis(totalFrameNanos, frames), maxFrameNanos / 1_000_000d,
+                         binds, averageMillis(totalBindNanos, binds), maxBindNanos / 1_000_000d);
+  }
+
+  private static double averageMillis(long totalNanos, long count) {
+    return count > 0 ? totalNanos / 1_000_000d / count : 0;
+  }
+}
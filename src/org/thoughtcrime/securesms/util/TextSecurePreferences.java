@@ -79,6 +79,7 @@ public class TextSecurePreferences {
   private static final String PROMPTED_SHARE_PREF              = "pref_prompted_share";
   private static final String SIGNALING_KEY_PREF               = "pref_signaling_key";
   private static final String DIRECTORY_FRESH_TIME_PREF        = "pref_directory_refresh_time";
+  private static final String DIRECTORY_FULL_REFRESH_TIME_PREF = "pref_directory_full_refresh_time";
   private static final String UPDATE_APK_REFRESH_TIME_PREF     = "pref_update_apk_refresh_time";
   private static final String UPDATE_APK_DOWNLOAD_ID           = "pref_update_apk_download_id";
   private static final String UPDATE_APK_DIGEST                = "pref_update_apk_digest";
@@ -116,6 +117,7 @@ public class TextSecurePreferences {
   private static final String ALWAYS_RELAY_CALLS_PREF          = "pref_turn_only";
   private static final String PROFILE_KEY_PREF                 = "pref_profile_key";
   private static final String PROFILE_NAME_PREF                = "pref_profile_name";
+  private static final String JOB_LANES_MIGRATED_PREF          = "pref_job_lanes_migrated";
 
   public static @Nullable String getProfileKey(Context context) {
     return getStringPreference(context, PROFILE_KEY_PREF, null);
@@ -133,6 +135,14 @@ public class TextSecurePreferences {
     return getStringPreference(context, PROFILE_NAME_PREF, null);
   }
 
+  public static boolean isJobLanesMigrated(Context context) {
+    return getBooleanPreference(context, JOB_LANES_MIGRATED_PREF, false);
+  }
+
+  public static void setJobLanesMigrated(Context context, boolean migrated) {
+    setBooleanPreference(context, JOB_LANES_MIGRATED_PREF, migrated);
+  }
+
   public static int getNotificationPriority(Context context) {
     return Integer.valueOf(getStringPreference(context, NOTIFICATION_PRIORITY_PREF, String.valueOf(NotificationCompat.PRIORITY_HIGH)));
   }
@@ -302,6 +312,14 @@ public class TextSecurePreferences {
     setLongPreference(context, DIRECTORY_FRESH_TIME_PREF, value);
   }
 
+  public static long getDirectoryFullRefreshTime(Context context) {
+    return getLongPreference(context, DIRECTORY_FULL_REFRESH_TIME_PREF, 0L);
+  }
+
+  public static void setDirectoryFullRefreshTime(Context context, long value) {
+    setLongPreference(context, DIRECTORY_FULL_REFRESH_TIME_PREF, value);
+  }
+
   public static long getAutoRemoveTime(Context context) {
     return getLongPreference(context, AUTO_REMOVE_TIME_PREF, 0L);
   }
@@ -0,0 +1,64 @@
+package org.thoughtcrime.securesms.benchmark;
+
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BenchmarkResult {
+
+  @JsonProperty
+  private final String name;
+
+  @JsonProperty
+  private final String version;
+
+  @JsonProperty
+  private final long timestamp;
+
+  @JsonProperty
+  private final long operations;
+
+  @JsonProperty
+  private final double operationsPerSecond;
+
+  @JsonProperty
+  private final double nanosPerOperation;
+
+  @JsonProperty
+  private final double bytesAllocatedPerOperation;
+
+  @JsonProperty
+  private final Map<String, Object> metrics = new LinkedHashMap<>();
+
+  BenchmarkResult(String name, String version, long operations, long elapsedNanos, long allocatedBytes) {
+    this.name                       = name;
+    this.version                    = version;
+    this.timestamp                  = System.currentTimeMillis();
+    this.operations                 = operations;
+    this.operationsPerSecond        = operations * 1_000_000_000d / elapsedNanos;
+    this.nanosPerOperation          = (double)elapsedNanos / operations;
+    this.bytesAllocatedPerOperation = allocatedBytes >= 0 ? (double)allocatedBytes / operations : -1;
+  }
+
+  public BenchmarkResult withMetric(String key, Object value) {
+    metrics.put(key, value);
+    return this;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public double getNanosPerOperation() {
+    return nanosPerOperation;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %.1f ops/s, %.0f ns/op, %.0f B/op%s",
+                         name, operationsPerSecond, nanosPerOperation, bytesAllocatedPerOperation,
+                         metrics.isEmpty() ? "" : " " + metrics);
+  }
+}
@@ -0,0 +1,150 @@
+package org.thoughtcrime.securesms.benchmark;
+
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import org.thoughtcrime.securesms.BuildConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A small harness for JVM micro-benchmarks of the app's hot paths.
+ *
+ * Each benchmark runs its operation for a warmup period so the JIT settles, then for a
+ * measurement period, and reports throughput along with the bytes the benchmark thread
+ * allocated per operation. Results are written as JSON, one file per benchmark, to the
+ * directory named by the "benchmark.results" system property so they can be collected and
+ * compared between releases.
+ *
+ * Benchmarks are compiled and run only by the Gradle benchmark task.
+ */
+public class Benchmarks {
+
+  private static final long WARMUP_MILLIS  = Long.getLong("benchmark.warmupMillis", 2000);
+  private static final long MEASURE_MILLIS = Long.getLong("benchmark.measureMillis", 5000);
+
+  private static final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+  private static volatile int sink;
+
+  public interface Operation {
+    Object run() throws Exception;
+  }
+
+  public static BenchmarkResult run(String name, Operation operation) throws Exception {
+    return write(measure(name, operation));
+  }
+
+  public static BenchmarkResult measure(String name, Operation operation) throws Exception {
+    loop(operation, WARMUP_MILLIS);
+
+    long allocatedBefore = getAllocatedBytes();
+    long startTime       = System.nanoTime();
+    long operations      = loop(operation, MEASURE_MILLIS);
+    long elapsed         = System.nanoTime() - startTime;
+    long allocatedAfter  = getAllocatedBytes();
+
+    return new BenchmarkResult(name, BuildConfig.VERSION_NAME, operations, elapsed,
+                               allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1);
+  }
+
+  public static BenchmarkResult runConcurrent(String name, int threads, Operation operation) throws Exception {
+    return write(measureConcurrent(name, threads, operation));
+  }
+
+  /**
+   * Runs a thread-safe operation on several threads at once. Throughput is the total over all
+   * threads, so the time per operation is wall time divided by that total rather than the
+   * latency any one thread saw.
+   */
+  public static BenchmarkResult measureConcurrent(String name, int threads, final Operation operation) throws Exception {
+    final CyclicBarrier  barrier  = new CyclicBarrier(threads);
+    ExecutorService      executor = Executors.newFixedThreadPool(threads);
+    List<Future<long[]>> futures  = new LinkedList<>();
+
+    try {
+      for (int i=0;i<threads;i++) {
+        futures.add(executor.submit(new Callable<long[]>() {
+          @Override
+          public long[] call() throws Exception {
+            loop(operation, WARMUP_MILLIS);
+            barrier.await();
+
+            long allocatedBefore = getAllocatedBytes();
+            long startTime       = System.nanoTime();
+            long operations      = loop(operation, MEASURE_MILLIS);
+            long elapsed         = System.nanoTime() - startTime;
+            long allocatedAfter  = getAllocatedBytes();
+
+            return new long[] {operations, elapsed, allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1};
+          }
+        }));
+      }
+
+      long operations = 0;
+      long elapsed    = 0;
+      long allocated  = 0;
+
+      for (Future<long[]> future : futures) {
+        long[] result = future.get();
+
+        operations += result[0];
+        elapsed     = Math.max(elapsed, result[1]);
+        allocated   = allocated >= 0 && result[2] >= 0 ? allocated + result[2] : -1;
+      }
+
+      return new BenchmarkResult(name, BuildConfig.VERSION_NAME, operations, elapsed, allocated)
+          .withMetric("threads", threads);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public static BenchmarkResult write(BenchmarkResult result) throws IOException {
+    System.out.println(result);
+
+    String directory = System.getProperty("benchmark.results");
+
+    if (directory != null) {
+      File file = new File(directory, result.getName() + ".json");
+      file.getParentFile().mkdirs();
+      objectMapper.writeValue(file, result);
+    }
+
+    return result;
+  }
+
+  private static long loop(Operation operation, long millis) throws Exception {
+    long deadline   = System.nanoTime() + millis * 1_000_000;
+    long operations = 0;
+
+    do {
+      Object result = operation.run();
+      sink += result != null ? result.hashCode() : 0;
+      operations++;
+    } while (System.nanoTime() < deadline);
+
+    return operations;
+  }
+
+  private static long getAllocatedBytes() {
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    if (threadBean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    return -1;
+  }
+}
@@ -0,0 +1,122 @@
+package org.thoughtcrime.securesms.benchmark;
+
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates recipients, message bodies and attachments for benchmarks. The generator is
+ * seeded, so every run and every release benchmarks the same data.
+ */
+public class SyntheticData {
+
+  public static final String[] EMOJI = {
+    "\uD83D\uDE00", "\uD83D\uDE02", "\uD83D\uDE0D", "\uD83D\uDE2D", "\uD83D\uDE4F",
+    "\uD83D\uDC4D", "\uD83D\uDC4D\uD83C\uDFFD", "\uD83C\uDF89", "\uD83D\uDD25", "\u2764\uFE0F",
+    "\uD83D\uDC68\u200D\uD83D\uDC69\u200D\uD83D\uDC67", "\uD83C\uDDE9\uD83C\uDDEA", "\u263A", "\uD83D\uDE31"
+  };
+
+  private static final String[] WORDS = {
+    "the", "meeting", "is", "at", "noon", "see", "you", "there", "tomorrow", "ok", "thanks",
+    "running", "late", "call", "me", "when", "you're", "free", "did", "get", "photos", "lol"
+  };
+
+  private static final String[] FIRST_NAMES = {
+    "Adi", "Ana", "Budi", "Chlo\u00e9", "David", "Dewi", "Eka", "Fatima", "Gita", "Hana", "Iwan",
+    "Jos\u00e9", "Kevin", "Lina", "Maria", "Nur", "Omar", "Putri", "Rizky", "Sarah", "Tom", "Yusuf"
+  };
+
+  private static final String[] LAST_NAMES = {
+    "Anderson", "G\u00f3mez", "Hakim", "Kusuma", "Lee", "M\u00fcller", "Nguyen", "Pratama", "Santoso",
+    "Setiawan", "Smith", "Suryadi", "Tan", "Wijaya", "Williams", "Yamada"
+  };
+
+  private static final String[] CONTENT_TYPES = {
+    "image/jpeg", "image/png", "video/mp4", "audio/aac", "application/pdf"
+  };
+
+  private final Random random;
+
+  public SyntheticData() {
+    this(1234);
+  }
+
+  public SyntheticData(long seed) {
+    this.random = new Random(seed);
+  }
+
+  public List<String> recipients(int count) {
+    List<String> recipients = new LinkedList<>();
+
+    for (int i=0;i<count;i++) {
+      recipients.add(String.format(Locale.US, "+1555%07d", random.nextInt(10000000)));
+    }
+
+    return recipients;
+  }
+
+  /**
+   * A contact name of a first and last name, with a middle name in roughly every fourth.
+   */
+  public String contactName() {
+    StringBuilder name = new StringBuilder(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+
+    if (random.nextInt(4) == 0) {
+      name.append(' ').append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+    }
+
+    return name.append(' ').append(LAST_NAMES[random.nextInt(LAST_NAMES.length)]).toString();
+  }
+
+  /**
+   * A message body of a few words, with an emoji in roughly every fifth word and a link in
+   * roughly every tenth message.
+   */
+  public String messageBody() {
+    StringBuilder body  = new StringBuilder();
+    int           words = 1 + random.nextInt(40);
+
+    for (int i=0;i<words;i++) {
+      if (i > 0) body.append(' ');
+
+      if (random.nextInt(5) == 0) body.append(EMOJI[random.nextInt(EMOJI.length)]);
+      else                        body.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+
+    if (random.nextInt(10) == 0) {
+      body.append(" https://example.com/").append(random.nextInt(1000));
+    }
+
+    return body.toString();
+  }
+
+  public List<String> messageBodies(int count) {
+    List<String> bodies = new LinkedList<>();
+
+    for (int i=0;i<count;i++) {
+      bodies.add(messageBody());
+    }
+
+    return bodies;
+  }
+
+  public String contentType() {
+    return CONTENT_TYPES[random.nextInt(CONTENT_TYPES.length)];
+  }
+
+  public byte[] attachment(int size) {
+    byte[] data = new byte[size];
+    random.nextBytes(data);
+    return data;
+  }
+
+  public int nextInt(int bound) {
+    return random.nextInt(bound);
+  }
+
+  public boolean nextBoolean() {
+    return random.nextBoolean();
+  }
+}
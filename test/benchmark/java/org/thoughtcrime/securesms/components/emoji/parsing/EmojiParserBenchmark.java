@@ -0,0 +1,113 @@
+package org.thoughtcrime.securesms.components.emoji.parsing;
+
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+import org.thoughtcrime.securesms.components.emoji.EmojiPageModel;
+import org.thoughtcrime.securesms.components.emoji.EmojiPages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Emoji parsing over three kinds of text: synthetic message bodies with an emoji in roughly
+ * every fifth word, the same bodies with no emoji at all, and runs of nothing but emoji.
+ * Text without emoji is expected to allocate nothing per parse.
+ */
+public class EmojiParserBenchmark {
+
+  private static final int BODIES = 1000;
+
+  private final SyntheticData data = new SyntheticData();
+
+  private EmojiTree emojiTree;
+
+  @Before
+  public void setUp() {
+    emojiTree = new EmojiTree();
+
+    for (EmojiPageModel page : EmojiPages.PAGES) {
+      if (page.hasSpriteMap()) {
+        for (int i=0;i<page.getEmoji().length;i++) {
+          emojiTree.add(page.getEmoji()[i], new EmojiDrawInfo(null, i));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void buildTree() throws Exception {
+    Benchmarks.run("EmojiTree.build", new Benchmarks.Operation() {
+      @Override
+      public Object run() {
+        EmojiTree tree = new EmojiTree();
+
+        for (EmojiPageModel page : EmojiPages.PAGES) {
+          if (page.hasSpriteMap()) {
+            for (int i=0;i<page.getEmoji().length;i++) {
+              tree.add(page.getEmoji()[i], null);
+            }
+          }
+        }
+
+        return tree;
+      }
+    });
+  }
+
+  @Test
+  public void findCandidatesTypical() throws Exception {
+    run("EmojiParser.findCandidates.typical", data.messageBodies(BODIES));
+  }
+
+  @Test
+  public void findCandidatesNoEmoji() throws Exception {
+    List<String> bodies = new ArrayList<>(data.messageBodies(BODIES));
+
+    for (int i=0;i<bodies.size();i++) {
+      String body = bodies.get(i);
+
+      for (String emoji : SyntheticData.EMOJI) {
+        body = body.replace(emoji, "ok");
+      }
+
+      bodies.set(i, body);
+    }
+
+    run("EmojiParser.findCandidates.noEmoji", bodies);
+  }
+
+  @Test
+  public void findCandidatesEmojiHeavy() throws Exception {
+    List<String> bodies = new ArrayList<>(data.messageBodies(BODIES));
+
+    for (int i=0;i<bodies.size();i++) {
+      StringBuilder body  = new StringBuilder();
+      int           count = 1 + data.nextInt(30);
+
+      for (int j=0;j<count;j++) {
+        body.append(SyntheticData.EMOJI[data.nextInt(SyntheticData.EMOJI.length)]);
+      }
+
+      bodies.set(i, body.toString());
+    }
+
+    run("EmojiParser.findCandidates.emojiHeavy", bodies);
+  }
+
+  private void run(String name, List<String> bodies) throws Exception {
+    final EmojiParser parser = new EmojiParser(emojiTree);
+    final String[]    array  = bodies.toArray(new String[bodies.size()]);
+
+    Benchmarks.run(name, new Benchmarks.Operation() {
+      int index = 0;
+
+      @Override
+      public Object run() {
+        return parser.findCandidates(array[index++ % array.length]);
+      }
+    });
+  }
+}
@@ -0,0 +1,77 @@
+package org.thoughtcrime.securesms.contacts;
+
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks the contact search index against 5,000 contacts: building it, and answering
+ * the queries a user produces keystroke by keystroke while typing a name, initials or the
+ * end of a number. Each search should take well under the 5ms a keystroke can spend on it.
+ */
+public class ContactSearchBenchmark {
+
+  private static final int CONTACTS = 5000;
+
+  private final SyntheticData data = new SyntheticData();
+
+  private List<ContactSearchIndex.Entry> entries;
+  private String[]                       keystrokes;
+
+  @Before
+  public void setUp() {
+    List<String> numbers = data.recipients(CONTACTS);
+
+    entries = new ArrayList<>(CONTACTS);
+
+    for (int i=0;i<CONTACTS;i++) {
+      entries.add(new ContactSearchIndex.Entry(i, i, data.contactName(), numbers.get(i), 2, null,
+                                               i % 5 == 0 ? ContactsDatabase.PUSH_TYPE : ContactsDatabase.NORMAL_TYPE));
+    }
+
+    List<String> queries = new ArrayList<>();
+
+    addKeystrokes(queries, entries.get(data.nextInt(CONTACTS)).getName());
+    addKeystrokes(queries, entries.get(data.nextInt(CONTACTS)).getName().toLowerCase());
+    addKeystrokes(queries, "jm");
+    addKeystrokes(queries, numbers.get(data.nextInt(CONTACTS)).substring(8));
+    addKeystrokes(queries, "+1 555");
+
+    keystrokes = queries.toArray(new String[queries.size()]);
+  }
+
+  @Test
+  public void build() throws Exception {
+    Benchmarks.write(Benchmarks.measure("ContactSearchIndex.build", new Benchmarks.Operation() {
+      @Override
+      public Object run() {
+        return new ContactSearchIndex(entries);
+      }
+    }).withMetric("contacts", CONTACTS));
+  }
+
+  @Test
+  public void search() throws Exception {
+    final ContactSearchIndex index = new ContactSearchIndex(entries);
+
+    Benchmarks.write(Benchmarks.measure("ContactSearchIndex.search", new Benchmarks.Operation() {
+      int keystroke = 0;
+
+      @Override
+      public Object run() {
+        return index.search(keystrokes[keystroke++ % keystrokes.length]);
+      }
+    }).withMetric("contacts", CONTACTS).withMetric("queries", keystrokes.length));
+  }
+
+  private static void addKeystrokes(List<String> queries, String text) {
+    for (int i=1;i<=text.length();i++) {
+      queries.add(text.substring(0, i));
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package org.thoughtcrime.securesms.crypto;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.spec.SecretKeySpec;
+
+public class CryptoBenchmark {
+
+  private static final int ATTACHMENT_SIZE = 1024 * 1024;
+  private static final int VIDEO_SIZE      = 64 * 1024 * 1024;
+  private static final int BUFFER_SIZE     = 8192;
+
+  private final SyntheticData data = new SyntheticData();
+
+  private MasterSecret masterSecret;
+  private File         file;
+
+  @Before
+  public void setUp() throws Exception {
+    masterSecret = new MasterSecret(new SecretKeySpec(data.attachment(16), "AES"),
+                                    new SecretKeySpec(data.attachment(20), "HmacSHA1"));
+    file         = File.createTempFile("benchmark", ".mms");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void encryptBody() throws Exception {
+    final MasterCipher masterCipher = new MasterCipher(masterSecret);
+    final String[]     bodies       = toArray(data.messageBodies(1000));
+
+    Benchmarks.run("MasterCipher.encryptBody", new Benchmarks.Operation() {
+      int index = 0;
+
+      @Override
+      public Object run() {
+        return masterCipher.encryptBody(bodies[index++ % bodies.length]);
+      }
+    });
+  }
+
+  @Test
+  public void decryptBody() throws Exception {
+    final MasterCipher masterCipher = new MasterCipher(masterSecret);
+    final String[]     encrypted    = toArray(data.messageBodies(1000));
+
+    for (int i=0;i<encrypted.length;i++) {
+      encrypted[i] = masterCipher.encryptBody(encrypted[i]);
+    }
+
+    Benchmarks.run("MasterCipher.decryptBody", new Benchmarks.Operation() {
+      int index = 0;
+
+      @Override
+      public Object run() throws Exception {
+        return masterCipher.decryptBody(encrypted[index++ % encrypted.length]);
+      }
+    });
+  }
+
+  @Test
+  public void encryptAttachment() throws Exception {
+    final byte[] attachment = data.attachment(ATTACHMENT_SIZE);
+
+    Benchmarks.run("EncryptingPartOutputStream.1MB", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        OutputStream out = new EncryptingPartOutputStream(file, masterSecret);
+
+        for (int offset = 0; offset < attachment.length; offset += BUFFER_SIZE) {
+          out.write(attachment, offset, Math.min(BUFFER_SIZE, attachment.length - offset));
+        }
+
+        out.close();
+        return file.length();
+      }
+    });
+  }
+
+  @Test
+  public void decryptAttachment() throws Exception {
+    OutputStream out = new EncryptingPartOutputStream(file, masterSecret);
+    out.write(data.attachment(ATTACHMENT_SIZE));
+    out.close();
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+
+    Benchmarks.run("DecryptingPartInputStream.1MB", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        InputStream in    = DecryptingPartInputStream.createFor(masterSecret, file);
+        long        total = 0;
+        int         read;
+
+        while ((read = in.read(buffer)) != -1) {
+          total += read;
+        }
+
+        in.close();
+        return total;
+      }
+    });
+  }
+
+  @Test
+  public void randomReadVideo() throws Exception {
+    writeVideo();
+
+    final DecryptingPartFile partFile = DecryptingPartFile.open(masterSecret, file);
+    final byte[]             buffer   = new byte[BUFFER_SIZE];
+    final Random             random   = new Random(1234);
+
+    Benchmarks.run("DecryptingPartFile.randomRead.64MB", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        return partFile.read(random.nextInt(VIDEO_SIZE), buffer, 0, buffer.length);
+      }
+    });
+
+    partFile.close();
+  }
+
+  @Test
+  public void randomReadVideoByStream() throws Exception {
+    writeVideo();
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    final Random random = new Random(1234);
+
+    Benchmarks.run("DecryptingPartInputStream.randomRead.64MB", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        InputStream in = DecryptingPartInputStream.createFor(masterSecret, file);
+        in.skip(random.nextInt(VIDEO_SIZE));
+
+        int read = in.read(buffer);
+        in.close();
+        return read;
+      }
+    });
+  }
+
+  @Test
+  public void openVideo() throws Exception {
+    writeVideo();
+
+    Benchmarks.run("DecryptingPartFile.open.64MB", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        DecryptingPartFile partFile = DecryptingPartFile.open(masterSecret, file);
+        partFile.close();
+        return partFile.getSize();
+      }
+    });
+  }
+
+  @Test
+  public void copyAttachmentBaseline() throws Exception {
+    final byte[] attachment = data.attachment(ATTACHMENT_SIZE);
+
+    Benchmarks.run("FileOutputStream.1MB", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        OutputStream out = new FileOutputStream(file);
+
+        for (int offset = 0; offset < attachment.length; offset += BUFFER_SIZE) {
+          out.write(attachment, offset, Math.min(BUFFER_SIZE, attachment.length - offset));
+        }
+
+        out.close();
+        return file.length();
+      }
+    });
+  }
+
+  private void writeVideo() throws Exception {
+    OutputStream out = new EncryptingPartOutputStream(file, masterSecret);
+
+    for (int i=0;i<VIDEO_SIZE / ATTACHMENT_SIZE;i++) {
+      out.write(data.attachment(ATTACHMENT_SIZE));
+    }
+
+    out.close();
+  }
+
+  private static String[] toArray(List<String> list) {
+    return list.toArray(new String[list.size()]);
+  }
+}
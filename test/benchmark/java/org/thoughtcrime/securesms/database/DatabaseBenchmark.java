@@ -0,0 +1,181 @@
+package org.thoughtcrime.securesms.database;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Benchmarks the statements behind opening a conversation, updating a thread after a message
+ * changes, and opening the media gallery, against 100 threads of 500 messages each.
+ *
+ * MmsSmsDatabase and ThreadDatabase build their statements with SQLiteQueryBuilder, which is
+ * only a stub off device. The first two benchmarks therefore run hand-written SQL of the same
+ * shape and are named for that SQL rather than for the production methods: a union of the SMS
+ * and MMS tables with each MMS joined to its first attachment over a shorter column list, and
+ * the counts, snippet read and row write of a thread update. The media gallery query is the
+ * one {@link MediaDatabase} runs.
+ */
+public class DatabaseBenchmark {
+
+  private static final int THREADS             = 100;
+  private static final int MESSAGES_PER_THREAD = 500;
+  private static final int PAGE_SIZE           = 50;
+
+  private static final String SMS_SUBQUERY =
+      "SELECT DISTINCT " + SmsDatabase.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
+      SmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + ", " +
+      MmsSmsColumns.ID + ", NULL AS " + AttachmentDatabase.ATTACHMENT_ID_ALIAS + ", " +
+      MmsSmsColumns.BODY + ", " + MmsSmsColumns.READ + ", " + MmsSmsColumns.THREAD_ID + ", " +
+      SmsDatabase.TYPE + ", NULL AS " + MmsDatabase.MESSAGE_BOX + ", " + MmsSmsColumns.ADDRESS + ", " +
+      "'" + MmsSmsDatabase.SMS_TRANSPORT + "' AS " + MmsSmsDatabase.TRANSPORT +
+      " FROM " + SmsDatabase.TABLE_NAME + " WHERE " + MmsSmsColumns.THREAD_ID + " = ?";
+
+  private static final String MMS_SUBQUERY =
+      "SELECT DISTINCT " + MmsDatabase.DATE_SENT + " AS " + MmsSmsColumns.NORMALIZED_DATE_SENT + ", " +
+      MmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + ", " +
+      MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " AS " + MmsSmsColumns.ID + ", " +
+      AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " AS " + AttachmentDatabase.ATTACHMENT_ID_ALIAS + ", " +
+      MmsSmsColumns.BODY + ", " + MmsSmsColumns.READ + ", " + MmsSmsColumns.THREAD_ID + ", " +
+      "NULL AS " + SmsDatabase.TYPE + ", " + MmsDatabase.MESSAGE_BOX + ", " + MmsSmsColumns.ADDRESS + ", " +
+      "'" + MmsSmsDatabase.MMS_TRANSPORT + "' AS " + MmsSmsDatabase.TRANSPORT +
+      " FROM " + MmsDatabase.TABLE_NAME + " LEFT OUTER JOIN " + AttachmentDatabase.TABLE_NAME +
+      " ON " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " = " +
+      " (SELECT " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID +
+      " FROM " + AttachmentDatabase.TABLE_NAME + " WHERE " +
+      AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + " = " +
+      MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " LIMIT 1)" +
+      " WHERE " + MmsSmsColumns.THREAD_ID + " = ?";
+
+  private static final String CONVERSATION_QUERY =
+      "SELECT * FROM (" + SMS_SUBQUERY + " UNION " + MMS_SUBQUERY +
+      " ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC LIMIT ?)";
+
+  private static final String COUNT_QUERY = "SELECT COUNT(*) FROM %s WHERE " + MmsSmsColumns.THREAD_ID + " = ?";
+
+  private static final String THREAD_UPDATE =
+      "UPDATE " + ThreadDatabase.TABLE_NAME + " SET " + ThreadDatabase.DATE + " = ?, " +
+      ThreadDatabase.MESSAGE_COUNT + " = ?, " + ThreadDatabase.SNIPPET + " = ?, " +
+      ThreadDatabase.SNIPPET_TYPE + " = ? WHERE " + ThreadDatabase.ID + " = ?";
+
+  private InMemoryDatabase database;
+
+  @Before
+  public void setUp() throws Exception {
+    database = new InMemoryDatabase();
+    database.populate(new SyntheticData(), THREADS, MESSAGES_PER_THREAD);
+  }
+
+  @After
+  public void tearDown() {
+    database.close();
+  }
+
+  @Test
+  public void conversationPage() throws Exception {
+    final PreparedStatement query = database.getConnection().prepareStatement(CONVERSATION_QUERY);
+
+    Benchmarks.run("Sql.conversationUnionPage", new Benchmarks.Operation() {
+      int thread = 0;
+
+      @Override
+      public Object run() throws Exception {
+        return readConversation(query, (thread++ % THREADS) + 1, PAGE_SIZE);
+      }
+    });
+
+    query.close();
+  }
+
+  @Test
+  public void threadUpdate() throws Exception {
+    final PreparedStatement smsCount = database.getConnection().prepareStatement(String.format(COUNT_QUERY, SmsDatabase.TABLE_NAME));
+    final PreparedStatement mmsCount = database.getConnection().prepareStatement(String.format(COUNT_QUERY, MmsDatabase.TABLE_NAME));
+    final PreparedStatement snippet  = database.getConnection().prepareStatement(CONVERSATION_QUERY);
+    final PreparedStatement update   = database.getConnection().prepareStatement(THREAD_UPDATE);
+
+    Benchmarks.run("Sql.threadUpdate", new Benchmarks.Operation() {
+      int thread = 0;
+
+      @Override
+      public Object run() throws Exception {
+        long threadId = (thread++ % THREADS) + 1;
+        long count    = count(smsCount, threadId) + count(mmsCount, threadId);
+
+        snippet.setLong(1, threadId);
+        snippet.setLong(2, threadId);
+        snippet.setInt(3, 1);
+
+        try (ResultSet cursor = snippet.executeQuery()) {
+          cursor.next();
+
+          update.setLong(1, cursor.getLong(MmsSmsColumns.NORMALIZED_DATE_RECEIVED));
+          update.setLong(2, count);
+          update.setString(3, cursor.getString(MmsSmsColumns.BODY));
+          update.setLong(4, cursor.getLong(SmsDatabase.TYPE));
+          update.setLong(5, threadId);
+
+          return update.executeUpdate();
+        }
+      }
+    });
+
+    smsCount.close();
+    mmsCount.close();
+    snippet.close();
+    update.close();
+  }
+
+  @Test
+  public void mediaForThread() throws Exception {
+    final PreparedStatement query = database.getConnection().prepareStatement(MediaDatabase.getMediaForThreadQuery(0));
+
+    Benchmarks.run("MediaDatabase.getMediaForThread", new Benchmarks.Operation() {
+      int thread = 0;
+
+      @Override
+      public Object run() throws Exception {
+        query.setLong(1, (thread++ % THREADS) + 1);
+
+        try (ResultSet cursor = query.executeQuery()) {
+          int rows = 0;
+          while (cursor.next()) rows++;
+          return rows;
+        }
+      }
+    });
+
+    query.close();
+  }
+
+  private static int readConversation(PreparedStatement query, long threadId, int limit) throws SQLException {
+    query.setLong(1, threadId);
+    query.setLong(2, threadId);
+    query.setInt(3, limit);
+
+    try (ResultSet cursor = query.executeQuery()) {
+      int rows = 0;
+
+      while (cursor.next()) {
+        cursor.getString(MmsSmsColumns.BODY);
+        rows++;
+      }
+
+      return rows;
+    }
+  }
+
+  private static long count(PreparedStatement query, long threadId) throws SQLException {
+    query.setLong(1, threadId);
+
+    try (ResultSet cursor = query.executeQuery()) {
+      return cursor.next() ? cursor.getLong(1) : 0;
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package org.thoughtcrime.securesms.database;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Benchmarks expiring 5,000 disappearing messages at once, spread over 10 of 100 threads
+ * of 500 messages each, as when the timers on a burst of group traffic run out together.
+ *
+ * Each operation first queues the 5,000 messages in one transaction, which costs the same
+ * for both variants, then expires them. The old manager deleted and updated the thread once
+ * per message, each in its own transaction. The new one deletes everything due with
+ * {@link MessagingDatabase#EXPIRED_WHERE} in one transaction and updates each thread once.
+ *
+ * ThreadDatabase.update() reads its snippet through Android's SQLiteQueryBuilder, which
+ * can't run here, so the thread update is stood in for by counting the thread's messages,
+ * reading its newest one and writing the thread row.
+ */
+public class ExpiringMessageBenchmark {
+
+  private static final int THREADS             = 100;
+  private static final int MESSAGES_PER_THREAD = 500;
+  private static final int EXPIRING_THREADS    = 10;
+  private static final int EXPIRING_MESSAGES   = 5000;
+
+  private static final String INSERT_EXPIRING =
+      "INSERT INTO " + SmsDatabase.TABLE_NAME + " (" + SmsDatabase.THREAD_ID + ", " + SmsDatabase.ADDRESS + ", " +
+      SmsDatabase.DATE_SENT + ", " + SmsDatabase.DATE_RECEIVED + ", " + SmsDatabase.BODY + ", " + SmsDatabase.TYPE + ", " +
+      SmsDatabase.EXPIRES_IN + ", " + SmsDatabase.EXPIRE_STARTED + ", " + SmsDatabase.EXPIRES_AT + ") " +
+      "VALUES (?, ?, ?, ?, ?, " + MmsSmsColumns.Types.BASE_INBOX_TYPE + ", ?, ?, ?)";
+
+  private static final String SELECT_EXPIRED         = "SELECT " + SmsDatabase.ID + ", " + SmsDatabase.THREAD_ID + " FROM " + SmsDatabase.TABLE_NAME + " WHERE " + MessagingDatabase.EXPIRED_WHERE;
+  private static final String SELECT_EXPIRED_THREADS = "SELECT DISTINCT " + SmsDatabase.THREAD_ID + " FROM " + SmsDatabase.TABLE_NAME + " WHERE " + MessagingDatabase.EXPIRED_WHERE;
+  private static final String DELETE_EXPIRED         = "DELETE FROM " + SmsDatabase.TABLE_NAME + " WHERE " + MessagingDatabase.EXPIRED_WHERE;
+  private static final String DELETE_MESSAGE         = "DELETE FROM " + SmsDatabase.TABLE_NAME + " WHERE " + SmsDatabase.ID + " = ?";
+
+  private static final String COUNT_MESSAGES = "SELECT COUNT(*) FROM %s WHERE " + MmsSmsColumns.THREAD_ID + " = ?";
+  private static final String NEWEST_MESSAGE = "SELECT " + SmsDatabase.DATE_RECEIVED + ", " + SmsDatabase.BODY + ", " + SmsDatabase.TYPE +
+                                               " FROM " + SmsDatabase.TABLE_NAME + " WHERE " + SmsDatabase.THREAD_ID + " = ?" +
+                                               " ORDER BY " + SmsDatabase.DATE_RECEIVED + " DESC LIMIT 1";
+  private static final String UPDATE_THREAD  = "UPDATE " + ThreadDatabase.TABLE_NAME + " SET " + ThreadDatabase.DATE + " = ?, " +
+                                               ThreadDatabase.MESSAGE_COUNT + " = ?, " + ThreadDatabase.SNIPPET + " = ?, " +
+                                               ThreadDatabase.SNIPPET_TYPE + " = ? WHERE " + ThreadDatabase.ID + " = ?";
+
+  private final SyntheticData data = new SyntheticData();
+
+  private InMemoryDatabase  database;
+  private List<String>      bodies;
+  private PreparedStatement insertExpiring;
+  private PreparedStatement smsCount;
+  private PreparedStatement mmsCount;
+  private PreparedStatement newestMessage;
+  private PreparedStatement updateThread;
+
+  @Before
+  public void setUp() throws Exception {
+    database = new InMemoryDatabase();
+    database.populate(data, THREADS, MESSAGES_PER_THREAD);
+
+    bodies         = new ArrayList<>(data.messageBodies(EXPIRING_MESSAGES));
+    insertExpiring = database.getConnection().prepareStatement(INSERT_EXPIRING);
+    smsCount       = database.getConnection().prepareStatement(String.format(COUNT_MESSAGES, SmsDatabase.TABLE_NAME));
+    mmsCount       = database.getConnection().prepareStatement(String.format(COUNT_MESSAGES, MmsDatabase.TABLE_NAME));
+    newestMessage  = database.getConnection().prepareStatement(NEWEST_MESSAGE);
+    updateThread   = database.getConnection().prepareStatement(UPDATE_THREAD);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    insertExpiring.close();
+    smsCount.close();
+    mmsCount.close();
+    newestMessage.close();
+    updateThread.close();
+    database.close();
+  }
+
+  @Test
+  public void deletePerMessage() throws Exception {
+    final PreparedStatement selectExpired = database.getConnection().prepareStatement(SELECT_EXPIRED);
+    final PreparedStatement deleteMessage = database.getConnection().prepareStatement(DELETE_MESSAGE);
+
+    Benchmarks.write(Benchmarks.measure("ExpiringMessageManager.deletePerMessage", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        long now = queueExpiringMessages();
+
+        List<long[]> expired = new LinkedList<>();
+
+        selectExpired.setLong(1, now);
+
+        try (ResultSet cursor = selectExpired.executeQuery()) {
+          while (cursor.next()) {
+            expired.add(new long[] {cursor.getLong(1), cursor.getLong(2)});
+          }
+        }
+
+        for (long[] message : expired) {
+          deleteMessage.setLong(1, message[0]);
+          deleteMessage.executeUpdate();
+          updateThread(message[1]);
+        }
+
+        return expired.size();
+      }
+    }).withMetric("messagesPerOperation", EXPIRING_MESSAGES)
+      .withMetric("commitsPerOperation", 1 + EXPIRING_MESSAGES * 2)
+      .withMetric("threadUpdatesPerOperation", EXPIRING_MESSAGES));
+
+    selectExpired.close();
+    deleteMessage.close();
+  }
+
+  @Test
+  public void deleteBatched() throws Exception {
+    final PreparedStatement selectThreads = database.getConnection().prepareStatement(SELECT_EXPIRED_THREADS);
+    final PreparedStatement deleteExpired = database.getConnection().prepareStatement(DELETE_EXPIRED);
+
+    Benchmarks.write(Benchmarks.measure("ExpiringMessageManager.deleteBatched", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        long      now       = queueExpiringMessages();
+        Set<Long> threadIds = new HashSet<>();
+
+        database.getConnection().setAutoCommit(false);
+
+        try {
+          selectThreads.setLong(1, now);
+
+          try (ResultSet cursor = selectThreads.executeQuery()) {
+            while (cursor.next()) {
+              threadIds.add(cursor.getLong(1));
+            }
+          }
+
+          deleteExpired.setLong(1, now);
+          deleteExpired.executeUpdate();
+
+          for (long threadId : threadIds) {
+            updateThread(threadId);
+          }
+
+          database.getConnection().commit();
+        } finally {
+          database.getConnection().setAutoCommit(true);
+        }
+
+        return threadIds.size();
+      }
+    }).withMetric("messagesPerOperation", EXPIRING_MESSAGES)
+      .withMetric("commitsPerOperation", 2)
+      .withMetric("threadUpdatesPerOperation", EXPIRING_THREADS));
+
+    selectThreads.close();
+    deleteExpired.close();
+  }
+
+  /**
+   * @return a time at which every queued message is due.
+   */
+  private long queueExpiringMessages() throws SQLException {
+    long now = System.currentTimeMillis();
+
+    database.getConnection().setAutoCommit(false);
+
+    try {
+      for (int i=0;i<EXPIRING_MESSAGES;i++) {
+        long threadId = (i % EXPIRING_THREADS) + 1;
+        long date     = now - EXPIRING_MESSAGES + i;
+
+        insertExpiring.setLong(1, threadId);
+        insertExpiring.setString(2, "+1555000" + threadId);
+        insertExpiring.setLong(3, date);
+        insertExpiring.setLong(4, date);
+        insertExpiring.setString(5, bodies.get(i));
+        insertExpiring.setLong(6, 30_000);
+        insertExpiring.setLong(7, date - 30_000);
+        insertExpiring.setLong(8, date);
+        insertExpiring.executeUpdate();
+      }
+
+      database.getConnection().commit();
+    } finally {
+      database.getConnection().setAutoCommit(true);
+    }
+
+    return now;
+  }
+
+  private void updateThread(long threadId) throws SQLException {
+    long count = count(smsCount, threadId) + count(mmsCount, threadId);
+
+    newestMessage.setLong(1, threadId);
+
+    try (ResultSet cursor = newestMessage.executeQuery()) {
+      if (!cursor.next()) return;
+
+      updateThread.setLong(1, cursor.getLong(1));
+      updateThread.setLong(2, count);
+      updateThread.setString(3, cursor.getString(2));
+      updateThread.setLong(4, cursor.getLong(3));
+      updateThread.setLong(5, threadId);
+      updateThread.executeUpdate();
+    }
+  }
+
+  private static long count(PreparedStatement query, long threadId) throws SQLException {
+    query.setLong(1, threadId);
+
+    try (ResultSet cursor = query.executeQuery()) {
+      return cursor.next() ? cursor.getLong(1) : 0;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package org.thoughtcrime.securesms.database;
+
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+import org.thoughtcrime.securesms.database.IdentityDatabase.IdentityRecord;
+import org.thoughtcrime.securesms.database.IdentityDatabase.VerifiedStatus;
+import org.thoughtcrime.securesms.util.Base64;
+import org.whispersystems.libsignal.IdentityKey;
+import org.whispersystems.libsignal.ecc.Curve;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Trust checks per second for a group send, where every member's identity is checked from
+ * several threads at once. The cached check reads {@link IdentityCache}. The baseline is what
+ * every check did before: take one global lock, query the identity table and decode the key.
+ */
+public class IdentityCacheBenchmark {
+
+  private static final int IDENTITIES = 1000;
+
+  private static final Object LOCK = new Object();
+
+  private final SyntheticData data = new SyntheticData();
+
+  private Address[]     addresses;
+  private IdentityKey[] identityKeys;
+  private Connection    connection;
+
+  @Before
+  public void setUp() throws Exception {
+    List<String> recipients = data.recipients(IDENTITIES);
+
+    addresses    = new Address[IDENTITIES];
+    identityKeys = new IdentityKey[IDENTITIES];
+    connection   = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+    connection.createStatement().execute(IdentityDatabase.CREATE_TABLE);
+
+    try (PreparedStatement insert = connection.prepareStatement("INSERT INTO identities (address, key) VALUES (?, ?)")) {
+      for (int i=0;i<IDENTITIES;i++) {
+        byte[] publicKey = data.attachment(33);
+        publicKey[0] = (byte)Curve.DJB_TYPE;
+
+        addresses[i]    = Address.fromSerialized(recipients.get(i));
+        identityKeys[i] = new IdentityKey(publicKey, 0);
+
+        insert.setString(1, addresses[i].serialize());
+        insert.setString(2, Base64.encodeBytes(publicKey));
+        insert.executeUpdate();
+      }
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void cachedTrustCheck() throws Exception {
+    runCached(1);
+  }
+
+  @Test
+  public void cachedTrustCheckConcurrent() throws Exception {
+    runCached(8);
+  }
+
+  @Test
+  public void lockedQueryTrustCheck() throws Exception {
+    runLockedQuery(1);
+  }
+
+  @Test
+  public void lockedQueryTrustCheckConcurrent() throws Exception {
+    runLockedQuery(8);
+  }
+
+  private void runCached(int threads) throws Exception {
+    final IdentityCache cache = new IdentityCache();
+
+    cache.load(new IdentityCache.Loader() {
+      @Override
+      public @NonNull Map<Address, IdentityRecord> load() {
+        Map<Address, IdentityRecord> records = new HashMap<>();
+
+        for (int i=0;i<IDENTITIES;i++) {
+          records.put(addresses[i], createRecord(addresses[i], identityKeys[i]));
+        }
+
+        return records;
+      }
+    });
+
+    Benchmarks.runConcurrent("IdentityCache.trustCheck." + threads + "threads", threads, new Benchmarks.Operation() {
+      @Override
+      public Object run() {
+        int index = ThreadLocalRandom.current().nextInt(IDENTITIES);
+        return isTrusted(identityKeys[index], cache.getRecords().get(addresses[index]));
+      }
+    });
+  }
+
+  private void runLockedQuery(int threads) throws Exception {
+    final PreparedStatement query = connection.prepareStatement("SELECT * FROM identities WHERE address = ?");
+
+    Benchmarks.runConcurrent("IdentityDatabase.lockedQueryTrustCheck." + threads + "threads", threads, new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        int index = ThreadLocalRandom.current().nextInt(IDENTITIES);
+
+        synchronized (LOCK) {
+          query.setString(1, addresses[index].serialize());
+
+          try (ResultSet resultSet = query.executeQuery()) {
+            IdentityRecord record = null;
+
+            if (resultSet.next()) {
+              IdentityKey identityKey = new IdentityKey(Base64.decode(resultSet.getString("key")), 0);
+              record = createRecord(Address.fromSerialized(resultSet.getString("address")), identityKey);
+            }
+
+            return isTrusted(identityKeys[index], record);
+          }
+        }
+      }
+    });
+
+    query.close();
+  }
+
+  private static IdentityRecord createRecord(Address address, IdentityKey identityKey) {
+    return new IdentityRecord(address, identityKey, VerifiedStatus.DEFAULT, true, 0, false);
+  }
+
+  private static boolean isTrusted(IdentityKey identityKey, IdentityRecord record) {
+    return record != null &&
+           identityKey.equals(record.getIdentityKey()) &&
+           record.getVerifiedStatus() != VerifiedStatus.UNVERIFIED;
+  }
+}
@@ -0,0 +1,152 @@
+package org.thoughtcrime.securesms.database;
+
+
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * An in-memory SQLite database with the app's message, attachment, thread and recipient
+ * schema, for benchmarking queries on the JVM. Android's SQLite classes are only stubs off
+ * device, so this runs the same SQL through the xerial JDBC driver instead.
+ */
+class InMemoryDatabase implements Closeable {
+
+  private final Connection connection;
+
+  InMemoryDatabase() throws SQLException {
+    this(DriverManager.getConnection("jdbc:sqlite::memory:"));
+  }
+
+  /**
+   * Creates the same schema through another connection, for benchmarks that need a database
+   * file and its journal.
+   */
+  InMemoryDatabase(Connection connection) throws SQLException {
+    this.connection = connection;
+
+    execute(SmsDatabase.CREATE_TABLE);
+    execute(MmsDatabase.CREATE_TABLE);
+    execute(AttachmentDatabase.CREATE_TABLE);
+    execute(ThreadDatabase.CREATE_TABLE);
+    execute(RecipientDatabase.CREATE_TABLE);
+    execute(SmsDatabase.CREATE_INDEXS);
+    execute(MmsDatabase.CREATE_INDEXS);
+    execute(AttachmentDatabase.CREATE_INDEXS);
+    execute(ThreadDatabase.CREATE_INDEXS);
+  }
+
+  Connection getConnection() {
+    return connection;
+  }
+
+  /**
+   * Fills the database with threads of SMS and MMS messages, about a third of them MMS with
+   * a single attachment.
+   */
+  void populate(SyntheticData data, int threadCount, int messagesPerThread) throws SQLException {
+    List<String> recipients = data.recipients(threadCount);
+    long         now        = System.currentTimeMillis();
+
+    connection.setAutoCommit(false);
+
+    try (PreparedStatement thread = connection.prepareStatement("INSERT INTO " + ThreadDatabase.TABLE_NAME + " (" +
+                                                                ThreadDatabase.ADDRESS + ", " + ThreadDatabase.DATE + ", " +
+                                                                ThreadDatabase.MESSAGE_COUNT + ") VALUES (?, ?, ?)");
+         PreparedStatement sms    = connection.prepareStatement("INSERT INTO " + SmsDatabase.TABLE_NAME + " (" +
+                                                                SmsDatabase.THREAD_ID + ", " + SmsDatabase.ADDRESS + ", " +
+                                                                SmsDatabase.DATE_SENT + ", " + SmsDatabase.DATE_RECEIVED + ", " +
+                                                                SmsDatabase.BODY + ", " + SmsDatabase.TYPE + ", " +
+                                                                SmsDatabase.READ + ") VALUES (?, ?, ?, ?, ?, ?, 1)");
+         PreparedStatement mms    = connection.prepareStatement("INSERT INTO " + MmsDatabase.TABLE_NAME + " (" +
+                                                                MmsDatabase.THREAD_ID + ", " + MmsDatabase.ADDRESS + ", " +
+                                                                MmsDatabase.DATE_SENT + ", " + MmsDatabase.DATE_RECEIVED + ", " +
+                                                                MmsDatabase.BODY + ", " + MmsDatabase.MESSAGE_BOX + ", " +
+                                                                MmsDatabase.PART_COUNT + ", " + MmsDatabase.READ + ") VALUES (?, ?, ?, ?, ?, ?, 1, 1)",
+                                                                Statement.RETURN_GENERATED_KEYS);
+         PreparedStatement part   = connection.prepareStatement("INSERT INTO " + AttachmentDatabase.TABLE_NAME + " (" +
+                                                                AttachmentDatabase.MMS_ID + ", " + AttachmentDatabase.CONTENT_TYPE + ", " +
+                                                                AttachmentDatabase.SIZE + ", " + AttachmentDatabase.UNIQUE_ID + ", " +
+                                                                AttachmentDatabase.DATA + ", " + AttachmentDatabase.MEDIA_KIND + ", " +
+                                                                AttachmentDatabase.MEDIA_THREAD_ID + ", " + AttachmentDatabase.MEDIA_DATE +
+                                                                ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)"))
+    {
+      for (int i=0;i<threadCount;i++) {
+        long threadId = i + 1;
+
+        thread.setString(1, recipients.get(i));
+        thread.setLong(2, now);
+        thread.setLong(3, messagesPerThread);
+        thread.executeUpdate();
+
+        for (int j=0;j<messagesPerThread;j++) {
+          long   date = now - (messagesPerThread - j) * 60_000L;
+          String body = data.messageBody();
+          long   type = data.nextBoolean() ? MmsSmsColumns.Types.BASE_INBOX_TYPE : MmsSmsColumns.Types.BASE_SENT_TYPE;
+
+          if (data.nextInt(3) == 0) {
+            mms.setLong(1, threadId);
+            mms.setString(2, recipients.get(i));
+            mms.setLong(3, date);
+            mms.setLong(4, date);
+            mms.setString(5, body);
+            mms.setLong(6, type);
+            mms.executeUpdate();
+
+            try (ResultSet keys = mms.getGeneratedKeys()) {
+              keys.next();
+
+              String contentType = data.contentType();
+
+              part.setLong(1, keys.getLong(1));
+              part.setString(2, contentType);
+              part.setLong(3, 1000 + data.nextInt(5_000_000));
+              part.setLong(4, date);
+              part.setString(5, "/data/parts/part" + keys.getLong(1) + ".mms");
+              part.setInt(6, AttachmentDatabase.getMediaKind(contentType));
+              part.setLong(7, threadId);
+              part.setLong(8, date);
+              part.executeUpdate();
+            }
+          } else {
+            sms.setLong(1, threadId);
+            sms.setString(2, recipients.get(i));
+            sms.setLong(3, date);
+            sms.setLong(4, date);
+            sms.setString(5, body);
+            sms.setLong(6, type);
+            sms.executeUpdate();
+          }
+        }
+      }
+
+      connection.commit();
+    } finally {
+      connection.setAutoCommit(true);
+    }
+  }
+
+  private void execute(String... statements) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      for (String sql : statements) {
+        statement.execute(sql);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package org.thoughtcrime.securesms.database;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * First paint and a full scroll of a thread's media gallery of 20,000 images, with the
+ * queries {@link MediaDatabase} runs.
+ *
+ * First paint reads the month sections and the first window of 120 items, against reading
+ * every item at once. A full scroll reads every window in turn, either by re-running the
+ * query with a limit one window larger each time, or by reading each window after the last
+ * row of the one before it.
+ */
+public class MediaGalleryBenchmark {
+
+  private static final long THREAD_ID   = 1;
+  private static final int  ATTACHMENTS = 20_000;
+  private static final int  WINDOW_SIZE = 120;
+
+  private final SyntheticData data = new SyntheticData();
+
+  private InMemoryDatabase database;
+
+  @Before
+  public void setUp() throws Exception {
+    database = new InMemoryDatabase();
+
+    long now = System.currentTimeMillis();
+
+    database.getConnection().setAutoCommit(false);
+
+    try (PreparedStatement mms  = database.getConnection().prepareStatement("INSERT INTO " + MmsDatabase.TABLE_NAME + " (" +
+                                                                            MmsDatabase.THREAD_ID + ", " + MmsDatabase.DATE_SENT + ", " +
+                                                                            MmsDatabase.DATE_RECEIVED + ", " + MmsDatabase.MESSAGE_BOX + ", " +
+                                                                            MmsDatabase.PART_COUNT + ") VALUES (?, ?, ?, ?, 1)",
+                                                                            Statement.RETURN_GENERATED_KEYS);
+         PreparedStatement part = database.getConnection().prepareStatement("INSERT INTO " + AttachmentDatabase.TABLE_NAME + " (" +
+                                                                            AttachmentDatabase.MMS_ID + ", " + AttachmentDatabase.CONTENT_TYPE + ", " +
+                                                                            AttachmentDatabase.SIZE + ", " + AttachmentDatabase.UNIQUE_ID + ", " +
+                                                                            AttachmentDatabase.DATA + ", " + AttachmentDatabase.MEDIA_KIND + ", " +
+                                                                            AttachmentDatabase.MEDIA_THREAD_ID + ", " + AttachmentDatabase.MEDIA_DATE +
+                                                                            ") VALUES (?, 'image/jpeg', ?, ?, ?, ?, ?, ?)"))
+    {
+      for (int i=0;i<ATTACHMENTS;i++) {
+        long date = now - (ATTACHMENTS - i) * 20 * 60_000L;
+
+        mms.setLong(1, THREAD_ID);
+        mms.setLong(2, date);
+        mms.setLong(3, date);
+        mms.setLong(4, MmsSmsColumns.Types.BASE_INBOX_TYPE);
+        mms.executeUpdate();
+
+        try (ResultSet keys = mms.getGeneratedKeys()) {
+          keys.next();
+
+          part.setLong(1, keys.getLong(1));
+          part.setLong(2, 1000 + data.nextInt(5_000_000));
+          part.setLong(3, date);
+          part.setString(4, "/data/parts/part" + keys.getLong(1) + ".mms");
+          part.setInt(5, AttachmentDatabase.MEDIA_KIND_IMAGE);
+          part.setLong(6, THREAD_ID);
+          part.setLong(7, date);
+          part.executeUpdate();
+        }
+      }
+
+      database.getConnection().commit();
+    } finally {
+      database.getConnection().setAutoCommit(true);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    database.close();
+  }
+
+  @Test
+  public void firstPaintAllItems() throws Exception {
+    final PreparedStatement query = database.getConnection().prepareStatement(MediaDatabase.getMediaForThreadQuery(0));
+
+    Benchmarks.write(Benchmarks.measure("MediaGallery.firstPaint.allItems", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        query.setLong(1, THREAD_ID);
+        return readWindow(query).rows;
+      }
+    }).withMetric("attachments", ATTACHMENTS));
+
+    query.close();
+  }
+
+  @Test
+  public void firstPaintWindow() throws Exception {
+    final PreparedStatement sections = database.getConnection().prepareStatement(MediaDatabase.getMediaSectionsForThreadQuery());
+    final PreparedStatement query    = database.getConnection().prepareStatement(MediaDatabase.getMediaForThreadQuery(WINDOW_SIZE));
+
+    Benchmarks.write(Benchmarks.measure("MediaGallery.firstPaint.window", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        int rows = 0;
+
+        sections.setLong(1, THREAD_ID);
+
+        try (ResultSet cursor = sections.executeQuery()) {
+          while (cursor.next()) rows += cursor.getInt(2);
+        }
+
+        query.setLong(1, THREAD_ID);
+        return rows + readWindow(query).rows;
+      }
+    }).withMetric("attachments", ATTACHMENTS)
+      .withMetric("windowSize", WINDOW_SIZE));
+
+    sections.close();
+    query.close();
+  }
+
+  @Test
+  public void scrollGrowingLimit() throws Exception {
+    Benchmarks.write(Benchmarks.measure("MediaGallery.scroll.growingLimit", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        long rowsRead = 0;
+
+        for (int limit=WINDOW_SIZE;;limit+=WINDOW_SIZE) {
+          try (PreparedStatement query = database.getConnection().prepareStatement(MediaDatabase.getMediaForThreadQuery(limit))) {
+            query.setLong(1, THREAD_ID);
+
+            int rows = readWindow(query).rows;
+            rowsRead += rows;
+
+            if (rows < limit) return rowsRead;
+          }
+        }
+      }
+    }).withMetric("attachments", ATTACHMENTS)
+      .withMetric("windowSize", WINDOW_SIZE)
+      .withMetric("rowsReadPerScroll", rowsReadGrowingLimit()));
+  }
+
+  @Test
+  public void scrollKeyset() throws Exception {
+    final PreparedStatement first = database.getConnection().prepareStatement(MediaDatabase.getMediaForThreadQuery(WINDOW_SIZE));
+    final PreparedStatement after = database.getConnection().prepareStatement(MediaDatabase.getMediaForThreadQuery(WINDOW_SIZE, true));
+
+    Benchmarks.write(Benchmarks.measure("MediaGallery.scroll.keyset", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        first.setLong(1, THREAD_ID);
+
+        Window window   = readWindow(first);
+        long   rowsRead = window.rows;
+
+        while (window.rows == WINDOW_SIZE) {
+          after.setLong(1, THREAD_ID);
+          after.setLong(2, window.lastDate);
+          after.setLong(3, window.lastDate);
+          after.setLong(4, window.lastRowId);
+
+          window    = readWindow(after);
+          rowsRead += window.rows;
+        }
+
+        return rowsRead;
+      }
+    }).withMetric("attachments", ATTACHMENTS)
+      .withMetric("windowSize", WINDOW_SIZE)
+      .withMetric("rowsReadPerScroll", ATTACHMENTS));
+
+    first.close();
+    after.close();
+  }
+
+  private static long rowsReadGrowingLimit() {
+    long rowsRead = 0;
+
+    for (int limit=WINDOW_SIZE;limit<ATTACHMENTS+WINDOW_SIZE;limit+=WINDOW_SIZE) {
+      rowsRead += Math.min(limit, ATTACHMENTS);
+    }
+
+    return rowsRead;
+  }
+
+  /**
+   * Reads each row's columns the way binding a thumbnail does.
+   */
+  private static Window readWindow(PreparedStatement query) throws SQLException {
+    Window window = new Window();
+
+    try (ResultSet cursor = query.executeQuery()) {
+      while (cursor.next()) {
+        cursor.getString(AttachmentDatabase.CONTENT_TYPE);
+        cursor.getString(AttachmentDatabase.DATA);
+        cursor.getLong(MmsDatabase.DATE_RECEIVED);
+
+        window.lastRowId = cursor.getLong(AttachmentDatabase.ATTACHMENT_ID_ALIAS);
+        window.lastDate  = cursor.getLong(AttachmentDatabase.MEDIA_DATE);
+        window.rows++;
+      }
+    }
+
+    return window;
+  }
+
+  private static class Window {
+    private int  rows;
+    private long lastDate;
+    private long lastRowId;
+  }
+}
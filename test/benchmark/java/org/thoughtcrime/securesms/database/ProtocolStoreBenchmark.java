@@ -0,0 +1,291 @@
+package org.thoughtcrime.securesms.database;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+import org.whispersystems.libsignal.SessionBuilder;
+import org.whispersystems.libsignal.SessionCipher;
+import org.whispersystems.libsignal.SignalProtocolAddress;
+import org.whispersystems.libsignal.ecc.Curve;
+import org.whispersystems.libsignal.ecc.ECKeyPair;
+import org.whispersystems.libsignal.protocol.CiphertextMessage;
+import org.whispersystems.libsignal.protocol.PreKeySignalMessage;
+import org.whispersystems.libsignal.protocol.SignalMessage;
+import org.whispersystems.libsignal.state.PreKeyBundle;
+import org.whispersystems.libsignal.state.PreKeyRecord;
+import org.whispersystems.libsignal.state.SignalProtocolStore;
+import org.whispersystems.libsignal.state.SignedPreKeyRecord;
+import org.whispersystems.libsignal.state.impl.InMemorySignalProtocolStore;
+import org.whispersystems.libsignal.util.KeyHelper;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Benchmarks receiving a message end to end: the sender encrypts, the receiver decrypts,
+ * persists the ratcheted session and stores the message, and the envelope leaves the push
+ * queue. It compares sessions in files beside autocommitted message writes with sessions in
+ * the database committed alongside their messages, one message or a batch per transaction.
+ *
+ * The database is a file in WAL mode with synchronous=FULL, as on device, so every commit
+ * syncs the log. The JVM can't count those syncs, so each result reports the commits and
+ * file writes made per message instead.
+ */
+public class ProtocolStoreBenchmark {
+
+  private static final int BATCH_SIZE = 50;
+
+  private static final SignalProtocolAddress ALICE = new SignalProtocolAddress("+14151111111", 1);
+  private static final SignalProtocolAddress BOB   = new SignalProtocolAddress("+14152222222", 1);
+
+  private static final String INSERT_PUSH = "INSERT INTO " + PushDatabase.TABLE_NAME + " (" + PushDatabase.TYPE + ", " +
+                                            PushDatabase.SOURCE + ", " + PushDatabase.DEVICE_ID + ", " +
+                                            PushDatabase.CONTENT + ", " + PushDatabase.TIMESTAMP + ") VALUES (?, ?, ?, ?, ?)";
+
+  private static final String SELECT_PUSH = "SELECT " + PushDatabase.CONTENT + " FROM " + PushDatabase.TABLE_NAME + " WHERE " + PushDatabase.ID + " = ?";
+
+  private static final String DELETE_PUSH = "DELETE FROM " + PushDatabase.TABLE_NAME + " WHERE " + PushDatabase.ID + " = ?";
+
+  private static final String INSERT_SMS = "INSERT INTO " + SmsDatabase.TABLE_NAME + " (" + SmsDatabase.THREAD_ID + ", " +
+                                           SmsDatabase.ADDRESS + ", " + SmsDatabase.DATE_SENT + ", " +
+                                           SmsDatabase.DATE_RECEIVED + ", " + SmsDatabase.BODY + ", " +
+                                           SmsDatabase.TYPE + ") VALUES (1, ?, ?, ?, ?, ?)";
+
+  private static final String STORE_SESSION = "INSERT INTO " + SessionDatabase.TABLE_NAME + " (" + SessionDatabase.ADDRESS + ", " +
+                                              SessionDatabase.DEVICE + ", " + SessionDatabase.RECORD + ") VALUES (?, ?, ?)";
+
+  private final SyntheticData data = new SyntheticData();
+
+  private File       databaseFile;
+  private File       sessionFile;
+  private Connection connection;
+
+  private SignalProtocolStore aliceStore;
+  private SignalProtocolStore bobStore;
+  private SessionCipher       aliceCipher;
+  private SessionCipher       bobCipher;
+
+  private PreparedStatement insertPush;
+  private PreparedStatement selectPush;
+  private PreparedStatement deletePush;
+  private PreparedStatement insertSms;
+  private PreparedStatement storeSession;
+
+  private long timestamp = System.currentTimeMillis();
+
+  @Before
+  public void setUp() throws Exception {
+    databaseFile = File.createTempFile("benchmark", ".db");
+    sessionFile  = File.createTempFile("benchmark", ".session");
+    connection   = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("PRAGMA journal_mode = WAL");
+      statement.execute("PRAGMA synchronous = FULL");
+      statement.execute(SmsDatabase.CREATE_TABLE);
+      statement.execute(PushDatabase.CREATE_TABLE);
+      statement.execute(SessionDatabase.CREATE_TABLE);
+    }
+
+    insertPush   = connection.prepareStatement(INSERT_PUSH, Statement.RETURN_GENERATED_KEYS);
+    selectPush   = connection.prepareStatement(SELECT_PUSH);
+    deletePush   = connection.prepareStatement(DELETE_PUSH);
+    insertSms    = connection.prepareStatement(INSERT_SMS);
+    storeSession = connection.prepareStatement(STORE_SESSION);
+
+    initializeSession();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+    databaseFile.delete();
+    new File(databaseFile.getAbsolutePath() + "-wal").delete();
+    new File(databaseFile.getAbsolutePath() + "-shm").delete();
+    sessionFile.delete();
+  }
+
+  @Test
+  public void sessionFiles() throws Exception {
+    Benchmarks.write(Benchmarks.measure("PushDecryptJob.sessionFile", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        long   pushId = receive();
+        byte[] body   = decrypt(pushId);
+
+        writeSessionFile();
+        insertMessage(body);
+        deletePush(pushId);
+
+        return body;
+      }
+    }).withMetric("commitsPerMessage", 3).withMetric("fileWritesPerMessage", 1));
+  }
+
+  @Test
+  public void transactionPerMessage() throws Exception {
+    Benchmarks.write(Benchmarks.measure("PushDecryptJob.transactionPerMessage", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        long pushId = receive();
+
+        connection.setAutoCommit(false);
+
+        try {
+          byte[] body = decrypt(pushId);
+
+          storeSession();
+          insertMessage(body);
+          deletePush(pushId);
+          connection.commit();
+
+          return body;
+        } finally {
+          connection.setAutoCommit(true);
+        }
+      }
+    }).withMetric("commitsPerMessage", 2).withMetric("fileWritesPerMessage", 0));
+  }
+
+  @Test
+  public void transactionPerBatch() throws Exception {
+    Benchmarks.write(Benchmarks.measure("PushDecryptJob.transactionPerBatch", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        long[] pushIds = new long[BATCH_SIZE];
+
+        for (int i=0;i<BATCH_SIZE;i++) {
+          pushIds[i] = receive();
+        }
+
+        connection.setAutoCommit(false);
+
+        try {
+          for (long pushId : pushIds) {
+            byte[] body = decrypt(pushId);
+
+            storeSession();
+            insertMessage(body);
+            deletePush(pushId);
+          }
+
+          connection.commit();
+
+          return pushIds;
+        } finally {
+          connection.setAutoCommit(true);
+        }
+      }
+    }).withMetric("messagesPerOperation", BATCH_SIZE)
+      .withMetric("commitsPerMessage", 1 + 1d / BATCH_SIZE)
+      .withMetric("fileWritesPerMessage", 0));
+  }
+
+  /**
+   * Alice encrypts a message and it's queued for Bob the way the receive jobs queue envelopes,
+   * one autocommitted insert each.
+   */
+  private long receive() throws Exception {
+    CiphertextMessage message = aliceCipher.encrypt(data.messageBody().getBytes());
+
+    insertPush.setInt(1, message.getType());
+    insertPush.setString(2, ALICE.getName());
+    insertPush.setInt(3, ALICE.getDeviceId());
+    insertPush.setBytes(4, message.serialize());
+    insertPush.setLong(5, timestamp++);
+    insertPush.executeUpdate();
+
+    try (ResultSet keys = insertPush.getGeneratedKeys()) {
+      keys.next();
+      return keys.getLong(1);
+    }
+  }
+
+  private byte[] decrypt(long pushId) throws Exception {
+    selectPush.setLong(1, pushId);
+
+    try (ResultSet cursor = selectPush.executeQuery()) {
+      cursor.next();
+      return bobCipher.decrypt(new SignalMessage(cursor.getBytes(1)));
+    }
+  }
+
+  private void insertMessage(byte[] body) throws SQLException {
+    insertSms.setString(1, ALICE.getName());
+    insertSms.setLong(2, timestamp);
+    insertSms.setLong(3, timestamp);
+    insertSms.setString(4, new String(body));
+    insertSms.setLong(5, MmsSmsColumns.Types.BASE_INBOX_TYPE);
+    insertSms.executeUpdate();
+  }
+
+  private void deletePush(long pushId) throws SQLException {
+    deletePush.setLong(1, pushId);
+    deletePush.executeUpdate();
+  }
+
+  private void storeSession() throws SQLException {
+    storeSession.setString(1, ALICE.getName());
+    storeSession.setInt(2, ALICE.getDeviceId());
+    storeSession.setBytes(3, bobStore.loadSession(ALICE).serialize());
+    storeSession.executeUpdate();
+  }
+
+  /**
+   * Writes the session the way the file store did, a version and a length-prefixed record
+   * written in place and truncated, without a sync.
+   */
+  private void writeSessionFile() throws Exception {
+    byte[] record = bobStore.loadSession(ALICE).serialize();
+
+    try (RandomAccessFile file = new RandomAccessFile(sessionFile, "rw")) {
+      FileChannel out    = file.getChannel();
+      ByteBuffer  buffer = ByteBuffer.allocate(8 + record.length);
+
+      buffer.putInt(3).putInt(record.length).put(record).flip();
+
+      out.position(0);
+      out.write(buffer);
+      out.truncate(out.position());
+    }
+  }
+
+  /**
+   * Sets up a session from Bob's pre-key bundle and has Bob reply once, so that Alice's
+   * messages after that are plain {@link SignalMessage}s.
+   */
+  private void initializeSession() throws Exception {
+    aliceStore = new InMemorySignalProtocolStore(KeyHelper.generateIdentityKeyPair(), KeyHelper.generateRegistrationId(false));
+    bobStore   = new InMemorySignalProtocolStore(KeyHelper.generateIdentityKeyPair(), KeyHelper.generateRegistrationId(false));
+
+    ECKeyPair preKey       = Curve.generateKeyPair();
+    ECKeyPair signedPreKey = Curve.generateKeyPair();
+    byte[]    signature    = Curve.calculateSignature(bobStore.getIdentityKeyPair().getPrivateKey(),
+                                                      signedPreKey.getPublicKey().serialize());
+
+    bobStore.storePreKey(1, new PreKeyRecord(1, preKey));
+    bobStore.storeSignedPreKey(1, new SignedPreKeyRecord(1, System.currentTimeMillis(), signedPreKey, signature));
+
+    new SessionBuilder(aliceStore, BOB).process(new PreKeyBundle(bobStore.getLocalRegistrationId(), BOB.getDeviceId(),
+                                                                 1, preKey.getPublicKey(),
+                                                                 1, signedPreKey.getPublicKey(), signature,
+                                                                 bobStore.getIdentityKeyPair().getPublicKey()));
+
+    aliceCipher = new SessionCipher(aliceStore, BOB);
+    bobCipher   = new SessionCipher(bobStore, ALICE);
+
+    bobCipher.decrypt(new PreKeySignalMessage(aliceCipher.encrypt("hello".getBytes()).serialize()));
+    aliceCipher.decrypt(new SignalMessage(bobCipher.encrypt("hello".getBytes()).serialize()));
+  }
+}
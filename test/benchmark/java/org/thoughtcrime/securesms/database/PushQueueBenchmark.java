@@ -0,0 +1,348 @@
+package org.thoughtcrime.securesms.database;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+import org.thoughtcrime.securesms.util.Base64;
+import org.whispersystems.signalservice.api.messages.SignalServiceEnvelope;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Push queue throughput: each operation enqueues 50 envelopes of about 1KB and then
+ * dequeues them, as when a burst of messages arrives and is decrypted.
+ *
+ * The old queue kept bodies as Base64 TEXT, looked each envelope up by its full encoded row
+ * before inserting it, and read and deleted envelopes one at a time. The new queue stores
+ * blobs with INSERT OR IGNORE against the unique index. It's measured one envelope per
+ * commit, as the receive path inserts them, and batched: one transaction to enqueue and one
+ * to dequeue, claiming ten at a time as {@link PushDatabase#claim(long[])} does.
+ */
+public class PushQueueBenchmark {
+
+  private static final int BATCH_SIZE = 50;
+  private static final int CLAIM_SIZE = 10;
+  private static final int TYPE       = 1;
+
+  private static final String LEGACY_CREATE_TABLE = "CREATE TABLE " + PushDatabase.TABLE_NAME + " (" + PushDatabase.ID + " INTEGER PRIMARY KEY, " +
+                                                    PushDatabase.TYPE + " INTEGER, " + PushDatabase.SOURCE + " TEXT, " + PushDatabase.DEVICE_ID + " INTEGER, " +
+                                                    PushDatabase.LEGACY_MSG + " TEXT, " + PushDatabase.CONTENT + " TEXT, " + PushDatabase.TIMESTAMP + " INTEGER);";
+
+  private static final String LEGACY_FIND = "SELECT * FROM " + PushDatabase.TABLE_NAME + " WHERE " + PushDatabase.TYPE + " = ? AND " +
+                                            PushDatabase.SOURCE + " = ? AND " + PushDatabase.DEVICE_ID + " = ? AND " +
+                                            PushDatabase.LEGACY_MSG + " = ? AND " + PushDatabase.CONTENT + " = ? AND " +
+                                            PushDatabase.TIMESTAMP + " = ?";
+
+  private static final String LEGACY_INSERT = "INSERT INTO " + PushDatabase.TABLE_NAME + " (" + PushDatabase.TYPE + ", " + PushDatabase.SOURCE + ", " +
+                                              PushDatabase.DEVICE_ID + ", " + PushDatabase.LEGACY_MSG + ", " + PushDatabase.CONTENT + ", " +
+                                              PushDatabase.TIMESTAMP + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+  private static final String SELECT_ENVELOPE = "SELECT * FROM " + PushDatabase.TABLE_NAME + " WHERE " + PushDatabase.ID + " = ?";
+  private static final String DELETE_ENVELOPE = "DELETE FROM " + PushDatabase.TABLE_NAME + " WHERE " + PushDatabase.ID + " = ?";
+  private static final String SELECT_CLAIM    = "SELECT * FROM " + PushDatabase.TABLE_NAME + " WHERE " + PushDatabase.getIdsWhere(CLAIM_SIZE);
+  private static final String DELETE_CLAIM    = "DELETE FROM " + PushDatabase.TABLE_NAME + " WHERE " + PushDatabase.getIdsWhere(CLAIM_SIZE);
+  private static final String STORED_BYTES    = "SELECT SUM(LENGTH(" + PushDatabase.CONTENT + ")) FROM " + PushDatabase.TABLE_NAME;
+
+  private final SyntheticData data = new SyntheticData();
+
+  private Connection                  connection;
+  private List<SignalServiceEnvelope> envelopes;
+  private List<String>                sources;
+
+  private long timestamp = System.currentTimeMillis();
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+    envelopes  = new ArrayList<>(BATCH_SIZE);
+    sources    = data.recipients(BATCH_SIZE);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @Test
+  public void base64PerEnvelope() throws Exception {
+    execute(LEGACY_CREATE_TABLE);
+
+    final PreparedStatement find   = connection.prepareStatement(LEGACY_FIND);
+    final PreparedStatement insert = connection.prepareStatement(LEGACY_INSERT, Statement.RETURN_GENERATED_KEYS);
+    final PreparedStatement select = connection.prepareStatement(SELECT_ENVELOPE);
+    final PreparedStatement delete = connection.prepareStatement(DELETE_ENVELOPE);
+
+    Benchmarks.write(Benchmarks.measure("PushDatabase.base64PerEnvelope", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        List<Long> ids = new LinkedList<>();
+
+        for (SignalServiceEnvelope envelope : nextEnvelopes()) {
+          find.setInt(1, envelope.getType());
+          find.setString(2, envelope.getSource());
+          find.setInt(3, envelope.getSourceDevice());
+          find.setString(4, envelope.hasLegacyMessage() ? Base64.encodeBytes(envelope.getLegacyMessage()) : "");
+          find.setString(5, envelope.hasContent() ? Base64.encodeBytes(envelope.getContent()) : "");
+          find.setLong(6, envelope.getTimestamp());
+
+          try (ResultSet cursor = find.executeQuery()) {
+            if (cursor.next()) {
+              ids.add(cursor.getLong(PushDatabase.ID));
+              continue;
+            }
+          }
+
+          insert.setInt(1, envelope.getType());
+          insert.setString(2, envelope.getSource());
+          insert.setInt(3, envelope.getSourceDevice());
+          insert.setString(4, envelope.hasLegacyMessage() ? Base64.encodeBytes(envelope.getLegacyMessage()) : "");
+          insert.setString(5, envelope.hasContent() ? Base64.encodeBytes(envelope.getContent()) : "");
+          insert.setLong(6, envelope.getTimestamp());
+          ids.add(executeInsert(insert));
+        }
+
+        int dequeued = 0;
+
+        for (long id : ids) {
+          select.setLong(1, id);
+
+          try (ResultSet cursor = select.executeQuery()) {
+            if (cursor.next() && readLegacyEnvelope(cursor) != null) dequeued++;
+          }
+
+          delete.setLong(1, id);
+          delete.executeUpdate();
+        }
+
+        return dequeued;
+      }
+    }).withMetric("envelopesPerOperation", BATCH_SIZE)
+      .withMetric("commitsPerOperation", BATCH_SIZE * 2)
+      .withMetric("storedBytesPerEnvelope", getStoredBytesPerEnvelope(insertLegacyBatch(insert))));
+
+    find.close();
+    insert.close();
+    select.close();
+    delete.close();
+  }
+
+  @Test
+  public void blobPerEnvelope() throws Exception {
+    execute(PushDatabase.CREATE_TABLE);
+    execute(PushDatabase.CREATE_INDEXS);
+
+    final PreparedStatement insert = connection.prepareStatement(PushDatabase.INSERT_OR_IGNORE, Statement.RETURN_GENERATED_KEYS);
+    final PreparedStatement select = connection.prepareStatement(SELECT_ENVELOPE);
+    final PreparedStatement delete = connection.prepareStatement(DELETE_ENVELOPE);
+
+    Benchmarks.write(Benchmarks.measure("PushDatabase.blobPerEnvelope", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        List<Long> ids = new LinkedList<>();
+
+        for (SignalServiceEnvelope envelope : nextEnvelopes()) {
+          ids.add(insert(insert, envelope));
+        }
+
+        int dequeued = 0;
+
+        for (long id : ids) {
+          select.setLong(1, id);
+
+          try (ResultSet cursor = select.executeQuery()) {
+            if (cursor.next() && readEnvelope(cursor) != null) dequeued++;
+          }
+
+          delete.setLong(1, id);
+          delete.executeUpdate();
+        }
+
+        return dequeued;
+      }
+    }).withMetric("envelopesPerOperation", BATCH_SIZE)
+      .withMetric("commitsPerOperation", BATCH_SIZE * 2)
+      .withMetric("storedBytesPerEnvelope", getStoredBytesPerEnvelope(insertBatch(insert))));
+
+    insert.close();
+    select.close();
+    delete.close();
+  }
+
+  @Test
+  public void blobBatchedClaim() throws Exception {
+    execute(PushDatabase.CREATE_TABLE);
+    execute(PushDatabase.CREATE_INDEXS);
+
+    final PreparedStatement insert = connection.prepareStatement(PushDatabase.INSERT_OR_IGNORE, Statement.RETURN_GENERATED_KEYS);
+    final PreparedStatement select = connection.prepareStatement(SELECT_CLAIM);
+    final PreparedStatement delete = connection.prepareStatement(DELETE_CLAIM);
+
+    Benchmarks.write(Benchmarks.measure("PushDatabase.blobBatchedClaim", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        long[] ids      = insertBatch(insert);
+        int    dequeued = 0;
+
+        connection.setAutoCommit(false);
+
+        try {
+          for (int i=0;i<ids.length;i+=CLAIM_SIZE) {
+            dequeued += claim(select, delete, Arrays.copyOfRange(ids, i, i + CLAIM_SIZE)).size();
+          }
+
+          connection.commit();
+        } finally {
+          connection.setAutoCommit(true);
+        }
+
+        return dequeued;
+      }
+    }).withMetric("envelopesPerOperation", BATCH_SIZE)
+      .withMetric("commitsPerOperation", 2)
+      .withMetric("storedBytesPerEnvelope", getStoredBytesPerEnvelope(insertBatch(insert))));
+
+    insert.close();
+    select.close();
+    delete.close();
+  }
+
+  private List<SignalServiceEnvelope> nextEnvelopes() {
+    envelopes.clear();
+
+    for (int i=0;i<BATCH_SIZE;i++) {
+      envelopes.add(new SignalServiceEnvelope(TYPE, sources.get(i), 1, "", timestamp++, null,
+                                              data.attachment(768 + data.nextInt(512))));
+    }
+
+    return envelopes;
+  }
+
+  private long[] insertBatch(PreparedStatement insert) throws SQLException {
+    long[] ids = new long[BATCH_SIZE];
+    int    i   = 0;
+
+    connection.setAutoCommit(false);
+
+    try {
+      for (SignalServiceEnvelope envelope : nextEnvelopes()) {
+        ids[i++] = insert(insert, envelope);
+      }
+
+      connection.commit();
+    } finally {
+      connection.setAutoCommit(true);
+    }
+
+    return ids;
+  }
+
+  private long[] insertLegacyBatch(PreparedStatement insert) throws SQLException {
+    long[] ids = new long[BATCH_SIZE];
+    int    i   = 0;
+
+    for (SignalServiceEnvelope envelope : nextEnvelopes()) {
+      insert.setInt(1, envelope.getType());
+      insert.setString(2, envelope.getSource());
+      insert.setInt(3, envelope.getSourceDevice());
+      insert.setString(4, "");
+      insert.setString(5, Base64.encodeBytes(envelope.getContent()));
+      insert.setLong(6, envelope.getTimestamp());
+      ids[i++] = executeInsert(insert);
+    }
+
+    return ids;
+  }
+
+  private long insert(PreparedStatement insert, SignalServiceEnvelope envelope) throws SQLException {
+    insert.setInt(1, envelope.getType());
+    insert.setString(2, envelope.getSource());
+    insert.setInt(3, envelope.getSourceDevice());
+    insert.setBytes(4, envelope.hasLegacyMessage() ? envelope.getLegacyMessage() : null);
+    insert.setBytes(5, envelope.hasContent() ? envelope.getContent() : null);
+    insert.setLong(6, envelope.getTimestamp());
+
+    return executeInsert(insert);
+  }
+
+  private Map<Long, SignalServiceEnvelope> claim(PreparedStatement select, PreparedStatement delete, long[] ids)
+      throws SQLException
+  {
+    Map<Long, SignalServiceEnvelope> claimed = new LinkedHashMap<>(ids.length);
+
+    for (int i=0;i<ids.length;i++) {
+      select.setLong(i + 1, ids[i]);
+      delete.setLong(i + 1, ids[i]);
+    }
+
+    try (ResultSet cursor = select.executeQuery()) {
+      while (cursor.next()) {
+        claimed.put(cursor.getLong(PushDatabase.ID), readEnvelope(cursor));
+      }
+    }
+
+    delete.executeUpdate();
+
+    return claimed;
+  }
+
+  private double getStoredBytesPerEnvelope(long[] ids) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet cursor    = statement.executeQuery(STORED_BYTES))
+    {
+      return cursor.next() ? (double)cursor.getLong(1) / ids.length : -1;
+    }
+  }
+
+  private static long executeInsert(PreparedStatement insert) throws SQLException {
+    insert.executeUpdate();
+
+    try (ResultSet keys = insert.getGeneratedKeys()) {
+      return keys.next() ? keys.getLong(1) : -1;
+    }
+  }
+
+  private static SignalServiceEnvelope readEnvelope(ResultSet cursor) throws SQLException {
+    return new SignalServiceEnvelope(cursor.getInt(PushDatabase.TYPE),
+                                     cursor.getString(PushDatabase.SOURCE),
+                                     cursor.getInt(PushDatabase.DEVICE_ID),
+                                     "",
+                                     cursor.getLong(PushDatabase.TIMESTAMP),
+                                     cursor.getBytes(PushDatabase.LEGACY_MSG),
+                                     cursor.getBytes(PushDatabase.CONTENT));
+  }
+
+  private static SignalServiceEnvelope readLegacyEnvelope(ResultSet cursor) throws Exception {
+    String legacyMessage = cursor.getString(PushDatabase.LEGACY_MSG);
+    String content       = cursor.getString(PushDatabase.CONTENT);
+
+    return new SignalServiceEnvelope(cursor.getInt(PushDatabase.TYPE),
+                                     cursor.getString(PushDatabase.SOURCE),
+                                     cursor.getInt(PushDatabase.DEVICE_ID),
+                                     "",
+                                     cursor.getLong(PushDatabase.TIMESTAMP),
+                                     legacyMessage == null || legacyMessage.isEmpty() ? null : Base64.decode(legacyMessage),
+                                     content == null || content.isEmpty() ? null : Base64.decode(content));
+  }
+
+  private void execute(String... statements) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      for (String sql : statements) {
+        statement.execute(sql);
+      }
+    }
+  }
+}
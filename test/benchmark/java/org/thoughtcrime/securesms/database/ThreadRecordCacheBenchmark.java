@@ -0,0 +1,108 @@
+package org.thoughtcrime.securesms.database;
+
+
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.thoughtcrime.securesms.BaseUnitTest;
+import org.thoughtcrime.securesms.benchmark.BenchmarkResult;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+import org.thoughtcrime.securesms.crypto.MasterCipher;
+import org.thoughtcrime.securesms.database.model.DisplayRecord;
+import org.thoughtcrime.securesms.database.model.ThreadRecord;
+import org.thoughtcrime.securesms.recipients.Recipient;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * The per-row cost of reading a thread record for the conversation list while it scrolls
+ * through 200 threads, decrypting every snippet as before and reusing the records in a
+ * {@link ThreadRecordCache}.
+ *
+ * Each operation reads the record for the next row, which is what binding a row costs before
+ * the view is touched. Each result reports the time per row and how many rows fit in the
+ * 16ms budget of a frame at 60fps. Resolving the recipient, which a cache hit also skips
+ * unless it's already cached, needs a device and isn't included. Frame and bind times on
+ * device are in the "ConversationList" line of a debug log.
+ */
+@PowerMockIgnore("javax.crypto.*")
+public class ThreadRecordCacheBenchmark extends BaseUnitTest {
+
+  private static final int  THREADS      = 200;
+  private static final long FRAME_NANOS  = TimeUnit.MILLISECONDS.toNanos(16);
+  private static final long SNIPPET_TYPE = MmsSmsColumns.Types.BASE_INBOX_TYPE | MmsSmsColumns.Types.ENCRYPTION_SYMMETRIC_BIT;
+
+  private final SyntheticData data = new SyntheticData();
+
+  private MasterCipher masterCipher;
+  private String[]     snippets;
+  private Recipient[]  recipients;
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+
+    masterCipher = new MasterCipher(masterSecret);
+    snippets     = new String[THREADS];
+    recipients   = new Recipient[THREADS];
+
+    for (int i=0;i<THREADS;i++) {
+      snippets[i]   = masterCipher.encryptBody(data.messageBody());
+      recipients[i] = mock(Recipient.class);
+    }
+  }
+
+  @Test
+  public void uncached() throws Exception {
+    run("ThreadRecord.read.uncached", new Benchmarks.Operation() {
+      int row = 0;
+
+      @Override
+      public Object run() throws Exception {
+        int thread = row++ % THREADS;
+        return createRecord(thread, new DisplayRecord.Body(masterCipher.decryptBody(snippets[thread]), true));
+      }
+    });
+  }
+
+  @Test
+  public void cached() throws Exception {
+    final ThreadRecordCache cache = new ThreadRecordCache();
+
+    run("ThreadRecord.read.cached", new Benchmarks.Operation() {
+      int row = 0;
+
+      @Override
+      public Object run() throws Exception {
+        int          thread = row++ % THREADS;
+        ThreadRecord cached = cache.get(thread, thread, SNIPPET_TYPE, snippets[thread]);
+
+        if (cached != null) {
+          return createRecord(thread, cached.getBody());
+        }
+
+        ThreadRecord record = createRecord(thread, new DisplayRecord.Body(masterCipher.decryptBody(snippets[thread]), true));
+        cache.put(record, snippets[thread]);
+
+        return record;
+      }
+    });
+  }
+
+  private void run(String name, Benchmarks.Operation operation) throws Exception {
+    BenchmarkResult result = Benchmarks.measure(name, operation);
+
+    Benchmarks.write(result.withMetric("threads", THREADS)
+                           .withMetric("rowMicros", result.getNanosPerOperation() / 1000d)
+                           .withMetric("rowsPerFrame", FRAME_NANOS / result.getNanosPerOperation()));
+  }
+
+  private ThreadRecord createRecord(int thread, DisplayRecord.Body body) {
+    return new ThreadRecord(context, body, null, recipients[thread], thread, 1, true, thread, 0, 0,
+                            SNIPPET_TYPE, ThreadDatabase.DistributionTypes.DEFAULT, false, 0, 0);
+  }
+}
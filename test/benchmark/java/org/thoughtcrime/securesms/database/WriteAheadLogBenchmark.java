@@ -0,0 +1,217 @@
+package org.thoughtcrime.securesms.database;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * How long a conversation read takes while another connection keeps committing bursts of
+ * inbound messages, with a rollback journal as before and with the write-ahead log
+ * {@link DatabaseFactory} now enables.
+ *
+ * The database is a file of 20 threads of 500 messages each. The writer commits 20 messages
+ * and a thread update per transaction, as fast as it can. The reader pages through the newest
+ * 50 messages of a random thread. Each result reports the reader's median and 99th percentile
+ * latency and the writer's commit rate over the same period.
+ *
+ * On device a database without WAL has a single connection, so a loader waits behind the
+ * whole writing transaction. Two connections with a rollback journal, which only block a
+ * reader while a commit holds the file, are the more generous baseline.
+ */
+public class WriteAheadLogBenchmark {
+
+  private static final int THREADS             = 20;
+  private static final int MESSAGES_PER_THREAD = 500;
+  private static final int MESSAGES_PER_COMMIT = 20;
+  private static final int PAGE_SIZE           = 50;
+  private static final int BUSY_TIMEOUT_MILLIS = 10_000;
+
+  private static final String PAGE_QUERY =
+      "SELECT * FROM " + SmsDatabase.TABLE_NAME + " WHERE " + SmsDatabase.THREAD_ID + " = ? " +
+      "ORDER BY " + SmsDatabase.DATE_RECEIVED + " DESC LIMIT " + PAGE_SIZE;
+
+  private static final String INSERT_MESSAGE =
+      "INSERT INTO " + SmsDatabase.TABLE_NAME + " (" + SmsDatabase.THREAD_ID + ", " + SmsDatabase.ADDRESS + ", " +
+      SmsDatabase.DATE_SENT + ", " + SmsDatabase.DATE_RECEIVED + ", " + SmsDatabase.BODY + ", " +
+      SmsDatabase.TYPE + ", " + SmsDatabase.READ + ") VALUES (?, '+14155550100', ?, ?, ?, ?, 0)";
+
+  private static final String UPDATE_THREAD =
+      "UPDATE " + ThreadDatabase.TABLE_NAME + " SET " + ThreadDatabase.DATE + " = ?, " +
+      ThreadDatabase.MESSAGE_COUNT + " = " + ThreadDatabase.MESSAGE_COUNT + " + " + MESSAGES_PER_COMMIT + ", " +
+      ThreadDatabase.SNIPPET + " = ? WHERE " + ThreadDatabase.ID + " = ?";
+
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = File.createTempFile("benchmark", ".db");
+  }
+
+  @After
+  public void tearDown() {
+    for (String suffix : new String[] {"", "-journal", "-wal", "-shm"}) {
+      new File(file.getPath() + suffix).delete();
+    }
+  }
+
+  @Test
+  public void rollbackJournal() throws Exception {
+    run("WriteAheadLog.readDuringWrite.rollbackJournal", "TRUNCATE");
+  }
+
+  @Test
+  public void writeAheadLog() throws Exception {
+    run("WriteAheadLog.readDuringWrite.writeAheadLog", "WAL");
+  }
+
+  private void run(String name, String journalMode) throws Exception {
+    try (InMemoryDatabase database = new InMemoryDatabase(openConnection(journalMode));
+         Connection       reader   = openConnection(journalMode))
+    {
+      database.populate(new SyntheticData(), THREADS, MESSAGES_PER_THREAD);
+
+      final PreparedStatement page      = reader.prepareStatement(PAGE_QUERY);
+      final Random            random    = new Random(1);
+      final long[]            latencies = new long[1 << 20];
+      final int[]             reads     = new int[1];
+
+      Writer writer = new Writer(database.getConnection());
+      writer.start();
+
+      try {
+        Benchmarks.Operation operation = new Benchmarks.Operation() {
+          @Override
+          public Object run() throws Exception {
+            long startTime = System.nanoTime();
+            int  rows      = 0;
+
+            page.setLong(1, 1 + random.nextInt(THREADS));
+
+            try (ResultSet cursor = page.executeQuery()) {
+              while (cursor.next()) {
+                cursor.getString(SmsDatabase.BODY);
+                rows++;
+              }
+            }
+
+            latencies[reads[0]++ % latencies.length] = System.nanoTime() - startTime;
+            return rows;
+          }
+        };
+
+        long commitsBefore = writer.getCommits();
+        long startTime     = System.nanoTime();
+
+        Benchmarks.write(Benchmarks.measure(name, operation)
+                                   .withMetric("readP50Millis", percentile(latencies, reads[0], 0.50))
+                                   .withMetric("readP99Millis", percentile(latencies, reads[0], 0.99))
+                                   .withMetric("writerCommitsPerSecond", (writer.getCommits() - commitsBefore) * 1_000_000_000d / (System.nanoTime() - startTime))
+                                   .withMetric("journalMode", journalMode));
+      } finally {
+        writer.finish();
+        page.close();
+      }
+    }
+  }
+
+  private Connection openConnection(String journalMode) throws SQLException {
+    Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("PRAGMA journal_mode = " + journalMode);
+      statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+    }
+
+    return connection;
+  }
+
+  /**
+   * Percentiles are over every read, warmup included.
+   */
+  private static double percentile(long[] latencies, int count, double percentile) {
+    int    recorded = Math.min(count, latencies.length);
+    long[] sorted   = Arrays.copyOf(latencies, recorded);
+
+    Arrays.sort(sorted);
+
+    return recorded == 0 ? -1 : sorted[Math.min(recorded - 1, (int)(recorded * percentile))] / 1_000_000d;
+  }
+
+  private static class Writer extends Thread {
+
+    private final Connection                 connection;
+    private final SyntheticData              data    = new SyntheticData();
+    private final AtomicBoolean              running = new AtomicBoolean(true);
+    private final AtomicLong                 commits = new AtomicLong();
+    private final AtomicReference<Exception> error   = new AtomicReference<>();
+
+    private Writer(Connection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public void run() {
+      try (PreparedStatement insert = connection.prepareStatement(INSERT_MESSAGE);
+           PreparedStatement update = connection.prepareStatement(UPDATE_THREAD))
+      {
+        connection.setAutoCommit(false);
+
+        while (running.get()) {
+          long   threadId = 1 + data.nextInt(THREADS);
+          long   now      = System.currentTimeMillis();
+          String body     = null;
+
+          for (int i=0;i<MESSAGES_PER_COMMIT;i++) {
+            body = data.messageBody();
+
+            insert.setLong(1, threadId);
+            insert.setLong(2, now);
+            insert.setLong(3, now);
+            insert.setString(4, body);
+            insert.setLong(5, MmsSmsColumns.Types.BASE_INBOX_TYPE);
+            insert.executeUpdate();
+          }
+
+          update.setLong(1, now);
+          update.setString(2, body);
+          update.setLong(3, threadId);
+          update.executeUpdate();
+
+          connection.commit();
+          commits.incrementAndGet();
+        }
+      } catch (SQLException e) {
+        error.set(e);
+      }
+    }
+
+    long getCommits() {
+      return commits.get();
+    }
+
+    void finish() throws Exception {
+      running.set(false);
+      join();
+
+      connection.setAutoCommit(true);
+
+      if (error.get() != null) throw error.get();
+    }
+  }
+}
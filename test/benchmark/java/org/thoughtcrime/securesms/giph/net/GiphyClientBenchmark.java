@@ -0,0 +1,168 @@
+package org.thoughtcrime.securesms.giph.net;
+
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.thoughtcrime.securesms.BaseUnitTest;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+/**
+ * Parsing a page of Giphy results, and fetching one from a local server that stands in for
+ * the API with a fixed round trip. Fetches are measured with no response cache, as before,
+ * and through the on-disk cache {@link GiphyClient} now keeps. Each fetch result reports the
+ * bytes that came over the network for one page.
+ */
+@PowerMockIgnore({"javax.net.ssl.*", "com.sun.net.httpserver.*"})
+public class GiphyClientBenchmark extends BaseUnitTest {
+
+  private static final int PAGE_RESULTS          = 25;
+  private static final int RESPONSE_DELAY_MILLIS = 50;
+
+  private static final String[] RENDITIONS = {
+    "fixed_height", "fixed_height_still", "fixed_height_downsampled", "fixed_width",
+    "fixed_width_still", "fixed_width_downsampled", "fixed_height_small", "fixed_width_small",
+    "downsized", "downsized_still", "downsized_large", "original", "original_still", "preview_gif"
+  };
+
+  private final byte[]          response = createResponse(PAGE_RESULTS).getBytes(StandardCharsets.UTF_8);
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  private HttpServer server;
+  private File       cacheDirectory;
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+
+    cacheDirectory = File.createTempFile("giphy", "cache");
+    cacheDirectory.delete();
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          Thread.sleep(RESPONSE_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(response);
+        }
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    executor.shutdownNow();
+
+    File[] cached = cacheDirectory.listFiles();
+
+    if (cached != null) {
+      for (File file : cached) file.delete();
+    }
+
+    cacheDirectory.delete();
+  }
+
+  @Test
+  public void parseImages() throws Exception {
+    Benchmarks.run("GiphyClient.parseImages." + PAGE_RESULTS, new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        return GiphyClient.parseImages(new ByteArrayInputStream(response));
+      }
+    });
+  }
+
+  @Test
+  public void getPageUncached() throws Exception {
+    runGetPage("GiphyClient.getPage.uncached", new GiphyClient(new OkHttpClient.Builder()));
+  }
+
+  @Test
+  public void getPageCached() throws Exception {
+    runGetPage("GiphyClient.getPage.cached", new GiphyClient(new OkHttpClient.Builder().cache(new Cache(cacheDirectory, 5 * 1024 * 1024))));
+  }
+
+  private void runGetPage(String name, final GiphyClient client) throws Exception {
+    final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/gifs/trending?offset=0&limit=" + PAGE_RESULTS;
+
+    client.getPage(url);
+
+    long networkBytes = client.getNetworkBytes();
+    client.getPage(url);
+    long bytesFetchedPerPage = client.getNetworkBytes() - networkBytes;
+
+    Benchmarks.write(Benchmarks.measure(name, new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        return client.getPage(url);
+      }
+    }).withMetric("responseDelayMillis", RESPONSE_DELAY_MILLIS)
+      .withMetric("bytesFetchedPerPage", bytesFetchedPerPage));
+  }
+
+  /**
+   * A page shaped like a real trending response, with every rendition and the user and
+   * analytics metadata the parser has to skip.
+   */
+  private static String createResponse(int count) {
+    StringBuilder json = new StringBuilder("{\"data\":[");
+
+    for (int i=0;i<count;i++) {
+      if (i > 0) json.append(',');
+
+      json.append("{\"type\":\"gif\",\"id\":\"id").append(i).append("\",")
+          .append("\"url\":\"https://giphy.com/gifs/").append(i).append("\",")
+          .append("\"rating\":\"g\",\"import_datetime\":\"2017-01-01 00:00:00\",")
+          .append("\"user\":{\"avatar_url\":\"https://example.com/avatar.png\",\"username\":\"user\",\"display_name\":\"User\"},")
+          .append("\"images\":{");
+
+      for (int j=0;j<RENDITIONS.length;j++) {
+        if (j > 0) json.append(',');
+
+        json.append('"').append(RENDITIONS[j]).append("\":{")
+            .append("\"url\":\"https://media.giphy.com/media/").append(i).append('/').append(RENDITIONS[j]).append(".gif\",")
+            .append("\"width\":\"").append(200 + j).append("\",\"height\":\"200\",")
+            .append("\"size\":\"").append(10000 * (j + 1)).append("\",")
+            .append("\"mp4\":\"https://media.giphy.com/media/").append(i).append('/').append(RENDITIONS[j]).append(".mp4\",")
+            .append("\"webp\":\"https://media.giphy.com/media/").append(i).append('/').append(RENDITIONS[j]).append(".webp\"}");
+      }
+
+      json.append("},\"analytics\":{\"onload\":{\"url\":\"https://example.com/onload\"},\"onclick\":{\"url\":\"https://example.com/onclick\"}}}");
+    }
+
+    json.append("],\"pagination\":{\"total_count\":1000,\"count\":").append(count).append(",\"offset\":0},")
+        .append("\"meta\":{\"status\":200,\"msg\":\"OK\",\"response_id\":\"abc\"}}");
+
+    return json.toString();
+  }
+}
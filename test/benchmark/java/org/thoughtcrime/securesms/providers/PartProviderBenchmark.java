@@ -0,0 +1,235 @@
+package org.thoughtcrime.securesms.providers;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+import org.thoughtcrime.securesms.crypto.DecryptingPartInputStream;
+import org.thoughtcrime.securesms.crypto.EncryptingPartOutputStream;
+import org.thoughtcrime.securesms.crypto.MasterSecret;
+import org.thoughtcrime.securesms.util.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Time to first byte and peak plaintext held when another app opens a 10MB, 100MB or
+ * 500MB attachment through {@link PartProvider}.
+ *
+ * The old provider decrypted the part once to learn its length and again into a MemoryFile
+ * of that length before the receiver could read anything. Off device the MemoryFile is
+ * stood in for by a heap array of the same size. The provider now decrypts once on a
+ * background thread into a pipe, which is stood in for by a piped stream with the 64KB
+ * capacity of a Linux pipe, when the receiver asks for a stream. Otherwise it decrypts once
+ * into an unlinked temporary file, which receivers can seek. In each, the MAC is checked over
+ * the whole part first.
+ *
+ * Peak plaintext is the most decrypted data waiting for the receiver at any one read: the
+ * whole MemoryFile or temporary file, or the copy buffer plus what's queued in the pipe. The
+ * temporary file is on disk rather than in memory, which plaintextOnDiskBytes reports. The
+ * harness only counts allocations on the reading thread, so they don't cover the pipe's
+ * decrypting side.
+ */
+public class PartProviderBenchmark {
+
+  private static final int[] SIZES_MB      = {10, 100, 500};
+  private static final int   MB            = 1024 * 1024;
+  private static final int   PIPE_CAPACITY = 64 * 1024;
+
+  private final SyntheticData   data     = new SyntheticData();
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  private MasterSecret masterSecret;
+  private File         file;
+
+  @Before
+  public void setUp() throws Exception {
+    masterSecret = new MasterSecret(new SecretKeySpec(data.attachment(16), "AES"),
+                                    new SecretKeySpec(data.attachment(20), "HmacSHA1"));
+    file         = File.createTempFile("benchmark", ".mms");
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    file.delete();
+  }
+
+  @Test
+  public void memoryFile() throws Exception {
+    for (int size : SIZES_MB) {
+      writeAttachment(size);
+
+      final Transfer transfer = new Transfer();
+
+      Benchmarks.write(Benchmarks.measure("PartProvider.memoryFile." + size + "MB", new Benchmarks.Operation() {
+        @Override
+        public Object run() throws Exception {
+          long startTime = System.nanoTime();
+          long plaintextLength;
+
+          try (InputStream in = DecryptingPartInputStream.createFor(masterSecret, file)) {
+            plaintextLength = Util.getStreamLength(in);
+          }
+
+          byte[] memoryFile = new byte[Util.toIntExact(plaintextLength)];
+
+          try (InputStream in = DecryptingPartInputStream.createFor(masterSecret, file)) {
+            readFully(in, memoryFile);
+          }
+
+          return transfer.receive(new ByteArrayInputStream(memoryFile), startTime, 0);
+        }
+      }).withMetric("timeToFirstByteMillis", transfer.getMedianTimeToFirstByteMillis())
+        .withMetric("peakPlaintextBytes", transfer.getPeakPlaintextBytes()));
+    }
+  }
+
+  @Test
+  public void pipe() throws Exception {
+    for (int size : SIZES_MB) {
+      writeAttachment(size);
+
+      final Transfer transfer = new Transfer();
+
+      Benchmarks.write(Benchmarks.measure("PartProvider.pipe." + size + "MB", new Benchmarks.Operation() {
+        @Override
+        public Object run() throws Exception {
+          long                             startTime = System.nanoTime();
+          final InputStream                in        = DecryptingPartInputStream.createFor(masterSecret, file);
+          final PipedInputStream           source    = new PipedInputStream(PIPE_CAPACITY);
+          final PipedOutputStream          sink      = new PipedOutputStream(source);
+          final AtomicReference<Exception> error     = new AtomicReference<>();
+
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              byte[] buffer = new byte[PartProvider.STREAM_BUFFER_SIZE];
+              int    read;
+
+              try {
+                while ((read = in.read(buffer)) != -1) {
+                  sink.write(buffer, 0, read);
+                  sink.flush();
+                }
+              } catch (IOException e) {
+                error.set(e);
+              } finally {
+                Util.close(sink);
+                Util.close(in);
+              }
+            }
+          });
+
+          long received = transfer.receive(source, startTime, PartProvider.STREAM_BUFFER_SIZE);
+
+          if (error.get() != null) throw error.get();
+          return received;
+        }
+      }).withMetric("timeToFirstByteMillis", transfer.getMedianTimeToFirstByteMillis())
+        .withMetric("peakPlaintextBytes", transfer.getPeakPlaintextBytes()));
+    }
+  }
+
+  @Test
+  public void tempFile() throws Exception {
+    final File directory = file.getParentFile();
+
+    for (int size : SIZES_MB) {
+      writeAttachment(size);
+
+      final Transfer transfer = new Transfer();
+
+      Benchmarks.write(Benchmarks.measure("PartProvider.tempFile." + size + "MB", new Benchmarks.Operation() {
+        @Override
+        public Object run() throws Exception {
+          long startTime = System.nanoTime();
+
+          try (RandomAccessFile decrypted = PartProvider.decryptToUnlinkedFile(DecryptingPartInputStream.createFor(masterSecret, file), directory)) {
+            return transfer.receive(new FileInputStream(decrypted.getFD()), startTime, 0);
+          }
+        }
+      }).withMetric("timeToFirstByteMillis", transfer.getMedianTimeToFirstByteMillis())
+        .withMetric("peakPlaintextBytes", transfer.getPeakPlaintextBytes())
+        .withMetric("plaintextOnDiskBytes", (long) size * MB));
+    }
+  }
+
+  private void writeAttachment(int sizeMb) throws IOException {
+    try (OutputStream out = new EncryptingPartOutputStream(file, masterSecret)) {
+      for (int i=0;i<sizeMb;i++) {
+        out.write(data.attachment(MB));
+      }
+    }
+  }
+
+  private static void readFully(InputStream in, byte[] buffer) throws IOException {
+    int offset = 0;
+
+    while (offset < buffer.length) {
+      int read = in.read(buffer, offset, buffer.length - offset);
+
+      if (read == -1) throw new EOFException("Stream ended after " + offset + " bytes");
+      offset += read;
+    }
+  }
+
+  /**
+   * Reads what a receiving app would, recording when its first byte arrived and how much
+   * plaintext was held for it at most.
+   */
+  private static class Transfer {
+
+    private final List<Long> timesToFirstByte = new ArrayList<>();
+    private final byte[]     buffer           = new byte[PartProvider.STREAM_BUFFER_SIZE];
+
+    private long peakPlaintextBytes;
+
+    long receive(InputStream in, long startTime, long heldByWriter) throws IOException {
+      long total = 0;
+      int  read;
+
+      try {
+        while ((read = in.read(buffer)) != -1) {
+          if (total == 0) timesToFirstByte.add(System.nanoTime() - startTime);
+
+          peakPlaintextBytes = Math.max(peakPlaintextBytes, heldByWriter + read + in.available());
+          total += read;
+        }
+      } finally {
+        in.close();
+      }
+
+      return total;
+    }
+
+    double getMedianTimeToFirstByteMillis() {
+      List<Long> sorted = new ArrayList<>(timesToFirstByte);
+      Collections.sort(sorted);
+
+      return sorted.isEmpty() ? -1 : sorted.get(sorted.size() / 2) / 1_000_000d;
+    }
+
+    long getPeakPlaintextBytes() {
+      return peakPlaintextBytes;
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package org.thoughtcrime.securesms.push;
+
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.thoughtcrime.securesms.BaseUnitTest;
+import org.thoughtcrime.securesms.benchmark.BenchmarkResult;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.database.PendingReceiptDatabase;
+import org.thoughtcrime.securesms.dependencies.SignalCommunicationModule.SignalMessageSenderFactory;
+import org.whispersystems.signalservice.api.SignalServiceMessageSender;
+import org.whispersystems.signalservice.api.push.SignalServiceAddress;
+
+import java.util.Collection;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sending the receipts for a burst of 200 inbound messages from 10 senders, as a decrypt
+ * batch produces them, through a mocked {@link SignalServiceMessageSender} that waits out a
+ * fixed round trip per receipt and a {@link PendingReceiptDatabase} that counts its writes.
+ *
+ * Receipts are drained as soon as they arrive, as the dispatcher first did, and after the
+ * coalescing window it now waits for. Each result reports receipts sent per second and
+ * database writes per receipt. The persisted DeliveryReceiptJob this replaced took two job
+ * database writes per receipt, one to add the job and one to remove it.
+ */
+public class DeliveryReceiptBenchmark extends BaseUnitTest {
+
+  private static final int  RECEIPTS        = 200;
+  private static final int  DESTINATIONS    = 10;
+  private static final long ARRIVAL_NANOS   = 500_000;
+  private static final long NETWORK_MILLIS  = 5;
+  private static final long COALESCE_MILLIS = 100;
+  private static final int  JOB_WRITES      = 2;
+
+  private final ScheduledThreadPoolExecutor executor  = new ScheduledThreadPoolExecutor(4);
+  private final AtomicLong                  ids       = new AtomicLong();
+  private final AtomicLong                  inserts   = new AtomicLong();
+  private final AtomicLong                  deletes   = new AtomicLong();
+  private final AtomicLong                  timestamp = new AtomicLong();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void drainImmediately() throws Exception {
+    run("DeliveryReceipt.burst.immediate", 0);
+  }
+
+  @Test
+  public void drainCoalesced() throws Exception {
+    run("DeliveryReceipt.burst.coalesced", COALESCE_MILLIS);
+  }
+
+  private void run(String name, long coalesceMillis) throws Exception {
+    final DeliveryReceiptDispatcher dispatcher = new DeliveryReceiptDispatcher(createSenderFactory(), createDatabase(), executor, coalesceMillis);
+
+    BenchmarkResult result = Benchmarks.measure(name, new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        long target = dispatcher.getReceiptsSent() + RECEIPTS;
+
+        for (int i=0;i<RECEIPTS;i++) {
+          dispatcher.enqueue(String.format("+1415%07d", i % DESTINATIONS), timestamp.incrementAndGet(), null);
+          LockSupport.parkNanos(ARRIVAL_NANOS);
+        }
+
+        while (dispatcher.getReceiptsSent() < target) {
+          Thread.sleep(1);
+        }
+
+        return null;
+      }
+    });
+
+    long sent = dispatcher.getReceiptsSent();
+
+    Benchmarks.write(result.withMetric("receipts", RECEIPTS)
+                           .withMetric("destinations", DESTINATIONS)
+                           .withMetric("coalesceMillis", coalesceMillis)
+                           .withMetric("receiptsPerSecond", RECEIPTS * 1_000_000_000d / result.getNanosPerOperation())
+                           .withMetric("dbWritesPerReceipt", (inserts.get() + deletes.get()) / (double) sent)
+                           .withMetric("deleteTransactionsPerReceipt", deletes.get() / (double) sent)
+                           .withMetric("jobDbWritesPerReceipt", JOB_WRITES));
+  }
+
+  private SignalMessageSenderFactory createSenderFactory() throws Exception {
+    final SignalServiceMessageSender sender = mock(SignalServiceMessageSender.class);
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(NETWORK_MILLIS);
+        return null;
+      }
+    }).when(sender).sendDeliveryReceipt(any(SignalServiceAddress.class), anyLong());
+
+    return new SignalMessageSenderFactory() {
+      @Override
+      public SignalServiceMessageSender create() {
+        return sender;
+      }
+    };
+  }
+
+  private PendingReceiptDatabase createDatabase() {
+    PendingReceiptDatabase database = mock(PendingReceiptDatabase.class);
+
+    when(database.insert(anyString(), anyLong(), anyString())).thenAnswer(new Answer<Long>() {
+      @Override
+      public Long answer(InvocationOnMock invocation) {
+        inserts.incrementAndGet();
+        return ids.incrementAndGet();
+      }
+    });
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        if (!((Collection<?>) invocation.getArguments()[0]).isEmpty()) deletes.incrementAndGet();
+        return null;
+      }
+    }).when(database).delete(any(Collection.class));
+
+    return database;
+  }
+}
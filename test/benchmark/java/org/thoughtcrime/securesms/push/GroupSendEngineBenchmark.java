@@ -0,0 +1,143 @@
+package org.thoughtcrime.securesms.push;
+
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.thoughtcrime.securesms.BaseUnitTest;
+import org.thoughtcrime.securesms.benchmark.BenchmarkResult;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.dependencies.SignalCommunicationModule.SignalMessageSenderFactory;
+import org.whispersystems.libsignal.SessionCipher;
+import org.whispersystems.signalservice.api.SignalServiceMessageSender;
+import org.whispersystems.signalservice.api.messages.SignalServiceDataMessage;
+import org.whispersystems.signalservice.api.push.SignalServiceAddress;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Sending a plain message to groups of 100, 500 and 1,000 members, through a mocked
+ * {@link SignalServiceMessageSender} that stands in for a real send to each member: it
+ * encrypts while holding libsignal's session lock, as the service library does, and then
+ * waits out a fixed network round trip.
+ *
+ * The batched send is how every group message went out before, and how messages with
+ * attachments or a linked device transcript still do. The parallel send overlaps only the
+ * round trips, so it can't beat the time spent encrypting for each member in turn, which
+ * each result reports as encryptBoundMillis.
+ */
+public class GroupSendEngineBenchmark extends BaseUnitTest {
+
+  private static final int[] GROUP_SIZES     = {100, 500, 1000};
+  private static final long  NETWORK_MILLIS  = 10;
+  private static final long  ENCRYPT_NANOS   = 200_000;
+  private static final int   WORKER_THREADS  = 8;
+
+  private final SignalServiceDataMessage message  = SignalServiceDataMessage.newBuilder().withTimestamp(1).withBody("hi").build();
+  private final ExecutorService          executor = Executors.newFixedThreadPool(WORKER_THREADS);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void sendToGroup() throws Exception {
+    SignalMessageSenderFactory factory = new SignalMessageSenderFactory() {
+      @Override
+      public SignalServiceMessageSender create() {
+        return createSender();
+      }
+    };
+
+    for (int size : GROUP_SIZES) {
+      final List<SignalServiceAddress> members  = createMembers(size);
+      final GroupSendEngine            batched  = new GroupSendEngine(factory, true, executor);
+      final GroupSendEngine            parallel = new GroupSendEngine(factory, false, executor);
+
+      BenchmarkResult batchedResult = Benchmarks.write(withMetrics(Benchmarks.measure("GroupSendEngine.batched." + size, new Benchmarks.Operation() {
+        @Override
+        public Object run() throws Exception {
+          batched.sendMessage(members, message);
+          return null;
+        }
+      }), size));
+
+      BenchmarkResult parallelResult = Benchmarks.measure("GroupSendEngine.parallel." + size, new Benchmarks.Operation() {
+        @Override
+        public Object run() throws Exception {
+          parallel.sendMessage(members, message);
+          return null;
+        }
+      });
+
+      Benchmarks.write(withMetrics(parallelResult, size)
+                           .withMetric("speedup", batchedResult.getNanosPerOperation() / parallelResult.getNanosPerOperation()));
+    }
+  }
+
+  private BenchmarkResult withMetrics(BenchmarkResult result, int size) {
+    return result.withMetric("members", size)
+                 .withMetric("networkMillis", NETWORK_MILLIS)
+                 .withMetric("encryptBoundMillis", size * ENCRYPT_NANOS / 1_000_000d);
+  }
+
+  private SignalServiceMessageSender createSender() {
+    SignalServiceMessageSender sender = mock(SignalServiceMessageSender.class);
+
+    try {
+      doAnswer(new Answer<Void>() {
+        @Override
+        public Void answer(InvocationOnMock invocation) throws Throwable {
+          send();
+          return null;
+        }
+      }).when(sender).sendMessage(any(SignalServiceAddress.class), any(SignalServiceDataMessage.class));
+
+      doAnswer(new Answer<Void>() {
+        @Override
+        public Void answer(InvocationOnMock invocation) throws Throwable {
+          List<?> recipients = (List<?>) invocation.getArguments()[0];
+
+          for (int i=0;i<recipients.size();i++) {
+            send();
+          }
+
+          return null;
+        }
+      }).when(sender).sendMessage(anyListOf(SignalServiceAddress.class), any(SignalServiceDataMessage.class));
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+
+    return sender;
+  }
+
+  private static void send() throws InterruptedException {
+    synchronized (SessionCipher.SESSION_LOCK) {
+      long deadline = System.nanoTime() + ENCRYPT_NANOS;
+      while (System.nanoTime() < deadline);
+    }
+
+    Thread.sleep(NETWORK_MILLIS);
+  }
+
+  private static List<SignalServiceAddress> createMembers(int size) {
+    List<SignalServiceAddress> members = new LinkedList<>();
+
+    for (int i=0;i<size;i++) {
+      members.add(new SignalServiceAddress(String.format("+1415%07d", i)));
+    }
+
+    return members;
+  }
+}
@@ -0,0 +1,192 @@
+package org.thoughtcrime.securesms.qr;
+
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs preview frames through the QR scanning pipeline offline.
+ *
+ * Recorded NV21 frames are read from the directory named by the "benchmark.frames" system
+ * property (-PbenchmarkFrames=... from Gradle), in file name order, with the frame size in
+ * the file name, e.g. "0001_1280x720.yuv". Without recorded frames a synthetic stream of a
+ * safety number code over noise is used, with the code only appearing in the later frames.
+ *
+ * Reports decodes per second for the viewfinder crop and for the whole frame, and the time
+ * and number of frames it takes to get the first result from the stream.
+ */
+public class QrScanBenchmark {
+
+  private static final Pattern FRAME_NAME = Pattern.compile(".*?(\\d+)x(\\d+)\\.yuv");
+
+  private final QRCodeReader reader = new QRCodeReader();
+
+  private List<Frame> frames;
+
+  @Before
+  public void setUp() throws Exception {
+    String directory = System.getProperty("benchmark.frames");
+
+    if (directory != null && directory.length() > 0) frames = readFrames(new File(directory));
+    else                                             frames = createFrames();
+  }
+
+  @Test
+  public void viewfinder() throws Exception {
+    final LuminanceFrame luminanceFrame = new LuminanceFrame();
+
+    long firstResultStart  = System.nanoTime();
+    int  firstResultFrames = 0;
+
+    for (Frame frame : frames) {
+      firstResultFrames++;
+      luminanceFrame.set(frame.data, frame.width, frame.height);
+      if (decode(luminanceFrame.getLuminanceSource()) != null) break;
+    }
+
+    long firstResultMillis = (System.nanoTime() - firstResultStart) / 1_000_000;
+
+    Benchmarks.write(Benchmarks.measure("QrScan.viewfinder", new Benchmarks.Operation() {
+      int index = 0;
+
+      @Override
+      public Object run() {
+        Frame frame = frames.get(index++ % frames.size());
+        luminanceFrame.set(frame.data, frame.width, frame.height);
+        return decode(luminanceFrame.getLuminanceSource());
+      }
+    }).withMetric("frames", frames.size())
+      .withMetric("timeToFirstResultMillis", firstResultMillis)
+      .withMetric("framesToFirstResult", firstResultFrames));
+  }
+
+  @Test
+  public void fullFrame() throws Exception {
+    Benchmarks.run("QrScan.fullFrame", new Benchmarks.Operation() {
+      int index = 0;
+
+      @Override
+      public Object run() {
+        Frame frame = frames.get(index++ % frames.size());
+        return decode(new PlanarYUVLuminanceSource(frame.data, frame.width, frame.height,
+                                                   0, 0, frame.width, frame.height, false));
+      }
+    });
+  }
+
+  private String decode(LuminanceSource source) {
+    try {
+      Result result = reader.decode(new BinaryBitmap(new HybridBinarizer(source)));
+      return result != null ? result.getText() : null;
+    } catch (ReaderException e) {
+      return null;
+    } finally {
+      reader.reset();
+    }
+  }
+
+  private static List<Frame> readFrames(File directory) throws IOException {
+    File[]      files  = directory.listFiles();
+    List<Frame> frames = new ArrayList<>();
+
+    if (files == null) throw new IOException("Not a directory: " + directory);
+
+    Arrays.sort(files);
+
+    for (File file : files) {
+      Matcher matcher = FRAME_NAME.matcher(file.getName());
+
+      if (matcher.matches()) {
+        int    width  = Integer.parseInt(matcher.group(1));
+        int    height = Integer.parseInt(matcher.group(2));
+        byte[] data   = new byte[width * height * 3 / 2];
+
+        try (FileInputStream in = new FileInputStream(file)) {
+          int offset = 0;
+          int read;
+
+          while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+            offset += read;
+          }
+        }
+
+        frames.add(new Frame(data, width, height));
+      }
+    }
+
+    if (frames.isEmpty()) throw new IOException("No frames in " + directory);
+
+    return frames;
+  }
+
+  /**
+   * Thirty 1280x720 frames of noise, with a 60 digit code like the one shown on the
+   * verification screen appearing from the tenth frame on.
+   */
+  private static List<Frame> createFrames() throws Exception {
+    SyntheticData data   = new SyntheticData();
+    StringBuilder number = new StringBuilder();
+
+    for (int i=0;i<60;i++) {
+      number.append(data.nextInt(10));
+    }
+
+    BitMatrix   code   = new QRCodeWriter().encode(number.toString(), BarcodeFormat.QR_CODE, 400, 400);
+    List<Frame> frames = new ArrayList<>();
+
+    for (int i=0;i<30;i++) {
+      int    width  = 1280;
+      int    height = 720;
+      byte[] frame  = data.attachment(width * height * 3 / 2);
+
+      if (i >= 9) {
+        int left = (width - code.getWidth()) / 2 + data.nextInt(20) - 10;
+        int top  = (height - code.getHeight()) / 2 + data.nextInt(20) - 10;
+
+        for (int y = 0; y < code.getHeight(); y++) {
+          for (int x = 0; x < code.getWidth(); x++) {
+            frame[(top + y) * width + left + x] = (byte)(code.get(x, y) ? 30 + data.nextInt(30) : 200 + data.nextInt(30));
+          }
+        }
+      }
+
+      frames.add(new Frame(frame, width, height));
+    }
+
+    return frames;
+  }
+
+  private static class Frame {
+    private final byte[] data;
+    private final int    width;
+    private final int    height;
+
+    private Frame(byte[] data, int width, int height) {
+      this.data   = data;
+      this.width  = width;
+      this.height = height;
+    }
+  }
+}
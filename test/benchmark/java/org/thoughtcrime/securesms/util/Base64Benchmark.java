@@ -0,0 +1,35 @@
+package org.thoughtcrime.securesms.util;
+
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.benchmark.Benchmarks;
+import org.thoughtcrime.securesms.benchmark.SyntheticData;
+
+public class Base64Benchmark {
+
+  private final SyntheticData data = new SyntheticData();
+
+  @Test
+  public void encodeBytes() throws Exception {
+    final byte[] bytes = data.attachment(4096);
+
+    Benchmarks.run("Base64.encodeBytes.4KB", new Benchmarks.Operation() {
+      @Override
+      public Object run() {
+        return Base64.encodeBytes(bytes);
+      }
+    });
+  }
+
+  @Test
+  public void decode() throws Exception {
+    final String encoded = Base64.encodeBytes(data.attachment(4096));
+
+    Benchmarks.run("Base64.decode.4KB", new Benchmarks.Operation() {
+      @Override
+      public Object run() throws Exception {
+        return Base64.decode(encoded);
+      }
+    });
+  }
+}
@@ -5,6 +5,9 @@ import android.database.Cursor;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
@@ -34,4 +37,46 @@ public class ConversationAdapterTest extends BaseUnitTest {
     long thirdId = adapter.getItemId(cursor);
     assertNotEquals(secondId, thirdId);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testPatchKeepsUnchangedCursor() throws Exception {
+    List<String> keys = Arrays.asList("sms3", "mms2", "sms1");
+
+    ConversationAdapter.CursorPatch patch = ConversationAdapter.CursorPatch.between(keys, keys);
+
+    assertEquals(0, patch.insertedAtStart);
+    assertEquals(3, patch.kept);
+    assertEquals(0, patch.removedAtEnd);
+    assertEquals(0, patch.addedAtEnd);
+  }
+
+  @Test
+  public void testPatchInsertsNewerMessagesAndDropsOldestPastLimit() throws Exception {
+    ConversationAdapter.CursorPatch patch = ConversationAdapter.CursorPatch.between(Arrays.asList("sms3", "mms2", "sms1"),
+                                                                                    Arrays.asList("sms5", "sms4", "sms3"));
+
+    assertEquals(2, patch.insertedAtStart);
+    assertEquals(1, patch.kept);
+    assertEquals(2, patch.removedAtEnd);
+    assertEquals(0, patch.addedAtEnd);
+  }
+
+  @Test
+  public void testPatchAddsOlderMessagesAtEnd() throws Exception {
+    ConversationAdapter.CursorPatch patch = ConversationAdapter.CursorPatch.between(Arrays.asList("sms3", "mms2"),
+                                                                                    Arrays.asList("sms3", "mms2", "sms1"));
+
+    assertEquals(0, patch.insertedAtStart);
+    assertEquals(2, patch.kept);
+    assertEquals(0, patch.removedAtEnd);
+    assertEquals(1, patch.addedAtEnd);
+  }
+
+  @Test
+  public void testNoPatchForDeletedMessage() throws Exception {
+    assertNull(ConversationAdapter.CursorPatch.between(Arrays.asList("sms3", "mms2", "sms1"),
+                                                       Arrays.asList("sms3", "sms1")));
+    assertNull(ConversationAdapter.CursorPatch.between(Arrays.asList("sms3", "mms2"),
+                                                       Arrays.asList("mms2")));
+  }
+}
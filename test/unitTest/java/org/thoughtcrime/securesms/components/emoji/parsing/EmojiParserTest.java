@@ -0,0 +1,93 @@
+package org.thoughtcrime.securesms.components.emoji.parsing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EmojiParserTest {
+
+  private static final String SMILE       = "\uD83D\uDE04";
+  private static final String THUMBS_UP   = "\uD83D\uDC4D";
+  private static final String FLAG_ID     = "\uD83C\uDDEE\uD83C\uDDE9";
+  private static final String REGIONAL_I  = "\uD83C\uDDEE";
+  private static final String SKIN_TONE_4  = "\uD83C\uDFFD";
+
+  private EmojiDrawInfo smile;
+  private EmojiDrawInfo thumbsUp;
+  private EmojiDrawInfo flag;
+  private EmojiDrawInfo regionalI;
+  private EmojiParser   parser;
+
+  @Before
+  public void setup() {
+    EmojiTree tree = new EmojiTree();
+
+    smile     = new EmojiDrawInfo(null, 0);
+    thumbsUp  = new EmojiDrawInfo(null, 1);
+    flag      = new EmojiDrawInfo(null, 2);
+    regionalI = new EmojiDrawInfo(null, 3);
+
+    tree.add(SMILE, smile);
+    tree.add(THUMBS_UP, thumbsUp);
+    tree.add(REGIONAL_I, regionalI);
+    tree.add(FLAG_ID, flag);
+
+    parser = new EmojiParser(tree);
+  }
+
+  @Test
+  public void testNoEmojiSharesEmptyResult() {
+    EmojiParser.CandidateList first  = parser.findCandidates("hello world");
+    EmojiParser.CandidateList second = parser.findCandidates("");
+
+    assertEquals(0, first.size());
+    assertFalse(first.allEmojis);
+    assertSame(first, second);
+    assertSame(first, parser.findCandidates(null));
+  }
+
+  @Test
+  public void testMixedText() {
+    EmojiParser.CandidateList candidates = parser.findCandidates("hi " + SMILE + " there");
+
+    assertEquals(1, candidates.size());
+    assertFalse(candidates.allEmojis);
+    assertEquals(3, candidates.list.get(0).getStartIndex());
+    assertEquals(5, candidates.list.get(0).getEndIndex());
+    assertSame(smile, candidates.list.get(0).getDrawInfo());
+  }
+
+  @Test
+  public void testLongestMatchWins() {
+    EmojiParser.CandidateList candidates = parser.findCandidates(FLAG_ID + REGIONAL_I);
+
+    assertEquals(2, candidates.size());
+    assertTrue(candidates.allEmojis);
+    assertSame(flag, candidates.list.get(0).getDrawInfo());
+    assertEquals(4, candidates.list.get(0).getEndIndex());
+    assertSame(regionalI, candidates.list.get(1).getDrawInfo());
+  }
+
+  @Test
+  public void testFitzpatrickModifierIsIncluded() {
+    EmojiParser.CandidateList candidates = parser.findCandidates(THUMBS_UP + SKIN_TONE_4 + SMILE);
+
+    assertEquals(2, candidates.size());
+    assertTrue(candidates.allEmojis);
+    assertSame(thumbsUp, candidates.list.get(0).getDrawInfo());
+    assertEquals(4, candidates.list.get(0).getEndIndex());
+    assertEquals(4, candidates.list.get(1).getStartIndex());
+  }
+
+  @Test
+  public void testPartialPrefixIsNotEmoji() {
+    EmojiParser.CandidateList candidates = parser.findCandidates("\uD83D");
+
+    assertEquals(0, candidates.size());
+    assertFalse(candidates.allEmojis);
+  }
+}
@@ -0,0 +1,59 @@
+package org.thoughtcrime.securesms.contacts;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContactSearchIndexTest {
+
+  private ContactSearchIndex index;
+
+  @Before
+  public void setUp() {
+    index = new ContactSearchIndex(Arrays.asList(entry(1, "Sarah Wijaya", "+15551234567"),
+                                                 entry(2, "Jos\u00e9 G\u00f3mez", "+15559876543"),
+                                                 entry(3, "Adi Santoso", "0812-3456-7890"),
+                                                 entry(4, null, "+15550001111")));
+  }
+
+  @Test
+  public void testNameWordPrefixes() {
+    assertEquals(Arrays.asList(1L), ids(index.search("sar")));
+    assertEquals(Arrays.asList(1L), ids(index.search("wij sa")));
+    assertEquals(Arrays.asList(2L), ids(index.search("jose gom")));
+    assertEquals(Arrays.<Long>asList(), ids(index.search("sarah santoso")));
+  }
+
+  @Test
+  public void testInitials() {
+    assertEquals(Arrays.asList(1L), ids(index.search("sw")));
+    assertEquals(Arrays.asList(3L), ids(index.search("as")));
+  }
+
+  @Test
+  public void testNumberPrefixesAndSuffixes() {
+    assertEquals(Arrays.asList(2L), ids(index.search("6543")));
+    assertEquals(Arrays.asList(3L), ids(index.search("0812 34")));
+    assertEquals(Arrays.asList(4L, 2L, 1L), ids(index.search("+1 555")));
+    assertEquals(4, index.search("").size());
+  }
+
+  private static ContactSearchIndex.Entry entry(long id, String name, String number) {
+    return new ContactSearchIndex.Entry(id, id, name, number, 2, null, ContactsDatabase.NORMAL_TYPE);
+  }
+
+  private static List<Long> ids(List<ContactSearchIndex.Entry> entries) {
+    List<Long> ids = new LinkedList<>();
+
+    for (ContactSearchIndex.Entry entry : entries) {
+      ids.add(entry.getId());
+    }
+
+    return ids;
+  }
+}
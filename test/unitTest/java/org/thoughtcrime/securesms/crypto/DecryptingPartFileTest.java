@@ -0,0 +1,92 @@
+package org.thoughtcrime.securesms.crypto;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.thoughtcrime.securesms.BaseUnitTest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@PowerMockIgnore("javax.crypto.*")
+public class DecryptingPartFileTest extends BaseUnitTest {
+
+  private File file;
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    file = File.createTempFile("part", ".mms");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void testSizeMatchesPlaintext() throws Exception {
+    for (int length : new int[] {0, 1, 15, 16, 17, 100000}) {
+      writePart(length);
+
+      DecryptingPartFile partFile = DecryptingPartFile.open(masterSecret, file);
+      assertEquals(length, partFile.getSize());
+      partFile.close();
+    }
+  }
+
+  @Test
+  public void testRandomReads() throws Exception {
+    byte[]             plaintext = writePart(200003);
+    DecryptingPartFile partFile  = DecryptingPartFile.open(masterSecret, file);
+    Random             random    = new Random(42);
+
+    for (int i=0;i<200;i++) {
+      int    position = random.nextInt(plaintext.length);
+      int    length   = 1 + random.nextInt(100000);
+      byte[] buffer   = new byte[length + 3];
+      int    read     = partFile.read(position, buffer, 3, length);
+
+      assertEquals(Math.min(length, plaintext.length - position), read);
+      assertArrayEquals(Arrays.copyOfRange(plaintext, position, position + read),
+                        Arrays.copyOfRange(buffer, 3, 3 + read));
+    }
+
+    assertEquals(-1, partFile.read(plaintext.length, new byte[10], 0, 10));
+    partFile.close();
+  }
+
+  @Test(expected = IOException.class)
+  public void testBadMac() throws Exception {
+    writePart(1000);
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.seek(100);
+    byte data = raf.readByte();
+    raf.seek(100);
+    raf.write(data ^ 1);
+    raf.close();
+
+    DecryptingPartFile.open(masterSecret, file);
+  }
+
+  private byte[] writePart(int length) throws IOException {
+    byte[] plaintext = new byte[length];
+    new Random(length).nextBytes(plaintext);
+
+    OutputStream out = new EncryptingPartOutputStream(file, masterSecret);
+    out.write(plaintext);
+    out.close();
+
+    return plaintext;
+  }
+}
@@ -0,0 +1,74 @@
+package org.thoughtcrime.securesms.database;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AfterCommitTest {
+
+  private final List<String> actions = new LinkedList<>();
+
+  @After
+  public void tearDown() {
+    AfterCommit.release(false);
+  }
+
+  @Test
+  public void testRunsImmediatelyWhenNotHeld() {
+    AfterCommit.run(action("one"));
+    assertEquals(1, actions.size());
+  }
+
+  @Test
+  public void testRunsHeldActionsInOrderOnCommit() {
+    AfterCommit.hold();
+    AfterCommit.run(action("one"));
+    AfterCommit.run(action("two"));
+
+    assertTrue(actions.isEmpty());
+
+    AfterCommit.release(true);
+
+    assertEquals(2, actions.size());
+    assertEquals("one", actions.get(0));
+    assertEquals("two", actions.get(1));
+  }
+
+  @Test
+  public void testDropsHeldActionsOnRollback() {
+    AfterCommit.hold();
+    AfterCommit.run(action("one"));
+    AfterCommit.release(false);
+
+    assertTrue(actions.isEmpty());
+
+    AfterCommit.run(action("two"));
+    assertEquals(1, actions.size());
+  }
+
+  @Test
+  public void testHeldUntilReleased() {
+    assertFalse(AfterCommit.isHeld());
+
+    AfterCommit.hold();
+    assertTrue(AfterCommit.isHeld());
+
+    AfterCommit.release(true);
+    assertFalse(AfterCommit.isHeld());
+  }
+
+  private Runnable action(final String name) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        actions.add(name);
+      }
+    };
+  }
+}
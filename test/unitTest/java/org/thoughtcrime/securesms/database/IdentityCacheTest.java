@@ -0,0 +1,78 @@
+package org.thoughtcrime.securesms.database;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.database.IdentityDatabase.IdentityRecord;
+import org.thoughtcrime.securesms.database.IdentityDatabase.VerifiedStatus;
+import org.whispersystems.libsignal.IdentityKey;
+import org.whispersystems.libsignal.ecc.Curve;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class IdentityCacheTest {
+
+  private static final Address ALICE = Address.fromSerialized("+14152222222");
+  private static final Address BOB   = Address.fromSerialized("+14153333333");
+
+  private final IdentityCache cache = new IdentityCache();
+
+  @Test
+  public void testPutBeforeLoadIsIgnored() throws Exception {
+    cache.put(createRecord(ALICE, 1));
+    assertNull(cache.getRecords());
+
+    cache.load(loaderFor(createRecord(BOB, 2)));
+
+    assertNull(cache.getRecords().get(ALICE));
+    assertEquals(1, cache.getRecords().size());
+  }
+
+  @Test
+  public void testPutReplacesSnapshot() throws Exception {
+    IdentityRecord bob = createRecord(BOB, 2);
+
+    cache.load(loaderFor(createRecord(ALICE, 1)));
+
+    Map<Address, IdentityRecord> before = cache.getRecords();
+    cache.put(bob);
+
+    assertNull(before.get(BOB));
+    assertSame(bob, cache.getRecords().get(BOB));
+    assertEquals(2, cache.getRecords().size());
+  }
+
+  @Test
+  public void testLoadOnlyOnce() throws Exception {
+    IdentityRecord alice = createRecord(ALICE, 1);
+
+    cache.load(loaderFor(alice));
+    cache.load(loaderFor(createRecord(ALICE, 2)));
+
+    assertSame(alice, cache.getRecords().get(ALICE));
+  }
+
+  private static IdentityCache.Loader loaderFor(final IdentityRecord record) {
+    return new IdentityCache.Loader() {
+      @Override
+      public @NonNull Map<Address, IdentityRecord> load() {
+        Map<Address, IdentityRecord> records = new HashMap<>();
+        records.put(record.getAddress(), record);
+        return records;
+      }
+    };
+  }
+
+  private static IdentityRecord createRecord(Address address, int seed) throws Exception {
+    byte[] publicKey = new byte[33];
+    publicKey[0] = (byte)Curve.DJB_TYPE;
+    publicKey[1] = (byte)seed;
+
+    return new IdentityRecord(address, new IdentityKey(publicKey, 0), VerifiedStatus.DEFAULT, true, 0, false);
+  }
+}
@@ -0,0 +1,36 @@
+package org.thoughtcrime.securesms.database;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class QueryProfilerTest {
+
+  @Test
+  public void testShapeReplacesNumbers() {
+    assertEquals("SELECT * FROM sms WHERE thread_id = ? AND date > ?",
+                 QueryProfiler.getShape("SELECT * FROM sms WHERE thread_id = 42 AND date > 1490000000000"));
+  }
+
+  @Test
+  public void testShapeReplacesStrings() {
+    assertEquals("SELECT * FROM recipient WHERE phone = ?",
+                 QueryProfiler.getShape("SELECT * FROM recipient WHERE phone = '+14152222222'"));
+  }
+
+  @Test
+  public void testShapeKeepsIdentifiersWithDigits() {
+    assertEquals("SELECT part_id2 FROM mms LIMIT ?",
+                 QueryProfiler.getShape("SELECT part_id2 FROM mms LIMIT 120"));
+  }
+
+  @Test
+  public void testFullScanOnlyWithoutIndex() {
+    assertTrue(QueryProfiler.isFullScan("SCAN TABLE sms\n"));
+    assertTrue(QueryProfiler.isFullScan("SEARCH TABLE thread USING INTEGER PRIMARY KEY (rowid=?)\nSCAN TABLE recipient_preferences\n"));
+    assertFalse(QueryProfiler.isFullScan("SCAN TABLE sms USING INDEX sms_thread_date_index\n"));
+    assertFalse(QueryProfiler.isFullScan("SEARCH TABLE sms USING INDEX sms_thread_id_index (thread_id=?)\n"));
+  }
+}
@@ -0,0 +1,61 @@
+package org.thoughtcrime.securesms.database;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.BaseUnitTest;
+import org.thoughtcrime.securesms.database.model.DisplayRecord;
+import org.thoughtcrime.securesms.database.model.ThreadRecord;
+import org.thoughtcrime.securesms.recipients.Recipient;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ThreadRecordCacheTest extends BaseUnitTest {
+
+  private final ThreadRecordCache cache = new ThreadRecordCache();
+
+  @Test
+  public void testHitOnSameSnippet() {
+    ThreadRecord record = createRecord(1, 1000, 20);
+    cache.put(record, "snippet");
+
+    assertSame(record, cache.get(1, 1000, 20, "snippet"));
+  }
+
+  @Test
+  public void testMissOnChangedKey() {
+    cache.put(createRecord(1, 1000, 20), "snippet");
+
+    assertNull(cache.get(2, 1000, 20, "snippet"));
+    assertNull(cache.get(1, 1001, 20, "snippet"));
+    assertNull(cache.get(1, 1000, 21, "snippet"));
+    assertNull(cache.get(1, 1000, 20, "other"));
+    assertNull(cache.get(1, 1000, 20, null));
+  }
+
+  @Test
+  public void testChangedThreadIsDropped() {
+    ThreadRecord first  = createRecord(1, 1000, 20);
+    ThreadRecord second = createRecord(2, 1000, 20);
+
+    cache.put(first, "snippet");
+    cache.put(second, "snippet");
+
+    DatabaseChangeBus.ChangeSet changes = mock(DatabaseChangeBus.ChangeSet.class);
+    when(changes.getThreadIds()).thenReturn(Collections.singleton(1L));
+
+    cache.onDatabaseChanged(changes);
+
+    assertNull(cache.get(1, 1000, 20, "snippet"));
+    assertSame(second, cache.get(2, 1000, 20, "snippet"));
+  }
+
+  private ThreadRecord createRecord(long threadId, long date, long snippetType) {
+    return new ThreadRecord(context, new DisplayRecord.Body("body", true), null, mock(Recipient.class),
+                            date, 1, true, threadId, 0, 0, snippetType,
+                            ThreadDatabase.DistributionTypes.DEFAULT, false, 0, 0);
+  }
+}
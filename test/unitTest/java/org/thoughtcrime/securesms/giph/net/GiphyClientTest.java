@@ -0,0 +1,54 @@
+package org.thoughtcrime.securesms.giph.net;
+
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.giph.model.GiphyImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+public class GiphyClientTest {
+
+  private static final String RESPONSE =
+      "{\"data\":[" +
+        "{\"type\":\"gif\",\"images\":{" +
+          "\"fixed_height\":{\"url\":\"https://example.com/fixed.gif\",\"width\":\"200\",\"height\":\"200\"}," +
+          "\"fixed_height_downsampled\":{\"url\":\"https://example.com/mms.gif\",\"width\":\"200\",\"height\":\"200\",\"size\":\"1000\"}," +
+          "\"downsized\":{\"url\":\"https://example.com/a.gif\",\"width\":\"400\",\"height\":\"200\",\"size\":\"5000\"}," +
+          "\"downsized_still\":{\"url\":\"https://example.com/a.png\",\"width\":\"400\",\"height\":\"200\"}}}," +
+        "{\"type\":\"gif\",\"images\":{" +
+          "\"fixed_height_downsampled\":{\"url\":\"https://example.com/mms.gif\",\"width\":\"200\",\"height\":\"200\",\"size\":\"1000\"}," +
+          "\"downsized\":{\"url\":\"https://example.com/b.gif\",\"width\":\"100\",\"height\":\"100\",\"size\":\"800\"}," +
+          "\"downsized_still\":{\"url\":\"https://example.com/b.png\",\"width\":\"100\",\"height\":\"100\"}}}" +
+      "]," +
+      "\"pagination\":{\"total_count\":2,\"count\":2,\"offset\":0}," +
+      "\"meta\":{\"status\":200,\"msg\":\"OK\"}}";
+
+  @Test
+  public void testParseImages() throws IOException {
+    List<GiphyImage> images = GiphyClient.parseImages(new ByteArrayInputStream(RESPONSE.getBytes()));
+
+    assertEquals(2, images.size());
+    assertEquals("https://example.com/a.gif", images.get(0).getGifUrl());
+    assertEquals("https://example.com/a.png", images.get(0).getStillUrl());
+    assertEquals(2.0f, images.get(0).getGifAspectRatio());
+  }
+
+  @Test
+  public void testMmsReusesSmallerPreview() throws IOException {
+    List<GiphyImage> images = GiphyClient.parseImages(new ByteArrayInputStream(RESPONSE.getBytes()));
+
+    assertEquals("https://example.com/mms.gif", images.get(0).getGifMmsUrl());
+    assertEquals("https://example.com/b.gif", images.get(1).getGifMmsUrl());
+  }
+
+  @Test
+  public void testParseEmptyResponse() throws IOException {
+    List<GiphyImage> images = GiphyClient.parseImages(new ByteArrayInputStream("{\"meta\":{\"status\":200}}".getBytes()));
+
+    assertEquals(0, images.size());
+  }
+}
@@ -0,0 +1,91 @@
+package org.thoughtcrime.securesms.giph.net;
+
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.BaseUnitTest;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.assertEquals;
+
+public class GiphyLoaderTest extends BaseUnitTest {
+
+  private static final String PAGE =
+      "{\"data\":[" +
+        "{\"type\":\"gif\",\"images\":{" +
+          "\"fixed_height\":{\"url\":\"https://example.com/fixed.gif\",\"width\":\"200\",\"height\":\"200\"}," +
+          "\"downsized\":{\"url\":\"https://example.com/a.gif\",\"width\":\"400\",\"height\":\"200\",\"size\":\"5000\"}," +
+          "\"downsized_still\":{\"url\":\"https://example.com/a.png\",\"width\":\"400\",\"height\":\"200\"}}}" +
+      "]," +
+      "\"meta\":{\"status\":200,\"msg\":\"OK\"}}";
+
+  private final List<String> requestedOffsets = Collections.synchronizedList(new LinkedList<String>());
+
+  private GiphyLoader loader;
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+
+    GiphyClient client = new GiphyClient(new OkHttpClient.Builder().addInterceptor(new Interceptor() {
+      @Override
+      public Response intercept(Chain chain) throws IOException {
+        requestedOffsets.add(chain.request().url().queryParameter("offset"));
+
+        return new Response.Builder().request(chain.request())
+                                     .protocol(Protocol.HTTP_1_1)
+                                     .code(200)
+                                     .message("OK")
+                                     .body(ResponseBody.create(MediaType.parse("application/json"), PAGE))
+                                     .build();
+      }
+    }));
+
+    loader = new GiphyLoader(context, null, client) {
+      @Override
+      protected String getTrendingUrl() {
+        return "https://api.giphy.com/v1/gifs/trending?offset=%d&limit=" + PAGE_SIZE;
+      }
+
+      @Override
+      protected String getSearchUrl() {
+        return "https://api.giphy.com/v1/gifs/search?offset=%d&limit=" + PAGE_SIZE + "&q=%s";
+      }
+    };
+  }
+
+  @Test
+  public void testEachPageRequestsItsOffset() {
+    assertEquals(1, loader.loadInBackground().size());
+    assertEquals(1, loader.loadPage(GiphyLoader.PAGE_SIZE).size());
+    assertEquals(1, loader.loadPage(2 * GiphyLoader.PAGE_SIZE).size());
+
+    assertEquals(Arrays.asList("0", String.valueOf(GiphyLoader.PAGE_SIZE), String.valueOf(2 * GiphyLoader.PAGE_SIZE)),
+                 requestedOffsets);
+  }
+
+  @Test
+  public void testPrefetchedPageIsRequestedOnce() {
+    loader.prefetchPage(GiphyLoader.PAGE_SIZE);
+    loader.prefetchPage(GiphyLoader.PAGE_SIZE);
+
+    assertEquals(1, loader.loadPage(GiphyLoader.PAGE_SIZE).size());
+    assertEquals(Collections.singletonList(String.valueOf(GiphyLoader.PAGE_SIZE)), requestedOffsets);
+
+    assertEquals(1, loader.loadPage(GiphyLoader.PAGE_SIZE).size());
+    assertEquals(Arrays.asList(String.valueOf(GiphyLoader.PAGE_SIZE), String.valueOf(GiphyLoader.PAGE_SIZE)), requestedOffsets);
+  }
+}
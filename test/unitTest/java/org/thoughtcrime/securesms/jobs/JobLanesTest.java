@@ -0,0 +1,29 @@
+package org.thoughtcrime.securesms.jobs;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.jobs.JobLanes.Lane;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class JobLanesTest {
+
+  @Test
+  public void testSendsDontShareLaneWithMaintenance() {
+    assertEquals(Lane.SEND, JobLanes.getLane(mock(PushTextSendJob.class)));
+    assertEquals(Lane.SEND, JobLanes.getLane(mock(PushGroupSendJob.class)));
+    assertEquals(Lane.SEND, JobLanes.getLane(mock(SmsSendJob.class)));
+
+    assertEquals(Lane.BACKGROUND, JobLanes.getLane(mock(MultiDeviceContactUpdateJob.class)));
+    assertEquals(Lane.BACKGROUND, JobLanes.getLane(mock(DirectoryRefreshJob.class)));
+  }
+
+  @Test
+  public void testGroupedJobsShareLane() {
+    assertEquals(Lane.MEDIA, JobLanes.getLane(mock(MmsSendJob.class)));
+    assertEquals(Lane.MEDIA, JobLanes.getLane(mock(MmsDownloadJob.class)));
+
+    assertEquals(Lane.INBOUND, JobLanes.getLane(mock(PushContentReceiveJob.class)));
+    assertEquals(Lane.INBOUND, JobLanes.getLane(mock(PushDecryptJob.class)));
+  }
+}
@@ -0,0 +1,36 @@
+package org.thoughtcrime.securesms.jobs;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.jobs.JobLanes.Lane;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class JobTelemetryTest {
+
+  @Test
+  public void testCanceledJobStopsWaiting() {
+    JobTelemetry telemetry = new JobTelemetry();
+    ContextJob   queued    = mock(DirectoryRefreshJob.class);
+    ContextJob   canceled  = mock(DirectoryRefreshJob.class);
+
+    telemetry.onAdded(queued, Lane.BACKGROUND);
+    telemetry.onAdded(canceled, Lane.BACKGROUND);
+    telemetry.onCanceled(canceled);
+    telemetry.onCanceled(canceled);
+
+    assertTrue(telemetry.getReport().contains("BACKGROUND lane: 1 waiting"));
+  }
+
+  @Test
+  public void testJobCanceledAfterStartingOnlyStopsWaitingOnce() {
+    JobTelemetry telemetry = new JobTelemetry();
+    ContextJob   job       = mock(DirectoryRefreshJob.class);
+
+    telemetry.onAdded(job, Lane.BACKGROUND);
+    telemetry.onStarted(job, System.currentTimeMillis());
+    telemetry.onCanceled(job);
+
+    assertTrue(telemetry.getReport().contains("BACKGROUND lane: 0 waiting"));
+  }
+}
@@ -0,0 +1,74 @@
+package org.thoughtcrime.securesms.providers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.thoughtcrime.securesms.BaseUnitTest;
+import org.thoughtcrime.securesms.crypto.DecryptingPartInputStream;
+import org.thoughtcrime.securesms.crypto.EncryptingPartOutputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@PowerMockIgnore("javax.crypto.*")
+@SuppressStaticInitializationFor("org.thoughtcrime.securesms.providers.PartProvider")
+public class PartProviderTest extends BaseUnitTest {
+
+  private File part;
+  private File directory;
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+
+    part      = File.createTempFile("part", ".mms");
+    directory = File.createTempFile("parts", "");
+    directory.delete();
+    directory.mkdir();
+  }
+
+  @After
+  public void tearDown() {
+    part.delete();
+    directory.delete();
+  }
+
+  @Test
+  public void testDecryptedFileIsSeekable() throws Exception {
+    byte[] plaintext = new byte[300007];
+    new Random(42).nextBytes(plaintext);
+
+    OutputStream out = new EncryptingPartOutputStream(part, masterSecret);
+    out.write(plaintext);
+    out.close();
+
+    try (RandomAccessFile file    = PartProvider.decryptToUnlinkedFile(DecryptingPartInputStream.createFor(masterSecret, part), directory);
+         FileInputStream  in      = new FileInputStream(file.getFD());
+         FileChannel      channel = in.getChannel())
+    {
+      assertEquals(0, directory.list().length);
+      assertEquals(plaintext.length, channel.size());
+
+      for (int position : new int[] {250000, 17, 300000, 0}) {
+        ByteBuffer buffer = ByteBuffer.allocate(7);
+
+        channel.position(position);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1);
+
+        assertArrayEquals(Arrays.copyOfRange(plaintext, position, position + 7), buffer.array());
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.thoughtcrime.securesms.push;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.thoughtcrime.securesms.BaseUnitTest;
+import org.thoughtcrime.securesms.database.PendingReceiptDatabase;
+import org.thoughtcrime.securesms.dependencies.SignalCommunicationModule.SignalMessageSenderFactory;
+import org.whispersystems.signalservice.api.SignalServiceMessageSender;
+import org.whispersystems.signalservice.api.push.SignalServiceAddress;
+import org.whispersystems.signalservice.api.push.exceptions.NotFoundException;
+import org.whispersystems.signalservice.api.push.exceptions.PushNetworkException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeliveryReceiptDispatcherTest extends BaseUnitTest {
+
+  private static final long COALESCE_MILLIS = 100;
+
+  private final SignalServiceMessageSender messageSender = mock(SignalServiceMessageSender.class);
+  private final PendingReceiptDatabase     database      = mock(PendingReceiptDatabase.class);
+  private final ScheduledExecutorService   executor      = mock(ScheduledExecutorService.class);
+
+  private final SignalMessageSenderFactory messageSenderFactory = new SignalMessageSenderFactory() {
+    @Override
+    public SignalServiceMessageSender create() {
+      return messageSender;
+    }
+  };
+
+  @Test
+  public void testDrainsDestinationInOneTask() throws Exception {
+    when(database.insert(eq("+14152222222"), anyLong(), anyString())).thenReturn(1L, 2L);
+
+    DeliveryReceiptDispatcher dispatcher = new DeliveryReceiptDispatcher(messageSenderFactory, database, executor, COALESCE_MILLIS);
+    dispatcher.enqueue("+14152222222", 100, "foo");
+    dispatcher.enqueue("+14152222222", 200, "foo");
+
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(1)).schedule(task.capture(), eq(COALESCE_MILLIS), eq(TimeUnit.MILLISECONDS));
+
+    task.getValue().run();
+
+    verify(messageSender).sendDeliveryReceipt(any(SignalServiceAddress.class), eq(100L));
+    verify(messageSender).sendDeliveryReceipt(any(SignalServiceAddress.class), eq(200L));
+    verify(database).delete(Arrays.asList(1L, 2L));
+    assertEquals(2, dispatcher.getReceiptsSent());
+  }
+
+  @Test
+  public void testCoalescesDestinationsSeparately() throws Exception {
+    when(database.insert(anyString(), anyLong(), anyString())).thenReturn(1L, 2L, 3L);
+
+    DeliveryReceiptDispatcher dispatcher = new DeliveryReceiptDispatcher(messageSenderFactory, database, executor, COALESCE_MILLIS);
+    dispatcher.enqueue("+14152222222", 100, "foo");
+    dispatcher.enqueue("+14153333333", 200, "foo");
+    dispatcher.enqueue("+14152222222", 300, "foo");
+
+    ArgumentCaptor<Runnable> tasks = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(2)).schedule(tasks.capture(), eq(COALESCE_MILLIS), eq(TimeUnit.MILLISECONDS));
+
+    for (Runnable task : tasks.getAllValues()) {
+      task.run();
+    }
+
+    verify(database).delete(Arrays.asList(1L, 3L));
+    verify(database).delete(Collections.singletonList(2L));
+    assertEquals(3, dispatcher.getReceiptsSent());
+  }
+
+  @Test
+  public void testIgnoresReceiptsAlreadyQueued() throws Exception {
+    when(database.insert(eq("+14152222222"), anyLong(), anyString())).thenReturn(-1L);
+
+    new DeliveryReceiptDispatcher(messageSenderFactory, database, executor, COALESCE_MILLIS).enqueue("+14152222222", 100, "foo");
+
+    verify(executor, times(0)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+  }
+
+  @Test
+  public void testBacksOffOnNetworkFailure() throws Exception {
+    when(database.insert(eq("+14152222222"), anyLong(), anyString())).thenReturn(1L);
+    doThrow(new PushNetworkException("timeout")).when(messageSender).sendDeliveryReceipt(any(SignalServiceAddress.class), eq(100L));
+
+    DeliveryReceiptDispatcher dispatcher = new DeliveryReceiptDispatcher(messageSenderFactory, database, executor, COALESCE_MILLIS);
+    dispatcher.enqueue("+14152222222", 100, "foo");
+
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).schedule(task.capture(), eq(COALESCE_MILLIS), eq(TimeUnit.MILLISECONDS));
+
+    task.getValue().run();
+
+    verify(database).delete(Collections.<Long>emptyList());
+    verify(executor).schedule(eq(task.getValue()), eq(1000L), eq(TimeUnit.MILLISECONDS));
+    assertEquals(0, dispatcher.getReceiptsSent());
+  }
+
+  @Test
+  public void testDropsRejectedReceipts() throws Exception {
+    when(database.insert(eq("+14152222222"), anyLong(), anyString())).thenReturn(1L);
+    doThrow(new NotFoundException("not found")).when(messageSender).sendDeliveryReceipt(any(SignalServiceAddress.class), eq(100L));
+
+    DeliveryReceiptDispatcher dispatcher = new DeliveryReceiptDispatcher(messageSenderFactory, database, executor, COALESCE_MILLIS);
+    dispatcher.enqueue("+14152222222", 100, "foo");
+
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).schedule(task.capture(), eq(COALESCE_MILLIS), eq(TimeUnit.MILLISECONDS));
+
+    task.getValue().run();
+
+    verify(database).delete(Collections.singletonList(1L));
+    assertEquals(1, dispatcher.getReceiptsDropped());
+  }
+}
@@ -0,0 +1,182 @@
+package org.thoughtcrime.securesms.push;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.BaseUnitTest;
+import org.thoughtcrime.securesms.dependencies.SignalCommunicationModule.SignalMessageSenderFactory;
+import org.whispersystems.signalservice.api.SignalServiceMessageSender;
+import org.whispersystems.signalservice.api.messages.SignalServiceAttachment;
+import org.whispersystems.signalservice.api.messages.SignalServiceDataMessage;
+import org.whispersystems.signalservice.api.push.SignalServiceAddress;
+import org.whispersystems.signalservice.api.push.exceptions.EncapsulatedExceptions;
+import org.whispersystems.signalservice.api.push.exceptions.PushNetworkException;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class GroupSendEngineTest extends BaseUnitTest {
+
+  private static final Executor DIRECT_EXECUTOR = new Executor() {
+    @Override
+    public void execute(Runnable runnable) {
+      runnable.run();
+    }
+  };
+
+  private final SignalServiceAddress alice = new SignalServiceAddress("+14151111111");
+  private final SignalServiceAddress bob   = new SignalServiceAddress("+14152222222");
+  private final SignalServiceAddress carol = new SignalServiceAddress("+14153333333");
+
+  @Test
+  public void testFansOutPlainMessages() throws Exception {
+    SignalServiceMessageSender sender  = mock(SignalServiceMessageSender.class);
+    SignalServiceDataMessage   message = SignalServiceDataMessage.newBuilder().withTimestamp(1).withBody("hi").build();
+
+    new GroupSendEngine(factoryFor(sender), false, DIRECT_EXECUTOR).sendMessage(Arrays.asList(alice, bob, carol), message);
+
+    verify(sender).sendMessage(eq(alice), eq(message));
+    verify(sender).sendMessage(eq(bob), eq(message));
+    verify(sender).sendMessage(eq(carol), eq(message));
+    verify(sender, never()).sendMessage(anyListOf(SignalServiceAddress.class), any(SignalServiceDataMessage.class));
+  }
+
+  @Test
+  public void testReportsOnlyFailedMembers() throws Exception {
+    SignalServiceMessageSender sender  = mock(SignalServiceMessageSender.class);
+    SignalServiceDataMessage   message = SignalServiceDataMessage.newBuilder().withTimestamp(1).withBody("hi").build();
+
+    doThrow(new PushNetworkException("timeout")).when(sender).sendMessage(eq(bob), eq(message));
+
+    try {
+      new GroupSendEngine(factoryFor(sender), false, DIRECT_EXECUTOR).sendMessage(Arrays.asList(alice, bob, carol), message);
+      fail();
+    } catch (EncapsulatedExceptions e) {
+      assertEquals(1, e.getNetworkExceptions().size());
+      assertEquals(bob.getNumber(), e.getNetworkExceptions().get(0).getE164number());
+      assertEquals(0, e.getUntrustedIdentityExceptions().size());
+    }
+  }
+
+  @Test
+  public void testBatchesMessagesWithAttachments() throws Exception {
+    SignalServiceMessageSender sender     = mock(SignalServiceMessageSender.class);
+    SignalServiceAttachment    attachment = SignalServiceAttachment.newStreamBuilder()
+                                                                   .withStream(new ByteArrayInputStream(new byte[1]))
+                                                                   .withContentType("image/jpeg")
+                                                                   .withLength(1)
+                                                                   .build();
+    SignalServiceDataMessage   message    = SignalServiceDataMessage.newBuilder()
+                                                                    .withTimestamp(1)
+                                                                    .withAttachment(attachment)
+                                                                    .build();
+    List<SignalServiceAddress> members    = Arrays.asList(alice, bob, carol);
+
+    new GroupSendEngine(factoryFor(sender), false, DIRECT_EXECUTOR).sendMessage(members, message);
+
+    verify(sender).sendMessage(eq(members), eq(message));
+    verify(sender, never()).sendMessage(any(SignalServiceAddress.class), any(SignalServiceDataMessage.class));
+  }
+
+  @Test
+  public void testBatchesForLinkedDevices() throws Exception {
+    SignalServiceMessageSender sender  = mock(SignalServiceMessageSender.class);
+    SignalServiceDataMessage   message = SignalServiceDataMessage.newBuilder().withTimestamp(1).withBody("hi").build();
+    List<SignalServiceAddress> members = Arrays.asList(alice, bob);
+
+    new GroupSendEngine(factoryFor(sender), true, DIRECT_EXECUTOR).sendMessage(members, message);
+
+    verify(sender).sendMessage(eq(members), eq(message));
+  }
+
+  @Test
+  public void testEachWorkerSendsThroughItsOwnSender() throws Exception {
+    final SignalServiceDataMessage         message  = SignalServiceDataMessage.newBuilder().withTimestamp(1).withBody("hi").build();
+    final Map<Object, Set<Thread>>         threads  = new ConcurrentHashMap<>();
+    final AtomicInteger                    sent     = new AtomicInteger();
+    final List<SignalServiceMessageSender> senders  = Collections.synchronizedList(new LinkedList<SignalServiceMessageSender>());
+    final ExecutorService                  executor = Executors.newFixedThreadPool(4);
+    final List<SignalServiceAddress>       members  = new LinkedList<>();
+
+    for (int i = 0; i < 50; i++) {
+      members.add(new SignalServiceAddress("+1415555" + String.format("%04d", i)));
+    }
+
+    SignalMessageSenderFactory factory = new SignalMessageSenderFactory() {
+      @Override
+      public SignalServiceMessageSender create() {
+        final SignalServiceMessageSender sender = mock(SignalServiceMessageSender.class);
+
+        try {
+          doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+              Set<Thread> senderThreads = threads.get(sender);
+
+              if (senderThreads == null) {
+                senderThreads = Collections.synchronizedSet(new HashSet<Thread>());
+                threads.put(sender, senderThreads);
+              }
+
+              senderThreads.add(Thread.currentThread());
+              sent.incrementAndGet();
+              Thread.sleep(1);
+              return null;
+            }
+          }).when(sender).sendMessage(any(SignalServiceAddress.class), eq(message));
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+
+        senders.add(sender);
+        return sender;
+      }
+    };
+
+    try {
+      new GroupSendEngine(factory, false, executor).sendMessage(members, message);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(members.size(), sent.get());
+    assertTrue(senders.size() <= 8);
+
+    for (Set<Thread> senderThreads : threads.values()) {
+      assertEquals(1, senderThreads.size());
+    }
+  }
+
+  private static SignalMessageSenderFactory factoryFor(final SignalServiceMessageSender sender) {
+    return new SignalMessageSenderFactory() {
+      @Override
+      public SignalServiceMessageSender create() {
+        return sender;
+      }
+    };
+  }
+}
@@ -0,0 +1,62 @@
+package org.thoughtcrime.securesms.qr;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class LuminanceFrameTest {
+
+  @Test
+  public void testCropsCenteredSquare() {
+    int    width  = 40;
+    int    height = 20;
+    byte[] data   = new byte[width * height * 3 / 2];
+
+    for (int y=0;y<height;y++) {
+      for (int x=0;x<width;x++) {
+        data[y * width + x] = (byte)(x + y * 2);
+      }
+    }
+
+    LuminanceFrame frame = new LuminanceFrame();
+    frame.set(data, width, height);
+
+    assertEquals(18, frame.getSide());
+    assertEquals((byte)(11 + 1 * 2), frame.getLuminance()[0]);
+    assertEquals((byte)(11 + 17 + (1 + 17) * 2), frame.getLuminance()[17 * 18 + 17]);
+  }
+
+  @Test
+  public void testDownsamplesLargeCrops() {
+    int    width  = 1280;
+    int    height = 720;
+    byte[] data   = new byte[width * height * 3 / 2];
+
+    for (int y=0;y<height;y++) {
+      for (int x=0;x<width;x++) {
+        data[y * width + x] = (byte)(((x + y) % 2 == 0) ? 200 : 100);
+      }
+    }
+
+    LuminanceFrame frame = new LuminanceFrame();
+    frame.set(data, width, height);
+
+    assertEquals(324, frame.getSide());
+    assertEquals((byte)150, frame.getLuminance()[0]);
+    assertEquals(324, frame.getLuminanceSource().getWidth());
+  }
+
+  @Test
+  public void testReusesBuffer() {
+    LuminanceFrame frame = new LuminanceFrame();
+    frame.set(new byte[640 * 480 * 3 / 2], 640, 480);
+
+    byte[] buffer = frame.getLuminance();
+    frame.set(new byte[320 * 240 * 3 / 2], 320, 240);
+
+    assertSame(buffer, frame.getLuminance());
+    assertEquals(216, frame.getSide());
+  }
+}